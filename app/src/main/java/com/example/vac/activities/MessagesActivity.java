@@ -13,17 +13,16 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.vac.R;
 import com.example.vac.adapters.MessageAdapter;
+import com.example.vac.adapters.MessagePager;
+import com.example.vac.handlers.MessageLibrary;
 import com.example.vac.models.Message;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class MessagesActivity extends AppCompatActivity implements MessageAdapter.MessageInteractionListener {
+public class MessagesActivity extends AppCompatActivity implements MessageAdapter.MessageInteractionListener,
+        MessagePager.Callback {
 
     private static final String TAG = "MessagesActivity";
 
@@ -31,7 +30,9 @@ public class MessagesActivity extends AppCompatActivity implements MessageAdapte
     private MessageAdapter messageAdapter;
     private TextView textViewEmptyMessages;
     private MediaPlayer mediaPlayer;
-    private List<Message> messageList = new ArrayList<>();
+    private MessageLibrary messageLibrary;
+    private MessagePager messagePager;
+    ExecutorService scanExecutor; // Loads pages; single thread so they arrive in request order
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -41,42 +42,50 @@ public class MessagesActivity extends AppCompatActivity implements MessageAdapte
         recyclerViewMessages = findViewById(R.id.recycler_view_messages);
         textViewEmptyMessages = findViewById(R.id.tv_empty_messages);
 
+        messageLibrary = MessageLibrary.getInstance(this);
+        scanExecutor = Executors.newSingleThreadExecutor();
+        messagePager = new MessagePager(messageLibrary, scanExecutor, this::runOnUiThread, this);
+
         recyclerViewMessages.setLayoutManager(new LinearLayoutManager(this));
-        messageAdapter = new MessageAdapter(this, messageList, this);
+        messageAdapter = new MessageAdapter(this, messagePager, this);
         recyclerViewMessages.setAdapter(messageAdapter);
 
-        loadMessages();
+        // Pages in the background; only the first page is read before the list shows
+        messageLibrary.addChangeListener(messagePager);
+        messagePager.open();
     }
 
-    private void loadMessages() {
-        messageList.clear();
-        File dir = getFilesDir();
-        File[] files = dir.listFiles((d, name) -> name.startsWith("message_") && name.endsWith(".3gp"));
+    @Override
+    public void onReset() {
+        messageAdapter.notifyDataSetChanged();
+        updateEmptyView();
+    }
 
-        if (files != null) {
-            for (File file : files) {
-                messageList.add(new Message(file));
-            }
-            // Sort messages by date, newest first
-            Collections.sort(messageList, (m1, m2) -> {
-                try {
-                    long ts1 = Long.parseLong(m1.getFilename().split("_")[1].split("\\.")[0]);
-                    long ts2 = Long.parseLong(m2.getFilename().split("_")[1].split("\\.")[0]);
-                    return Long.compare(ts2, ts1); // newest first
-                } catch (Exception e) {
-                    return 0; // fallback if parsing fails
-                }
-            });
-        }
+    @Override
+    public void onItemsChanged(int position, int count) {
+        messageAdapter.notifyItemRangeChanged(position, count);
+    }
 
-        if (messageList.isEmpty()) {
+    @Override
+    public void onItemInserted(int position) {
+        messageAdapter.notifyItemInserted(position);
+        updateEmptyView();
+    }
+
+    @Override
+    public void onItemRemoved(int position) {
+        messageAdapter.notifyItemRemoved(position);
+        updateEmptyView();
+    }
+
+    private void updateEmptyView() {
+        if (messagePager.getCount() == 0) {
             textViewEmptyMessages.setVisibility(View.VISIBLE);
             recyclerViewMessages.setVisibility(View.GONE);
         } else {
             textViewEmptyMessages.setVisibility(View.GONE);
             recyclerViewMessages.setVisibility(View.VISIBLE);
         }
-        messageAdapter.notifyDataSetChanged();
     }
 
     @Override
@@ -107,15 +116,20 @@ public class MessagesActivity extends AppCompatActivity implements MessageAdapte
 
     @Override
     public void onDeleteMessage(Message message) {
-        File fileToDelete = message.getFile();
-        if (fileToDelete.exists()) {
-            if (fileToDelete.delete()) {
-                Toast.makeText(this, R.string.message_deleted, Toast.LENGTH_SHORT).show();
-                loadMessages(); // Refresh the list
-            } else {
-                Toast.makeText(this, "Error deleting message", Toast.LENGTH_SHORT).show();
-            }
+        if (!message.getFile().exists()) {
+            return;
         }
+        // Removal is reported back through onMessageRemoved
+        scanExecutor.execute(() -> {
+            boolean deleted = messageLibrary.delete(message);
+            runOnUiThread(() -> {
+                if (deleted) {
+                    Toast.makeText(this, R.string.message_deleted, Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(this, "Error deleting message", Toast.LENGTH_SHORT).show();
+                }
+            });
+        });
     }
 
     private void releaseMediaPlayer() {
@@ -133,4 +147,12 @@ public class MessagesActivity extends AppCompatActivity implements MessageAdapte
         super.onStop();
         releaseMediaPlayer();
     }
+
+    @Override
+    protected void onDestroy() {
+        messageLibrary.removeChangeListener(messagePager);
+        messagePager.close();
+        scanExecutor.shutdownNow();
+        super.onDestroy();
+    }
 } 
\ No newline at end of file
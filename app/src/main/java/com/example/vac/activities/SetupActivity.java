@@ -20,6 +20,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
@@ -27,6 +28,8 @@ import androidx.core.content.ContextCompat;
 import com.example.vac.R;
 import com.example.vac.databinding.ActivitySetupBinding;
 import com.example.vac.handlers.AudioHandler;
+import com.example.vac.handlers.GreetingAssets;
+import com.example.vac.handlers.LatencyStatsManager;
 import com.example.vac.utils.PreferencesManager;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.switchmaterial.SwitchMaterial;
@@ -86,6 +89,7 @@ public class SetupActivity extends AppCompatActivity {
 
         preferencesManager = new PreferencesManager(this);
         audioHandler = new AudioHandler(this, null);
+        GreetingAssets.getInstance(this); // Re-renders the greeting as the settings below are saved
 
         // Initialize UI elements
         nameInput = binding.nameInput;
@@ -501,7 +505,22 @@ public class SetupActivity extends AppCompatActivity {
             Intent intent = new Intent(this, MessagesActivity.class);
             startActivity(intent);
             return true;
+        } else if (item.getItemId() == R.id.action_latency_stats) {
+            showLatencyStats();
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
+
+    private void showLatencyStats() {
+        LatencyStatsManager latencyStatsManager = new LatencyStatsManager(this);
+        String report = latencyStatsManager.dump();
+        Log.i("SetupActivity", "Latency stats:\n" + report);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.latency_stats_title)
+                .setMessage(report)
+                .setPositiveButton(R.string.latency_stats_close, null)
+                .setNegativeButton(R.string.latency_stats_reset, (dialog, which) -> latencyStatsManager.reset())
+                .show();
+    }
 } 
\ No newline at end of file
@@ -10,12 +10,15 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 import com.example.vac.R;
 import com.example.vac.models.Message;
-import java.util.List;
 
+/**
+ * Shows recorded messages from a {@link MessagePager}. Messages that are not loaded yet are
+ * bound as empty placeholders and rebound once their page arrives.
+ */
 public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageViewHolder> {
 
     private final Context context;
-    private final List<Message> messageList;
+    private final MessagePager pager;
     private final MessageInteractionListener listener;
 
     public interface MessageInteractionListener {
@@ -23,9 +26,9 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
         void onDeleteMessage(Message message);
     }
 
-    public MessageAdapter(Context context, List<Message> messageList, MessageInteractionListener listener) {
+    public MessageAdapter(Context context, MessagePager pager, MessageInteractionListener listener) {
         this.context = context;
-        this.messageList = messageList;
+        this.pager = pager;
         this.listener = listener;
     }
 
@@ -38,16 +41,27 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
 
     @Override
     public void onBindViewHolder(@NonNull MessageViewHolder holder, int position) {
-        Message message = messageList.get(position);
+        Message message = pager.get(position);
+        if (message == null) {
+            holder.textViewMessageDate.setText(null);
+            holder.textViewMessageFilename.setText(null);
+            holder.buttonPlay.setEnabled(false);
+            holder.buttonDelete.setEnabled(false);
+            holder.buttonPlay.setOnClickListener(null);
+            holder.buttonDelete.setOnClickListener(null);
+            return;
+        }
         holder.textViewMessageDate.setText(message.getFormattedDate());
         holder.textViewMessageFilename.setText(message.getFilename());
+        holder.buttonPlay.setEnabled(true);
+        holder.buttonDelete.setEnabled(true);
 
         holder.buttonPlay.setOnClickListener(v -> {
             if (listener != null) {
                 listener.onPlayMessage(message);
             }
         });
-        
+
         holder.buttonDelete.setOnClickListener(v -> {
             if (listener != null) {
                 listener.onDeleteMessage(message);
@@ -57,7 +71,7 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
 
     @Override
     public int getItemCount() {
-        return messageList != null ? messageList.size() : 0;
+        return pager.getCount();
     }
 
     static class MessageViewHolder extends RecyclerView.ViewHolder {
@@ -74,4 +88,4 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
             buttonDelete = itemView.findViewById(R.id.btn_delete);
         }
     }
-} 
\ No newline at end of file
+}
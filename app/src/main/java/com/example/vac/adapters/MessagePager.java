@@ -0,0 +1,288 @@
+package com.example.vac.adapters;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.vac.handlers.MessageLibrary;
+import com.example.vac.models.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Holds a window of at most {@link #MAX_LOADED} consecutive messages out of the whole library
+ * and pages more in as the list is scrolled, so memory and time to first frame do not depend
+ * on how many messages there are.
+ * <p>
+ * Scrolling near either end of the window loads the neighbouring page by keyset, relative to
+ * the first or last loaded message, which stays correct while messages come and go. Positions
+ * outside the window are placeholders ({@link #get} returns null) until a page for them is
+ * loaded; jumping far away loads that page by position.
+ * <p>
+ * Library changes are applied as single item inserts and removals. Each one carries the
+ * library version, and a page is only accepted if it was read at the version the pager has
+ * reached; anything out of step is re-requested, and a gap in the versions reopens the list.
+ * Changes arriving while the list is opening are held until the first page shows which of them
+ * it already covers.
+ * <p>
+ * Everything except loading runs on the main thread.
+ */
+public class MessagePager implements MessageLibrary.ChangeListener {
+    static final int PAGE_SIZE = 30;
+    static final int PREFETCH_DISTANCE = 10;
+    static final int MAX_LOADED = 4 * PAGE_SIZE;
+
+    /**
+     * Told which positions changed, in the terms of {@link androidx.recyclerview.widget.RecyclerView.Adapter}.
+     */
+    public interface Callback {
+        void onReset();
+        void onItemsChanged(int position, int count);
+        void onItemInserted(int position);
+        void onItemRemoved(int position);
+    }
+
+    private final MessageLibrary library;
+    private final Executor loadExecutor;
+    private final Executor mainExecutor;
+    private final Callback callback;
+
+    private final List<Message> loaded = new ArrayList<>(); // Messages at loadedStart..
+    private int loadedStart;
+    private int totalCount;
+    private long version = -1; // -1 until opened
+    private boolean loading;
+    private int wantedPosition = -1; // Placeholder that was asked for, or -1
+    private boolean closed;
+    private final List<Runnable> changesWhileOpening = new ArrayList<>();
+
+    /**
+     * @param loadExecutor Background executor for library reads
+     * @param mainExecutor Executor posting to the main thread
+     */
+    public MessagePager(@NonNull MessageLibrary library, @NonNull Executor loadExecutor,
+                        @NonNull Executor mainExecutor, @NonNull Callback callback) {
+        this.library = library;
+        this.loadExecutor = loadExecutor;
+        this.mainExecutor = mainExecutor;
+        this.callback = callback;
+    }
+
+    /**
+     * Bring the library up to date and show its first page, replacing anything shown before.
+     */
+    @MainThread
+    public void open() {
+        version = -1;
+        wantedPosition = -1;
+        changesWhileOpening.clear(); // Posted before this read, so the new page covers them
+        load(() -> library.open(PAGE_SIZE));
+    }
+
+    /**
+     * Stop loading and ignore results still on their way. The load executor may be shut down
+     * afterwards.
+     */
+    @MainThread
+    public void close() {
+        closed = true;
+    }
+
+    @MainThread
+    public int getCount() {
+        return totalCount;
+    }
+
+    /**
+     * The message at a position, loading more around it as needed.
+     *
+     * @return The message, or null if it is not loaded yet
+     */
+    @MainThread
+    @Nullable
+    public Message get(int position) {
+        int loadedEnd = loadedStart + loaded.size();
+        if (position < loadedStart || position >= loadedEnd) {
+            wantedPosition = position;
+            loadWanted();
+            return null;
+        }
+        Message message = loaded.get(position - loadedStart);
+        if (!loading && position >= loadedEnd - PREFETCH_DISTANCE && loadedEnd < totalCount) {
+            Message last = loaded.get(loaded.size() - 1);
+            load(() -> library.pageOlderThan(last, PAGE_SIZE));
+        } else if (!loading && position < loadedStart + PREFETCH_DISTANCE && loadedStart > 0) {
+            Message first = loaded.get(0);
+            load(() -> library.pageNewerThan(first, PAGE_SIZE));
+        }
+        return message;
+    }
+
+    @Override
+    public void onMessageAdded(@NonNull Message message, int position, long version) {
+        mainExecutor.execute(() -> apply(version, () -> {
+            totalCount++;
+            if (position < loadedStart) {
+                loadedStart++;
+            } else if (position <= loadedStart + loaded.size()) {
+                loaded.add(position - loadedStart, message);
+            }
+            callback.onItemInserted(position);
+        }));
+    }
+
+    @Override
+    public void onMessageRemoved(@NonNull String filename, int position, long version) {
+        mainExecutor.execute(() -> apply(version, () -> {
+            totalCount--;
+            if (position < loadedStart) {
+                loadedStart--;
+            } else if (position < loadedStart + loaded.size()) {
+                loaded.remove(position - loadedStart);
+            }
+            callback.onItemRemoved(position);
+        }));
+    }
+
+    private void apply(long changeVersion, Runnable change) {
+        if (closed) {
+            return;
+        }
+        if (version < 0) {
+            // The first page may have been read before or after this change
+            changesWhileOpening.add(() -> apply(changeVersion, change));
+            return;
+        }
+        if (accept(changeVersion)) {
+            change.run();
+        }
+    }
+
+    /**
+     * Whether a change with this version is the next one to apply. Changes already covered by
+     * the pages loaded are skipped; a missed change reopens the list.
+     */
+    private boolean accept(long changeVersion) {
+        if (changeVersion <= version) {
+            return false;
+        }
+        if (changeVersion != version + 1) {
+            open();
+            return false;
+        }
+        version = changeVersion;
+        return true;
+    }
+
+    private void loadWanted() {
+        if (wantedPosition >= totalCount) {
+            wantedPosition = -1; // Removed while loading
+        }
+        if (!loading && wantedPosition >= 0) {
+            int offset = Math.max(0, wantedPosition - PAGE_SIZE / 2);
+            load(() -> library.pageAt(offset, PAGE_SIZE));
+        }
+    }
+
+    private void load(Supplier<MessageLibrary.Page> request) {
+        if (closed) {
+            return;
+        }
+        loading = true;
+        loadExecutor.execute(() -> {
+            MessageLibrary.Page page = request.get();
+            mainExecutor.execute(() -> onPageLoaded(request, page));
+        });
+    }
+
+    private void onPageLoaded(Supplier<MessageLibrary.Page> request, MessageLibrary.Page page) {
+        loading = false;
+        if (closed) {
+            return;
+        }
+        if (version < 0) {
+            reset(page);
+        } else if (page.version > version) {
+            open(); // The library changed without telling us, e.g. it was reconciled elsewhere
+            return;
+        } else if (page.version < version) {
+            load(request); // Read before changes we already applied
+            return;
+        } else {
+            merge(page);
+        }
+        if (wantedPosition >= loadedStart && wantedPosition < loadedStart + loaded.size()) {
+            wantedPosition = -1;
+        }
+        loadWanted();
+    }
+
+    private void reset(MessageLibrary.Page page) {
+        loaded.clear();
+        loaded.addAll(page.messages);
+        loadedStart = page.offset;
+        totalCount = page.totalCount;
+        version = page.version;
+        callback.onReset();
+        List<Runnable> held = new ArrayList<>(changesWhileOpening);
+        changesWhileOpening.clear();
+        for (Runnable change : held) {
+            change.run();
+        }
+    }
+
+    private void merge(MessageLibrary.Page page) {
+        if (page.messages.isEmpty()) {
+            return;
+        }
+        int pageEnd = page.offset + page.messages.size();
+        int loadedEnd = loadedStart + loaded.size();
+        if (loaded.isEmpty() || pageEnd < loadedStart || page.offset > loadedEnd) {
+            // Not adjacent: the old window becomes placeholders
+            int oldStart = loadedStart;
+            int oldCount = loaded.size();
+            loaded.clear();
+            loaded.addAll(page.messages);
+            loadedStart = page.offset;
+            if (oldCount > 0) {
+                callback.onItemsChanged(oldStart, oldCount);
+            }
+        } else {
+            int start = Math.min(loadedStart, page.offset);
+            int end = Math.max(loadedEnd, pageEnd);
+            List<Message> merged = new ArrayList<>(end - start);
+            for (int position = start; position < end; position++) {
+                merged.add(position >= page.offset && position < pageEnd
+                        ? page.messages.get(position - page.offset)
+                        : loaded.get(position - loadedStart));
+            }
+            loaded.clear();
+            loaded.addAll(merged);
+            loadedStart = start;
+            trim(page.offset, pageEnd);
+        }
+        callback.onItemsChanged(page.offset, page.messages.size());
+    }
+
+    /**
+     * Drop messages from the end of the window farther away from the page just loaded.
+     */
+    private void trim(int pageStart, int pageEnd) {
+        int excess = loaded.size() - MAX_LOADED;
+        if (excess <= 0) {
+            return;
+        }
+        int loadedEnd = loadedStart + loaded.size();
+        if (pageStart - loadedStart > loadedEnd - pageEnd) {
+            loaded.subList(0, excess).clear();
+            callback.onItemsChanged(loadedStart, excess);
+            loadedStart += excess;
+        } else {
+            loaded.subList(loaded.size() - excess, loaded.size()).clear();
+            callback.onItemsChanged(loadedEnd - excess, excess);
+        }
+    }
+}
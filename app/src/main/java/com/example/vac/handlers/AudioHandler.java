@@ -6,20 +6,31 @@ import android.media.AudioFocusRequest;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.speech.tts.TextToSpeech;
 import android.speech.tts.TextToSpeech.OnInitListener;
 import android.speech.tts.UtteranceProgressListener;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.example.vac.R;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Handles audio playback (TTS and pre-recorded files), managing TextToSpeech
@@ -36,20 +47,26 @@ public class AudioHandler {
     
     // Helper class to store synthesis request details
     private static class SynthesisRequest {
-        SynthesisCallback callback;
-        String filePath;
+        final SynthesisCallback callback;
+        final String filePath;
 
         SynthesisRequest(SynthesisCallback callback, String filePath) {
             this.callback = callback;
             this.filePath = filePath;
         }
     }
-    // Map to hold requests for synthesizeToFile operations
-    private final HashMap<String, SynthesisRequest> synthesisRequests = new HashMap<>();
+    // Map to hold requests for synthesizeToFile operations; completed on the TTS binder thread
+    private final Map<String, SynthesisRequest> synthesisRequests = new ConcurrentHashMap<>();
     
     TextToSpeech tts; // Package-private for test access
+    private final CountDownLatch ttsConfigured = new CountDownLatch(1); // Released whether or not it worked
     private MediaPlayer mediaPlayer;
-    private AudioFocusRequest audioFocusRequest;
+    private AudioFocusRequest audioFocusRequest; // Built once and reused for every prompt
+    private AudioAttributes playbackAttributes;
+    // Output session: focus is kept from the first prompt until endOutputSession()
+    private boolean outputSessionOpen;
+    private boolean focusHeld;
+    @Nullable private CallTracer sessionTracer;
     static final String UTTERANCE_ID_GREETING = "utterance_greeting";
     static final String UTTERANCE_ID_FOLLOW_UP = "utterance_follow_up";
     private boolean isPlayingAudio = false;
@@ -98,6 +115,7 @@ public class AudioHandler {
                 configureExistingTtsInstance();
             } else {
                 try { Log.e(TAG, "TTS init failed, status: " + status + " or TTS null."); } catch (Throwable t) {}
+                ttsConfigured.countDown();
                 if (this.listener != null) {
                     this.listener.onPlaybackError("TTS initialization failed or engine unavailable.");
                 }
@@ -107,6 +125,19 @@ public class AudioHandler {
              try { Log.d(TAG, "TTS engine was null after creation attempt, notifying listener."); } catch (Throwable t) {}
              this.listener.onPlaybackError("TTS engine creation failed outright.");
         }
+        if (this.tts == null) {
+            ttsConfigured.countDown();
+        }
+    }
+
+    /**
+     * Wait until the TTS engine is initialized and configured, for callers on a background
+     * thread that need to synthesize right after creating this handler.
+     *
+     * @return true if the engine is ready, false if it failed or did not get ready in time
+     */
+    public boolean awaitTtsReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ttsConfigured.await(timeout, unit) && tts != null;
     }
 
     /**
@@ -114,6 +145,14 @@ public class AudioHandler {
      * Sets language and utterance progress listener.
      */
     private void configureExistingTtsInstance() {
+        try {
+            configureTts();
+        } finally {
+            ttsConfigured.countDown();
+        }
+    }
+
+    private void configureTts() {
         if (this.tts == null) {
             try { Log.e(TAG, "configureExistingTtsInstance: TTS engine is null."); } catch (Throwable t) {}
             return;
@@ -190,6 +229,16 @@ public class AudioHandler {
                         }
                     }
                 }
+
+                @Override
+                public void onStop(String utteranceId, boolean interrupted) {
+                    // A flush drops queued synthesis without onDone or onError
+                    SynthesisRequest request = synthesisRequests.remove(utteranceId);
+                    if (request != null) {
+                        try { Log.w(TAG, "TTS synthesis stopped for utteranceId: " + utteranceId); } catch (Throwable t) {}
+                        request.callback.onError("TTS synthesis stopped for utterance: " + utteranceId);
+                    }
+                }
             });
         } catch (Exception e) { 
             try { Log.e(TAG, "Exception setting TTS Listener: " + e.getMessage()); } catch (Throwable t) {}
@@ -289,13 +338,20 @@ public class AudioHandler {
         try { Log.i(TAG, "Attempting to play audio file: " + audioUri.toString()); } catch (Throwable t) {}
         if (requestAudioFocus()) {
             try {
-                mediaPlayer = new MediaPlayer();
+                // Reused across prompts, so the output stays routed between them
+                if (mediaPlayer == null) {
+                    mediaPlayer = new MediaPlayer();
+                } else {
+                    mediaPlayer.reset();
+                }
 
-                AudioAttributes audioAttributes = new AudioAttributes.Builder()
-                    .setUsage(AudioAttributes.USAGE_MEDIA)
-                    .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH) // Suitable for spoken greetings
-                    .build();
-                mediaPlayer.setAudioAttributes(audioAttributes);
+                if (playbackAttributes == null) {
+                    playbackAttributes = new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH) // Suitable for spoken greetings
+                        .build();
+                }
+                mediaPlayer.setAudioAttributes(playbackAttributes);
                 
                 // Set the data source - THIS WAS MISSING
                 mediaPlayer.setDataSource(context, audioUri);
@@ -383,46 +439,97 @@ public class AudioHandler {
     }
     
     /**
-     * Request audio focus for playback
+     * Keep audio focus and the media player from the first prompt until
+     * {@link #endOutputSession()}, instead of requesting and abandoning focus around every
+     * prompt. Each request for focus within the session is traced as
+     * {@link CallTracer.Span#AUDIO_FOCUS}, so calls show what the first request costs and that
+     * the following prompts skip it.
+     *
+     * @param tracer Tracer of the call, or null to not trace
+     */
+    public synchronized void beginOutputSession(@Nullable CallTracer tracer) {
+        outputSessionOpen = true;
+        sessionTracer = tracer;
+    }
+
+    /**
+     * End the output session and give up the audio focus it kept.
+     */
+    public void endOutputSession() {
+        synchronized (this) {
+            if (!outputSessionOpen) {
+                return;
+            }
+            outputSessionOpen = false;
+            sessionTracer = null;
+        }
+        releaseAudioFocus();
+    }
+
+    /**
+     * Request audio focus for playback, or keep the focus the output session already holds.
      * 
      * @return true if audio focus was granted, false otherwise
      */
-    private boolean requestAudioFocus() {
+    private synchronized boolean requestAudioFocus() {
+        long requestedAt = SystemClock.elapsedRealtimeNanos();
+        if (!(outputSessionOpen && focusHeld)) {
+            long startNanos = System.nanoTime();
+            focusHeld = requestAudioFocusFromSystem();
+            try { Log.d(TAG, "Audio focus " + (focusHeld ? "granted" : "denied") + " in "
+                    + (System.nanoTime() - startNanos) / 1000 + " us"); } catch (Throwable t) {}
+        }
+        CallTracer tracer = sessionTracer;
+        if (tracer != null && focusHeld) {
+            tracer.begin(CallTracer.Span.AUDIO_FOCUS, requestedAt);
+            tracer.end(CallTracer.Span.AUDIO_FOCUS);
+        }
+        return focusHeld;
+    }
+
+    private boolean requestAudioFocusFromSystem() {
         int result;
         
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-            audioFocusRequest = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN_TRANSIENT_MAY_DUCK)
-                    .setAudioAttributes(new AudioAttributes.Builder()
-                            .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
-                            .setUsage(AudioAttributes.USAGE_VOICE_COMMUNICATION)
-                            .build())
-                    .setAcceptsDelayedFocusGain(true)
-                    .setOnAudioFocusChangeListener(focusChange -> {
-                        if (focusChange == AudioManager.AUDIOFOCUS_LOSS) {
-                            stopPlayback();
-                        }
-                    })
-                    .build();
-            
+            if (audioFocusRequest == null) {
+                audioFocusRequest = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN_TRANSIENT_MAY_DUCK)
+                        .setAudioAttributes(new AudioAttributes.Builder()
+                                .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+                                .setUsage(AudioAttributes.USAGE_VOICE_COMMUNICATION)
+                                .build())
+                        .setAcceptsDelayedFocusGain(true)
+                        .setOnAudioFocusChangeListener(this::onAudioFocusChange)
+                        .build();
+            }
             result = audioManager.requestAudioFocus(audioFocusRequest);
         } else {
             result = audioManager.requestAudioFocus(
-                    focusChange -> {
-                        if (focusChange == AudioManager.AUDIOFOCUS_LOSS) {
-                            stopPlayback();
-                        }
-                    },
+                    this::onAudioFocusChange,
                     AudioManager.STREAM_VOICE_CALL,
                     AudioManager.AUDIOFOCUS_GAIN_TRANSIENT_MAY_DUCK);
         }
         
         return result == AudioManager.AUDIOFOCUS_REQUEST_GRANTED;
     }
+
+    private void onAudioFocusChange(int focusChange) {
+        if (focusChange == AudioManager.AUDIOFOCUS_LOSS) {
+            synchronized (this) {
+                focusHeld = false; // The next prompt has to ask again
+            }
+            stopPlayback();
+        }
+    }
     
     /**
-     * Release audio focus when done with playback
+     * Release audio focus when done with playback. Within an output session the focus is kept
+     * for the next prompt.
      */
-    private void releaseAudioFocus() {
+    private synchronized void releaseAudioFocus() {
+        if (outputSessionOpen) {
+            return;
+        }
+        focusHeld = false;
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
             if (audioFocusRequest != null) {
                 audioManager.abandonAudioFocusRequest(audioFocusRequest);
@@ -437,6 +544,7 @@ public class AudioHandler {
      */
     public void release() {
         stopPlayback(); // stopPlayback is now more robust
+        endOutputSession();
         
         try {
             if (tts != null) {
@@ -505,7 +613,32 @@ public class AudioHandler {
             return;
         }
         
-        File outputFile = new File(outputDir, desiredFileName);
+        startSynthesis(textToSpeak, new File(outputDir, desiredFileName), callback);
+    }
+
+    /**
+     * Synthesizes the given text to an arbitrary audio file, e.g. to pre-render a response
+     * in the background. Must not overlap with {@link #speak}, which flushes the TTS queue.
+     *
+     * @param textToSpeak The text to synthesize.
+     * @param outputFile  The file to write.
+     * @param callback    Callback to notify of success (with file path) or failure.
+     */
+    public void synthesizeToFile(String textToSpeak, File outputFile, SynthesisCallback callback) {
+        if (this.tts == null) {
+            try { Log.e(TAG, "synthesizeToFile: TTS engine not available."); } catch (Throwable t) {}
+            if (callback != null) callback.onError("TTS engine not available for synthesis.");
+            return;
+        }
+        if (textToSpeak == null || textToSpeak.isEmpty()) {
+            try { Log.e(TAG, "synthesizeToFile: Text to speak is empty."); } catch (Throwable t) {}
+            if (callback != null) callback.onError("Text to speak is empty.");
+            return;
+        }
+        startSynthesis(textToSpeak, outputFile, callback);
+    }
+
+    private void startSynthesis(String textToSpeak, File outputFile, SynthesisCallback callback) {
         String utteranceId = UTTERANCE_PREFIX_SYNTHESIS + UUID.randomUUID().toString();
 
         // Store the callback and file path before starting synthesis
@@ -527,6 +660,120 @@ public class AudioHandler {
         }
     }
 
+    /**
+     * One text to render to one file, for {@link #synthesizeBatch}.
+     */
+    public static final class SynthesisJob {
+        final String text;
+        final File outputFile;
+
+        public SynthesisJob(@NonNull String text, @NonNull File outputFile) {
+            this.text = text;
+            this.outputFile = outputFile;
+        }
+    }
+
+    /**
+     * Progress of a batch, called on the thread that finished a job, usually the TTS binder thread.
+     */
+    public interface BatchProgressListener {
+        void onProgress(int finished, int total);
+    }
+
+    /**
+     * Synthesizes many texts to files, e.g. to pre-render a whole prompt set in one call.
+     * At most {@code maxInFlight} jobs are handed to the engine at a time, so a flush by
+     * {@link #speak} drops only those and a cancelled future is skipped before it is
+     * synthesized. Safe to call from any thread.
+     *
+     * @param maxInFlight Jobs queued in the engine at once, at least 1
+     * @param progress    Told each time a job finishes, successfully or not
+     * @return One future per job, in the same order, completed with the written file or
+     *         exceptionally with an {@link IOException}
+     */
+    @NonNull
+    public List<CompletableFuture<File>> synthesizeBatch(@NonNull List<SynthesisJob> jobs, int maxInFlight,
+                                                         @Nullable BatchProgressListener progress) {
+        List<CompletableFuture<File>> futures = new ArrayList<>(jobs.size());
+        for (int i = 0; i < jobs.size(); i++) {
+            futures.add(new CompletableFuture<>());
+        }
+        new Batch(jobs, futures, progress, Math.max(1, maxInFlight)).startJobs();
+        return Collections.unmodifiableList(futures);
+    }
+
+    /**
+     * Hands out the jobs of one batch; each finished job frees a slot for the next one.
+     * <p>
+     * Jobs are started by one thread at a time, in a loop: a job that finishes while jobs are
+     * being started, e.g. one the engine rejects right away, only asks that thread for another
+     * pass, so a batch failing fast does not grow the stack by a frame per job.
+     */
+    private final class Batch {
+        final List<SynthesisJob> jobs;
+        final List<CompletableFuture<File>> futures;
+        final BatchProgressListener progress;
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger finished = new AtomicInteger();
+        final AtomicInteger freeSlots;
+        final AtomicInteger startRequests = new AtomicInteger();
+
+        Batch(List<SynthesisJob> jobs, List<CompletableFuture<File>> futures, BatchProgressListener progress,
+              int maxInFlight) {
+            this.jobs = jobs;
+            this.futures = futures;
+            this.progress = progress;
+            this.freeSlots = new AtomicInteger(maxInFlight);
+        }
+
+        void startJobs() {
+            if (startRequests.getAndIncrement() != 0) {
+                return; // The thread starting jobs makes another pass
+            }
+            int requests = 1;
+            do {
+                // Only this thread takes slots, so a free one cannot be taken between check and take
+                while (freeSlots.get() > 0 && next.get() < jobs.size()) {
+                    int index = next.getAndIncrement();
+                    CompletableFuture<File> future = futures.get(index);
+                    if (future.isDone()) {
+                        reportFinished(); // Cancelled before it reached the engine
+                        continue;
+                    }
+                    freeSlots.decrementAndGet();
+                    SynthesisJob job = jobs.get(index);
+                    synthesizeToFile(job.text, job.outputFile, new SynthesisCallback() {
+                        @Override
+                        public void onSuccess(String filePath) {
+                            future.complete(job.outputFile);
+                            jobFinished();
+                        }
+
+                        @Override
+                        public void onError(String errorMessage) {
+                            future.completeExceptionally(new IOException(errorMessage));
+                            jobFinished();
+                        }
+                    });
+                }
+                requests = startRequests.addAndGet(-requests);
+            } while (requests != 0);
+        }
+
+        private void jobFinished() {
+            reportFinished();
+            freeSlots.incrementAndGet();
+            startJobs();
+        }
+
+        private void reportFinished() {
+            int count = finished.incrementAndGet();
+            if (progress != null) {
+                progress.onProgress(count, jobs.size());
+            }
+        }
+    }
+
     /**
      * Speak the provided text with a specific utterance ID and language
      * 
@@ -3,21 +3,33 @@ package com.example.vac.handlers;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.Process;
 import android.telecom.Call;
 import android.util.Log;
 import android.net.Uri;
 import android.os.Handler;
 
+import androidx.annotation.NonNull;
+
 import com.example.vac.R;
+import com.example.vac.models.Message;
+import com.example.vac.models.TranscriptionData;
+import com.example.vac.utils.ConfigSnapshot;
 import com.example.vac.utils.PreferencesManager;
 
+import com.example.vac.handlers.CallStateMachine.Event;
+
 import java.io.File;
+import java.util.EnumSet;
 import java.util.Locale;
 
 /**
  * Manages the state and flow of a single screened call.
  * Orchestrates TTS, STT, and recording components.
+ * All component callbacks are turned into {@link CallStateMachine} events, which are
+ * processed one at a time on a dedicated session thread.
  */
 public class CallSessionManager implements 
         AudioHandler.AudioHandlerListener,
@@ -26,8 +38,6 @@ public class CallSessionManager implements
     
     private static final String TAG = "CallSessionManager";
     private static final String ACTION_TAKE_OVER = "com.example.vac.TAKE_OVER";
-    private static final String POLISH_RECORDING_NOTICE = " Ta rozmowa jest nagrywana.";
-    private static final String POLISH_RECORDING_KEYPHRASE = "rozmowa jest nagrywana";
     private static final long STT_SILENCE_TIMEOUT_MS = 3000; // 3 seconds
     
     // States for the call screening process
@@ -50,13 +60,21 @@ public class CallSessionManager implements
     private AudioHandler audioHandler;
     private SpeechRecognitionHandler speechRecognitionHandler;
     private MessageRecorderHandler messageRecorderHandler;
+    private MessageRecorderHandler.Mode recorderMode;
     
-    private Handler sttTimeoutHandler;
-    private Runnable sttTimeoutRunnable;
+    private final Handler mainHandler;
+    private final CallTracer tracer = new CallTracer();
+    private final IntentClassifier intentClassifier = IntentClassifier.getInstance();
+    private final ResponseSpeculator responseSpeculator;
+    private final LatencyStatsManager latencyStatsManager;
+    private final CallStateMachine stateMachine;
+    private final TranscriptBus transcriptBus;
+    private final GreetingAssets greetingAssets;
+    private HandlerThread sessionThread;
+    private volatile String callId;
     private String lastTranscribedText = null;
-    
-    private State currentState = State.INITIALIZING;
-    private boolean userHasTakenOver = false;
+    private volatile IntentClassifier.Intent detectedIntent = null;
+    private volatile boolean callerSpoke = false;
     
     public CallSessionManager(Context context, Call.Details callDetails, 
                              CallSessionListener listener, 
@@ -67,7 +85,12 @@ public class CallSessionManager implements
         this.notificationHandler = notificationHandler;
         
         this.preferencesManager = createPreferencesManager(context);
-        this.sttTimeoutHandler = new Handler(Looper.getMainLooper());
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.latencyStatsManager = createLatencyStatsManager(context);
+        this.responseSpeculator = new ResponseSpeculator(context, intentClassifier);
+        this.transcriptBus = createTranscriptBus();
+        this.greetingAssets = createGreetingAssets(context);
+        this.stateMachine = buildStateMachine(createSessionLooper());
         
         // Initialize components, including AudioHandler
         initializeComponents();
@@ -78,6 +101,31 @@ public class CallSessionManager implements
         return new PreferencesManager(context);
     }
 
+    protected LatencyStatsManager createLatencyStatsManager(Context context) {
+        return new LatencyStatsManager(context);
+    }
+
+    protected TranscriptBus createTranscriptBus() {
+        return TranscriptBus.getInstance();
+    }
+
+    /**
+     * Source of the pre-rendered greeting. Null means the greeting is always spoken live.
+     */
+    protected GreetingAssets createGreetingAssets(Context context) {
+        return GreetingAssets.getInstance(context);
+    }
+
+    /**
+     * Looper on which all session events are processed. Tests may return the main looper
+     * to keep dispatch synchronous.
+     */
+    protected Looper createSessionLooper() {
+        sessionThread = new HandlerThread("CallSession", Process.THREAD_PRIORITY_FOREGROUND);
+        sessionThread.start();
+        return sessionThread.getLooper();
+    }
+
     protected AudioHandler createAudioHandler(Context context, AudioHandler.AudioHandlerListener listener) {
         return new AudioHandler(context, listener);
     }
@@ -100,20 +148,83 @@ public class CallSessionManager implements
     private void initializeComponents() {
         // Use the factory methods to create handlers
         audioHandler = createAudioHandler(context, this);
+        if (audioHandler != null) {
+            audioHandler.beginOutputSession(tracer); // Focus is kept across prompts until release()
+        }
         speechRecognitionHandler = createSpeechRecognitionHandler(context, this);
         messageRecorderHandler = createMessageRecorderHandler(context, this);
+        ConfigSnapshot config = preferencesManager.getSnapshot();
+        if (!config.shouldUseStreamingRecorder()) {
+            recorderMode = MessageRecorderHandler.Mode.MEDIA_RECORDER;
+        } else if (config.shouldUseSegmentedRecording()) {
+            recorderMode = MessageRecorderHandler.Mode.SEGMENTED_AAC;
+        } else {
+            recorderMode = MessageRecorderHandler.Mode.STREAMING_AAC;
+        }
+        messageRecorderHandler.setMode(recorderMode);
+    }
 
-        sttTimeoutRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (currentState == State.LISTENING && !userHasTakenOver) {
+    /**
+     * Declares the session flow. Recording runs alongside the conversation for the whole call,
+     * so it does not move the conversation state; only its end or failure ends the session.
+     */
+    private CallStateMachine buildStateMachine(Looper looper) {
+        EnumSet<State> conversing = EnumSet.of(State.INITIALIZING, State.GREETING, State.LISTENING,
+                State.RESPONDING, State.RECORDING_MESSAGE);
+        EnumSet<State> active = EnumSet.complementOf(EnumSet.of(State.ENDED));
+
+        return new CallStateMachine.Builder(State.INITIALIZING)
+                .onEntry(State.GREETING, payload -> playGreeting())
+                .onEntry(State.LISTENING, payload -> startListeningForCaller())
+                .onEntry(State.ENDED, payload -> quitSessionThread())
+                .timer(State.LISTENING, Event.SILENCE_TIMEOUT, STT_SILENCE_TIMEOUT_MS)
+                .transitionListener(this::traceTransition)
+
+                .transition(conversing, Event.GREETING_REQUESTED, State.GREETING, null, null)
+                // Only observed by the tracer
+                .internal(EnumSet.of(State.GREETING, State.RESPONDING), Event.PLAYBACK_STARTED, null, false)
+                .transition(EnumSet.of(State.GREETING, State.RESPONDING), Event.PLAYBACK_COMPLETED, State.LISTENING,
+                        payload -> speechRecognitionHandler != null, null)
+                // The caller is still talking: restart the silence timer and prepare likely responses
+                .internal(EnumSet.of(State.LISTENING), Event.PARTIAL_SPEECH_RESULT,
+                        payload -> responseSpeculator.onPartialResult(audioHandler, (String) payload), true)
+                .internal(EnumSet.of(State.LISTENING), Event.END_OF_SPEECH, payload ->
+                        Log.i(TAG, "End of speech in LISTENING state. Restarted silence timer (" + STT_SILENCE_TIMEOUT_MS + "ms) to play follow-up."), true)
+                .transition(State.LISTENING, Event.SILENCE_TIMEOUT, State.RESPONDING, null, payload -> {
                     Log.i(TAG, "STT silence timeout reached. Current last transcribed text: '" + lastTranscribedText + "'. Proceeding to follow-up.");
                     playFollowUpResponse();
-                } else {
-                    Log.d(TAG, "STT silence timeout runnable executed but state is no longer LISTENING or user has taken over. State: " + currentState + ", UserTakenOver: " + userHasTakenOver);
-                }
-            }
-        };
+                })
+                .transition(conversing, Event.SPEECH_RESULT, State.RESPONDING, null,
+                        payload -> respondToCaller((String) payload))
+                .transition(EnumSet.of(State.LISTENING, State.INITIALIZING), Event.SPEECH_ERROR, State.RESPONDING, null, payload -> {
+                    Log.i(TAG, "Playing follow-up response due to STT error in LISTENING/INITIALIZING state.");
+                    playFollowUpResponse();
+                })
+
+                .transition(conversing, Event.USER_TAKEOVER, State.USER_TAKEOVER, null, payload -> {
+                    releaseInternal(true); // true indicates due to user takeover
+                    runOnMainThread(() -> {
+                        if (listener != null) listener.onUserTookOver(this);
+                    });
+                })
+                .transition(conversing, Event.HANG_UP, State.ENDED, null, payload -> completeSession())
+                .transition(active, Event.STOP, State.ENDED, null, payload -> completeSession())
+                .transition(active, Event.PLAYBACK_ERROR, State.ENDED, null, payload -> {
+                    reportSessionError("Audio playback error: " + payload);
+                    completeSession();
+                })
+                .transition(active, Event.RECORDING_ERROR, State.ENDED, null, payload -> {
+                    releaseInternal(false);
+                    reportSessionError("Recording error: " + payload);
+                })
+                // After recording, the session typically ends.
+                .transition(active, Event.RECORDING_STOPPED, State.ENDED, null, payload -> {
+                    showRecordingResult((String) payload);
+                    completeSession();
+                })
+                .internal(EnumSet.of(State.ENDED), Event.RECORDING_STOPPED,
+                        payload -> showRecordingResult((String) payload), false)
+                .build(looper);
     }
     
     /**
@@ -121,7 +232,6 @@ public class CallSessionManager implements
      */
     public void startScreening() {
         try { Log.d(TAG, "Starting call screening process for: " + callDetails.getHandle().getSchemeSpecificPart()); } catch (Throwable t) {}
-        currentState = State.GREETING;
         
         // CallScreeningServiceImpl is responsible for the initial notification and foreground service start.
         // This class will only update the notification as states change.
@@ -132,6 +242,8 @@ public class CallSessionManager implements
         // null // No hangup from here initially
         // );
         
+        tracer.begin(CallTracer.Span.TIME_TO_GREETING);
+
         // Start recording the call immediately
         startRecordingMessage();
         
@@ -145,15 +257,19 @@ public class CallSessionManager implements
      * For user take-over, see {@link #userTakesOver()}.
      */
     public void stopScreening() {
-        Log.d(TAG, "Stopping call screening process (general stop). Current state: " + currentState);
-        if (currentState == State.ENDED) {
-            Log.d(TAG, "Already in ENDED state. Ignoring stopScreening call.");
-            return;
-        }
-        releaseInternal(false); // false indicates not due to user takeover
-        currentState = State.ENDED; // Set state after release, or within releaseInternal
-        if (listener != null) {
-            listener.onSessionCompleted(this);
+        Log.d(TAG, "Stopping call screening process (general stop). Current state: " + getCurrentState());
+        stateMachine.fire(Event.STOP);
+    }
+
+    /**
+     * Stop the session, then run something on the main thread once it has released its
+     * handlers and no longer touches anything it was given, e.g. the notification handler.
+     */
+    public void stopScreening(@NonNull Runnable whenReleased) {
+        stopScreening();
+        // Queued behind STOP; the session thread quits only after running it
+        if (!stateMachine.execute(() -> runOnMainThread(whenReleased))) {
+            runOnMainThread(whenReleased); // Ended before, so already released
         }
     }
     
@@ -161,111 +277,108 @@ public class CallSessionManager implements
      * User takes over the call
      */
     public void userTakesOver() {
-        Log.d(TAG, "User is taking over the call. Current state: " + currentState);
-        if (currentState == State.ENDED || userHasTakenOver) {
-            Log.d(TAG, "User already took over or session ended. Ignoring userTakesOver call.");
-            return;
-        }
-
-        // Set state and flag immediately
-        currentState = State.USER_TAKEOVER;
-        userHasTakenOver = true;
-
-        releaseInternal(true); // true indicates due to user takeover
-
-        if (listener != null) {
-            listener.onUserTookOver(this);
-        }
+        Log.d(TAG, "User is taking over the call. Current state: " + getCurrentState());
+        stateMachine.fire(Event.USER_TAKEOVER);
     }
     
     /**
      * Start greeting the caller
      */
     public void startGreeting() {
-        boolean useCustomFile = preferencesManager.shouldUseCustomGreetingFile();
-        String customFilePath = null;
-        File greetingFile = null;
-
-        if (useCustomFile) {
-            customFilePath = preferencesManager.getCustomGreetingFilePath();
-            if (customFilePath != null && !customFilePath.isEmpty()) {
-                greetingFile = new File(customFilePath);
-                if (!greetingFile.exists() || !greetingFile.canRead()) {
-                    try { Log.w(TAG, "Custom greeting file not found or not readable: " + customFilePath + ". Falling back to TTS."); } catch (Throwable t) {}
-                    greetingFile = null; // Invalidate if not usable
-                }
-            } else {
-                 try { Log.w(TAG, "'Use custom file' is true, but no path is stored. Falling back to TTS."); } catch (Throwable t) {}
-            }
-        }
+        stateMachine.fire(Event.GREETING_REQUESTED);
+    }
+
+    /**
+     * Entry action of GREETING: play the greeting rendered ahead of the call, or fall back to TTS.
+     */
+    private void playGreeting() {
+        ConfigSnapshot config = preferencesManager.getSnapshot();
+        // Checked and published by GreetingAssets, so there is nothing to verify on disk here
+        File greetingFile = greetingAssets != null ? greetingAssets.getReady(config) : null;
+
+        // The rendered file is synthesized from the same text
+        String fullGreetingText = config.getGreetingSpeech();
+        publishTranscript(fullGreetingText, TranscriptionData.SpeakerType.ASSISTANT);
 
         if (greetingFile != null) {
-            try { Log.i(TAG, "Playing custom greeting file: " + greetingFile.getAbsolutePath()); } catch (Throwable t) {}
+            try { Log.i(TAG, "Playing rendered greeting file: " + greetingFile.getAbsolutePath()); } catch (Throwable t) {}
             if (audioHandler != null) {
                 audioHandler.playAudioFile(Uri.fromFile(greetingFile));
             }
         } else {
-            try { Log.i(TAG, "Falling back to TTS for greeting."); } catch (Throwable t) {}
-            String userName = preferencesManager.getUserName();
-            String baseGreetingText = preferencesManager.getGreetingText();
-            String fullGreetingText;
-
-            if (baseGreetingText != null && !baseGreetingText.trim().isEmpty()) {
-                // User has provided a custom greeting text
-                if (!baseGreetingText.toLowerCase(Locale.ROOT).contains(POLISH_RECORDING_KEYPHRASE)) {
-                    fullGreetingText = baseGreetingText + POLISH_RECORDING_NOTICE;
-                } else {
-                    fullGreetingText = baseGreetingText;
-                }
-            } else {
-                // No custom greeting text, use the default Polish greeting from strings.xml
-                // This default greeting already contains the recording notice.
-                String namePart = (userName != null && !userName.isEmpty()) ? userName : ""; // Use empty string for formatting if name is null/empty
-                fullGreetingText = String.format(context.getString(com.example.vac.R.string.default_greeting), namePart);
-            }
-            
+            try { Log.i(TAG, "Greeting not rendered yet, falling back to TTS."); } catch (Throwable t) {}
             if (audioHandler != null) {
                 audioHandler.playGreeting(fullGreetingText);
             }
         }
-        currentState = State.GREETING;
     }
     
     /**
-     * Start listening for the caller's response
+     * Entry action of LISTENING: start listening for the caller's response.
+     * The state machine arms the STT silence timeout on entry.
      */
     private void startListeningForCaller() {
-        if (userHasTakenOver || speechRecognitionHandler == null) {
-            Log.d(TAG, "Cannot start listening: user takeover or null speech handler. UserTakeover: " + userHasTakenOver);
-            return;
-        }
-        if (currentState == State.LISTENING && speechRecognitionHandler.isListening()) {
-            Log.d(TAG, "Already listening, not starting again.");
+        SpeechRecognitionHandler recognizer = speechRecognitionHandler;
+        if (recognizer == null) {
+            Log.d(TAG, "Cannot start listening: null speech handler.");
             return;
         }
 
-        Log.d(TAG, "Transitioning to LISTENING state and starting STT.");
-        currentState = State.LISTENING;
+        Log.d(TAG, "Entered LISTENING state, starting STT with silence timeout (" + STT_SILENCE_TIMEOUT_MS + "ms).");
         if (notificationHandler != null && context != null) {
             notificationHandler.updateNotificationMessage(context.getString(R.string.notification_message_listening));
         }
-        speechRecognitionHandler.startListening("pl-PL"); // Assuming Polish for now
-
-        // Restart STT silence timeout
-        if (sttTimeoutHandler != null && sttTimeoutRunnable != null) {
-            Log.d(TAG, "Starting STT silence timeout (" + STT_SILENCE_TIMEOUT_MS + "ms).");
-            sttTimeoutHandler.postDelayed(sttTimeoutRunnable, STT_SILENCE_TIMEOUT_MS);
-        }
+        // SpeechRecognizer must be driven from the main thread
+        runOnMainThread(() -> recognizer.startListening("pl-PL")); // Assuming Polish for now
     }
     
     /**
      * Play the follow-up response after caller speaks
      */
     private void playFollowUpResponse() {
-        currentState = State.RESPONDING;
-        
-        // Play follow-up response
-        audioHandler.playFollowUpResponse();
+        publishTranscript(context.getString(R.string.follow_up_message_tts), TranscriptionData.SpeakerType.ASSISTANT);
+        if (audioHandler != null) {
+            audioHandler.playFollowUpResponse();
+        }
+    }
+
+    /**
+     * Transition action for SPEECH_RESULT: publish the transcript and speak the assistant response.
+     */
+    private void respondToCaller(String transcribedText) {
+        this.lastTranscribedText = transcribedText; // Store the latest text
+
+        // Update notification with transcription
+        runOnMainThread(() -> {
+            if (listener != null) listener.onTranscriptionUpdate(transcribedText);
+        });
+
+        Log.d(TAG, "Transitioned to RESPONDING state.");
+        if (notificationHandler != null && context != null) { // Ensure context and handler are available
+            notificationHandler.updateNotificationMessage(context.getString(R.string.notification_responding));
+        }
+
+        publishTranscript(transcribedText, TranscriptionData.SpeakerType.CALLER);
+        IntentClassifier.Intent intent = classifyCaller(transcribedText);
+        if (transcribedText != null && !transcribedText.trim().isEmpty()) {
+            callerSpoke = true;
+        }
+        if (intent != IntentClassifier.Intent.OTHER || detectedIntent == null) {
+            detectedIntent = intent; // A specific intent is not overridden by a later vague answer
+        }
+        String responseText = context.getString(intent.responseTemplate);
+        publishTranscript(responseText, TranscriptionData.SpeakerType.ASSISTANT);
+        File prerendered = responseSpeculator.claim(intent);
+        if (audioHandler != null && prerendered != null) {
+            tracer.begin(CallTracer.Span.RESPONSE_START_SPECULATED);
+            audioHandler.playAudioFile(Uri.fromFile(prerendered));
+        } else if (audioHandler != null) {
+            tracer.begin(CallTracer.Span.RESPONSE_START_SYNTHESIZED);
+            audioHandler.speak(responseText, "UTTERANCE_ID_ASSISTANT_RESPONSE",
+                    Locale.getDefault().toLanguageTag());
+        } else {
+            Log.e(TAG, "AudioHandler is null, cannot speak response.");
+        }
     }
     
     /**
@@ -273,57 +386,70 @@ public class CallSessionManager implements
      * Records the entire call from start to finish
      */
     /* package */ void startRecordingMessage() {
-        currentState = State.RECORDING_MESSAGE;
-        
-        // Generate a filename for the recording
-        String fileName = "message_" + System.currentTimeMillis() + ".3gp";
-        
-        // Start recording
-        messageRecorderHandler.startRecording(fileName);
+        tracer.begin(CallTracer.Span.RECORDING_START);
+        stateMachine.execute(() -> {
+            if (messageRecorderHandler == null) {
+                Log.w(TAG, "MessageRecorderHandler already released, not starting recording.");
+                return;
+            }
+            // Generate a filename for the recording
+            String fileName = "message_" + System.currentTimeMillis() + recorderMode.fileExtension;
+            // Live transcript snippets are filed under the recording they belong to
+            callId = Message.callIdOf(fileName);
+            transcriptBus.beginCall(callId);
+
+            // Start recording
+            messageRecorderHandler.startRecording(fileName);
+        });
     }
     
+    /**
+     * Hand a transcript line to the live transcript and storage, once the recording has a call id.
+     */
+    private void publishTranscript(String text, TranscriptionData.SpeakerType speakerType) {
+        String id = callId;
+        if (id != null && text != null && !text.trim().isEmpty()) {
+            transcriptBus.publish(id, text, speakerType);
+        }
+    }
+
+    /**
+     * Tell the recorder when the assistant is speaking, so compaction can cut it out.
+     */
+    private void markAssistantPlayback(boolean playing) {
+        stateMachine.execute(() -> {
+            if (messageRecorderHandler == null) {
+                return;
+            }
+            if (playing) {
+                messageRecorderHandler.onAssistantPlaybackStarted();
+            } else {
+                messageRecorderHandler.onAssistantPlaybackStopped();
+            }
+        });
+    }
+
     // AudioHandlerListener implementation
     
     @Override
     public void onPlaybackStarted() {
         try { Log.d(TAG, "Audio playback started (via AudioHandler)"); } catch (Throwable t) {}
-        // Potentially update state or notification if needed
+        markAssistantPlayback(true);
+        stateMachine.fire(Event.PLAYBACK_STARTED);
     }
     
     @Override
     public void onPlaybackCompleted() {
-        Log.d(TAG, "onPlaybackCompleted. Current state: " + currentState);
-        if (userHasTakenOver) {
-            Log.d(TAG, "User has taken over, not processing playback completion further.");
-            return;
-        }
-
-        switch (currentState) {
-            case GREETING:
-                Log.d(TAG, "Greeting playback completed. Starting STT.");
-                startListeningForCaller(); // Consolidate notification update into startListeningForCaller
-                break;
-            case RESPONDING: // Added case for RESPONDING
-                Log.d(TAG, "Assistant response playback completed. Transitioning back to LISTENING.");
-                startListeningForCaller();
-                break;
-            case RECORDING_MESSAGE:
-                // This case handles completion of "Please leave a message..." prompt
-                Log.d(TAG, "Playback of 'leave message' prompt completed. Already in RECORDING_MESSAGE state.");
-                break;
-            default:
-                Log.w(TAG, "Playback completed in unexpected state: " + currentState);
-                break;
-        }
+        Log.d(TAG, "onPlaybackCompleted. Current state: " + getCurrentState());
+        markAssistantPlayback(false);
+        stateMachine.fire(Event.PLAYBACK_COMPLETED);
     }
     
     @Override
     public void onPlaybackError(String errorMessage) {
         try { Log.e(TAG, "Audio playback error (via AudioHandler): " + errorMessage); } catch (Throwable t) {}
-        if (listener != null) {
-            listener.onSessionError(this, "Audio playback error: " + errorMessage);
-        }
-        stopScreening(); // Stop the session on playback error
+        markAssistantPlayback(false);
+        stateMachine.fire(Event.PLAYBACK_ERROR, errorMessage); // Stop the session on playback error
     }
     
     // SpeechRecognitionCallbacks implementation
@@ -331,6 +457,7 @@ public class CallSessionManager implements
     @Override
     public void onReadyForSpeech() {
         try { Log.i(TAG, "Speech Recognizer ready."); } catch (Throwable t) {}
+        tracer.end(CallTracer.Span.PROMPT_TO_LISTENING);
         // Optionally update notification
         notificationHandler.updateNotification(
             context.getString(R.string.notification_title_screening),
@@ -341,101 +468,27 @@ public class CallSessionManager implements
     
     @Override
     public void onSpeechResult(String transcribedText) {
-        try { Log.i(TAG, "Speech recognized: " + transcribedText + " Current state: " + currentState); } catch (Throwable t) {}
-
-        if (userHasTakenOver) {
-            Log.d(TAG, "User has taken over, ignoring speech result.");
-            return;
-        }
-
-        // IMPORTANT: Cancel any pending silence timeout because we got a result.
-        if (sttTimeoutHandler != null && sttTimeoutRunnable != null) {
-            sttTimeoutHandler.removeCallbacks(sttTimeoutRunnable);
-            Log.d(TAG, "Cancelled STT silence timeout due to new speech result.");
-        }
-        
-        this.lastTranscribedText = transcribedText; // Store the latest text
-
-        // Update notification with transcription
-        if (listener != null) {
-            listener.onTranscriptionUpdate(transcribedText);
-        }
-
-        // If we were not in LISTENING state, it's unexpected, but let's try to recover if speech recognition was somehow active.
-        if (currentState != State.LISTENING) {
-            Log.w(TAG, "Speech result received but not in LISTENING state (current: " + currentState + "). Will attempt to process as if LISTENING.");
-            // Not ideal, but might prevent stalling if SpeechRecognizer calls this unexpectedly.
-        }
-        
-        currentState = State.RESPONDING;
-        Log.d(TAG, "Transitioned to RESPONDING state.");
-        if (notificationHandler != null && context != null) { // Ensure context and handler are available
-            notificationHandler.updateNotificationMessage(context.getString(R.string.notification_responding));
-        }
-
-
-        String llmResponse = generateLlmPlaceholderResponse(transcribedText);
-        if (audioHandler != null) {
-            // Assuming UTTERANCE_ID_ASSISTANT_RESPONSE will be added to AudioHandler
-            // For now, let's use a new distinct ID string or map it to an existing one like follow_up if appropriate.
-            // We'll add AudioHandler.UTTERANCE_ID_ASSISTANT_RESPONSE later.
-            audioHandler.speak(llmResponse, "UTTERANCE_ID_ASSISTANT_RESPONSE", Locale.getDefault().toLanguageTag());
-        } else {
-            Log.e(TAG, "AudioHandler is null, cannot speak LLM response.");
-            // Consider error handling or fallback: maybe go back to listening or play follow-up?
-            // For now, it will stall here if audioHandler is null.
-        }
+        try { Log.i(TAG, "Speech recognized: " + transcribedText + " Current state: " + getCurrentState()); } catch (Throwable t) {}
+        stateMachine.fire(Event.SPEECH_RESULT, transcribedText);
+    }
+    
+    @Override
+    public void onPartialSpeechResult(String partialText) {
+        stateMachine.fire(Event.PARTIAL_SPEECH_RESULT, partialText);
     }
     
     @Override
     public void onEndOfSpeech() {
-        try { Log.d(TAG, "End of speech detected by recognizer. Current state: " + currentState); } catch (Throwable t) {}
-        // If in LISTENING state, and no result yet, might mean silence or non-speech.
-        // Depending on strategy, could re-prompt, wait, or move to voicemail.
-        // For MVP, if we get here after listening, we assume we should play follow-up.
-        if (currentState == State.LISTENING && !userHasTakenOver) {
-            // Don't play follow-up immediately. Start the timer.
-            // The runnable will play follow-up if no new results come in.
-            Log.i(TAG, "End of speech in LISTENING state. Starting silence timer (" + STT_SILENCE_TIMEOUT_MS + "ms) to play follow-up.");
-            if (sttTimeoutHandler != null && sttTimeoutRunnable != null) {
-                 // Clear previous one just in case (e.g. multiple onEndOfSpeech calls rapidly, though unlikely)
-                sttTimeoutHandler.removeCallbacks(sttTimeoutRunnable);
-                sttTimeoutHandler.postDelayed(sttTimeoutRunnable, STT_SILENCE_TIMEOUT_MS);
-            } else {
-                Log.e(TAG, "sttTimeoutHandler or sttTimeoutRunnable is null, cannot start timeout.");
-                // Fallback or error handling if handler/runnable isn't initialized?
-                // For now, this case should ideally not happen with proper init.
-                // If it does, we might play follow-up immediately as a fallback.
-                playFollowUpResponse();
-            }
-        } else {
-            Log.d(TAG, "End of speech detected, but not in LISTENING state or user has taken over. State: " + currentState + ", UserTakenOver: " + userHasTakenOver);
-        }
+        try { Log.d(TAG, "End of speech detected by recognizer. Current state: " + getCurrentState()); } catch (Throwable t) {}
+        // In LISTENING this restarts the silence timer; the follow-up plays if no result arrives.
+        stateMachine.fire(Event.END_OF_SPEECH);
     }
     
     @Override
     public void onSpeechError(String error, int errorCode) {
-        Log.e(TAG, "onSpeechError: " + error + ", code: " + errorCode + " Current state: " + currentState);
-        if (sttTimeoutHandler != null && sttTimeoutRunnable != null) {
-            sttTimeoutHandler.removeCallbacks(sttTimeoutRunnable); // Stop silence timeout on error
-        }
-
-        if (userHasTakenOver) {
-            Log.d(TAG, "User has taken over, not processing speech error.");
-            return;
-        }
-
-        // Only play follow-up if we were actively listening or just starting.
-        if (currentState == State.LISTENING || currentState == State.INITIALIZING) { // INITIALIZING was a previous state before GREETING
-            Log.i(TAG, "Playing follow-up response due to STT error in LISTENING/INITIALIZING state.");
-            // playFollowUpResponse changes state to RESPONDING internally
-            // Then onPlaybackCompleted for the follow-up will transition to LISTENING.
-            playFollowUpResponse(); 
-        } else {
-            Log.w(TAG, "Speech error received but not in a state to play follow-up. Current state: " + currentState + ". No action taken beyond logging.");
-            // If in RESPONDING, and STT somehow gave an error, this might be problematic.
-            // For now, we don't transition state here unless we were LISTENING.
-        }
+        Log.e(TAG, "onSpeechError: " + error + ", code: " + errorCode + " Current state: " + getCurrentState());
+        // Only plays follow-up if we were actively listening or just starting.
+        stateMachine.fire(Event.SPEECH_ERROR, error);
     }
     
     // MessageRecorderListener implementation
@@ -443,7 +496,7 @@ public class CallSessionManager implements
     @Override
     public void onRecordingStarted() {
         try { Log.i(TAG, "Message recording started."); } catch (Throwable t) {}
-        currentState = State.RECORDING_MESSAGE;
+        tracer.end(CallTracer.Span.RECORDING_START);
         notificationHandler.updateNotification(
             context.getString(R.string.notification_title_screening),
             "Recording message...", 
@@ -454,34 +507,13 @@ public class CallSessionManager implements
     @Override
     public void onRecordingStopped(String filePath, boolean successfullyCompleted) {
         try { Log.i(TAG, "Message recording stopped. File: " + filePath + ", Success: " + successfullyCompleted); } catch (Throwable t) {}
-        if (successfullyCompleted && filePath != null) {
-            notificationHandler.updateNotification(
-                context.getString(R.string.notification_title_screening),
-                "Message recorded: " + new File(filePath).getName(), 
-                null
-            );
-            // TODO: Handle the recorded message (e.g., save path to DB, notify user)
-        } else {
-            notificationHandler.updateNotification(
-                context.getString(R.string.notification_title_screening),
-                "Recording failed or stopped.", 
-                null
-            );
-        }
-        // After recording, the session typically ends.
-        stopScreening(); 
+        stateMachine.fire(Event.RECORDING_STOPPED, successfullyCompleted ? filePath : null);
     }
     
     @Override
     public void onRecordingError(String errorMessage) {
         Log.e(TAG, "MessageRecorderListener: onRecordingError: " + errorMessage);
-        // Potentially stop other operations and inform the user or end the call.
-        // For now, notify the main listener about the error.
-        releaseInternal(false); // Or a specific error state cleanup
-        currentState = State.ENDED; // Or a new ERROR state
-        if (listener != null) {
-            listener.onSessionError(this, "Recording error: " + errorMessage);
-        }
+        stateMachine.fire(Event.RECORDING_ERROR, errorMessage);
     }
     
     @Override
@@ -493,7 +525,21 @@ public class CallSessionManager implements
     
     // Getter for testing purposes
     public State getCurrentState() {
-        return currentState;
+        return stateMachine.getState();
+    }
+
+    /**
+     * Intent detected from the caller's answers, or null if the caller never answered.
+     */
+    public IntentClassifier.Intent getDetectedIntent() {
+        return detectedIntent;
+    }
+
+    /**
+     * Whether the caller said anything to the assistant during this call.
+     */
+    public boolean hasCallerSpoken() {
+        return callerSpoke;
     }
     
     /**
@@ -513,33 +559,18 @@ public class CallSessionManager implements
      * This method will also trigger the cleanup of the current session.
      */
     public void hangUpCall() {
-        Log.i(TAG, "hangUpCall invoked. Current state: " + currentState);
-        if (currentState == State.ENDED || userHasTakenOver) {
-            Log.d(TAG, "Call already ended or user took over. Ignoring hangUpCall.");
-            return;
-        }
-
-        // Inform the listener (CallScreeningServiceImpl) that a hang-up is requested.
-        // The listener is then responsible for interacting with the Telecom framework
-        // to actually reject or disconnect the call.
-        if (listener != null) {
-            // We don't have a specific callback for hangup, so we use onSessionCompleted
-            // or onSessionError. For now, let's consider it a form of session completion
-            // initiated by us.
-            // CallScreeningServiceImpl will need to see userHasTakenOver = false and then issue a disallow/reject.
-            // Alternatively, add a specific listener.onHangUpRequested(this) if more direct control is needed.
-             Log.d(TAG, "Requesting hangup; will call stopScreening which notifies onSessionCompleted.");
-        }
-
+        Log.i(TAG, "hangUpCall invoked. Current state: " + getCurrentState());
         // The actual call to Telecom to disallow/reject should happen in CallScreeningServiceImpl
         // after it receives onSessionCompleted (and checks userHasTakenOver is false).
-        // For now, CallSessionManager just cleans itself up.
-        stopScreening(); // This will call releaseInternal and notify onSessionCompleted.
+        // Ignored once the call ended or the user took over.
+        stateMachine.fire(Event.HANG_UP);
     }
 
-    // Make this public so CallScreeningServiceImpl can call it if a session needs premature release.
-    public void releaseInternal(boolean dueToUserTakeover) {
-        try { Log.d(TAG, "Releasing internal components. Due to user takeover: " + dueToUserTakeover + ". Current state: " + currentState); } catch (Throwable t) {}
+    /**
+     * Release the handlers. Only run by transition actions, on the session thread.
+     */
+    private void releaseInternal(boolean dueToUserTakeover) {
+        try { Log.d(TAG, "Releasing internal components. Due to user takeover: " + dueToUserTakeover + ". Current state: " + getCurrentState()); } catch (Throwable t) {}
 
         // Stop any ongoing TTS
         if (audioHandler != null) {
@@ -547,11 +578,9 @@ public class CallSessionManager implements
             audioHandler.stopSpeaking();
         }
 
-        // Stop STT timeout handler
-        if (sttTimeoutHandler != null && sttTimeoutRunnable != null) {
-            Log.d(TAG, "Removing STT timeout callbacks.");
-            sttTimeoutHandler.removeCallbacks(sttTimeoutRunnable);
-        }
+        // Stop STT timeout
+        stateMachine.cancelTimers();
+        responseSpeculator.release();
 
         // Stop and release AudioHandler
         if (audioHandler != null) {
@@ -562,8 +591,9 @@ public class CallSessionManager implements
 
         // Stop and release SpeechRecognitionHandler
         if (speechRecognitionHandler != null) {
-            speechRecognitionHandler.release();
+            SpeechRecognitionHandler recognizer = speechRecognitionHandler;
             speechRecognitionHandler = null;
+            runOnMainThread(recognizer::release);
         }
 
         // For MessageRecorderHandler:
@@ -589,36 +619,117 @@ public class CallSessionManager implements
         // The manager instance itself should be dereferenced by its owner when no longer needed.
     }
 
-    // Method to generate placeholder LLM response
-    private String generateLlmPlaceholderResponse(String lastTranscribedText) {
-        Log.d(TAG, "LLM Placeholder: Generating response for input: '" + lastTranscribedText + "'");
-        // For MVP, return a hardcoded response.
-        // In the future, this would involve actual LLM interaction.
-        // Make sure to add R.string.llm_placeholder_response to strings.xml
-        // And R.string.notification_responding for the notification
-        return context.getString(R.string.llm_placeholder_response); 
+    /**
+     * Transition action for STOP and HANG_UP: release everything and tell the service.
+     */
+    private void completeSession() {
+        releaseInternal(false); // false indicates not due to user takeover
+        runOnMainThread(() -> {
+            if (listener != null) listener.onSessionCompleted(this);
+        });
     }
 
-    protected String getGreetingText() {
-        String userName = preferencesManager.getUserName();
-        String baseGreeting = preferencesManager.getGreetingText();
-        String fullGreeting = baseGreeting;
-        if (userName != null && !userName.isEmpty()) {
-            fullGreeting = context.getString(R.string.greeting_format_with_name, baseGreeting, userName);
+    private void reportSessionError(String errorMessage) {
+        runOnMainThread(() -> {
+            if (listener != null) listener.onSessionError(this, errorMessage);
+        });
+    }
+
+    private void showRecordingResult(String filePath) {
+        if (filePath != null) {
+            notificationHandler.updateNotification(
+                context.getString(R.string.notification_title_screening),
+                "Message recorded: " + new File(filePath).getName(), 
+                null
+            );
+        } else {
+            notificationHandler.updateNotification(
+                context.getString(R.string.notification_title_screening),
+                "Recording failed or stopped.", 
+                null
+            );
+        }
+    }
+
+    /**
+     * Turns state machine transitions into latency span marks, stamped with the time the
+     * triggering event was fired rather than when the session thread got to it.
+     */
+    private void traceTransition(CallStateMachine.TransitionRecord record) {
+        long at = record.firedAtNanos;
+        switch (record.event) {
+            case PLAYBACK_STARTED:
+                if (record.from == State.GREETING) {
+                    tracer.end(CallTracer.Span.TIME_TO_GREETING, at);
+                    tracer.begin(CallTracer.Span.GREETING_DURATION, at);
+                } else if (record.from == State.RESPONDING) {
+                    tracer.end(CallTracer.Span.SPEECH_TO_RESPONSE, at);
+                    tracer.end(CallTracer.Span.RESPONSE_START_SPECULATED, at);
+                    tracer.end(CallTracer.Span.RESPONSE_START_SYNTHESIZED, at);
+                }
+                break;
+            case PLAYBACK_COMPLETED:
+                if (record.from == State.GREETING) {
+                    tracer.end(CallTracer.Span.GREETING_DURATION, at);
+                }
+                if (record.to == State.LISTENING) {
+                    tracer.begin(CallTracer.Span.PROMPT_TO_LISTENING, at);
+                }
+                break;
+            case END_OF_SPEECH:
+                tracer.begin(CallTracer.Span.SPEECH_TO_RESPONSE, at);
+                break;
+            case SPEECH_RESULT:
+            case SILENCE_TIMEOUT:
+            case SPEECH_ERROR:
+                if (record.to == State.RESPONDING) {
+                    tracer.begin(CallTracer.Span.SPEECH_TO_RESPONSE, at);
+                }
+                break;
+            default:
+                break;
         }
-        
-        // Append recording notice only if not already present (case-insensitive)
-        // And only if actual recording is planned (which it is by default after greeting)
-        String lowerCaseGreeting = fullGreeting.toLowerCase(Locale.ROOT);
-        String lowerCaseNotice = POLISH_RECORDING_NOTICE.toLowerCase(Locale.ROOT); // Assuming notice is in Polish
-        String keyphraseNotice = POLISH_RECORDING_KEYPHRASE.toLowerCase(Locale.ROOT);
 
+        if (record.to == State.ENDED && record.from != State.ENDED) {
+            Log.i(TAG, "Call latency: " + tracer.summary());
+            if (latencyStatsManager != null) {
+                latencyStatsManager.recordCall(tracer);
+            }
+        }
+    }
 
-        if (!lowerCaseGreeting.contains(lowerCaseNotice) && !lowerCaseGreeting.contains(keyphraseNotice)) {
-            fullGreeting += POLISH_RECORDING_NOTICE;
+    private void quitSessionThread() {
+        if (sessionThread != null) {
+            sessionThread.quitSafely(); // Lets already-queued events drain; they are ignored in ENDED
         }
-        
-        Log.d(TAG, "Final greeting text: " + fullGreeting);
-        return fullGreeting;
+    }
+
+    /**
+     * Listener callbacks and SpeechRecognizer calls belong on the main thread.
+     */
+    private void runOnMainThread(Runnable work) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            work.run();
+        } else {
+            mainHandler.post(work);
+        }
+    }
+
+    /**
+     * Classify what the caller said on-device; the intent selects the response template.
+     */
+    private IntentClassifier.Intent classifyCaller(String lastTranscribedText) {
+        long startNanos = System.nanoTime();
+        IntentClassifier.Intent intent = intentClassifier.classify(lastTranscribedText);
+        Log.d(TAG, "Intent " + intent + " for input: '" + lastTranscribedText + "' ("
+                + (System.nanoTime() - startNanos) / 1000 + "us)");
+        return intent;
+    }
+
+    /**
+     * The greeting as it is spoken, worked out when the settings last changed.
+     */
+    protected String getGreetingText() {
+        return preferencesManager.getSnapshot().getGreetingSpeech();
     }
 } 
\ No newline at end of file
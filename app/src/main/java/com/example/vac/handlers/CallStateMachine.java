@@ -0,0 +1,408 @@
+package com.example.vac.handlers;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.vac.handlers.CallSessionManager.State;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table-driven state machine for a screened call session.
+ * Transitions, guards, entry/exit actions and timers are declared up front through
+ * {@link Builder}. Every event is dispatched on a single {@link Looper}, one at a time
+ * (run-to-completion): events fired from inside an action are queued behind the current one,
+ * events fired from other threads are posted to the machine's looper.
+ */
+public class CallStateMachine {
+    private static final String TAG = "CallStateMachine";
+    private static final int MAX_HISTORY = 64;
+
+    /**
+     * Everything that can happen to a call session.
+     */
+    public enum Event {
+        GREETING_REQUESTED,
+        PLAYBACK_STARTED,
+        PLAYBACK_COMPLETED,
+        PLAYBACK_ERROR,
+        SPEECH_RESULT,
+        PARTIAL_SPEECH_RESULT,
+        END_OF_SPEECH,
+        SPEECH_ERROR,
+        SILENCE_TIMEOUT,
+        RECORDING_STOPPED,
+        RECORDING_ERROR,
+        USER_TAKEOVER,
+        HANG_UP,
+        STOP
+    }
+
+    /**
+     * Side effect executed on the machine's looper.
+     */
+    public interface Action {
+        void execute(@Nullable Object payload);
+    }
+
+    /**
+     * Condition evaluated before a transition is taken.
+     */
+    public interface Guard {
+        boolean allows(@Nullable Object payload);
+    }
+
+    /**
+     * Observer notified after each handled event, on the machine's looper.
+     */
+    public interface TransitionListener {
+        void onTransition(@NonNull TransitionRecord record);
+    }
+
+    /**
+     * Timestamped record of a handled event. Internal transitions have {@code from == to}.
+     */
+    public static final class TransitionRecord {
+        public final State from;
+        public final State to;
+        public final Event event;
+        /** {@link SystemClock#elapsedRealtimeNanos()} when the event was fired. */
+        public final long firedAtNanos;
+        /** {@link SystemClock#elapsedRealtimeNanos()} when the transition completed. */
+        public final long completedAtNanos;
+
+        TransitionRecord(State from, State to, Event event, long firedAtNanos, long completedAtNanos) {
+            this.from = from;
+            this.to = to;
+            this.event = event;
+            this.firedAtNanos = firedAtNanos;
+            this.completedAtNanos = completedAtNanos;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return from + " --" + event + "--> " + to
+                    + " (queued " + (completedAtNanos - firedAtNanos) / 1000 + "us)";
+        }
+    }
+
+    private static final class Transition {
+        final Event event;
+        final State to; // null for internal transitions
+        final Guard guard;
+        final Action action;
+        final boolean restartTimer;
+
+        Transition(Event event, State to, Guard guard, Action action, boolean restartTimer) {
+            this.event = event;
+            this.to = to;
+            this.guard = guard;
+            this.action = action;
+            this.restartTimer = restartTimer;
+        }
+    }
+
+    private static final class TimerSpec {
+        final Event event;
+        final long delayMs;
+
+        TimerSpec(Event event, long delayMs) {
+            this.event = event;
+            this.delayMs = delayMs;
+        }
+    }
+
+    private static final class PendingEvent {
+        final Event event;
+        final Object payload;
+        final long firedAtNanos;
+
+        PendingEvent(Event event, Object payload, long firedAtNanos) {
+            this.event = event;
+            this.payload = payload;
+            this.firedAtNanos = firedAtNanos;
+        }
+    }
+
+    private final Handler handler;
+    private final Map<State, Map<Event, List<Transition>>> table;
+    private final Map<State, Action> entryActions;
+    private final Map<State, Action> exitActions;
+    private final Map<State, TimerSpec> timers;
+    private final TransitionListener transitionListener;
+
+    // Only touched on the machine's looper
+    private final ArrayDeque<PendingEvent> queue = new ArrayDeque<>();
+    private final ArrayDeque<TransitionRecord> history = new ArrayDeque<>();
+    private boolean dispatching = false;
+    private Runnable armedTimer;
+
+    private volatile State currentState;
+
+    private CallStateMachine(Builder builder, Looper looper) {
+        this.handler = new Handler(looper);
+        this.table = builder.table;
+        this.entryActions = builder.entryActions;
+        this.exitActions = builder.exitActions;
+        this.timers = builder.timers;
+        this.transitionListener = builder.transitionListener;
+        this.currentState = builder.initialState;
+    }
+
+    /**
+     * Get the current state. Safe to call from any thread.
+     */
+    public State getState() {
+        return currentState;
+    }
+
+    public Looper getLooper() {
+        return handler.getLooper();
+    }
+
+    /**
+     * Fire an event without payload.
+     */
+    public void fire(Event event) {
+        fire(event, null);
+    }
+
+    /**
+     * Fire an event. Dispatched inline when called on the machine's looper,
+     * otherwise posted to it.
+     */
+    public void fire(Event event, @Nullable Object payload) {
+        PendingEvent pending = new PendingEvent(event, payload, SystemClock.elapsedRealtimeNanos());
+        if (Looper.myLooper() == handler.getLooper()) {
+            enqueueAndDrain(pending);
+        } else if (!handler.post(() -> enqueueAndDrain(pending))) {
+            Log.w(TAG, "Looper has quit, dropping event " + event);
+        }
+    }
+
+    /**
+     * Run arbitrary work on the machine's looper, inline if already on it.
+     *
+     * @return false if the looper has quit and the work was dropped
+     */
+    public boolean execute(Runnable work) {
+        if (Looper.myLooper() == handler.getLooper()) {
+            work.run();
+        } else if (!handler.post(work)) {
+            Log.w(TAG, "Looper has quit, dropping work item.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Cancel the armed timer, if any. Pending events are still delivered.
+     */
+    public void cancelTimers() {
+        execute(this::cancelTimer);
+    }
+
+    /**
+     * Get a snapshot of the most recent transitions, oldest first.
+     * Must be called on the machine's looper.
+     */
+    public List<TransitionRecord> getTransitionHistory() {
+        return Collections.unmodifiableList(new ArrayList<>(history));
+    }
+
+    private void enqueueAndDrain(PendingEvent pending) {
+        queue.add(pending);
+        if (dispatching) {
+            return; // The outer drain loop picks it up after the current event completes
+        }
+        dispatching = true;
+        try {
+            PendingEvent next;
+            while ((next = queue.poll()) != null) {
+                dispatch(next);
+            }
+        } finally {
+            dispatching = false;
+        }
+    }
+
+    private void dispatch(PendingEvent pending) {
+        State from = currentState;
+        Transition transition = findTransition(from, pending.event, pending.payload);
+        if (transition == null) {
+            Log.d(TAG, "Event " + pending.event + " ignored in state " + from);
+            return;
+        }
+
+        if (transition.to == null) {
+            if (transition.restartTimer) {
+                armTimer(from);
+            }
+            run(transition.action, pending.payload);
+        } else {
+            cancelTimer();
+            run(exitActions.get(from), pending.payload);
+            currentState = transition.to;
+            run(transition.action, pending.payload);
+            run(entryActions.get(transition.to), pending.payload);
+            armTimer(transition.to);
+        }
+
+        TransitionRecord record = new TransitionRecord(from, currentState, pending.event,
+                pending.firedAtNanos, SystemClock.elapsedRealtimeNanos());
+        if (history.size() == MAX_HISTORY) {
+            history.removeFirst();
+        }
+        history.addLast(record);
+        Log.d(TAG, record.toString());
+        if (transitionListener != null) {
+            transitionListener.onTransition(record);
+        }
+    }
+
+    @Nullable
+    private Transition findTransition(State state, Event event, Object payload) {
+        Map<Event, List<Transition>> row = table.get(state);
+        List<Transition> candidates = row != null ? row.get(event) : null;
+        if (candidates == null) {
+            return null;
+        }
+        for (Transition candidate : candidates) {
+            if (candidate.guard == null || candidate.guard.allows(payload)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static void run(@Nullable Action action, Object payload) {
+        if (action != null) {
+            action.execute(payload);
+        }
+    }
+
+    private void armTimer(State state) {
+        cancelTimer();
+        TimerSpec spec = timers.get(state);
+        if (spec == null) {
+            return;
+        }
+        Runnable timer = new Runnable() {
+            @Override
+            public void run() {
+                if (armedTimer == this) {
+                    armedTimer = null;
+                    enqueueAndDrain(new PendingEvent(spec.event, null, SystemClock.elapsedRealtimeNanos()));
+                }
+            }
+        };
+        armedTimer = timer;
+        handler.postDelayed(timer, spec.delayMs);
+    }
+
+    private void cancelTimer() {
+        if (armedTimer != null) {
+            handler.removeCallbacks(armedTimer);
+            armedTimer = null;
+        }
+    }
+
+    /**
+     * Declares the transition table. Not thread-safe; build once, then hand off.
+     */
+    public static class Builder {
+        private final State initialState;
+        private final Map<State, Map<Event, List<Transition>>> table = new EnumMap<>(State.class);
+        private final Map<State, Action> entryActions = new EnumMap<>(State.class);
+        private final Map<State, Action> exitActions = new EnumMap<>(State.class);
+        private final Map<State, TimerSpec> timers = new EnumMap<>(State.class);
+        private TransitionListener transitionListener;
+
+        public Builder(State initialState) {
+            this.initialState = initialState;
+        }
+
+        public Builder onEntry(State state, Action action) {
+            entryActions.put(state, action);
+            return this;
+        }
+
+        public Builder onExit(State state, Action action) {
+            exitActions.put(state, action);
+            return this;
+        }
+
+        /**
+         * Arm a one-shot timer on entry to {@code state}; it fires {@code event} after
+         * {@code delayMs} unless the state is left first.
+         */
+        public Builder timer(State state, Event event, long delayMs) {
+            timers.put(state, new TimerSpec(event, delayMs));
+            return this;
+        }
+
+        public Builder transition(State from, Event event, State to) {
+            return transition(EnumSet.of(from), event, to, null, null);
+        }
+
+        public Builder transition(State from, Event event, State to,
+                                  @Nullable Guard guard, @Nullable Action action) {
+            return transition(EnumSet.of(from), event, to, guard, action);
+        }
+
+        /**
+         * Declare a transition. When several transitions match a state and event,
+         * the first one whose guard allows the payload is taken.
+         */
+        public Builder transition(EnumSet<State> from, Event event, State to,
+                                  @Nullable Guard guard, @Nullable Action action) {
+            return add(from, new Transition(event, to, guard, action, false));
+        }
+
+        /**
+         * Declare an internal transition: the action runs without leaving the state,
+         * so no exit/entry actions run. Optionally re-arms the state's timer.
+         */
+        public Builder internal(EnumSet<State> in, Event event, @Nullable Action action, boolean restartTimer) {
+            return add(in, new Transition(event, null, null, action, restartTimer));
+        }
+
+        public Builder transitionListener(@Nullable TransitionListener listener) {
+            this.transitionListener = listener;
+            return this;
+        }
+
+        public CallStateMachine build(Looper looper) {
+            return new CallStateMachine(this, looper);
+        }
+
+        private Builder add(EnumSet<State> from, Transition transition) {
+            for (State state : from) {
+                Map<Event, List<Transition>> row = table.get(state);
+                if (row == null) {
+                    row = new EnumMap<>(Event.class);
+                    table.put(state, row);
+                }
+                List<Transition> candidates = row.get(transition.event);
+                if (candidates == null) {
+                    candidates = new ArrayList<>(1);
+                    row.put(transition.event, candidates);
+                }
+                candidates.add(transition);
+            }
+            return this;
+        }
+    }
+}
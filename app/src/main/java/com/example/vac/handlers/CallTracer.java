@@ -0,0 +1,153 @@
+package com.example.vac.handlers;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records span begin/end marks for a single call with monotonic timestamps.
+ * Marks can be written from any thread (TTS binder, main, session thread) without locking:
+ * each writer claims a slot with an atomic cursor. Marks beyond the capacity are dropped
+ * and counted. Spans are paired once the call is over, see {@link #forEachSpan}.
+ */
+public class CallTracer {
+    public static final int DEFAULT_CAPACITY = 512;
+
+    /**
+     * Latencies measured for every screened call.
+     */
+    public enum Span {
+        /** Session start until the first greeting audio is playing. */
+        TIME_TO_GREETING,
+        /** Greeting audio start until greeting audio completion. */
+        GREETING_DURATION,
+        /** Caller end of speech (or first result/timeout) until the assistant response is playing. */
+        SPEECH_TO_RESPONSE,
+        /** End of an assistant prompt until the recognizer is ready for the caller again. */
+        PROMPT_TO_LISTENING,
+        /** Recording requested until the recorder reports it started. */
+        RECORDING_START,
+        /** Final transcript until a pre-rendered response is playing. */
+        RESPONSE_START_SPECULATED,
+        /** Final transcript until a response synthesized on demand is playing. */
+        RESPONSE_START_SYNTHESIZED,
+        /** Prompt playback requested until audio focus is held, once per prompt. */
+        AUDIO_FOCUS
+    }
+
+    /**
+     * Receives completed spans.
+     */
+    public interface SpanConsumer {
+        void onSpan(@NonNull Span span, long durationNanos);
+    }
+
+    private final int capacity;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicIntegerArray kinds;
+    private final AtomicLongArray timestamps; // 0 means the slot is not published yet
+
+    public CallTracer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CallTracer(int capacity) {
+        this.capacity = capacity;
+        this.kinds = new AtomicIntegerArray(capacity);
+        this.timestamps = new AtomicLongArray(capacity);
+    }
+
+    public void begin(Span span) {
+        begin(span, SystemClock.elapsedRealtimeNanos());
+    }
+
+    public void begin(Span span, long timestampNanos) {
+        mark(span.ordinal() << 1, timestampNanos);
+    }
+
+    public void end(Span span) {
+        end(span, SystemClock.elapsedRealtimeNanos());
+    }
+
+    public void end(Span span, long timestampNanos) {
+        mark((span.ordinal() << 1) | 1, timestampNanos);
+    }
+
+    /**
+     * Number of marks lost because the buffer was full.
+     */
+    public int getDroppedCount() {
+        return Math.max(0, cursor.get() - capacity);
+    }
+
+    /**
+     * Pair begin/end marks into spans, in timestamp order. An end closes the earliest begin
+     * of the same span since the previous end; repeated begins within one turn (e.g. several
+     * end-of-speech events before a response) collapse into the first one. Ends without a
+     * begin are ignored.
+     */
+    public void forEachSpan(SpanConsumer consumer) {
+        int published = Math.min(cursor.get(), capacity);
+        long[] times = new long[published];
+        int[] marks = new int[published];
+        Integer[] order = new Integer[published];
+        int count = 0;
+        for (int i = 0; i < published; i++) {
+            times[i] = timestamps.get(i); // Read the publishing write first
+            marks[i] = kinds.get(i);
+            if (times[i] != 0) {
+                order[count++] = i;
+            }
+        }
+        Arrays.sort(order, 0, count, (a, b) -> Long.compare(times[a], times[b]));
+
+        Span[] spans = Span.values();
+        boolean[] open = new boolean[spans.length];
+        long[] openSince = new long[spans.length];
+        for (int n = 0; n < count; n++) {
+            int slot = order[n];
+            int spanIndex = marks[slot] >> 1;
+            if ((marks[slot] & 1) == 0) {
+                if (!open[spanIndex]) {
+                    open[spanIndex] = true;
+                    openSince[spanIndex] = times[slot];
+                }
+            } else if (open[spanIndex]) {
+                consumer.onSpan(spans[spanIndex], times[slot] - openSince[spanIndex]);
+                open[spanIndex] = false;
+            }
+        }
+    }
+
+    /**
+     * Human-readable list of this call's spans, for logging.
+     */
+    public String summary() {
+        StringBuilder builder = new StringBuilder();
+        forEachSpan((span, durationNanos) -> builder
+                .append(builder.length() == 0 ? "" : ", ")
+                .append(span)
+                .append('=')
+                .append(String.format(Locale.ROOT, "%.1fms", durationNanos / 1_000_000.0)));
+        int dropped = getDroppedCount();
+        if (dropped > 0) {
+            builder.append(" (").append(dropped).append(" marks dropped)");
+        }
+        return builder.toString();
+    }
+
+    private void mark(int kind, long timestampNanos) {
+        int slot = cursor.getAndIncrement();
+        if (slot >= capacity) {
+            return;
+        }
+        kinds.set(slot, kind);
+        timestamps.set(slot, timestampNanos == 0 ? 1 : timestampNanos); // Publish last
+    }
+}
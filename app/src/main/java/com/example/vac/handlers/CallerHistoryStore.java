@@ -0,0 +1,308 @@
+package com.example.vac.handlers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.vac.models.CallerStats;
+import com.example.vac.utils.NumberListIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Per-number history of screened calls, kept in a memory-mapped file of fixed-size records so
+ * the service can look a caller up in O(1) while the platform waits for a screening decision.
+ * <p>
+ * Records are addressed through an open-addressing hash table with linear probing, keyed by
+ * {@link NumberListIndex#keyOf(String)}; key 0 marks an empty slot. Records are never removed.
+ * When the table gets too full it is rehashed into a file of double the size, which replaces the
+ * old one only once written, up to {@link #MAX_CAPACITY} callers, after which new callers are no
+ * longer remembered.
+ * <p>
+ * Layout: a header of {@code magic, version, capacity, size, recordSize} ints followed by
+ * {@code capacity} records of {@code key(long) callCount(int) lastSeen(long) takeOvers(int)
+ * messages(int) intentCounts(int[])}. A header that does not match this build starts a new file.
+ */
+public class CallerHistoryStore {
+    private static final String TAG = "CallerHistoryStore";
+    private static final String HISTORY_FILE = "caller_history.bin";
+
+    private static final int MAGIC = 0x56414348; // "VACH"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 5 * Integer.BYTES;
+    private static final int INTENT_COUNT = IntentClassifier.Intent.values().length;
+
+    private static final int KEY_OFFSET = 0;
+    private static final int CALL_COUNT_OFFSET = 8;
+    private static final int LAST_SEEN_OFFSET = 12;
+    private static final int TAKE_OVER_OFFSET = 20;
+    private static final int MESSAGE_OFFSET = 24;
+    private static final int INTENTS_OFFSET = 28;
+    private static final int RECORD_SIZE = INTENTS_OFFSET + INTENT_COUNT * Integer.BYTES;
+
+    static final int INITIAL_CAPACITY = 256;
+    static final int MAX_CAPACITY = 1 << 16;
+    private static final int MAX_LOAD_PERCENT = 70;
+
+    private final File file;
+    private RandomAccessFile randomAccessFile;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+
+    public CallerHistoryStore(@NonNull Context context) {
+        this(context.getFilesDir() != null ? new File(context.getFilesDir(), HISTORY_FILE) : null);
+    }
+
+    CallerHistoryStore(@Nullable File file) {
+        this.file = file;
+        if (file == null) {
+            return;
+        }
+        try {
+            open();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open caller history, calls will not be remembered", e);
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Look up a caller's history.
+     *
+     * @param number The caller's number in any format, may be null if withheld
+     * @return The caller's stats, or null if the caller was never screened
+     */
+    @Nullable
+    public synchronized CallerStats lookup(@Nullable String number) {
+        long key = NumberListIndex.keyOf(number);
+        if (buffer == null || key == 0) {
+            return null;
+        }
+        int slot = findSlot(buffer, capacity, key);
+        if (buffer.getLong(recordOffset(slot) + KEY_OFFSET) != key) {
+            return null;
+        }
+        return readStats(recordOffset(slot));
+    }
+
+    /**
+     * Add one finished call to the caller's history.
+     *
+     * @param number The caller's number; withheld numbers are not recorded
+     * @param timestampMillis When the call was screened
+     * @param tookOver Whether the user picked up the call
+     * @param leftMessage Whether the caller said anything to the assistant
+     * @param intent The intent detected during the call, or null if none
+     * @return true if recorded, false otherwise
+     */
+    public synchronized boolean recordCall(@Nullable String number, long timestampMillis, boolean tookOver,
+                                           boolean leftMessage, @Nullable IntentClassifier.Intent intent) {
+        long key = NumberListIndex.keyOf(number);
+        if (buffer == null || key == 0) {
+            return false;
+        }
+        int slot = findSlot(buffer, capacity, key);
+        if (buffer.getLong(recordOffset(slot) + KEY_OFFSET) != key) {
+            if ((size + 1) * 100 > capacity * MAX_LOAD_PERCENT) {
+                if (!grow()) {
+                    return false;
+                }
+                slot = findSlot(buffer, capacity, key);
+            }
+            buffer.putLong(recordOffset(slot) + KEY_OFFSET, key);
+            size++;
+            buffer.putInt(3 * Integer.BYTES, size);
+        }
+
+        int offset = recordOffset(slot);
+        increment(offset + CALL_COUNT_OFFSET);
+        buffer.putLong(offset + LAST_SEEN_OFFSET, Math.max(timestampMillis, buffer.getLong(offset + LAST_SEEN_OFFSET)));
+        if (tookOver) {
+            increment(offset + TAKE_OVER_OFFSET);
+        }
+        if (leftMessage) {
+            increment(offset + MESSAGE_OFFSET);
+        }
+        if (intent != null) {
+            increment(offset + INTENTS_OFFSET + intent.ordinal() * Integer.BYTES);
+        }
+        return true;
+    }
+
+    /**
+     * Number of distinct callers remembered.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Flush pending writes to disk and unmap the file. Further calls are no-ops.
+     */
+    public synchronized void close() {
+        if (buffer != null) {
+            buffer.force();
+        }
+        closeQuietly();
+    }
+
+    private void open() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        if (randomAccessFile.length() >= HEADER_SIZE) {
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length());
+            if (buffer.getInt(0) == MAGIC && buffer.getInt(Integer.BYTES) == VERSION
+                    && buffer.getInt(4 * Integer.BYTES) == RECORD_SIZE
+                    && randomAccessFile.length() == fileLength(buffer.getInt(2 * Integer.BYTES))) {
+                capacity = buffer.getInt(2 * Integer.BYTES);
+                size = buffer.getInt(3 * Integer.BYTES);
+                Log.i(TAG, "Opened caller history with " + size + " callers");
+                return;
+            }
+            Log.w(TAG, "Caller history has an incompatible layout, starting over");
+        }
+        buffer = emptyTable(randomAccessFile, INITIAL_CAPACITY);
+        capacity = INITIAL_CAPACITY;
+        size = 0;
+    }
+
+    /**
+     * Truncate the file to an empty table of the given capacity and map it.
+     */
+    private static MappedByteBuffer emptyTable(RandomAccessFile tableFile, int tableCapacity) throws IOException {
+        tableFile.setLength(0); // Zero-fills every record, marking all slots empty
+        tableFile.setLength(fileLength(tableCapacity));
+        MappedByteBuffer table = tableFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileLength(tableCapacity));
+        table.putInt(0, MAGIC);
+        table.putInt(Integer.BYTES, VERSION);
+        table.putInt(2 * Integer.BYTES, tableCapacity);
+        table.putInt(3 * Integer.BYTES, 0);
+        table.putInt(4 * Integer.BYTES, RECORD_SIZE);
+        return table;
+    }
+
+    /**
+     * Reinsert every record into a table of double the size, written next to the history and
+     * renamed over it once on disk, so the history survives the process dying half-way.
+     */
+    private boolean grow() {
+        if (capacity >= MAX_CAPACITY) {
+            Log.w(TAG, "Caller history is full (" + size + " callers), not remembering new callers");
+            return false;
+        }
+        int newCapacity = capacity * 2;
+        File tempFile = new File(file.getPath() + ".tmp");
+        RandomAccessFile grownFile = null;
+        try {
+            grownFile = new RandomAccessFile(tempFile, "rw");
+            MappedByteBuffer grown = emptyTable(grownFile, newCapacity);
+            byte[] record = new byte[RECORD_SIZE];
+            int count = 0;
+            for (int slot = 0; slot < capacity; slot++) {
+                int offset = recordOffset(slot);
+                long key = buffer.getLong(offset + KEY_OFFSET);
+                if (key != 0) {
+                    buffer.position(offset);
+                    buffer.get(record);
+                    grown.position(recordOffset(findSlot(grown, newCapacity, key)));
+                    grown.put(record);
+                    count++;
+                }
+            }
+            grown.putInt(3 * Integer.BYTES, count);
+            grown.force();
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+            RandomAccessFile oldFile = randomAccessFile;
+            randomAccessFile = grownFile;
+            buffer = grown;
+            capacity = newCapacity;
+            size = count;
+            try {
+                oldFile.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing old caller history", e);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not grow caller history, not remembering new callers", e);
+            if (grownFile != null) {
+                try {
+                    grownFile.close();
+                } catch (IOException closeError) {
+                    Log.w(TAG, "Error closing grown caller history", closeError);
+                }
+            }
+            if (tempFile.exists() && !tempFile.delete()) {
+                Log.w(TAG, "Could not delete " + tempFile);
+            }
+            return false;
+        }
+        Log.i(TAG, "Grew caller history to " + capacity + " slots");
+        return true;
+    }
+
+    /**
+     * Slot holding the key, or the empty slot where it would be inserted. The load factor
+     * guarantees an empty slot exists.
+     */
+    private static int findSlot(MappedByteBuffer table, int tableCapacity, long key) {
+        int mask = tableCapacity - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            long stored = table.getLong(recordOffset(slot) + KEY_OFFSET);
+            if (stored == key || stored == 0) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private CallerStats readStats(int offset) {
+        int[] intentCounts = new int[INTENT_COUNT];
+        for (int i = 0; i < INTENT_COUNT; i++) {
+            intentCounts[i] = buffer.getInt(offset + INTENTS_OFFSET + i * Integer.BYTES);
+        }
+        return new CallerStats(
+                buffer.getInt(offset + CALL_COUNT_OFFSET),
+                buffer.getLong(offset + LAST_SEEN_OFFSET),
+                buffer.getInt(offset + TAKE_OVER_OFFSET),
+                buffer.getInt(offset + MESSAGE_OFFSET),
+                intentCounts);
+    }
+
+    private void increment(int offset) {
+        buffer.putInt(offset, buffer.getInt(offset) + 1);
+    }
+
+    private void closeQuietly() {
+        buffer = null;
+        if (randomAccessFile != null) {
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing caller history", e);
+            }
+            randomAccessFile = null;
+        }
+    }
+
+    private static int recordOffset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private static long fileLength(int capacity) {
+        return HEADER_SIZE + (long) capacity * RECORD_SIZE;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
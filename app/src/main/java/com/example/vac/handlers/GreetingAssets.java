@@ -0,0 +1,257 @@
+package com.example.vac.handlers;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.core.content.ContextCompat;
+
+import com.example.vac.utils.ConfigSnapshot;
+import com.example.vac.utils.PreferencesManager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the greeting rendered to a file, so a call plays it straight away instead of waiting
+ * for TTS.
+ * <p>
+ * Whenever the settings or the locale change, the greeting is worked out again on a background
+ * thread. If the text or locale differ from the published render, it is synthesized to a file
+ * named after both. The file is checked to be a complete WAV before it is published, with one
+ * reference swap. A user's own greeting file is checked the same way and published instead.
+ * Calls only compare the greeting settings of that reference with their {@link ConfigSnapshot},
+ * so other settings changing do not make them speak it live; nothing touches the disk on the
+ * call path.
+ */
+public class GreetingAssets {
+    private static final String TAG = "GreetingAssets";
+    static final String FILE_PREFIX = "greeting_";
+    private static final String FILE_EXTENSION = ".wav";
+    private static final long TTS_INIT_TIMEOUT_SECONDS = 10;
+    private static final long SYNTHESIS_TIMEOUT_SECONDS = 60;
+    private static final int WAV_HEADER_SIZE = 44;
+
+    private static GreetingAssets instance;
+
+    /**
+     * A greeting file checked to be playable, and the greeting settings it was made for.
+     */
+    static final class Asset {
+        final String greetingSpeech;
+        @Nullable
+        final String customPath;
+        final Locale locale;
+        final String key;
+        final File file;
+
+        Asset(String greetingSpeech, @Nullable String customPath, Locale locale, String key, File file) {
+            this.greetingSpeech = greetingSpeech;
+            this.customPath = customPath;
+            this.locale = locale;
+            this.key = key;
+            this.file = file;
+        }
+
+        boolean isFor(String greetingSpeech, @Nullable String customPath, Locale locale) {
+            return this.greetingSpeech.equals(greetingSpeech) && Objects.equals(this.customPath, customPath)
+                    && this.locale.equals(locale);
+        }
+    }
+
+    private final Context context;
+    private final PreferencesManager preferencesManager;
+    private final File outputDir;
+    private final ExecutorService executor;
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private final AtomicReference<Asset> ready = new AtomicReference<>();
+
+    private GreetingAssets(Context context) {
+        this.context = context;
+        this.preferencesManager = new PreferencesManager(context);
+        this.outputDir = context.getFilesDir();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "GreetingAssets"));
+    }
+
+    /**
+     * The process-wide pipeline, started on first use.
+     */
+    @NonNull
+    public static synchronized GreetingAssets getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new GreetingAssets(context.getApplicationContext());
+            instance.start();
+        }
+        return instance;
+    }
+
+    private void start() {
+        preferencesManager.observeSnapshot(this::scheduleRefresh);
+        // The default greeting is a resource, so it changes with the locale
+        ContextCompat.registerReceiver(context, new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context receiverContext, Intent intent) {
+                preferencesManager.refreshSnapshot();
+            }
+        }, new IntentFilter(Intent.ACTION_LOCALE_CHANGED), ContextCompat.RECEIVER_NOT_EXPORTED);
+        scheduleRefresh();
+    }
+
+    /**
+     * The rendered greeting for these settings.
+     *
+     * @return The file to play, or null if it is not ready and the greeting must be spoken live
+     */
+    @Nullable
+    public File getReady(@NonNull ConfigSnapshot config) {
+        Asset asset = ready.get();
+        return asset != null && asset.isFor(config.getGreetingSpeech(), config.getCustomGreetingFilePath(),
+                Locale.getDefault()) ? asset.file : null;
+    }
+
+    /**
+     * Check the greeting again, e.g. when the user asks for it to be generated.
+     */
+    public void scheduleRefresh() {
+        if (refreshScheduled.compareAndSet(false, true)) {
+            executor.execute(this::refresh);
+        }
+    }
+
+    @WorkerThread
+    private void refresh() {
+        refreshScheduled.set(false); // Changes from here on schedule another pass
+        try {
+            update(preferencesManager.getSnapshot());
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Refreshing the greeting failed", e); // Calls speak it live until the next change
+        }
+    }
+
+    @WorkerThread
+    private void update(ConfigSnapshot config) {
+        String speech = config.getGreetingSpeech();
+        String customPath = config.getCustomGreetingFilePath();
+        Locale locale = Locale.getDefault();
+        String key = keyFor(speech, customPath, locale);
+        Asset current = ready.get();
+        if (current != null && current.key.equals(key)) {
+            return; // Another setting changed
+        }
+
+        if (customPath != null && isCompleteWav(new File(customPath))) {
+            publish(new Asset(speech, customPath, locale, key, new File(customPath)));
+            return;
+        }
+        File file = new File(outputDir, FILE_PREFIX + key + FILE_EXTENSION);
+        if (isCompleteWav(file) || render(speech, file)) {
+            publish(new Asset(speech, customPath, locale, key, file));
+        } else {
+            Log.w(TAG, "No greeting render for the current settings, calls will speak it live");
+        }
+    }
+
+    private void publish(Asset asset) {
+        ready.set(asset);
+        Log.i(TAG, "Published greeting " + asset.file.getName());
+        deleteOtherRenders(asset.file);
+    }
+
+    /**
+     * Synthesize the greeting next to its final name and move it there once it checks out.
+     */
+    @WorkerThread
+    private boolean render(String text, File file) {
+        long startNanos = System.nanoTime();
+        File temp = new File(outputDir, file.getName() + ".tmp");
+        AudioHandler audioHandler = new AudioHandler(context, null);
+        try {
+            if (!audioHandler.awaitTtsReady(TTS_INIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                Log.w(TAG, "TTS not available for rendering the greeting");
+                return false;
+            }
+            try {
+                audioHandler.synthesizeBatch(Collections.singletonList(new AudioHandler.SynthesisJob(text, temp)),
+                        1, null).get(0).get(SYNTHESIS_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                Log.w(TAG, "Rendering the greeting failed: " + e);
+                return false;
+            }
+            if (!isCompleteWav(temp) || !temp.renameTo(file)) {
+                Log.w(TAG, "Rendered greeting is not playable");
+                return false;
+            }
+            Log.i(TAG, "Rendered greeting in " + (System.nanoTime() - startNanos) / 1_000_000 + " ms");
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            audioHandler.release();
+            temp.delete();
+        }
+    }
+
+    private void deleteOtherRenders(File keep) {
+        File[] files = outputDir.listFiles((dir, name) -> name.startsWith(FILE_PREFIX));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.equals(keep) && !file.delete()) {
+                Log.w(TAG, "Could not delete " + file.getName());
+            }
+        }
+    }
+
+    /**
+     * Name of the render for a greeting text and locale, the same for the same inputs. A user's
+     * own file counts with its modification time, as regenerating it keeps the path.
+     */
+    static String keyFor(String greetingSpeech, @Nullable String customPath, Locale locale) {
+        String inputs = locale.toLanguageTag() + '\n' + greetingSpeech + '\n' + customPath
+                + (customPath != null ? "@" + new File(customPath).lastModified() : "");
+        return UUID.nameUUIDFromBytes(inputs.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Whether a file is a RIFF/WAVE file with audio after the header, as TTS writes it.
+     */
+    static boolean isCompleteWav(File file) {
+        if (!file.isFile() || file.length() <= WAV_HEADER_SIZE) {
+            return false;
+        }
+        byte[] header = new byte[12];
+        try (FileInputStream in = new FileInputStream(file)) {
+            if (in.read(header) != header.length) {
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return new String(header, 0, 4, StandardCharsets.US_ASCII).equals("RIFF")
+                && new String(header, 8, 4, StandardCharsets.US_ASCII).equals("WAVE");
+    }
+}
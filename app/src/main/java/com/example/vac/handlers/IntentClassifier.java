@@ -0,0 +1,165 @@
+package com.example.vac.handlers;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.StringRes;
+
+import com.example.vac.R;
+import com.example.vac.utils.KeywordAutomaton;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * On-device classifier turning a caller utterance into a coarse intent, used to pick the
+ * assistant's response. Weighted Polish stems are matched with a precompiled
+ * {@link KeywordAutomaton}; the intent with the highest total weight wins if it reaches
+ * {@link #MIN_SCORE}.
+ */
+public class IntentClassifier {
+    static final int MIN_SCORE = 2;
+
+    /**
+     * Intents in tie-break order: an urgent call that also mentions a bank is urgent.
+     */
+    public enum Intent {
+        URGENT(R.string.response_intent_urgent),
+        BANK(R.string.response_intent_bank),
+        DELIVERY(R.string.response_intent_delivery),
+        SALES(R.string.response_intent_sales),
+        OTHER(R.string.llm_placeholder_response);
+
+        @StringRes
+        public final int responseTemplate;
+
+        Intent(@StringRes int responseTemplate) {
+            this.responseTemplate = responseTemplate;
+        }
+    }
+
+    private static final class Rule {
+        final String stem;
+        final Intent intent;
+        final int weight;
+
+        Rule(String stem, Intent intent, int weight) {
+            this.stem = stem;
+            this.intent = intent;
+            this.weight = weight;
+        }
+    }
+
+    // Stems without diacritics; the automaton folds them in the transcript
+    private static final Rule[] RULES = {
+            new Rule("piln", Intent.URGENT, 3),
+            new Rule("natychmiast", Intent.URGENT, 3),
+            new Rule("wypadek", Intent.URGENT, 3),
+            new Rule("wypadk", Intent.URGENT, 3),
+            new Rule("szpital", Intent.URGENT, 3),
+            new Rule("pogotowi", Intent.URGENT, 3),
+            new Rule("ratun", Intent.URGENT, 3),
+            new Rule("policj", Intent.URGENT, 2),
+            new Rule("nagl", Intent.URGENT, 1),
+            new Rule("zmarl", Intent.URGENT, 3),
+            new Rule("szybko", Intent.URGENT, 1),
+
+            new Rule("bank", Intent.BANK, 3),
+            new Rule("konto", Intent.BANK, 2),
+            new Rule("koncie", Intent.BANK, 2),
+            new Rule("przelew", Intent.BANK, 3),
+            new Rule("kredyt", Intent.BANK, 2),
+            new Rule("karta", Intent.BANK, 1),
+            new Rule("karty", Intent.BANK, 1),
+            new Rule("blik", Intent.BANK, 3),
+            new Rule("transakcj", Intent.BANK, 2),
+            new Rule("rachun", Intent.BANK, 1),
+            new Rule("pin", Intent.BANK, 1),
+
+            new Rule("kurier", Intent.DELIVERY, 3),
+            new Rule("paczk", Intent.DELIVERY, 3),
+            new Rule("przesylk", Intent.DELIVERY, 3),
+            new Rule("dostaw", Intent.DELIVERY, 2),
+            new Rule("inpost", Intent.DELIVERY, 3),
+            new Rule("dpd", Intent.DELIVERY, 3),
+            new Rule("dhl", Intent.DELIVERY, 3),
+            new Rule("zamowien", Intent.DELIVERY, 1),
+            new Rule("adres", Intent.DELIVERY, 1),
+            new Rule("domofon", Intent.DELIVERY, 2),
+
+            new Rule("ofert", Intent.SALES, 3),
+            new Rule("promocj", Intent.SALES, 3),
+            new Rule("rabat", Intent.SALES, 2),
+            new Rule("abonament", Intent.SALES, 2),
+            new Rule("taryf", Intent.SALES, 2),
+            new Rule("fotowolta", Intent.SALES, 3),
+            new Rule("ankiet", Intent.SALES, 2),
+            new Rule("okazj", Intent.SALES, 2),
+            new Rule("darmow", Intent.SALES, 1),
+            new Rule("bezplatn", Intent.SALES, 1),
+            new Rule("oszczedz", Intent.SALES, 1),
+            new Rule("prezent", Intent.SALES, 1),
+    };
+
+    private static final IntentClassifier INSTANCE = new IntentClassifier();
+
+    private final KeywordAutomaton automaton;
+
+    private IntentClassifier() {
+        List<String> stems = new ArrayList<>(RULES.length);
+        for (Rule rule : RULES) {
+            stems.add(rule.stem);
+        }
+        this.automaton = KeywordAutomaton.compile(stems);
+    }
+
+    /**
+     * Shared classifier. The automaton is compiled when this class is first loaded, so
+     * touching it early (see {@code CallScreeningServiceImpl}) keeps that off the call path.
+     */
+    public static IntentClassifier getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Classify a single caller utterance.
+     *
+     * @param utterance Transcribed caller speech, may be null
+     * @return The winning intent, or {@link Intent#OTHER} if no intent scored high enough
+     */
+    @NonNull
+    public Intent classify(String utterance) {
+        List<Intent> ranked = rank(utterance);
+        return ranked.isEmpty() ? Intent.OTHER : ranked.get(0);
+    }
+
+    /**
+     * Rank all intents that reach {@link #MIN_SCORE}, best first. Used on partial transcripts
+     * to guess which responses are worth preparing.
+     *
+     * @param utterance Transcribed (possibly partial) caller speech, may be null
+     * @return Candidate intents, never containing {@link Intent#OTHER}; empty if none qualify
+     */
+    @NonNull
+    public List<Intent> rank(String utterance) {
+        List<Intent> ranked = new ArrayList<>();
+        if (utterance == null || utterance.isEmpty()) {
+            return ranked;
+        }
+        int[] scores = new int[Intent.values().length];
+        automaton.match(utterance, (keywordIndex, end) -> {
+            Rule rule = RULES[keywordIndex];
+            scores[rule.intent.ordinal()] += rule.weight;
+        });
+
+        for (Intent intent : Intent.values()) {
+            if (scores[intent.ordinal()] < MIN_SCORE) {
+                continue;
+            }
+            int position = ranked.size();
+            while (position > 0 && scores[ranked.get(position - 1).ordinal()] < scores[intent.ordinal()]) {
+                position--; // Strict: earlier intents stay ahead on ties
+            }
+            ranked.add(position, intent);
+        }
+        return ranked;
+    }
+}
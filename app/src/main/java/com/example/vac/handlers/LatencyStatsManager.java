@@ -0,0 +1,166 @@
+package com.example.vac.handlers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.vac.utils.LatencyHistogram;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Aggregates per-call latency spans into histograms that are persisted across calls,
+ * so builds can be compared on real devices.
+ */
+public class LatencyStatsManager {
+    private static final String TAG = "LatencyStatsManager";
+    private static final String STATS_FILE = "latency_stats.json";
+    private static final Object FILE_LOCK = new Object();
+
+    private final Gson gson;
+    private final File statsFile;
+
+    public LatencyStatsManager(@NonNull Context context) {
+        this.gson = new GsonBuilder().create();
+        File filesDir = context.getFilesDir();
+        this.statsFile = filesDir != null ? new File(filesDir, STATS_FILE) : null;
+    }
+
+    /**
+     * Adds all completed spans of a finished call to the persisted histograms.
+     *
+     * @param tracer The tracer of the finished call
+     * @return true if saved successfully, false otherwise
+     */
+    public boolean recordCall(@NonNull CallTracer tracer) {
+        if (statsFile == null) {
+            Log.w(TAG, "No files directory, latency stats not persisted.");
+            return false;
+        }
+        synchronized (FILE_LOCK) {
+            try {
+                Map<String, LatencyHistogram> stats = loadStats();
+                tracer.forEachSpan((span, durationNanos) -> {
+                    LatencyHistogram histogram = stats.get(span.name());
+                    if (histogram == null) {
+                        histogram = new LatencyHistogram();
+                        stats.put(span.name(), histogram);
+                    }
+                    histogram.record(durationNanos / 1000);
+                });
+                saveStats(stats);
+                return true;
+            } catch (IOException e) {
+                Log.e(TAG, "Error saving latency stats", e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Gets the persisted histograms, keyed by span.
+     *
+     * @return Histograms for every span recorded so far
+     */
+    @NonNull
+    public Map<CallTracer.Span, LatencyHistogram> getStats() {
+        Map<CallTracer.Span, LatencyHistogram> result = new EnumMap<>(CallTracer.Span.class);
+        if (statsFile == null) {
+            return result;
+        }
+        synchronized (FILE_LOCK) {
+            try {
+                for (Map.Entry<String, LatencyHistogram> entry : loadStats().entrySet()) {
+                    try {
+                        result.put(CallTracer.Span.valueOf(entry.getKey()), entry.getValue());
+                    } catch (IllegalArgumentException e) {
+                        Log.d(TAG, "Skipping stats for unknown span " + entry.getKey());
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error loading latency stats", e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Formats p50/p95/p99 for every span, one line each.
+     *
+     * @return The report, or a note that nothing was recorded yet
+     */
+    @NonNull
+    public String dump() {
+        Map<CallTracer.Span, LatencyHistogram> stats = getStats();
+        if (stats.isEmpty()) {
+            return "No calls traced yet.";
+        }
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<CallTracer.Span, LatencyHistogram> entry : stats.entrySet()) {
+            report.append(entry.getKey()).append(": ").append(entry.getValue().summary()).append('\n');
+        }
+        LatencyHistogram speculated = stats.get(CallTracer.Span.RESPONSE_START_SPECULATED);
+        LatencyHistogram synthesized = stats.get(CallTracer.Span.RESPONSE_START_SYNTHESIZED);
+        if (speculated != null && synthesized != null) {
+            long responses = speculated.getCount() + synthesized.getCount();
+            long savedMicros = synthesized.getValueAtPercentile(50) - speculated.getValueAtPercentile(50);
+            report.append(String.format(Locale.ROOT, "Speculation: hit rate %.0f%% (%d/%d), saves ~%.1fms at p50",
+                    100.0 * speculated.getCount() / responses, speculated.getCount(), responses,
+                    savedMicros / 1000.0));
+        }
+        return report.toString().trim();
+    }
+
+    /**
+     * Deletes all persisted histograms.
+     *
+     * @return true if nothing is persisted anymore
+     */
+    public boolean reset() {
+        synchronized (FILE_LOCK) {
+            return statsFile == null || !statsFile.exists() || statsFile.delete();
+        }
+    }
+
+    private Map<String, LatencyHistogram> loadStats() throws IOException {
+        if (!statsFile.exists()) {
+            return new HashMap<>();
+        }
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(statsFile))) {
+            Type type = new TypeToken<Map<String, LatencyHistogram>>(){}.getType();
+            Map<String, LatencyHistogram> stats = gson.fromJson(reader, type);
+            return stats != null ? stats : new HashMap<>();
+        } catch (JsonParseException e) {
+            Log.w(TAG, "Discarding unreadable latency stats", e); // Starting over beats failing every call
+            return new HashMap<>();
+        }
+    }
+
+    private void saveStats(@NonNull Map<String, LatencyHistogram> stats) throws IOException {
+        // Written aside and renamed, so a crash mid-write leaves the previous stats
+        File temp = new File(statsFile.getParentFile(), STATS_FILE + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp))) {
+            gson.toJson(stats, writer);
+        }
+        if (!temp.renameTo(statsFile)) {
+            temp.delete();
+            throw new IOException("Could not replace " + STATS_FILE);
+        }
+    }
+}
@@ -0,0 +1,578 @@
+package com.example.vac.handlers;
+
+import android.content.Context;
+import android.media.MediaMetadataRetriever;
+import android.os.FileObserver;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.vac.models.Message;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps track of the recorded messages in the app's files dir. Per-message metadata (timestamp,
+ * duration, size, call ID, whether a transcript exists) is kept in an index file, so opening
+ * the library reads one file instead of probing every recording. The index is reconciled with
+ * the directory listing on {@link #load()} and kept current afterwards by the recorder
+ * ({@link #onRecordingStopped}) and a {@link FileObserver} while someone is watching.
+ * Recordings found by reconciling are indexed by name first; their durations are read
+ * afterwards in the background, newest first, and reported as refreshed messages.
+ * <p>
+ * Messages are kept sorted {@link #NEWEST_FIRST} and can be read a {@link Page} at a time,
+ * either by position or by keyset (relative to a message already shown), so the UI never needs
+ * the whole list.
+ * <p>
+ * Loading and updating touch the file system and belong on a background thread. Changes are
+ * reported to {@link ChangeListener}s on the thread that made them.
+ */
+public class MessageLibrary {
+    private static final String TAG = "MessageLibrary";
+    private static final String MESSAGE_PREFIX = "message_";
+    private static final String INDEX_FILE = "messages_index.json";
+    private static final int INDEX_VERSION = 1;
+    private static final long ABANDONED_RECORDING_MS = 60_000; // Live segmented recordings touch their manifest every segment
+    private static final int OBSERVED_EVENTS = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO
+            | FileObserver.DELETE | FileObserver.MOVED_FROM;
+
+    /**
+     * Newest first, ties broken by filename so every message has a unique position. Timestamps
+     * are parsed once per message, not per comparison.
+     */
+    public static final Comparator<Message> NEWEST_FIRST =
+            Comparator.comparingLong(Message::getTimestamp).reversed().thenComparing(Message::getFilename);
+
+    /**
+     * Receives single-message changes after the library was opened, in order and while the
+     * library is locked, so implementations must only hand them off. A refreshed message is
+     * reported as a removal followed by an addition.
+     * <p>
+     * Every change increments the library version; a {@link Page} reflects all changes up to
+     * its {@link Page#version}.
+     */
+    public interface ChangeListener {
+        void onMessageAdded(@NonNull Message message, int position, long version);
+        void onMessageRemoved(@NonNull String filename, int position, long version);
+    }
+
+    /**
+     * A run of consecutive messages in {@link #NEWEST_FIRST} order.
+     */
+    public static final class Page {
+        public final List<Message> messages;
+        /** Position of the first message. */
+        public final int offset;
+        public final int totalCount;
+        public final long version;
+
+        Page(List<Message> messages, int offset, int totalCount, long version) {
+            this.messages = messages;
+            this.offset = offset;
+            this.totalCount = totalCount;
+            this.version = version;
+        }
+    }
+
+    private static MessageLibrary instance;
+
+    private final File directory;
+    private final File indexFile;
+    @Nullable
+    private final TranscriptionManager transcriptionManager;
+    private final Gson gson = new Gson();
+    private final Map<String, Message> messages = new HashMap<>();
+    private final List<Message> sorted = new ArrayList<>(); // Same messages, NEWEST_FIRST
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService updateExecutor = Executors.newSingleThreadExecutor();
+    private FileObserver fileObserver;
+    private boolean indexRead;
+    private boolean durationsQueued;
+    private long transcriptsModified;
+    private long version;
+
+    /**
+     * Library without transcript lookups or a persisted index, listing the given directory.
+     */
+    public MessageLibrary(@NonNull File directory) {
+        this(directory, null, null);
+    }
+
+    MessageLibrary(@NonNull File directory, @Nullable File indexFile,
+                   @Nullable TranscriptionManager transcriptionManager) {
+        this.directory = directory;
+        this.indexFile = indexFile;
+        this.transcriptionManager = transcriptionManager;
+    }
+
+    /**
+     * Shared library for the app's files dir, used by both the recorder and the UI.
+     */
+    public static synchronized MessageLibrary getInstance(@NonNull Context context) {
+        Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        File filesDir = appContext.getFilesDir();
+        if (instance == null || !instance.directory.equals(filesDir)) {
+            instance = new MessageLibrary(filesDir, new File(filesDir, INDEX_FILE), new TranscriptionManager(appContext));
+        }
+        return instance;
+    }
+
+    public static boolean isMessageFile(@NonNull String name) {
+        if (!name.startsWith(MESSAGE_PREFIX)) {
+            return false;
+        }
+        for (MessageRecorderHandler.Mode mode : MessageRecorderHandler.Mode.values()) {
+            if (name.endsWith(mode.fileExtension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * List all recorded messages, bringing the index up to date with the directory first.
+     *
+     * @return Messages sorted newest first, empty if there are none or the dir cannot be read
+     */
+    @WorkerThread
+    @NonNull
+    public synchronized List<Message> load() {
+        reconcile();
+        return new ArrayList<>(sorted);
+    }
+
+    /**
+     * Bring the index up to date with the directory and return the newest messages.
+     */
+    @WorkerThread
+    @NonNull
+    public synchronized Page open(int limit) {
+        reconcile();
+        return pageAt(0, limit);
+    }
+
+    /**
+     * Messages starting at a position, for jumping into the middle of the list.
+     */
+    @NonNull
+    public synchronized Page pageAt(int offset, int limit) {
+        ensureIndexRead();
+        int start = Math.max(0, Math.min(offset, sorted.size()));
+        return page(start, Math.min(sorted.size(), start + limit));
+    }
+
+    /**
+     * Keyset page: the messages right after the anchor. The anchor does not have to be in the
+     * library any more.
+     */
+    @NonNull
+    public synchronized Page pageOlderThan(@NonNull Message anchor, int limit) {
+        ensureIndexRead();
+        int index = Collections.binarySearch(sorted, anchor, NEWEST_FIRST);
+        int start = index >= 0 ? index + 1 : -index - 1;
+        return page(start, Math.min(sorted.size(), start + limit));
+    }
+
+    /**
+     * Keyset page: the messages right before the anchor, in list order.
+     */
+    @NonNull
+    public synchronized Page pageNewerThan(@NonNull Message anchor, int limit) {
+        ensureIndexRead();
+        int index = Collections.binarySearch(sorted, anchor, NEWEST_FIRST);
+        int end = index >= 0 ? index : -index - 1;
+        return page(Math.max(0, end - limit), end);
+    }
+
+    public synchronized int getCount() {
+        ensureIndexRead();
+        return sorted.size();
+    }
+
+    /**
+     * Add or refresh a message after its file was written.
+     *
+     * @return true if the library changed
+     */
+    @WorkerThread
+    public synchronized boolean add(@NonNull File file) {
+        ensureIndexRead();
+        Message existing = messages.get(file.getName());
+        if (!file.exists() || (existing != null && existing.getSizeBytes() == file.length())) {
+            return false;
+        }
+        if (existing != null) {
+            removeSorted(existing);
+        }
+        Message message = probe(file, transcribedCallIds());
+        messages.put(file.getName(), message);
+        insertSorted(message);
+        writeIndex();
+        return true;
+    }
+
+    /**
+     * Forget a message whose file was deleted.
+     *
+     * @return true if the message was known
+     */
+    @WorkerThread
+    public synchronized boolean remove(@NonNull String filename) {
+        ensureIndexRead();
+        Message existing = messages.remove(filename);
+        if (existing == null) {
+            return false;
+        }
+        removeSorted(existing);
+        writeIndex();
+        return true;
+    }
+
+    /**
+     * Delete a message and everything kept about it: its waveform and time map sidecars, its
+     * transcriptions and its recording start.
+     *
+     * @return false if the recording could not be deleted
+     */
+    @WorkerThread
+    public boolean delete(@NonNull Message message) {
+        File file = message.getFile();
+        if (file.exists() && !file.delete()) {
+            return false;
+        }
+        deleteIfExists(WaveformPeaks.sidecarFor(file));
+        deleteIfExists(RecordingCompactor.timeMapFor(file));
+        if (transcriptionManager != null && message.getCallId() != null) {
+            transcriptionManager.deleteCall(message.getCallId());
+        }
+        remove(message.getFilename());
+        return true;
+    }
+
+    private static void deleteIfExists(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete " + file.getName());
+        }
+    }
+
+    /**
+     * Called by the recorder when a recording is finished; indexes it in the background.
+     */
+    public void onRecordingStopped(@NonNull String filePath) {
+        updateExecutor.execute(() -> add(new File(filePath)));
+    }
+
+    /**
+     * Called by the recorder when a segmented recording is finished; stitches its segments into
+     * the message file and indexes that in the background.
+     */
+    public void onSegmentedRecordingStopped(@NonNull File segmentDirectory, @NonNull File messageFile) {
+        updateExecutor.execute(() -> {
+            if (SegmentedRecording.stitch(segmentDirectory, messageFile)) {
+                add(messageFile);
+            }
+        });
+    }
+
+    /**
+     * Run a task once the updates queued so far, such as stitching a recording, are done.
+     */
+    public void runAfterPendingUpdates(@NonNull Runnable task) {
+        updateExecutor.execute(task);
+    }
+
+    /**
+     * Register a listener and watch the directory for changes made elsewhere.
+     */
+    public synchronized void addChangeListener(@NonNull ChangeListener listener) {
+        listeners.add(listener);
+        if (fileObserver == null) {
+            fileObserver = new FileObserver(directory, OBSERVED_EVENTS) {
+                @Override
+                public void onEvent(int event, @Nullable String path) {
+                    if (path == null || !isMessageFile(path)) {
+                        return;
+                    }
+                    if ((event & (FileObserver.DELETE | FileObserver.MOVED_FROM)) != 0) {
+                        updateExecutor.execute(() -> remove(path));
+                    } else {
+                        updateExecutor.execute(() -> add(new File(directory, path)));
+                    }
+                }
+            };
+            fileObserver.startWatching();
+        }
+    }
+
+    public synchronized void removeChangeListener(@NonNull ChangeListener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty() && fileObserver != null) {
+            fileObserver.stopWatching();
+            fileObserver = null;
+        }
+    }
+
+    private void reconcile() {
+        long startNanos = System.nanoTime();
+        ensureIndexRead();
+
+        int recovered = SegmentedRecording.recoverAbandoned(directory, ABANDONED_RECORDING_MS);
+        if (recovered > 0) {
+            Log.i(TAG, "Recovered " + recovered + " interrupted recordings");
+        }
+        String[] names = directory.list((d, name) -> isMessageFile(name));
+        Set<String> present = new HashSet<>();
+        if (names != null) {
+            Collections.addAll(present, names);
+        }
+        boolean changed = messages.keySet().retainAll(present);
+        Set<String> transcribed = null;
+        if (transcriptionManager != null && transcriptionManager.getLastModified() != transcriptsModified) {
+            transcriptsModified = transcriptionManager.getLastModified();
+            transcribed = transcribedCallIds();
+            for (Message message : new ArrayList<>(messages.values())) {
+                if (message.hasTranscript() != transcribed.contains(message.getCallId())) {
+                    messages.put(message.getFilename(), withTranscript(message, !message.hasTranscript()));
+                    changed = true;
+                }
+            }
+        }
+        for (String name : present) {
+            if (!messages.containsKey(name)) {
+                if (transcribed == null) {
+                    transcribed = transcribedCallIds();
+                }
+                messages.put(name, describe(new File(directory, name), Message.DURATION_UNKNOWN, transcribed));
+                changed = true;
+            }
+        }
+        if (changed) {
+            writeIndex();
+            sorted.clear();
+            sorted.addAll(messages.values());
+            sorted.sort(NEWEST_FIRST);
+            version++; // Pages from before are stale; there are no events for bulk changes
+        }
+        if (!durationsQueued) {
+            for (Message message : sorted) {
+                if (message.getDurationMs() == Message.DURATION_UNKNOWN) {
+                    durationsQueued = true;
+                    updateExecutor.execute(this::probeDurations);
+                    break;
+                }
+            }
+        }
+        Log.d(TAG, "Reconciled " + sorted.size() + " messages in " + (System.nanoTime() - startNanos) / 1000 + "us");
+    }
+
+    private Page page(int start, int end) {
+        return new Page(new ArrayList<>(sorted.subList(start, end)), start, sorted.size(), version);
+    }
+
+    private void insertSorted(Message message) {
+        int index = Collections.binarySearch(sorted, message, NEWEST_FIRST);
+        int position = index >= 0 ? index : -index - 1;
+        sorted.add(position, message);
+        version++;
+        for (ChangeListener listener : listeners) {
+            listener.onMessageAdded(message, position, version);
+        }
+    }
+
+    private void removeSorted(Message message) {
+        int position = Collections.binarySearch(sorted, message, NEWEST_FIRST);
+        if (position < 0) {
+            return;
+        }
+        sorted.remove(position);
+        version++;
+        for (ChangeListener listener : listeners) {
+            listener.onMessageRemoved(message.getFilename(), position, version);
+        }
+    }
+
+    private Message probe(File file, Set<String> transcribed) {
+        return describe(file, probeDuration(file), transcribed);
+    }
+
+    private static Message describe(File file, long durationMs, Set<String> transcribed) {
+        String name = file.getName();
+        String callId = Message.callIdOf(name);
+        return new Message(file, Message.extractTimestampFromFilename(name), durationMs,
+                file.length(), callId, transcribed.contains(callId));
+    }
+
+    /**
+     * Read the durations reconciling left out, newest first so the first page fills in first.
+     * The library is only locked to swap each message, not while its file is read.
+     */
+    @WorkerThread
+    private void probeDurations() {
+        List<Message> pending = new ArrayList<>();
+        synchronized (this) {
+            durationsQueued = false;
+            for (Message message : sorted) {
+                if (message.getDurationMs() == Message.DURATION_UNKNOWN) {
+                    pending.add(message);
+                }
+            }
+        }
+        for (Message message : pending) {
+            long durationMs = probeDuration(message.getFile());
+            synchronized (this) {
+                Message current = messages.get(message.getFilename());
+                if (current == null || current.getDurationMs() != Message.DURATION_UNKNOWN
+                        || current.getSizeBytes() != message.getSizeBytes()) {
+                    continue; // Removed or re-added meanwhile
+                }
+                Message probed = new Message(current.getFile(), current.getTimestamp(), durationMs,
+                        current.getSizeBytes(), current.getCallId(), current.hasTranscript());
+                removeSorted(current);
+                messages.put(probed.getFilename(), probed);
+                insertSorted(probed);
+            }
+        }
+        if (!pending.isEmpty()) {
+            synchronized (this) {
+                writeIndex();
+            }
+        }
+    }
+
+    private static long probeDuration(File file) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(file.getAbsolutePath());
+            String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            return duration != null ? Long.parseLong(duration) : 0;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not read duration of " + file.getName() + ": " + e.getMessage());
+            return 0;
+        } finally {
+            try {
+                retriever.release();
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Error releasing MediaMetadataRetriever", e);
+            }
+        }
+    }
+
+    private Set<String> transcribedCallIds() {
+        if (transcriptionManager == null) {
+            return Collections.emptySet();
+        }
+        return transcriptionManager.getCallIds();
+    }
+
+    private static Message withTranscript(Message message, boolean hasTranscript) {
+        return new Message(message.getFile(), message.getTimestamp(), message.getDurationMs(),
+                message.getSizeBytes(), message.getCallId(), hasTranscript);
+    }
+
+    private void ensureIndexRead() {
+        if (!indexRead) {
+            readIndex();
+            indexRead = true;
+        }
+    }
+
+    private void readIndex() {
+        if (indexFile == null || !indexFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(indexFile))) {
+            Index index = gson.fromJson(reader, Index.class);
+            if (index == null || index.version != INDEX_VERSION || index.messages == null) {
+                Log.w(TAG, "Ignoring message index with unexpected format");
+                return;
+            }
+            transcriptsModified = index.transcriptsModified;
+            for (Index.Entry entry : index.messages) {
+                messages.put(entry.filename, new Message(new File(directory, entry.filename), entry.timestamp,
+                        entry.durationMs, entry.sizeBytes, entry.callId, entry.hasTranscript));
+            }
+            sorted.addAll(messages.values());
+            sorted.sort(NEWEST_FIRST);
+        } catch (IOException | JsonParseException e) {
+            Log.e(TAG, "Error reading message index, rebuilding it", e);
+            messages.clear();
+            sorted.clear();
+        }
+    }
+
+    private void writeIndex() {
+        if (indexFile == null) {
+            return;
+        }
+        Index index = new Index();
+        index.version = INDEX_VERSION;
+        index.transcriptsModified = transcriptsModified;
+        index.messages = new ArrayList<>(messages.size());
+        for (Message message : messages.values()) {
+            index.messages.add(new Index.Entry(message));
+        }
+        // Written aside and renamed, so a crash mid-write leaves the previous index
+        File temp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp))) {
+            gson.toJson(index, writer);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving message index", e);
+            return;
+        }
+        if (!temp.renameTo(indexFile)) {
+            Log.e(TAG, "Could not replace " + indexFile.getName());
+            temp.delete();
+        }
+    }
+
+    /**
+     * On-disk form of the index.
+     */
+    private static final class Index {
+        int version;
+        long transcriptsModified;
+        List<Entry> messages;
+
+        static final class Entry {
+            String filename;
+            long timestamp;
+            long durationMs;
+            long sizeBytes;
+            String callId;
+            boolean hasTranscript;
+
+            Entry() {
+                // For Gson
+            }
+
+            Entry(Message message) {
+                this.filename = message.getFilename();
+                this.timestamp = message.getTimestamp();
+                this.durationMs = message.getDurationMs();
+                this.sizeBytes = message.getSizeBytes();
+                this.callId = message.getCallId();
+                this.hasTranscript = message.hasTranscript();
+            }
+        }
+    }
+}
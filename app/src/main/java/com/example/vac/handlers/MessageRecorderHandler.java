@@ -4,25 +4,61 @@ import android.content.Context;
 import android.media.MediaRecorder;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.example.vac.models.Message;
+
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Handles recording of messages from callers using MediaRecorder.
- * Records the entire call from start to finish.
+ * Handles recording of messages from callers using MediaRecorder, or a
+ * {@link StreamingRecorder} in {@link Mode#STREAMING_AAC}.
+ * Records the entire call from start to finish. Finished recordings are handed to the
+ * {@link RecordingCompactor}, which cuts out silence and the assistant's own prompts.
  */
 public class MessageRecorderHandler {
     private static final String TAG = "MessageRecorderHandler";
+
+    /**
+     * How calls are recorded. The file name passed to {@link #startRecording} should end in the
+     * mode's extension.
+     */
+    public enum Mode {
+        /** AMR-NB in 3GP, recorded by MediaRecorder. */
+        MEDIA_RECORDER(".3gp"),
+        /** AAC-LC in ADTS, encoded from PCM that can also be tapped. */
+        STREAMING_AAC(StreamingRecorder.FILE_EXTENSION),
+        /**
+         * Like {@link #STREAMING_AAC}, but written as rolling {@link SegmentedRecording} segments
+         * that are stitched into the message file after the call.
+         */
+        SEGMENTED_AAC(StreamingRecorder.FILE_EXTENSION);
+
+        public final String fileExtension;
+
+        Mode(String fileExtension) {
+            this.fileExtension = fileExtension;
+        }
+    }
     
     private final Context context;
     private final MessageRecorderListener listener;
     private final Handler handler;
     
     private MediaRecorder mediaRecorder;
+    private StreamingRecorder streamingRecorder;
+    private StreamingRecorder.PcmTap pcmTap;
+    private Mode mode = Mode.MEDIA_RECORDER;
     private String currentFilePath;
     private boolean isRecording = false;
+    private long recordingStartMs;
+    private long recordingStartWallMs;
+    private long assistantStartMs = -1;
+    private final List<RecordingCompactor.Span> assistantSpans = new ArrayList<>();
     
     /**
      * Constructor for MessageRecorderHandler
@@ -36,6 +72,25 @@ public class MessageRecorderHandler {
         this.handler = new Handler(Looper.getMainLooper());
     }
     
+    /**
+     * Set how the next recording is made.
+     */
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Receive the recorded PCM while recording in {@link Mode#STREAMING_AAC}. Takes effect
+     * from the next recording.
+     */
+    public void setPcmTap(StreamingRecorder.PcmTap pcmTap) {
+        this.pcmTap = pcmTap;
+    }
+
     /**
      * Start recording a message
      * 
@@ -49,6 +104,16 @@ public class MessageRecorderHandler {
         File outputDir = context.getFilesDir();
         File outputFile = new File(outputDir, outputFileName);
         currentFilePath = outputFile.getAbsolutePath();
+        streamingRecorder = null;
+        recordingStartMs = SystemClock.elapsedRealtime();
+        recordingStartWallMs = System.currentTimeMillis();
+        assistantStartMs = -1;
+        assistantSpans.clear();
+
+        if (mode != Mode.MEDIA_RECORDER) {
+            startStreaming(outputFile);
+            return;
+        }
         
         try {
             mediaRecorder = new MediaRecorder();
@@ -88,16 +153,64 @@ public class MessageRecorderHandler {
         }
     }
     
+    private void startStreaming(File outputFile) {
+        streamingRecorder = mode == Mode.SEGMENTED_AAC
+                ? StreamingRecorder.segmented(SegmentedRecording.directoryFor(outputFile))
+                : new StreamingRecorder(outputFile);
+        if (pcmTap != null) {
+            streamingRecorder.addPcmTap(pcmTap);
+        }
+        try {
+            streamingRecorder.start();
+            isRecording = true;
+            Log.d(TAG, "Started streaming recording to: " + currentFilePath);
+            if (listener != null) {
+                listener.onRecordingStarted();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error starting StreamingRecorder", e);
+            streamingRecorder = null;
+            if (listener != null) {
+                listener.onRecordingError("Error starting StreamingRecorder: " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Stop recording the message
      */
     public void stopRecording() {
+        if (isRecording && streamingRecorder != null) {
+            boolean completed = streamingRecorder.stop();
+            isRecording = false;
+            File messageFile = new File(currentFilePath);
+            MessageLibrary library = MessageLibrary.getInstance(context);
+            if (mode == Mode.SEGMENTED_AAC) {
+                // Whatever made it to disk is kept, even if encoding failed
+                library.onSegmentedRecordingStopped(SegmentedRecording.directoryFor(messageFile), messageFile);
+            } else if (completed) {
+                library.onRecordingStopped(currentFilePath);
+            }
+            if (completed) {
+                Log.d(TAG, "Stopped streaming recording, " + streamingRecorder.getBytesWritten() + " bytes");
+                onRecordingFinished(library, messageFile);
+                if (listener != null) {
+                    listener.onRecordingStopped(currentFilePath, true);
+                }
+            } else if (listener != null) {
+                listener.onRecordingError("Error encoding recording");
+            }
+            return;
+        }
         if (isRecording && mediaRecorder != null) {
             try {
                 mediaRecorder.stop();
                 Log.d(TAG, "Stopped recording");
                 
                 String finalPath = currentFilePath;
+                MessageLibrary library = MessageLibrary.getInstance(context);
+                library.onRecordingStopped(finalPath);
+                onRecordingFinished(library, new File(finalPath));
                 
                 if (listener != null) {
                     listener.onRecordingStopped(finalPath, true);
@@ -115,6 +228,40 @@ public class MessageRecorderHandler {
         }
     }
     
+    /**
+     * Mark the start of the assistant speaking to the caller, whose echo in the recording is
+     * cut out afterwards.
+     */
+    public void onAssistantPlaybackStarted() {
+        if (isRecording && assistantStartMs < 0) {
+            assistantStartMs = SystemClock.elapsedRealtime() - recordingStartMs;
+        }
+    }
+
+    /**
+     * Mark the end of the assistant speaking.
+     */
+    public void onAssistantPlaybackStopped() {
+        if (isRecording && assistantStartMs >= 0) {
+            assistantSpans.add(new RecordingCompactor.Span(assistantStartMs, SystemClock.elapsedRealtime() - recordingStartMs));
+            assistantStartMs = -1;
+        }
+    }
+
+    /**
+     * Save when the recording started, for aligning the transcript, and queue compaction.
+     */
+    private void onRecordingFinished(MessageLibrary library, File messageFile) {
+        String callId = Message.callIdOf(messageFile.getName());
+        long startMillis = recordingStartWallMs;
+        library.runAfterPendingUpdates(() -> new TranscriptionManager(context).saveRecordingStart(callId, startMillis));
+        List<RecordingCompactor.Span> spans = new ArrayList<>(assistantSpans);
+        if (assistantStartMs >= 0) {
+            spans.add(new RecordingCompactor.Span(assistantStartMs, Long.MAX_VALUE)); // Still playing at hang-up
+        }
+        new RecordingCompactor(library).enqueue(messageFile, spans);
+    }
+
     /**
      * Release the MediaRecorder
      */
@@ -143,6 +290,31 @@ public class MessageRecorderHandler {
         }
     }
     
+    /**
+     * Directory whose completed segments can be played while recording in
+     * {@link Mode#SEGMENTED_AAC}, see {@link SegmentedRecording#completedSegments}.
+     *
+     * @return The directory, or null if not recording in that mode
+     */
+    public File getSegmentDirectory() {
+        return isRecording && mode == Mode.SEGMENTED_AAC ? SegmentedRecording.directoryFor(new File(currentFilePath)) : null;
+    }
+
+    /**
+     * Encoded bytes written by the current or last recording, 0 in {@link Mode#MEDIA_RECORDER}.
+     */
+    public long getBytesWritten() {
+        return streamingRecorder != null ? streamingRecorder.getBytesWritten() : 0;
+    }
+
+    /**
+     * How far the encoder trailed the microphone at the last frame written, 0 in
+     * {@link Mode#MEDIA_RECORDER}.
+     */
+    public long getEncoderLagMicros() {
+        return streamingRecorder != null ? streamingRecorder.getEncoderLagMicros() : 0;
+    }
+
     /**
      * Check if recording is currently in progress
      * 
@@ -7,6 +7,11 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
@@ -15,17 +20,38 @@ import com.example.vac.R;
 
 /**
  * Handles the creation and updating of notifications for the call screening service.
+ * Updates are coalesced and posted by a background thread, in order: the first update after a
+ * quiet period is posted without delay, later ones within {@link #MIN_UPDATE_INTERVAL_MS} only
+ * change the pending content, which is posted once the interval has passed. Updates that would not change the
+ * visible content are skipped, and the latest content is always delivered unless the
+ * notification is cancelled first.
  */
 public class NotificationHandler {
     private static final String TAG = "NotificationHandler";
     public static final int NOTIFICATION_ID = 1001;
     private static final String CHANNEL_ID = "VAC_CALL_SCREENING_CHANNEL";
     private static final String CHANNEL_NAME = "VAC Call Screening";
+    // The system drops notify() calls above ~5 per second per app
+    static final long MIN_UPDATE_INTERVAL_MS = 250;
     
     private final Context context;
     private final NotificationManager notificationManager;
     private NotificationCompat.Builder notificationBuilder;
     private Notification currentNotification;
+
+    // Builder, posting state and the flush thread are guarded by this lock
+    private final Object lock = new Object();
+    private final Runnable flushRunnable = this::flushPendingUpdate;
+    private HandlerThread flushThread;
+    private Handler flushHandler;
+    private boolean flushScheduled = false;
+    private long lastPostedAt = Long.MIN_VALUE / 2;
+    private String lastPostedContent;
+    private int skippedUpdates = 0;
+    // What the builder currently shows, kept here as the builder does not expose it
+    private CharSequence contentTitle;
+    private CharSequence contentText;
+    private final java.util.List<NotificationCompat.Action> contentActions = new java.util.ArrayList<>();
     
     public NotificationHandler(Context context) {
         this.context = context;
@@ -56,41 +82,63 @@ public class NotificationHandler {
      * @return The created Notification
      */
     public Notification showScreeningNotification(String initialMessage, PendingIntent takeOverPendingIntent, PendingIntent hangUpPendingIntent) {
-        // Create the notification builder
-        notificationBuilder = new NotificationCompat.Builder(context, CHANNEL_ID)
-                .setContentTitle(context.getString(R.string.notification_title_screening))
-                .setContentText(initialMessage)
-                .setSmallIcon(R.mipmap.ic_launcher)
-                .setPriority(NotificationCompat.PRIORITY_HIGH)
-                .setOngoing(true)
-                .setOnlyAlertOnce(true);
+        return showScreeningNotification(initialMessage, takeOverPendingIntent, hangUpPendingIntent, null);
+    }
+
+    /**
+     * Show a notification for the ongoing call screening session that opens a screen when tapped.
+     *
+     * @param contentPendingIntent The PendingIntent to execute when the notification is tapped
+     */
+    public Notification showScreeningNotification(String initialMessage, PendingIntent takeOverPendingIntent,
+                                                  PendingIntent hangUpPendingIntent, PendingIntent contentPendingIntent) {
+        synchronized (lock) {
+            contentTitle = context.getString(R.string.notification_title_screening);
+            contentText = initialMessage;
+            contentActions.clear();
+
+            // Create the notification builder
+            notificationBuilder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                    .setContentTitle(contentTitle)
+                    .setContentText(contentText)
+                    .setSmallIcon(R.mipmap.ic_launcher)
+                    .setPriority(NotificationCompat.PRIORITY_HIGH)
+                    .setOngoing(true)
+                    .setOnlyAlertOnce(true);
+            if (contentPendingIntent != null) {
+                notificationBuilder.setContentIntent(contentPendingIntent);
+            }
         
-        // Add the take over action if the intent is provided
-        if (takeOverPendingIntent != null) {
-            notificationBuilder.addAction(
-                    new NotificationCompat.Action(
-                        0,
-                        context.getString(R.string.notification_action_take_over),
-                        takeOverPendingIntent
-                    )
-            );
-        }
+            // Add the take over action if the intent is provided
+            if (takeOverPendingIntent != null) {
+                addAction(
+                        new NotificationCompat.Action(
+                            0,
+                            context.getString(R.string.notification_action_take_over),
+                            takeOverPendingIntent
+                        )
+                );
+            }
         
-        // Add the hang up action if the intent is provided
-        if (hangUpPendingIntent != null) {
-            notificationBuilder.addAction(
-                    new NotificationCompat.Action(
-                        0,
-                        context.getString(R.string.notification_action_hang_up),
-                        hangUpPendingIntent
-                    )
-            );
-        }
+            // Add the hang up action if the intent is provided
+            if (hangUpPendingIntent != null) {
+                addAction(
+                        new NotificationCompat.Action(
+                            0,
+                            context.getString(R.string.notification_action_hang_up),
+                            hangUpPendingIntent
+                        )
+                );
+            }
         
-        currentNotification = notificationBuilder.build();
-        notificationManager.notify(NOTIFICATION_ID, currentNotification);
+            // Posted directly: it is needed for startForeground and should not delay the first update
+            currentNotification = notificationBuilder.build();
+            notificationManager.notify(NOTIFICATION_ID, currentNotification);
+            lastPostedContent = contentOf();
+            lastPostedAt = SystemClock.uptimeMillis();
         
-        return currentNotification;
+            return currentNotification;
+        }
     }
     
     /**
@@ -99,12 +147,15 @@ public class NotificationHandler {
      * @param transcribedText The new transcribed text to display
      */
     public void updateTranscription(String transcribedText) {
-        if (notificationBuilder == null) {
-            return;
+        synchronized (lock) {
+            if (notificationBuilder == null) {
+                return;
+            }
+
+            contentText = transcribedText;
+            notificationBuilder.setContentText(transcribedText);
+            requestPost();
         }
-        
-        notificationBuilder.setContentText(transcribedText);
-        notificationManager.notify(NOTIFICATION_ID, notificationBuilder.build());
     }
     
     /**
@@ -115,33 +166,37 @@ public class NotificationHandler {
      * @param actions A list of NotificationCompat.Action to add. Clears existing actions if null or empty.
      */
     public void updateNotification(String title, String message, java.util.List<NotificationCompat.Action> actions) {
-        if (notificationBuilder == null) {
-            // Optionally, recreate the builder if we want to allow updating a cancelled notification
-            // For now, assume it only updates an existing, visible notification's builder
-            return;
-        }
+        synchronized (lock) {
+            if (notificationBuilder == null) {
+                // Optionally, recreate the builder if we want to allow updating a cancelled notification
+                // For now, assume it only updates an existing, visible notification's builder
+                return;
+            }
 
-        if (title != null) {
-            notificationBuilder.setContentTitle(title);
-        }
-        if (message != null) {
-            notificationBuilder.setContentText(message);
-        }
+            if (title != null) {
+                contentTitle = title;
+                notificationBuilder.setContentTitle(title);
+            }
+            if (message != null) {
+                contentText = message;
+                notificationBuilder.setContentText(message);
+            }
 
-        // Clear existing actions before adding new ones
-        notificationBuilder.mActions.clear();
-        if (actions != null) {
-            for (NotificationCompat.Action action : actions) {
-                notificationBuilder.addAction(action);
+            // Clear existing actions before adding new ones
+            notificationBuilder.mActions.clear();
+            contentActions.clear();
+            if (actions != null) {
+                for (NotificationCompat.Action action : actions) {
+                    addAction(action);
+                }
             }
-        }
         
-        // Ensure ongoing flag is appropriate. If actions are removed, it might not need to be ongoing.
-        // For simplicity, keeping it as is, but this could be refined.
-        // notificationBuilder.setOngoing(actions != null && !actions.isEmpty());
+            // Ensure ongoing flag is appropriate. If actions are removed, it might not need to be ongoing.
+            // For simplicity, keeping it as is, but this could be refined.
+            // notificationBuilder.setOngoing(actions != null && !actions.isEmpty());
 
-        currentNotification = notificationBuilder.build();
-        notificationManager.notify(NOTIFICATION_ID, currentNotification);
+            requestPost();
+        }
     }
     
     /**
@@ -149,15 +204,131 @@ public class NotificationHandler {
      * @return The current Notification object, or null if not built.
      */
     public Notification getCurrentNotification() {
-        return currentNotification;
+        synchronized (lock) {
+            return currentNotification;
+        }
     }
     
     /**
      * Cancel the notification.
      */
     public void cancelNotification() {
-        notificationManager.cancel(NOTIFICATION_ID);
-        notificationBuilder = null;
+        synchronized (lock) {
+            // Drop any pending update so it cannot bring the notification back
+            if (flushHandler != null) {
+                flushHandler.removeCallbacks(flushRunnable);
+            }
+            flushScheduled = false;
+            lastPostedContent = null;
+            notificationManager.cancel(NOTIFICATION_ID);
+            notificationBuilder = null;
+        }
+    }
+
+    /**
+     * Post any pending update now, e.g. before the final state must be visible.
+     */
+    public void flush() {
+        synchronized (lock) {
+            if (flushHandler != null) {
+                flushHandler.removeCallbacks(flushRunnable);
+            }
+            flushPendingUpdate();
+        }
+    }
+
+    /**
+     * Stop the background flush thread. Pending updates are posted first.
+     */
+    public void release() {
+        synchronized (lock) {
+            flush();
+            if (flushThread != null) {
+                flushThread.quitSafely();
+                flushThread = null;
+                flushHandler = null;
+            }
+        }
+    }
+
+    // For testing
+    int getSkippedUpdateCount() {
+        synchronized (lock) {
+            return skippedUpdates;
+        }
+    }
+
+    // For testing
+    Looper getFlushLooper() {
+        synchronized (lock) {
+            return flushThread != null ? flushThread.getLooper() : null;
+        }
+    }
+
+    /**
+     * Make sure a flush is scheduled, right away if the rate allows it; the builder already
+     * holds the latest content either way. Updates are only posted from the flush thread, so
+     * they reach the system in order. Must hold {@link #lock}.
+     */
+    private void requestPost() {
+        if (flushScheduled) {
+            return; // Coalesced into the scheduled flush
+        }
+        long dueAt = Math.max(SystemClock.uptimeMillis(), lastPostedAt + MIN_UPDATE_INTERVAL_MS);
+        if (flushHandler == null) {
+            flushThread = new HandlerThread("NotificationUpdates", Process.THREAD_PRIORITY_BACKGROUND);
+            flushThread.start();
+            flushHandler = new Handler(flushThread.getLooper());
+        }
+        flushScheduled = true;
+        flushHandler.postAtTime(flushRunnable, dueAt);
+    }
+
+    private void flushPendingUpdate() {
+        synchronized (lock) {
+            if (!flushScheduled) {
+                return;
+            }
+            flushScheduled = false;
+            if (notificationBuilder != null) {
+                postIfChanged();
+            }
+        }
+    }
+
+    private void postIfChanged() {
+        String content = contentOf();
+        if (content.equals(lastPostedContent)) {
+            skippedUpdates++;
+            return;
+        }
+        currentNotification = notificationBuilder.build();
+        notificationManager.notify(NOTIFICATION_ID, currentNotification);
+        lastPostedContent = content;
+        lastPostedAt = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Add an action to the builder and remember it. Must hold {@link #lock}.
+     */
+    private void addAction(NotificationCompat.Action action) {
+        notificationBuilder.addAction(action);
+        contentActions.add(action);
+    }
+
+    /**
+     * Everything an update can change, to detect updates that would not change anything.
+     * Must hold {@link #lock}.
+     */
+    private String contentOf() {
+        StringBuilder content = new StringBuilder()
+                .append(contentTitle).append('\u0000')
+                .append(contentText);
+        for (NotificationCompat.Action action : contentActions) {
+            content.append('\u0000').append(action.getTitle()).append('@')
+                    .append(System.identityHashCode(action.getActionIntent()));
+        }
+        return content.toString();
     }
 
     public NotificationCompat.Builder getNotificationBuilder() {
@@ -171,13 +342,15 @@ public class NotificationHandler {
      * @param newMessage The new message to display.
      */
     public void updateNotificationMessage(String newMessage) {
-        if (notificationBuilder == null) {
-            Log.w(TAG, "updateNotificationMessage called but notificationBuilder is null. Cannot update.");
-            return;
+        synchronized (lock) {
+            if (notificationBuilder == null) {
+                Log.w(TAG, "updateNotificationMessage called but notificationBuilder is null. Cannot update.");
+                return;
+            }
+            contentText = newMessage;
+            notificationBuilder.setContentText(newMessage);
+            requestPost();
         }
-        notificationBuilder.setContentText(newMessage);
-        currentNotification = notificationBuilder.build();
-        notificationManager.notify(NOTIFICATION_ID, currentNotification);
         Log.d(TAG, "Notification message updated: " + newMessage);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,614 @@
+package com.example.vac.handlers;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.vac.models.Message;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shrinks a finished recording by cutting silence and the assistant's own prompts, which make
+ * up much of a screened call, and re-encoding what is left as AAC.
+ * <p>
+ * The recording is decoded twice, streaming: once to measure the level of every
+ * {@link #FRAME_MS} frame, and once to encode only the frames worth keeping. A frame is kept if
+ * it is louder than {@link #SILENCE_DBFS} outside the assistant's playback, plus some padding
+ * around it; pauses shorter than {@link #MIN_CUT_MS} are kept too so speech does not sound
+ * chopped. A time map sidecar ({@link #TIME_MAP_SUFFIX}) maps positions in the compact file back
+ * to the original recording.
+ * <p>
+ * Jobs run one at a time on a background-priority thread. Recordings that would not get
+ * noticeably smaller are left alone, and so are those with almost nothing worth keeping, which
+ * are silent or could not be measured. Each job ends by generating the message's
+ * {@link WaveformPeaks}.
+ */
+public class RecordingCompactor {
+    private static final String TAG = "RecordingCompactor";
+    public static final String TIME_MAP_SUFFIX = ".timemap.json";
+
+    static final int FRAME_MS = 20;
+    static final float SILENCE_DBFS = -45f;
+    static final int PADDING_MS = 200;
+    static final int MIN_CUT_MS = 700;
+    static final int MIN_KEPT_MS = 1000; // Less is silence or a failed measurement, not a message
+    private static final double MIN_SAVING = 0.1; // Fraction of the original worth re-encoding for
+    private static final int BIT_RATE = 24000;
+    private static final long CODEC_TIMEOUT_US = 10_000;
+    private static final int MAX_CODEC_WAITS = 200; // Two seconds of a codec making no progress
+    private static final Gson GSON = new Gson();
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+    }, TAG));
+
+    /**
+     * A time range relative to the start of a recording.
+     */
+    public static final class Span {
+        public final long startMs;
+        public final long endMs;
+
+        public Span(long startMs, long endMs) {
+            this.startMs = startMs;
+            this.endMs = endMs;
+        }
+    }
+
+    /**
+     * A kept stretch of the original recording and where it is in the compact one.
+     */
+    public static final class TimeMapEntry {
+        public long compactStartMs;
+        public long originalStartMs;
+        public long durationMs;
+    }
+
+    private final MessageLibrary library;
+
+    public RecordingCompactor(@NonNull MessageLibrary library) {
+        this.library = library;
+    }
+
+    /**
+     * Compact a recording and generate its waveform peaks in the background, once the library
+     * has indexed it.
+     *
+     * @param assistantSpans When the assistant was playing, relative to the recording start
+     */
+    public void enqueue(@NonNull File recording, @NonNull List<Span> assistantSpans) {
+        library.runAfterPendingUpdates(() -> EXECUTOR.execute(() -> {
+            compact(recording, assistantSpans);
+            // Peaks are taken from whichever file is the message now
+            File compacted = new File(recording.getParentFile(),
+                    Message.callIdOf(recording.getName()) + StreamingRecorder.FILE_EXTENSION);
+            WaveformPeaks.generate(compacted.exists() ? compacted : recording);
+        }));
+    }
+
+    /**
+     * Compact a recording, replacing it with the compact file if that is worth it.
+     *
+     * @return Bytes saved, 0 if the recording was left alone
+     */
+    @WorkerThread
+    long compact(@NonNull File recording, @NonNull List<Span> assistantSpans) {
+        if (!recording.exists()) {
+            Log.w(TAG, "Not compacting missing " + recording.getName());
+            return 0;
+        }
+        long startNanos = System.nanoTime();
+        String callId = Message.callIdOf(recording.getName());
+        File directory = recording.getParentFile();
+        File temp = new File(directory, callId + ".compact.tmp");
+        File target = new File(directory, callId + StreamingRecorder.FILE_EXTENSION);
+        File timeMapFile = timeMapFor(target);
+        File timeMapTemp = new File(directory, timeMapFile.getName() + ".tmp");
+        try {
+            LevelMeter meter = new LevelMeter();
+            decode(recording, meter);
+            boolean[] keep = keepFrames(meter.levels, meter.frameCount, assistantFrames(assistantSpans, meter.frameCount));
+            int keptFrames = 0;
+            for (boolean kept : keep) {
+                keptFrames += kept ? 1 : 0;
+            }
+            if (!worthCompacting(keptFrames, meter.frameCount) || StreamingRecorder.adtsSampleRateIndex(meter.sampleRate) < 0) {
+                Log.d(TAG, "Leaving " + recording.getName() + " as is, keeping " + keptFrames + " of " + meter.frameCount + " frames");
+                return 0;
+            }
+
+            try (AacFileWriter writer = new AacFileWriter(temp, meter.sampleRate)) {
+                decode(recording, new KeptPcmWriter(keep, meter.samplesPerFrame, writer));
+                writer.finish();
+            }
+            long saved = recording.length() - temp.length();
+            if (saved < recording.length() * MIN_SAVING) {
+                Log.d(TAG, "Compact " + recording.getName() + " is not smaller enough, keeping original");
+                temp.delete();
+                return 0;
+            }
+
+            // Everything that can fail is written before the message is touched
+            writeTimeMap(timeMapTemp, timeMap(keep));
+            if (!temp.renameTo(target)) {
+                throw new IOException("Could not move compact recording to " + target.getName());
+            }
+            // The message is replaced now; the rest has to happen for the library to stay consistent
+            if (!timeMapTemp.renameTo(timeMapFile)) {
+                Log.e(TAG, "Could not move time map to " + timeMapFile.getName() + ", transcript times will be off");
+                timeMapTemp.delete();
+            }
+            if (!target.equals(recording)) {
+                if (!recording.delete()) {
+                    Log.w(TAG, "Could not delete original " + recording.getName());
+                }
+                library.remove(recording.getName());
+            }
+            library.add(target);
+            Log.i(TAG, "Compacted " + recording.getName() + " to " + keptFrames * FRAME_MS / 1000 + " of "
+                    + meter.frameCount * FRAME_MS / 1000 + " s, saved " + saved + " bytes in "
+                    + (System.nanoTime() - startNanos) / 1_000_000 + " ms");
+            return saved;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error compacting " + recording.getName(), e);
+            temp.delete();
+            timeMapTemp.delete();
+            return 0;
+        }
+    }
+
+    /**
+     * Whether cutting a recording down to the kept frames is worth it, and safe: a recording
+     * with next to nothing kept is left as it is rather than replaced with an empty file.
+     */
+    static boolean worthCompacting(int keptFrames, int frameCount) {
+        return keptFrames >= MIN_KEPT_MS / FRAME_MS && keptFrames <= frameCount * (1 - MIN_SAVING);
+    }
+
+    /**
+     * Frames that should stay in the compact recording.
+     *
+     * @param levelsDb Level of each frame in dBFS
+     * @param assistant Frames during which the assistant was playing
+     */
+    static boolean[] keepFrames(float[] levelsDb, int frameCount, boolean[] assistant) {
+        boolean[] keep = new boolean[frameCount];
+        int padding = PADDING_MS / FRAME_MS;
+        for (int i = 0; i < frameCount; i++) {
+            if (levelsDb[i] > SILENCE_DBFS && !assistant[i]) {
+                Arrays.fill(keep, Math.max(0, i - padding), Math.min(frameCount, i + padding + 1), true);
+            }
+        }
+        // Leading and trailing gaps always go; short gaps between kept frames stay
+        int minCut = MIN_CUT_MS / FRAME_MS;
+        int start = 0;
+        while (start < frameCount) {
+            if (keep[start]) {
+                start++;
+                continue;
+            }
+            int end = start;
+            while (end < frameCount && !keep[end]) {
+                end++;
+            }
+            if (start > 0 && end < frameCount && end - start < minCut) {
+                Arrays.fill(keep, start, end, true);
+            }
+            start = end;
+        }
+        return keep;
+    }
+
+    static boolean[] assistantFrames(List<Span> spans, int frameCount) {
+        boolean[] assistant = new boolean[frameCount];
+        for (Span span : spans) {
+            int from = (int) Math.max(0, span.startMs / FRAME_MS);
+            int to = (int) Math.min(frameCount, (span.endMs + FRAME_MS - 1) / FRAME_MS);
+            if (from < to) {
+                Arrays.fill(assistant, from, to, true);
+            }
+        }
+        return assistant;
+    }
+
+    static List<TimeMapEntry> timeMap(boolean[] keep) {
+        List<TimeMapEntry> entries = new ArrayList<>();
+        long compactMs = 0;
+        int start = 0;
+        while (start < keep.length) {
+            if (!keep[start]) {
+                start++;
+                continue;
+            }
+            int end = start;
+            while (end < keep.length && keep[end]) {
+                end++;
+            }
+            TimeMapEntry entry = new TimeMapEntry();
+            entry.compactStartMs = compactMs;
+            entry.originalStartMs = (long) start * FRAME_MS;
+            entry.durationMs = (long) (end - start) * FRAME_MS;
+            entries.add(entry);
+            compactMs += entry.durationMs;
+            start = end;
+        }
+        return entries;
+    }
+
+    /**
+     * Position in the original recording for a position in the compact one.
+     */
+    public static long toOriginalMs(@NonNull List<TimeMapEntry> timeMap, long compactMs) {
+        for (int i = timeMap.size() - 1; i >= 0; i--) {
+            TimeMapEntry entry = timeMap.get(i);
+            if (compactMs >= entry.compactStartMs) {
+                return entry.originalStartMs + compactMs - entry.compactStartMs;
+            }
+        }
+        return compactMs;
+    }
+
+    /**
+     * Position in the compact recording for a position in the original one. Positions that were
+     * cut map to where the recording resumes.
+     */
+    public static long toCompactMs(@NonNull List<TimeMapEntry> timeMap, long originalMs) {
+        for (int i = timeMap.size() - 1; i >= 0; i--) {
+            TimeMapEntry entry = timeMap.get(i);
+            if (originalMs >= entry.originalStartMs) {
+                return entry.compactStartMs + Math.min(originalMs - entry.originalStartMs, entry.durationMs);
+            }
+        }
+        return 0;
+    }
+
+    @NonNull
+    public static File timeMapFor(@NonNull File messageFile) {
+        return new File(messageFile.getParentFile(), Message.callIdOf(messageFile.getName()) + TIME_MAP_SUFFIX);
+    }
+
+    /**
+     * Time map of a compacted message.
+     *
+     * @return The map, or null if the message was not compacted
+     */
+    @Nullable
+    public static List<TimeMapEntry> readTimeMap(@NonNull File messageFile) {
+        File file = timeMapFor(messageFile);
+        if (!file.exists()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            List<TimeMapEntry> entries = GSON.fromJson(reader, new TypeToken<List<TimeMapEntry>>() {}.getType());
+            return entries != null ? entries : Collections.emptyList();
+        } catch (IOException | JsonParseException e) {
+            Log.e(TAG, "Error reading " + file.getName(), e);
+            return null;
+        }
+    }
+
+    private static void writeTimeMap(File file, List<TimeMapEntry> entries) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            GSON.toJson(entries, writer);
+        }
+    }
+
+    /**
+     * Receives decoded PCM, downmixed to mono.
+     */
+    interface PcmSink {
+        void onPcm(short[] samples, int count, int sampleRate) throws IOException;
+    }
+
+    /**
+     * Decode the first audio track of a file, blocking until all of it went to the sink.
+     */
+    static void decode(File file, PcmSink sink) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec decoder = null;
+        try {
+            extractor.setDataSource(file.getAbsolutePath());
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount() && format == null; i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String mime = candidate.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = candidate;
+                }
+            }
+            if (format == null) {
+                throw new IOException("No audio track in " + file.getName());
+            }
+            decoder = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            decoder.configure(format, null, null, 0);
+            decoder.start();
+
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            short[] mono = new short[0];
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            int waits = 0;
+            while (true) {
+                boolean progress = false;
+                if (!inputDone) {
+                    int inputIndex = decoder.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                    if (inputIndex >= 0) {
+                        progress = true;
+                        int size = extractor.readSampleData(decoder.getInputBuffer(inputIndex), 0);
+                        if (size < 0) {
+                            decoder.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            decoder.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                int outputIndex = decoder.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+                if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    progress = true;
+                    MediaFormat outputFormat = decoder.getOutputFormat();
+                    sampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channels = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                } else if (outputIndex >= 0) {
+                    progress = true;
+                    ByteBuffer output = decoder.getOutputBuffer(outputIndex);
+                    output.position(info.offset);
+                    output.limit(info.offset + info.size);
+                    ShortBuffer pcm = output.order(ByteOrder.nativeOrder()).asShortBuffer();
+                    int count = pcm.remaining() / channels;
+                    if (mono.length < count) {
+                        mono = new short[count];
+                    }
+                    for (int i = 0; i < count; i++) {
+                        int sum = 0;
+                        for (int channel = 0; channel < channels; channel++) {
+                            sum += pcm.get();
+                        }
+                        mono[i] = (short) (sum / channels);
+                    }
+                    decoder.releaseOutputBuffer(outputIndex, false);
+                    sink.onPcm(mono, count, sampleRate);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        return;
+                    }
+                }
+                waits = progress ? 0 : waits + 1;
+                if (waits > MAX_CODEC_WAITS) {
+                    throw new IOException("Decoder stalled on " + file.getName());
+                }
+            }
+        } finally {
+            if (decoder != null) {
+                try {
+                    decoder.stop();
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Error stopping decoder", e);
+                }
+                decoder.release();
+            }
+            extractor.release();
+        }
+    }
+
+    /**
+     * First pass: the level of every frame.
+     */
+    private static final class LevelMeter implements PcmSink {
+        float[] levels = new float[1024];
+        int frameCount;
+        int sampleRate;
+        int samplesPerFrame;
+        private double sumOfSquares;
+        private int samplesInFrame;
+
+        @Override
+        public void onPcm(short[] samples, int count, int rate) {
+            if (samplesPerFrame == 0) {
+                sampleRate = rate;
+                samplesPerFrame = rate * FRAME_MS / 1000;
+            }
+            for (int i = 0; i < count; i++) {
+                sumOfSquares += samples[i] * samples[i];
+                if (++samplesInFrame == samplesPerFrame) {
+                    if (frameCount == levels.length) {
+                        levels = Arrays.copyOf(levels, levels.length * 2);
+                    }
+                    double meanSquare = sumOfSquares / samplesPerFrame;
+                    levels[frameCount++] = meanSquare > 0
+                            ? (float) (10 * Math.log10(meanSquare / ((double) Short.MAX_VALUE * Short.MAX_VALUE)))
+                            : -120f;
+                    sumOfSquares = 0;
+                    samplesInFrame = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Second pass: hands the samples of kept frames to the encoder.
+     */
+    private static final class KeptPcmWriter implements PcmSink {
+        private final boolean[] keep;
+        private final int samplesPerFrame;
+        private final AacFileWriter writer;
+        private long samplePosition;
+
+        KeptPcmWriter(boolean[] keep, int samplesPerFrame, AacFileWriter writer) {
+            this.keep = keep;
+            this.samplesPerFrame = samplesPerFrame;
+            this.writer = writer;
+        }
+
+        @Override
+        public void onPcm(short[] samples, int count, int sampleRate) throws IOException {
+            int runStart = -1;
+            for (int i = 0; i < count; i++, samplePosition++) {
+                // The partial frame at the end has no level and goes with the last whole one
+                int frame = (int) Math.min(samplePosition / samplesPerFrame, keep.length - 1);
+                boolean kept = frame >= 0 && keep[frame];
+                if (kept && runStart < 0) {
+                    runStart = i;
+                } else if (!kept && runStart >= 0) {
+                    writer.write(samples, runStart, i - runStart);
+                    runStart = -1;
+                }
+            }
+            if (runStart >= 0) {
+                writer.write(samples, runStart, count - runStart);
+            }
+        }
+    }
+
+    /**
+     * Encodes mono PCM to an ADTS AAC file, synchronously.
+     */
+    private static final class AacFileWriter implements Closeable {
+        private final int sampleRate;
+        private final MediaCodec encoder;
+        private final FileChannel channel;
+        private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        private final ByteBuffer header = ByteBuffer.allocateDirect(StreamingRecorder.ADTS_HEADER_SIZE);
+        private final ByteBuffer[] frameParts = new ByteBuffer[2];
+        private long samplesQueued;
+
+        AacFileWriter(File file, int sampleRate) throws IOException {
+            this.sampleRate = sampleRate;
+            MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, sampleRate, 1);
+            format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+            format.setInteger(MediaFormat.KEY_BIT_RATE, BIT_RATE);
+            encoder = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AAC);
+            try {
+                encoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+                encoder.start();
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                encoder.release();
+                throw e;
+            }
+        }
+
+        void write(short[] samples, int offset, int count) throws IOException {
+            int waits = 0;
+            while (count > 0) {
+                int index = encoder.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                if (index < 0) {
+                    if (++waits > MAX_CODEC_WAITS) {
+                        throw new IOException("Encoder stalled");
+                    }
+                    drain(false);
+                    continue;
+                }
+                waits = 0;
+                ByteBuffer input = encoder.getInputBuffer(index);
+                input.clear();
+                int length = Math.min(count, input.remaining() / 2);
+                input.order(ByteOrder.nativeOrder()).asShortBuffer().put(samples, offset, length);
+                encoder.queueInputBuffer(index, 0, length * 2, samplesQueued * 1_000_000L / sampleRate, 0);
+                samplesQueued += length;
+                offset += length;
+                count -= length;
+                drain(false);
+            }
+        }
+
+        void finish() throws IOException {
+            int index;
+            int waits = 0;
+            while ((index = encoder.dequeueInputBuffer(CODEC_TIMEOUT_US)) < 0) {
+                if (++waits > MAX_CODEC_WAITS) {
+                    throw new IOException("Encoder stalled");
+                }
+                drain(false);
+            }
+            encoder.queueInputBuffer(index, 0, 0, samplesQueued * 1_000_000L / sampleRate,
+                    MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            drain(true);
+        }
+
+        /**
+         * Write out what the encoder has produced, or everything up to the end of the stream.
+         */
+        private void drain(boolean toEnd) throws IOException {
+            int attempts = 0;
+            while (true) {
+                int index = encoder.dequeueOutputBuffer(info, toEnd ? CODEC_TIMEOUT_US : 0);
+                if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                    if (!toEnd) {
+                        return;
+                    }
+                    if (++attempts > MAX_CODEC_WAITS) {
+                        throw new IOException("Encoder did not finish");
+                    }
+                    continue;
+                }
+                if (index < 0) {
+                    if (++attempts > MAX_CODEC_WAITS) {
+                        throw new IOException("Encoder did not finish");
+                    }
+                    continue; // Output format changed; ADTS headers carry what is needed
+                }
+                if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && info.size > 0) {
+                    ByteBuffer frame = encoder.getOutputBuffer(index);
+                    frame.position(info.offset);
+                    frame.limit(info.offset + info.size);
+                    header.clear();
+                    StreamingRecorder.writeAdtsHeader(header, StreamingRecorder.ADTS_HEADER_SIZE + info.size, sampleRate, 1);
+                    header.flip();
+                    frameParts[0] = header;
+                    frameParts[1] = frame;
+                    while (frame.hasRemaining()) {
+                        channel.write(frameParts);
+                    }
+                }
+                encoder.releaseOutputBuffer(index, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                encoder.stop();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Error stopping encoder", e);
+            }
+            encoder.release();
+            channel.close();
+        }
+    }
+}
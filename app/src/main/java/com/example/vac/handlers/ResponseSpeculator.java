@@ -0,0 +1,155 @@
+package com.example.vac.handlers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.vac.handlers.IntentClassifier.Intent;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pre-renders likely assistant responses to audio files while the caller is still speaking.
+ * Partial transcripts are classified as they stream in and the best candidates are synthesized
+ * in the background, so once the final transcript confirms an intent its response can start
+ * playing without waiting for TTS. Responses only depend on the intent, so a render stays
+ * valid for the rest of the call. Files are named per session, so sessions that overlap (call
+ * waiting, or one still releasing as the next starts) never play or delete each other's.
+ * <p>
+ * Methods may be called from the session thread while synthesis completes on the TTS thread.
+ */
+public class ResponseSpeculator {
+    private static final String TAG = "ResponseSpeculator";
+    private static final String FILE_PREFIX = "speculative_response_";
+    static final int MAX_CANDIDATES = 2;
+    // Seeded with the clock so files left by an earlier process are not reused
+    private static final AtomicLong NEXT_SESSION = new AtomicLong(System.currentTimeMillis());
+
+    private enum RenderState {
+        PENDING,
+        READY,
+        FAILED // Only passed to finishRender, never kept
+    }
+
+    private final Context context;
+    private final IntentClassifier classifier;
+    private final File outputDir;
+    private final long session = NEXT_SESSION.getAndIncrement();
+    private final Map<Intent, RenderState> renders = new EnumMap<>(Intent.class);
+    private int hits;
+    private int misses;
+
+    public ResponseSpeculator(Context context, IntentClassifier classifier) {
+        this.context = context;
+        this.classifier = classifier;
+        this.outputDir = context.getCacheDir();
+    }
+
+    /**
+     * Start rendering the responses for the most likely intents of a partial transcript.
+     * Intents already rendered (or being rendered) are skipped.
+     */
+    public synchronized void onPartialResult(@Nullable AudioHandler audioHandler, String partialText) {
+        if (audioHandler == null || outputDir == null) {
+            return;
+        }
+        List<Intent> candidates = classifier.rank(partialText);
+        for (int i = 0; i < Math.min(MAX_CANDIDATES, candidates.size()); i++) {
+            prerender(audioHandler, candidates.get(i));
+        }
+    }
+
+    /**
+     * Get the pre-rendered response for the confirmed intent, counting a hit or a miss.
+     * {@link Intent#OTHER} is never rendered ahead and is not counted.
+     *
+     * @param intent Intent of the final transcript
+     * @return The rendered audio file, or null if it is not ready and must be spoken live
+     */
+    @Nullable
+    public synchronized File claim(Intent intent) {
+        if (intent == Intent.OTHER) {
+            return null; // Never speculated, so neither a hit nor a miss
+        }
+        File file = fileFor(intent);
+        if (renders.get(intent) == RenderState.READY && file.exists()) {
+            hits++;
+            Log.d(TAG, "Speculation hit for " + intent + " (" + hits + "/" + (hits + misses) + ")");
+            return file;
+        }
+        misses++;
+        Log.d(TAG, "Speculation miss for " + intent + ", render state " + renders.get(intent));
+        return null;
+    }
+
+    public synchronized int getHitCount() {
+        return hits;
+    }
+
+    public synchronized int getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Delete this session's rendered files. Renders still in flight are deleted when they
+     * complete.
+     */
+    public synchronized void release() {
+        if (hits + misses > 0) {
+            Log.i(TAG, "Speculation hit rate this call: " + hits + "/" + (hits + misses));
+        }
+        for (Intent intent : renders.keySet()) {
+            File file = fileFor(intent);
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Could not delete " + file);
+            }
+        }
+        renders.clear();
+    }
+
+    private void prerender(AudioHandler audioHandler, Intent intent) {
+        if (renders.containsKey(intent)) {
+            return;
+        }
+        renders.put(intent, RenderState.PENDING);
+        Log.d(TAG, "Pre-rendering response for " + intent);
+        audioHandler.synthesizeToFile(context.getString(intent.responseTemplate), fileFor(intent),
+                new AudioHandler.SynthesisCallback() {
+                    @Override
+                    public void onSuccess(String filePath) {
+                        finishRender(intent, RenderState.READY);
+                    }
+
+                    @Override
+                    public void onError(String errorMessage) {
+                        Log.w(TAG, "Pre-rendering " + intent + " failed: " + errorMessage);
+                        finishRender(intent, RenderState.FAILED);
+                    }
+                });
+    }
+
+    private synchronized void finishRender(Intent intent, RenderState state) {
+        boolean released = renders.get(intent) != RenderState.PENDING;
+        if (released || state == RenderState.FAILED) {
+            // A failed render, e.g. flushed by a prompt, is forgotten so the next partial result
+            // renders it again
+            renders.remove(intent);
+            File file = fileFor(intent);
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Could not delete " + file);
+            }
+        } else {
+            renders.put(intent, state);
+        }
+    }
+
+    private File fileFor(Intent intent) {
+        return new File(outputDir, FILE_PREFIX + session + "_" + intent.name().toLowerCase(Locale.ROOT) + ".wav");
+    }
+}
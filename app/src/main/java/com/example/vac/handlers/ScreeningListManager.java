@@ -0,0 +1,87 @@
+package com.example.vac.handlers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.vac.models.ScreeningLists;
+import com.example.vac.utils.NumberListIndex;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Stores the allow/block lists used to decide calls before screening starts, and compiles
+ * them into a {@link NumberListIndex} for the service to consult on the call path.
+ */
+public class ScreeningListManager {
+    private static final String TAG = "ScreeningListManager";
+    private static final String LISTS_FILE = "screening_lists.json";
+
+    private final Gson gson;
+    private final File listsFile;
+
+    public ScreeningListManager(@NonNull Context context) {
+        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        File filesDir = context.getFilesDir();
+        this.listsFile = filesDir != null ? new File(filesDir, LISTS_FILE) : null;
+    }
+
+    /**
+     * Read the stored lists.
+     *
+     * @return The lists, empty if none are stored or the file cannot be read
+     */
+    @NonNull
+    public ScreeningLists load() {
+        if (listsFile == null || !listsFile.exists()) {
+            return new ScreeningLists();
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(listsFile))) {
+            ScreeningLists lists = gson.fromJson(reader, ScreeningLists.class);
+            return lists != null ? lists : new ScreeningLists();
+        } catch (IOException | JsonParseException e) {
+            Log.e(TAG, "Error reading screening lists", e);
+            return new ScreeningLists();
+        }
+    }
+
+    /**
+     * Replace the stored lists. Takes effect the next time the screening service is created.
+     *
+     * @return true if saved successfully, false otherwise
+     */
+    public boolean save(@NonNull ScreeningLists lists) {
+        if (listsFile == null) {
+            return false;
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(listsFile))) {
+            gson.toJson(lists, writer);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving screening lists", e);
+            return false;
+        }
+    }
+
+    /**
+     * Load the stored lists and compile them for lookups.
+     */
+    @NonNull
+    public NumberListIndex loadIndex() {
+        ScreeningLists lists = load();
+        NumberListIndex index = NumberListIndex.build(
+                lists.getAllowedNumbers(), lists.getBlockedNumbers(), lists.getBlockedPrefixes());
+        Log.i(TAG, "Loaded screening index with " + index.size() + " numbers and "
+                + lists.getBlockedPrefixes().size() + " blocked ranges");
+        return index;
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.vac.handlers;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.vac.models.Message;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A recording written as a directory of fixed-length ADTS segment files plus a manifest listing
+ * the segments that are complete. Segments can be played while the call is still going, and a
+ * crash loses at most the segment being written.
+ * <p>
+ * ADTS frames are self-contained, so the finished recording is simply the segments joined in
+ * order ({@link #stitch}). Directories left behind by a process that died mid-call are stitched
+ * by {@link #recoverAbandoned}.
+ * <p>
+ * The writing side is used only from the encoder thread.
+ */
+public class SegmentedRecording {
+    private static final String TAG = "SegmentedRecording";
+    public static final String DIR_SUFFIX = ".segments";
+    static final long SEGMENT_DURATION_US = 10_000_000;
+    private static final String MANIFEST_FILE = "manifest.json";
+    private static final String SEGMENT_PREFIX = "segment_";
+    private static final int MANIFEST_VERSION = 1;
+    private static final Gson GSON = new Gson();
+
+    /**
+     * One complete segment file.
+     */
+    public static final class Segment {
+        public String file;
+        public long startUs;
+        public long durationUs;
+        public long bytes;
+    }
+
+    /**
+     * On-disk form of the manifest.
+     */
+    private static final class Manifest {
+        int version = MANIFEST_VERSION;
+        boolean complete;
+        List<Segment> segments = new ArrayList<>();
+    }
+
+    private final File directory;
+    private final long frameDurationUs;
+    private final Manifest manifest = new Manifest();
+    private FileChannel current;
+    private Segment currentSegment;
+
+    /**
+     * @param directory Directory for the segments, created on {@link #open}
+     * @param frameDurationUs Duration of one encoded frame, to tell where a segment ends
+     */
+    SegmentedRecording(@NonNull File directory, long frameDurationUs) {
+        this.directory = directory;
+        this.frameDurationUs = frameDurationUs;
+    }
+
+    /**
+     * Directory holding the segments of a message while it is recorded.
+     */
+    @NonNull
+    public static File directoryFor(@NonNull File messageFile) {
+        return new File(messageFile.getParentFile(), Message.callIdOf(messageFile.getName()) + DIR_SUFFIX);
+    }
+
+    void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        writeManifest();
+    }
+
+    /**
+     * Channel to write the frame starting at this time to, rolling over to a new segment when
+     * the current one is full.
+     */
+    FileChannel channelFor(long presentationTimeUs) throws IOException {
+        if (current != null && presentationTimeUs - currentSegment.startUs >= SEGMENT_DURATION_US) {
+            closeSegment();
+            writeManifest();
+        }
+        if (current == null) {
+            currentSegment = new Segment();
+            currentSegment.file = String.format(Locale.ROOT, "%s%05d.aac", SEGMENT_PREFIX, manifest.segments.size());
+            currentSegment.startUs = presentationTimeUs;
+            current = FileChannel.open(new File(directory, currentSegment.file).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        return current;
+    }
+
+    void onFrameWritten(long presentationTimeUs, int length) {
+        currentSegment.bytes += length;
+        currentSegment.durationUs = presentationTimeUs + frameDurationUs - currentSegment.startUs;
+    }
+
+    /**
+     * Close the last segment and record whether the recording ended normally.
+     */
+    void close(boolean complete) throws IOException {
+        closeSegment();
+        manifest.complete = complete;
+        writeManifest();
+    }
+
+    private void closeSegment() throws IOException {
+        if (current == null) {
+            return;
+        }
+        current.close();
+        current = null;
+        manifest.segments.add(currentSegment);
+        currentSegment = null;
+    }
+
+    private void writeManifest() throws IOException {
+        // Written aside and renamed, so a reader never sees half a manifest
+        File temp = new File(directory, MANIFEST_FILE + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp))) {
+            GSON.toJson(manifest, writer);
+        }
+        if (!temp.renameTo(new File(directory, MANIFEST_FILE))) {
+            throw new IOException("Could not replace manifest in " + directory);
+        }
+    }
+
+    /**
+     * Segments of a recording that are complete, in order. Can be called while recording.
+     *
+     * @return The segments, empty if there is no readable manifest
+     */
+    @NonNull
+    public static List<Segment> completedSegments(@NonNull File directory) {
+        Manifest manifest = readManifest(directory);
+        return manifest != null ? manifest.segments : Collections.emptyList();
+    }
+
+    @Nullable
+    private static Manifest readManifest(File directory) {
+        File file = new File(directory, MANIFEST_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            Manifest manifest = GSON.fromJson(reader, Manifest.class);
+            return manifest != null && manifest.version == MANIFEST_VERSION && manifest.segments != null ? manifest : null;
+        } catch (IOException | JsonParseException e) {
+            Log.w(TAG, "Unreadable manifest in " + directory.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Join all segment files into the target and delete the segment directory. Segments that
+     * never made it into the manifest (the one being written when the process died) are
+     * included too; a frame cut short at the end is skipped by players.
+     *
+     * @return true if the target was written
+     */
+    @WorkerThread
+    public static boolean stitch(@NonNull File directory, @NonNull File target) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX));
+        if (files == null) {
+            return false;
+        }
+        if (files.length == 0) {
+            deleteDirectory(directory); // Died before any audio was written
+            return false;
+        }
+        Arrays.sort(files); // Zero-padded names sort in recording order
+        File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (File file : files) {
+                try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = in.size();
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error stitching " + directory.getName(), e);
+            temp.delete();
+            return false;
+        }
+        if (!temp.renameTo(target)) {
+            Log.e(TAG, "Could not move stitched recording to " + target.getName());
+            temp.delete();
+            return false;
+        }
+        deleteDirectory(directory);
+        Log.i(TAG, "Stitched " + files.length + " segments into " + target.getName());
+        return true;
+    }
+
+    /**
+     * Stitch segment directories whose recording has not been written to for a while, i.e.
+     * whose recorder died before it could finish them.
+     *
+     * @param idleMillis How long a manifest must be untouched to count as abandoned; longer
+     *                   than a segment so live recordings are left alone
+     * @return Number of recordings recovered
+     */
+    @WorkerThread
+    public static int recoverAbandoned(@NonNull File filesDir, long idleMillis) {
+        File[] directories = filesDir.listFiles(file -> file.isDirectory() && file.getName().endsWith(DIR_SUFFIX));
+        if (directories == null) {
+            return 0;
+        }
+        int recovered = 0;
+        long now = System.currentTimeMillis();
+        for (File directory : directories) {
+            if (now - new File(directory, MANIFEST_FILE).lastModified() < idleMillis) {
+                continue;
+            }
+            String name = directory.getName();
+            File target = new File(filesDir, name.substring(0, name.length() - DIR_SUFFIX.length())
+                    + StreamingRecorder.FILE_EXTENSION);
+            if (target.exists()) {
+                deleteDirectory(directory); // Stitched before, but not cleaned up
+            } else if (stitch(directory, target)) {
+                recovered++;
+            }
+        }
+        return recovered;
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    Log.w(TAG, "Could not delete " + file);
+                }
+            }
+        }
+        if (!directory.delete()) {
+            Log.w(TAG, "Could not delete " + directory);
+        }
+    }
+}
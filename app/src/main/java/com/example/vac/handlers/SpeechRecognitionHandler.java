@@ -25,6 +25,7 @@ public class SpeechRecognitionHandler {
     public interface SpeechRecognitionCallbacks {
         void onReadyForSpeech();
         void onSpeechResult(String transcribedText);
+        void onPartialSpeechResult(String partialText);
         void onEndOfSpeech();
         void onSpeechError(String errorMessage, int errorCode);
     }
@@ -181,12 +182,9 @@ public class SpeechRecognitionHandler {
             if (matches != null && !matches.isEmpty()) {
                 String text = matches.get(0);
                 Log.d(TAG, "onPartialResults: " + text);
-                // For MVP, we primarily care about final results for transcription display.
-                // If live update of partial results is needed for the notification,
-                // the listener interface would need an onPartialSpeechResult callback.
-                // For now, we will send partial results through the main onSpeechResult.
-                 if (listener != null) {
-                    listener.onSpeechResult(text);
+                // Final results still arrive through onResults; partials only feed speculation.
+                if (listener != null) {
+                    listener.onPartialSpeechResult(text);
                 }
             }
         }
@@ -0,0 +1,471 @@
+package com.example.vac.handlers;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the call as PCM from an {@link AudioRecord} and encodes it to AAC-LC with an
+ * asynchronous {@link MediaCodec}, writing ADTS frames to the output file as they come out of
+ * the encoder. Unlike {@link MediaRecorder}, the PCM can also be handed to other consumers
+ * through {@link PcmTap}s.
+ * <p>
+ * A dedicated thread reads PCM into a fixed pool of direct buffers and hands them to the
+ * encoder thread, which feeds the codec and writes its output through a {@link FileChannel}.
+ * If the encoder falls so far behind that the pool runs dry, audio is dropped (and counted)
+ * rather than letting the microphone overrun.
+ * <p>
+ * The output is either a single file or, for {@link #segmented}, a {@link SegmentedRecording}.
+ * <p>
+ * {@link #getBytesWritten()} and {@link #getEncoderLagMicros()} can be read from any thread
+ * while recording.
+ */
+public class StreamingRecorder {
+    private static final String TAG = "StreamingRecorder";
+    public static final String FILE_EXTENSION = ".aac";
+
+    static final int SAMPLE_RATE = 16000;
+    private static final int[] ADTS_SAMPLE_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350};
+    private static final long FRAME_DURATION_US = 1024 * 1_000_000L / SAMPLE_RATE; // AAC frames are 1024 samples
+    private static final int CHANNEL_COUNT = 1;
+    private static final int BIT_RATE = 32000;
+    private static final int CHUNK_BYTES = 2048; // 64 ms of 16-bit mono PCM
+    private static final int POOL_SIZE = 16; // About one second of audio waiting for the encoder
+    static final int ADTS_HEADER_SIZE = 7;
+    private static final long STOP_TIMEOUT_MS = 2000;
+
+    /**
+     * Receives the recorded PCM (16 kHz, 16-bit mono) on the reader thread. The buffer is only
+     * valid during the call and must not be kept.
+     */
+    public interface PcmTap {
+        void onPcm(@NonNull ByteBuffer pcm, long presentationTimeUs);
+    }
+
+    /**
+     * A pooled PCM buffer with the capture time of its first sample.
+     */
+    private static final class Chunk {
+        final ByteBuffer data = ByteBuffer.allocateDirect(CHUNK_BYTES);
+        long presentationTimeUs;
+    }
+
+    private final File outputFile;
+    @Nullable
+    private final SegmentedRecording segments;
+    private final List<PcmTap> taps = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<Chunk> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final Chunk scratch = new Chunk(); // Read into when the pool is empty, then dropped
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private AudioRecord audioRecord;
+    private MediaCodec codec;
+    private FileChannel channel;
+    private HandlerThread encoderThread;
+    private Handler encoderHandler;
+    private Thread readerThread;
+    private volatile boolean recording;
+    private volatile boolean succeeded;
+    private long startNanos;
+
+    // Encoder thread only
+    private final ArrayDeque<Chunk> pendingPcm = new ArrayDeque<>();
+    private final ArrayDeque<Integer> freeInputs = new ArrayDeque<>();
+    private final ByteBuffer adtsHeader = ByteBuffer.allocateDirect(ADTS_HEADER_SIZE);
+    private final ByteBuffer[] frameParts = new ByteBuffer[2];
+    private boolean endOfInput;
+    private boolean endOfStreamQueued;
+    private long lastPresentationTimeUs;
+    private boolean done;
+
+    private volatile long bytesWritten;
+    private volatile long encoderLagMicros;
+    private volatile long maxEncoderLagMicros;
+    private volatile int droppedChunks;
+
+    public StreamingRecorder(@NonNull File outputFile) {
+        this(outputFile, null);
+    }
+
+    private StreamingRecorder(@NonNull File outputFile, @Nullable SegmentedRecording segments) {
+        this.outputFile = outputFile;
+        this.segments = segments;
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool.add(new Chunk());
+        }
+    }
+
+    /**
+     * Recorder writing rolling segments to the given directory instead of a single file.
+     */
+    @NonNull
+    public static StreamingRecorder segmented(@NonNull File segmentDirectory) {
+        return new StreamingRecorder(segmentDirectory, new SegmentedRecording(segmentDirectory, FRAME_DURATION_US));
+    }
+
+    public void addPcmTap(@NonNull PcmTap tap) {
+        taps.add(tap);
+    }
+
+    /**
+     * Open the output file, microphone and encoder, and start recording.
+     *
+     * @throws IOException if any of them cannot be set up; nothing is left open
+     */
+    public void start() throws IOException {
+        try {
+            if (segments != null) {
+                segments.open();
+            } else {
+                channel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+
+            int minBufferSize = AudioRecord.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO,
+                    AudioFormat.ENCODING_PCM_16BIT);
+            audioRecord = new AudioRecord(MediaRecorder.AudioSource.VOICE_COMMUNICATION, SAMPLE_RATE,
+                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT,
+                    Math.max(minBufferSize, 4 * CHUNK_BYTES));
+            if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+                throw new IOException("AudioRecord could not be initialized");
+            }
+
+            MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, SAMPLE_RATE, CHANNEL_COUNT);
+            format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+            format.setInteger(MediaFormat.KEY_BIT_RATE, BIT_RATE);
+            format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, CHUNK_BYTES);
+            codec = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AAC);
+
+            encoderThread = new HandlerThread("AacEncoder", Process.THREAD_PRIORITY_AUDIO);
+            encoderThread.start();
+            encoderHandler = new Handler(encoderThread.getLooper());
+            codec.setCallback(new EncoderCallback(), encoderHandler);
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            codec.start();
+
+            startNanos = System.nanoTime();
+            audioRecord.startRecording();
+        } catch (IOException | RuntimeException e) {
+            releaseAudioRecord();
+            if (encoderHandler != null) {
+                encoderHandler.post(() -> finish(false));
+            } else {
+                if (codec != null) {
+                    codec.release();
+                }
+                closeOutput(false);
+            }
+            throw e instanceof IOException ? (IOException) e : new IOException("Could not start encoder", e);
+        }
+
+        recording = true;
+        readerThread = new Thread(this::readLoop, "PcmReader");
+        readerThread.start();
+        Log.d(TAG, "Recording " + SAMPLE_RATE + " Hz PCM to " + outputFile.getName());
+    }
+
+    /**
+     * Stop recording and wait for the encoder to write out the remaining audio.
+     *
+     * @return true if the file was completed, false if encoding or writing failed
+     */
+    public boolean stop() {
+        if (!recording) {
+            return succeeded;
+        }
+        recording = false;
+        try {
+            audioRecord.stop(); // Unblocks the reader
+            readerThread.join(STOP_TIMEOUT_MS);
+            if (!finished.await(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Encoder did not finish in time, closing it");
+                encoderHandler.post(() -> finish(false));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            encoderHandler.post(() -> finish(false));
+        } finally {
+            releaseAudioRecord();
+        }
+        Log.i(TAG, "Recorded " + bytesWritten + " bytes, encoder lag max " + maxEncoderLagMicros / 1000
+                + " ms, dropped " + droppedChunks + " chunks");
+        return succeeded;
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Encoded bytes written to the output file so far.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * How long after capture the most recent encoded frame was written.
+     */
+    public long getEncoderLagMicros() {
+        return encoderLagMicros;
+    }
+
+    public long getMaxEncoderLagMicros() {
+        return maxEncoderLagMicros;
+    }
+
+    /**
+     * PCM chunks dropped because the encoder fell behind.
+     */
+    public int getDroppedChunks() {
+        return droppedChunks;
+    }
+
+    private void readLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        long samplesRead = 0;
+        while (recording) {
+            Chunk chunk = pool.poll();
+            if (chunk == null) {
+                chunk = scratch;
+            }
+            chunk.data.clear();
+            int read = audioRecord.read(chunk.data, CHUNK_BYTES, AudioRecord.READ_BLOCKING);
+            if (read < 0) {
+                Log.e(TAG, "Error reading PCM: " + read);
+                break;
+            }
+            if (read == 0) {
+                if (chunk != scratch) {
+                    pool.offer(chunk);
+                }
+                continue;
+            }
+            chunk.data.limit(read);
+            chunk.presentationTimeUs = samplesRead * 1_000_000L / SAMPLE_RATE;
+            samplesRead += read / 2;
+
+            for (PcmTap tap : taps) {
+                tap.onPcm(chunk.data.asReadOnlyBuffer(), chunk.presentationTimeUs);
+            }
+            if (chunk == scratch) {
+                droppedChunks++;
+                continue;
+            }
+            Chunk queued = chunk;
+            encoderHandler.post(() -> {
+                pendingPcm.add(queued);
+                feed();
+            });
+        }
+        encoderHandler.post(() -> {
+            endOfInput = true;
+            feed();
+        });
+    }
+
+    /**
+     * Pair pending PCM with free codec input buffers. Runs on the encoder thread.
+     */
+    private void feed() {
+        while (!done && !freeInputs.isEmpty() && (!pendingPcm.isEmpty() || (endOfInput && !endOfStreamQueued))) {
+            int index = freeInputs.poll();
+            Chunk chunk = pendingPcm.poll();
+            if (chunk == null) {
+                codec.queueInputBuffer(index, 0, 0, lastPresentationTimeUs, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                endOfStreamQueued = true;
+                return;
+            }
+            ByteBuffer input = codec.getInputBuffer(index);
+            input.clear();
+            // Split chunks larger than the codec's buffers; the rest goes in the next one
+            long presentationTimeUs = chunk.presentationTimeUs;
+            int length = Math.min(chunk.data.remaining(), input.remaining());
+            ByteBuffer part = chunk.data.duplicate();
+            part.limit(part.position() + length);
+            input.put(part);
+            chunk.data.position(chunk.data.position() + length);
+            chunk.presentationTimeUs += length / 2 * 1_000_000L / SAMPLE_RATE;
+            codec.queueInputBuffer(index, 0, length, presentationTimeUs, 0);
+            lastPresentationTimeUs = presentationTimeUs;
+            if (chunk.data.hasRemaining()) {
+                pendingPcm.addFirst(chunk);
+            } else {
+                pool.offer(chunk);
+            }
+        }
+    }
+
+    private void writeFrame(ByteBuffer frame, long presentationTimeUs) throws IOException {
+        int frameLength = ADTS_HEADER_SIZE + frame.remaining();
+        adtsHeader.clear();
+        writeAdtsHeader(adtsHeader, frameLength, SAMPLE_RATE, CHANNEL_COUNT);
+        adtsHeader.flip();
+        frameParts[0] = adtsHeader;
+        frameParts[1] = frame;
+        FileChannel out = segments != null ? segments.channelFor(presentationTimeUs) : channel;
+        while (frame.hasRemaining()) {
+            out.write(frameParts);
+        }
+        if (segments != null) {
+            segments.onFrameWritten(presentationTimeUs, frameLength);
+        }
+        bytesWritten += frameLength;
+
+        long lag = (System.nanoTime() - startNanos) / 1000 - presentationTimeUs;
+        encoderLagMicros = lag;
+        if (lag > maxEncoderLagMicros) {
+            maxEncoderLagMicros = lag;
+        }
+    }
+
+    /**
+     * ADTS header for one AAC-LC frame, without CRC.
+     *
+     * @param frameLength Length of the frame including the header
+     * @throws IllegalArgumentException if ADTS cannot describe the sample rate
+     */
+    static void writeAdtsHeader(ByteBuffer header, int frameLength, int sampleRate, int channelCount) {
+        int sampleRateIndex = adtsSampleRateIndex(sampleRate);
+        if (sampleRateIndex < 0) {
+            throw new IllegalArgumentException("No ADTS sample rate index for " + sampleRate + " Hz");
+        }
+        int profile = MediaCodecInfo.CodecProfileLevel.AACObjectLC - 1;
+        header.put((byte) 0xFF);
+        header.put((byte) 0xF1); // Sync word, MPEG-4, layer 0, no CRC
+        header.put((byte) ((profile << 6) | (sampleRateIndex << 2) | (channelCount >> 2)));
+        header.put((byte) (((channelCount & 3) << 6) | (frameLength >> 11)));
+        header.put((byte) ((frameLength & 0x7FF) >> 3));
+        header.put((byte) (((frameLength & 7) << 5) | 0x1F)); // Buffer fullness 0x7FF: variable bitrate
+        header.put((byte) 0xFC);
+    }
+
+    /**
+     * Index of the sample rate in the ADTS frequency table, or -1 if it has none.
+     */
+    static int adtsSampleRateIndex(int sampleRate) {
+        for (int i = 0; i < ADTS_SAMPLE_RATES.length; i++) {
+            if (ADTS_SAMPLE_RATES[i] == sampleRate) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Release the codec and close the file. Runs on the encoder thread, once.
+     */
+    private void finish(boolean success) {
+        if (done) {
+            return;
+        }
+        done = true;
+        if (codec != null) {
+            try {
+                codec.stop();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Error stopping encoder", e);
+            }
+            codec.release();
+        }
+        succeeded = closeOutput(success) && success;
+        encoderThread.quitSafely();
+        finished.countDown();
+    }
+
+    private boolean closeOutput(boolean complete) {
+        try {
+            if (segments != null) {
+                segments.close(complete);
+                return true;
+            }
+            if (channel == null) {
+                return false;
+            }
+            channel.close();
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing " + outputFile.getName(), e);
+            return false;
+        } finally {
+            channel = null;
+        }
+    }
+
+    private void releaseAudioRecord() {
+        if (audioRecord != null) {
+            try {
+                audioRecord.release();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error releasing AudioRecord", e);
+            }
+            audioRecord = null;
+        }
+    }
+
+    private class EncoderCallback extends MediaCodec.Callback {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec mediaCodec, int index) {
+            freeInputs.add(index);
+            feed();
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec mediaCodec, int index, @NonNull MediaCodec.BufferInfo info) {
+            if (done) {
+                return;
+            }
+            try {
+                if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && info.size > 0) {
+                    ByteBuffer frame = mediaCodec.getOutputBuffer(index);
+                    frame.position(info.offset);
+                    frame.limit(info.offset + info.size);
+                    writeFrame(frame, info.presentationTimeUs);
+                }
+                mediaCodec.releaseOutputBuffer(index, false);
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing " + outputFile.getName(), e);
+                finish(false);
+                return;
+            }
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                finish(true);
+            }
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec mediaCodec, @NonNull MediaCodec.CodecException e) {
+            Log.e(TAG, "Encoder error", e);
+            finish(false);
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec mediaCodec, @NonNull MediaFormat format) {
+            Log.d(TAG, "Encoder output format: " + format);
+        }
+    }
+}
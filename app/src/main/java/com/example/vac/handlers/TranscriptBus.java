@@ -0,0 +1,226 @@
+package com.example.vac.handlers;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.vac.models.TranscriptionData;
+
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-process publish/subscribe of the current call's transcript, as it is spoken.
+ * <p>
+ * The call's snippets are kept as an immutable backlog that publishing replaces with a
+ * compare-and-set, so neither side ever takes a lock. Every subscriber gets the same
+ * {@link TranscriptionData} objects, on its own executor and in order: a publish only schedules
+ * a drain, and the drain delivers whatever the subscriber has not seen yet. A subscriber that
+ * asks for replay first gets the backlog of the call in progress, then live snippets, with no
+ * gap or duplicate in between. When a new call starts, the previous call's backlog is kept
+ * until the call after, so a subscriber still behind on it gets its last snippets first.
+ */
+public class TranscriptBus {
+    private static final TranscriptBus INSTANCE = new TranscriptBus();
+    private static final TranscriptionData[] NONE = new TranscriptionData[0];
+
+    public interface Subscriber {
+        /**
+         * A new call started; the snippets that follow belong to it.
+         */
+        void onCallStarted(@NonNull String callId);
+
+        void onSnippet(@NonNull TranscriptionData snippet);
+    }
+
+    private final AtomicReference<Backlog> current = new AtomicReference<>(new Backlog(0, null, NONE, null));
+    private final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    TranscriptBus() {
+    }
+
+    public static TranscriptBus getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start the backlog of a new call, dropping the previous one.
+     */
+    public void beginCall(@NonNull String callId) {
+        current.updateAndGet(previous -> previous.next(callId, NONE));
+        drainAll();
+    }
+
+    /**
+     * Add a snippet of the call in progress and hand it to every subscriber.
+     *
+     * @return The published snippet, the same object subscribers receive
+     */
+    @NonNull
+    public TranscriptionData publish(@NonNull String callId, @NonNull String text,
+                                     @NonNull TranscriptionData.SpeakerType speakerType) {
+        long timestamp = System.currentTimeMillis();
+        TranscriptionData snippet;
+        Backlog backlog;
+        Backlog appended;
+        do {
+            backlog = current.get();
+            boolean sameCall = callId.equals(backlog.callId);
+            snippet = new TranscriptionData(timestamp, text, callId, speakerType,
+                    sameCall ? backlog.snippets.length : 0);
+            appended = sameCall
+                    ? backlog.append(snippet)
+                    : backlog.next(callId, new TranscriptionData[]{snippet});
+        } while (!current.compareAndSet(backlog, appended));
+        drainAll();
+        return snippet;
+    }
+
+    /**
+     * Receive snippets on an executor, which should run tasks one at a time.
+     *
+     * @param replay Whether to first receive the call in progress from its beginning
+     */
+    public void subscribe(@NonNull Subscriber subscriber, @NonNull Executor executor, boolean replay) {
+        Registration registration = new Registration(subscriber, executor);
+        if (!replay) {
+            Backlog backlog = current.get();
+            registration.generation = backlog.generation;
+            registration.delivered = backlog.snippets.length;
+        }
+        registrations.add(registration);
+        registration.scheduleDrain(); // Picks up anything published while registering
+    }
+
+    /**
+     * Stop delivering to a subscriber. A delivery already running on its executor finishes.
+     */
+    public void unsubscribe(@NonNull Subscriber subscriber) {
+        unsubscribe(subscriber, false);
+    }
+
+    /**
+     * Stop delivering to a subscriber.
+     *
+     * @param deliverPending Whether the snippets published so far are still delivered, e.g. so
+     *                       a subscriber saving them keeps the end of the call; its executor may
+     *                       be shut down right after, as long as queued tasks still run
+     */
+    public void unsubscribe(@NonNull Subscriber subscriber, boolean deliverPending) {
+        for (Registration registration : registrations) {
+            if (registration.subscriber == subscriber) {
+                registrations.remove(registration);
+                if (deliverPending) {
+                    registration.until = current.get();
+                    registration.scheduleDrain();
+                } else {
+                    registration.active = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Snippets of the call in progress, oldest first.
+     */
+    @NonNull
+    public TranscriptionData[] getBacklog() {
+        return current.get().snippets.clone();
+    }
+
+    @Nullable
+    public String getCallId() {
+        return current.get().callId;
+    }
+
+    private void drainAll() {
+        for (Registration registration : registrations) {
+            registration.scheduleDrain();
+        }
+    }
+
+    private static final class Backlog {
+        final long generation;
+        final String callId;
+        final TranscriptionData[] snippets;
+        @Nullable
+        final Backlog previous; // The previous call as it ended, without its own previous
+
+        Backlog(long generation, String callId, TranscriptionData[] snippets, @Nullable Backlog previous) {
+            this.generation = generation;
+            this.callId = callId;
+            this.snippets = snippets;
+            this.previous = previous;
+        }
+
+        Backlog append(TranscriptionData snippet) {
+            // A call has tens of snippets, so copying beats anything cleverer
+            TranscriptionData[] appended = Arrays.copyOf(snippets, snippets.length + 1);
+            appended[snippets.length] = snippet;
+            return new Backlog(generation, callId, appended, previous);
+        }
+
+        Backlog next(String nextCallId, TranscriptionData[] nextSnippets) {
+            return new Backlog(generation + 1, nextCallId, nextSnippets, new Backlog(generation, callId, snippets, null));
+        }
+    }
+
+    private final class Registration implements Runnable {
+        final Subscriber subscriber;
+        final Executor executor;
+        final AtomicBoolean drainScheduled = new AtomicBoolean();
+        volatile boolean active = true;
+        // Set when unsubscribed with pending snippets: the last backlog to deliver
+        @Nullable
+        volatile Backlog until;
+        // Only touched by drains, which run one at a time on the executor
+        long generation = -1;
+        int delivered;
+
+        Registration(Subscriber subscriber, Executor executor) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+        }
+
+        void scheduleDrain() {
+            if (active && drainScheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // The subscriber's executor was shut down without unsubscribing
+                    active = false;
+                    registrations.remove(this);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            // Cleared first: a publish from now on schedules another drain
+            drainScheduled.set(false);
+            Backlog last = until;
+            Backlog backlog = last != null ? last : current.get();
+            if (backlog.previous != null && backlog.previous.generation == generation) {
+                deliver(backlog.previous); // Finish the previous call before starting this one
+            }
+            deliver(backlog);
+        }
+
+        private void deliver(Backlog backlog) {
+            if (backlog.generation != generation) {
+                generation = backlog.generation;
+                delivered = 0;
+                if (active && backlog.callId != null) {
+                    subscriber.onCallStarted(backlog.callId);
+                }
+            }
+            TranscriptionData[] snippets = backlog.snippets;
+            for (; delivered < snippets.length && active; delivered++) {
+                subscriber.onSnippet(snippets[delivered]);
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import com.example.vac.models.Message;
 import com.example.vac.models.TranscriptionData;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -18,7 +19,11 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -27,15 +32,18 @@ import java.util.stream.Collectors;
 public class TranscriptionManager {
     private static final String TAG = "TranscriptionManager";
     private static final String TRANSCRIPTIONS_FILE = "transcriptions.json";
+    private static final String RECORDING_STARTS_FILE = "recording_starts.json";
 
     private final Context context;
     private final Gson gson;
     private final File transcriptionsFile;
+    private final File recordingStartsFile;
 
     public TranscriptionManager(@NonNull Context context) {
         this.context = context;
         this.gson = new GsonBuilder().setPrettyPrinting().create();
         this.transcriptionsFile = new File(context.getFilesDir(), TRANSCRIPTIONS_FILE);
+        this.recordingStartsFile = new File(context.getFilesDir(), RECORDING_STARTS_FILE);
     }
 
     /**
@@ -51,7 +59,30 @@ public class TranscriptionManager {
             long timestamp, @NonNull TranscriptionData.SpeakerType speakerType) {
         try {
             List<TranscriptionData> transcriptions = loadTranscriptions();
-            transcriptions.add(new TranscriptionData(timestamp, text, callId, speakerType));
+            int sequence = 0;
+            for (TranscriptionData transcription : transcriptions) {
+                if (callId.equals(transcription.getCallId())) {
+                    sequence++;
+                }
+            }
+            transcriptions.add(new TranscriptionData(timestamp, text, callId, speakerType, sequence));
+            return saveTranscriptions(transcriptions);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving transcription snippet", e);
+            return false;
+        }
+    }
+
+    /**
+     * Saves a snippet as it is, e.g. one received from the {@link TranscriptBus}.
+     *
+     * @param snippet The snippet to save
+     * @return true if saved successfully, false otherwise
+     */
+    public boolean saveTranscriptionSnippet(@NonNull TranscriptionData snippet) {
+        try {
+            List<TranscriptionData> transcriptions = loadTranscriptions();
+            transcriptions.add(snippet);
             return saveTranscriptions(transcriptions);
         } catch (IOException e) {
             Log.e(TAG, "Error saving transcription snippet", e);
@@ -100,6 +131,126 @@ public class TranscriptionManager {
         }
     }
 
+    /**
+     * Gets all transcriptions of all calls, in the order they were saved.
+     *
+     * @return List of transcriptions, empty if there are none
+     */
+    @NonNull
+    public List<TranscriptionData> getAllTranscriptions() {
+        try {
+            return loadTranscriptions();
+        } catch (IOException e) {
+            Log.e(TAG, "Error getting all transcriptions", e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Gets the IDs of all calls that have transcriptions.
+     *
+     * @return Set of call IDs, empty if there are none
+     */
+    @NonNull
+    public Set<String> getCallIds() {
+        try {
+            Set<String> callIds = new HashSet<>();
+            for (TranscriptionData transcription : loadTranscriptions()) {
+                callIds.add(transcription.getCallId());
+            }
+            return callIds;
+        } catch (IOException e) {
+            Log.e(TAG, "Error getting transcribed call IDs", e);
+            return new HashSet<>();
+        }
+    }
+
+    /**
+     * Gets when the transcriptions were last changed.
+     *
+     * @return Modification time of the transcriptions file, 0 if there are none
+     */
+    public long getLastModified() {
+        return transcriptionsFile.lastModified();
+    }
+
+    /**
+     * Saves when the recording of a call actually started, so snippet timestamps can be turned
+     * into positions in the recording.
+     *
+     * @param callId The ID of the call
+     * @param startMillis Wall-clock time of the first recorded audio
+     * @return true if saved successfully, false otherwise
+     */
+    public boolean saveRecordingStart(@NonNull String callId, long startMillis) {
+        try {
+            Map<String, Long> starts = loadRecordingStarts();
+            starts.put(callId, startMillis);
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(recordingStartsFile))) {
+                gson.toJson(starts, writer);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving recording start", e);
+            return false;
+        }
+    }
+
+    /**
+     * Gets when the recording of a call started.
+     *
+     * @param callId The ID of the call
+     * @return Wall-clock start time; for calls recorded before starts were saved, the time in
+     *         the message name, or 0 if there is none
+     */
+    public long getRecordingStart(@NonNull String callId) {
+        try {
+            Long start = loadRecordingStarts().get(callId);
+            if (start != null) {
+                return start;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error getting recording start", e);
+        }
+        return callId.startsWith(Message.FILENAME_PREFIX) ? Message.extractTimestampFromFilename(callId) : 0;
+    }
+
+    /**
+     * Deletes everything saved for a call: its transcriptions and its recording start.
+     *
+     * @param callId The ID of the call
+     * @return true if deleted successfully, false otherwise
+     */
+    public boolean deleteCall(@NonNull String callId) {
+        try {
+            List<TranscriptionData> transcriptions = loadTranscriptions();
+            if (transcriptions.removeIf(t -> callId.equals(t.getCallId()))) {
+                saveTranscriptions(transcriptions);
+            }
+            Map<String, Long> starts = loadRecordingStarts();
+            if (starts.remove(callId) != null) {
+                try (BufferedWriter writer = new BufferedWriter(new FileWriter(recordingStartsFile))) {
+                    gson.toJson(starts, writer);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error deleting call " + callId, e);
+            return false;
+        }
+    }
+
+    private Map<String, Long> loadRecordingStarts() throws IOException {
+        if (!recordingStartsFile.exists()) {
+            return new HashMap<>();
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(recordingStartsFile))) {
+            Type type = new TypeToken<Map<String, Long>>(){}.getType();
+            Map<String, Long> starts = gson.fromJson(reader, type);
+            return starts != null ? starts : new HashMap<>();
+        }
+    }
+
     private List<TranscriptionData> loadTranscriptions() throws IOException {
         if (!transcriptionsFile.exists()) {
             return new ArrayList<>();
@@ -0,0 +1,318 @@
+package com.example.vac.handlers;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.vac.models.Message;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Precomputed waveform of a recording, so it can be drawn without decoding the audio.
+ * <p>
+ * The minimum and maximum sample of every bucket are stored as signed bytes at
+ * {@link #LEVEL_COUNT} zoom levels, each with {@link #LEVEL_FACTOR} times fewer buckets than the
+ * one below it, in a {@link #FILE_SUFFIX} sidecar next to the message. A reader loads only the
+ * level that fits the view, a few KB even for an hour-long call.
+ * <p>
+ * Sidecars are generated after a recording is compacted, and by {@link #readOrGenerate} for
+ * recordings that have none yet or whose recording changed since.
+ * <p>
+ * File layout, big-endian: magic, version, size of the recording the peaks were taken from,
+ * sample rate, level count, then samples per bucket and bucket count of each level, then each
+ * level's min/max pairs in order.
+ */
+public class WaveformPeaks {
+    private static final String TAG = "WaveformPeaks";
+    public static final String FILE_SUFFIX = ".peaks";
+    static final int BASE_SAMPLES_PER_BUCKET = 256;
+    static final int LEVEL_FACTOR = 4;
+    static final int LEVEL_COUNT = 5;
+    private static final int MAGIC = 0x56414350; // "VACP"
+    private static final int VERSION = 1;
+    private static final int FIXED_HEADER_SIZE = 24;
+    private static final int LEVEL_HEADER_SIZE = 8;
+
+    private final int sampleRate;
+    private final int samplesPerBucket;
+    private final byte[] data; // min, max of each bucket
+
+    WaveformPeaks(int sampleRate, int samplesPerBucket, byte[] data) {
+        this.sampleRate = sampleRate;
+        this.samplesPerBucket = samplesPerBucket;
+        this.data = data;
+    }
+
+    public int getBucketCount() {
+        return data.length / 2;
+    }
+
+    /**
+     * Lowest sample in a bucket, from -128 to 127.
+     */
+    public int getMin(int bucket) {
+        return data[bucket * 2];
+    }
+
+    /**
+     * Highest sample in a bucket, from -128 to 127.
+     */
+    public int getMax(int bucket) {
+        return data[bucket * 2 + 1];
+    }
+
+    public double getBucketDurationMs() {
+        return samplesPerBucket * 1000.0 / sampleRate;
+    }
+
+    @NonNull
+    public static File sidecarFor(@NonNull File messageFile) {
+        return new File(messageFile.getParentFile(), Message.callIdOf(messageFile.getName()) + FILE_SUFFIX);
+    }
+
+    /**
+     * Write the peaks sidecar of a recording, unless it is already there for this version of
+     * the recording. Decodes the audio once, without holding it in memory.
+     *
+     * @return true if the sidecar is current
+     */
+    @WorkerThread
+    public static synchronized boolean generate(@NonNull File messageFile) {
+        File sidecar = sidecarFor(messageFile);
+        if (!messageFile.exists()) {
+            return false;
+        }
+        if (isCurrent(sidecar, messageFile)) {
+            return true;
+        }
+        long startNanos = System.nanoTime();
+        try {
+            Builder builder = new Builder();
+            RecordingCompactor.decode(messageFile, builder);
+            builder.write(sidecar, messageFile.length());
+            Log.d(TAG, "Generated peaks for " + messageFile.getName() + " in "
+                    + (System.nanoTime() - startNanos) / 1_000_000 + " ms, " + sidecar.length() + " bytes");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error generating peaks for " + messageFile.getName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Read the coarsest level of a recording's peaks that still has enough buckets for a view.
+     *
+     * @param minBuckets Buckets wanted, typically the width of the view in pixels
+     * @return The peaks, or null if there is no sidecar for this version of the recording
+     */
+    @Nullable
+    @WorkerThread
+    public static WaveformPeaks read(@NonNull File messageFile, int minBuckets) {
+        File sidecar = sidecarFor(messageFile);
+        if (!sidecar.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(sidecar.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, 0, FIXED_HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != messageFile.length()) {
+                return null;
+            }
+            int sampleRate = header.getInt();
+            int levelCount = header.getInt();
+            if (levelCount <= 0 || levelCount > LEVEL_COUNT) {
+                return null;
+            }
+            ByteBuffer levels = readFully(channel, FIXED_HEADER_SIZE, levelCount * LEVEL_HEADER_SIZE);
+            int[] samplesPerBucket = new int[levelCount];
+            int[] bucketCounts = new int[levelCount];
+            for (int level = 0; level < levelCount; level++) {
+                samplesPerBucket[level] = levels.getInt();
+                bucketCounts[level] = levels.getInt();
+            }
+            int chosen = 0;
+            for (int level = levelCount - 1; level > 0; level--) {
+                if (bucketCounts[level] >= minBuckets) {
+                    chosen = level;
+                    break;
+                }
+            }
+            long offset = FIXED_HEADER_SIZE + (long) levelCount * LEVEL_HEADER_SIZE;
+            for (int level = 0; level < chosen; level++) {
+                offset += bucketCounts[level] * 2L;
+            }
+            byte[] data = readFully(channel, offset, bucketCounts[chosen] * 2).array();
+            return new WaveformPeaks(sampleRate, samplesPerBucket[chosen], data);
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading " + sidecar.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Like {@link #read}, but generates the sidecar first if it is missing or out of date.
+     *
+     * @return The peaks, or null if the recording could not be decoded
+     */
+    @Nullable
+    @WorkerThread
+    public static WaveformPeaks readOrGenerate(@NonNull File messageFile, int minBuckets) {
+        WaveformPeaks peaks = read(messageFile, minBuckets);
+        if (peaks == null && generate(messageFile)) {
+            peaks = read(messageFile, minBuckets);
+        }
+        return peaks;
+    }
+
+    private static boolean isCurrent(File sidecar, File messageFile) {
+        if (!sidecar.exists()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(sidecar.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, 0, FIXED_HEADER_SIZE);
+            return header.getInt() == MAGIC && header.getInt() == VERSION && header.getLong() == messageFile.length();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated peaks file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Collects the peaks of all levels while PCM streams through. Each finished bucket is folded
+     * into the bucket above it, so every sample is looked at once.
+     */
+    static final class Builder implements RecordingCompactor.PcmSink {
+        private final byte[][] levels = new byte[LEVEL_COUNT][];
+        private final int[] sizes = new int[LEVEL_COUNT];
+        private final int[] currentMin = new int[LEVEL_COUNT];
+        private final int[] currentMax = new int[LEVEL_COUNT];
+        private final int[] currentCount = new int[LEVEL_COUNT]; // Samples at level 0, buckets above
+        private int sampleRate;
+
+        Builder() {
+            for (int level = 0; level < LEVEL_COUNT; level++) {
+                levels[level] = new byte[256];
+                resetBucket(level);
+            }
+        }
+
+        @Override
+        public void onPcm(short[] samples, int count, int rate) {
+            sampleRate = rate;
+            for (int i = 0; i < count; i++) {
+                int value = samples[i] >> 8;
+                if (value < currentMin[0]) {
+                    currentMin[0] = value;
+                }
+                if (value > currentMax[0]) {
+                    currentMax[0] = value;
+                }
+                if (++currentCount[0] == BASE_SAMPLES_PER_BUCKET) {
+                    finishBucket(0);
+                }
+            }
+        }
+
+        private void finishBucket(int level) {
+            int min = currentMin[level];
+            int max = currentMax[level];
+            if (sizes[level] + 2 > levels[level].length) {
+                levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+            }
+            levels[level][sizes[level]++] = (byte) min;
+            levels[level][sizes[level]++] = (byte) max;
+            resetBucket(level);
+            int parent = level + 1;
+            if (parent < LEVEL_COUNT) {
+                currentMin[parent] = Math.min(currentMin[parent], min);
+                currentMax[parent] = Math.max(currentMax[parent], max);
+                if (++currentCount[parent] == LEVEL_FACTOR) {
+                    finishBucket(parent);
+                }
+            }
+        }
+
+        private void resetBucket(int level) {
+            currentMin[level] = Byte.MAX_VALUE;
+            currentMax[level] = Byte.MIN_VALUE;
+            currentCount[level] = 0;
+        }
+
+        /**
+         * Close the partial buckets at the end of the recording.
+         */
+        void finish() {
+            for (int level = 0; level < LEVEL_COUNT; level++) {
+                if (currentCount[level] > 0) {
+                    finishBucket(level);
+                }
+            }
+        }
+
+        WaveformPeaks level(int level) {
+            int samplesPerBucket = BASE_SAMPLES_PER_BUCKET;
+            for (int i = 0; i < level; i++) {
+                samplesPerBucket *= LEVEL_FACTOR;
+            }
+            return new WaveformPeaks(sampleRate, samplesPerBucket, Arrays.copyOf(levels[level], sizes[level]));
+        }
+
+        /**
+         * Write the sidecar aside and rename it, so a reader never sees half of it.
+         */
+        void write(File sidecar, long sourceBytes) throws IOException {
+            finish();
+            ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE + LEVEL_COUNT * LEVEL_HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(sourceBytes);
+            header.putInt(sampleRate);
+            header.putInt(LEVEL_COUNT);
+            int samplesPerBucket = BASE_SAMPLES_PER_BUCKET;
+            for (int level = 0; level < LEVEL_COUNT; level++) {
+                header.putInt(samplesPerBucket);
+                header.putInt(sizes[level] / 2);
+                samplesPerBucket *= LEVEL_FACTOR;
+            }
+            header.flip();
+            ByteBuffer[] parts = new ByteBuffer[LEVEL_COUNT + 1];
+            parts[0] = header;
+            long remaining = header.remaining();
+            for (int level = 0; level < LEVEL_COUNT; level++) {
+                parts[level + 1] = ByteBuffer.wrap(levels[level], 0, sizes[level]);
+                remaining += sizes[level];
+            }
+            File temp = new File(sidecar.getParentFile(), sidecar.getName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (remaining > 0) {
+                    remaining -= channel.write(parts);
+                }
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            }
+            if (!temp.renameTo(sidecar)) {
+                temp.delete();
+                throw new IOException("Could not move peaks to " + sidecar.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.vac.models;
+
+import androidx.annotation.Nullable;
+
+import com.example.vac.handlers.IntentClassifier;
+
+/**
+ * Data class with what is known about one caller from previous screened calls.
+ */
+public class CallerStats {
+    static final int TRUSTED_MIN_CALLS = 3;
+    static final double TRUSTED_MIN_TAKE_OVER_RATE = 0.5;
+    static final long TRUST_EXPIRY_MS = 30L * 24 * 60 * 60 * 1000;
+
+    private final int callCount;
+    private final long lastSeenMillis;
+    private final int takeOverCount;
+    private final int messageCount;
+    private final int[] intentCounts;
+
+    public CallerStats(int callCount, long lastSeenMillis, int takeOverCount, int messageCount, int[] intentCounts) {
+        this.callCount = callCount;
+        this.lastSeenMillis = lastSeenMillis;
+        this.takeOverCount = takeOverCount;
+        this.messageCount = messageCount;
+        this.intentCounts = intentCounts;
+    }
+
+    public int getCallCount() {
+        return callCount;
+    }
+
+    public long getLastSeenMillis() {
+        return lastSeenMillis;
+    }
+
+    public int getTakeOverCount() {
+        return takeOverCount;
+    }
+
+    /**
+     * Number of calls in which the caller said something to the assistant.
+     */
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    public double getTakeOverRate() {
+        return callCount > 0 ? (double) takeOverCount / callCount : 0;
+    }
+
+    public int getIntentCount(IntentClassifier.Intent intent) {
+        return intentCounts[intent.ordinal()];
+    }
+
+    /**
+     * Most frequent intent detected in this caller's calls, or null if none was classified.
+     */
+    @Nullable
+    public IntentClassifier.Intent getDominantIntent() {
+        IntentClassifier.Intent dominant = null;
+        for (IntentClassifier.Intent intent : IntentClassifier.Intent.values()) {
+            if (intentCounts[intent.ordinal()] > 0
+                    && (dominant == null || intentCounts[intent.ordinal()] > intentCounts[dominant.ordinal()])) {
+                dominant = intent;
+            }
+        }
+        return dominant;
+    }
+
+    /**
+     * A caller the user keeps picking up, and who is not mostly selling something, does not
+     * need to go through the assistant again. Calls that skip the assistant are not recorded,
+     * so trust lapses {@link #TRUST_EXPIRY_MS} after the last screened call: the next call is
+     * screened again and its outcome can confirm or lose the trust.
+     *
+     * @param nowMillis Current time, to compare with the last screened call
+     */
+    public boolean isTrustedRepeatCaller(long nowMillis) {
+        return callCount >= TRUSTED_MIN_CALLS
+                && nowMillis - lastSeenMillis < TRUST_EXPIRY_MS
+                && getTakeOverRate() >= TRUSTED_MIN_TAKE_OVER_RATE
+                && getDominantIntent() != IntentClassifier.Intent.SALES;
+    }
+}
@@ -1,8 +1,9 @@
 package com.example.vac.models;
 
 import java.io.File;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Locale;
 
 /**
@@ -10,22 +11,63 @@ import java.util.Locale;
  */
 public class Message {
     
+    public static final String FILENAME_PREFIX = "message_";
+    /** Duration of a recording whose metadata has not been read yet. */
+    public static final long DURATION_UNKNOWN = -1;
+    // Thread-safe, unlike SimpleDateFormat, so one instance serves every message
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter
+            .ofPattern("MMM dd, yyyy HH:mm:ss", Locale.getDefault())
+            .withZone(ZoneId.systemDefault());
+    
     private final File file;
     private final String filename;
-    private final String formattedDate;
+    private final long timestamp;
+    private final long durationMs;
+    private final long sizeBytes;
+    private final String callId;
+    private final boolean hasTranscript;
+    private String formattedDate;
     
     /**
-     * Constructor for a Message
+     * Constructor for a Message known only by its file
      * 
      * @param file The audio file containing the recorded message
      */
     public Message(File file) {
+        // Extract timestamp from filename (format: message_[timestamp].3gp)
+        this(file, extractTimestampFromFilename(file.getName()), 0, 0, callIdOf(file.getName()), false);
+    }
+    
+    /**
+     * Constructor for a Message with metadata from the message index
+     * 
+     * @param file The audio file containing the recorded message
+     * @param timestamp When the message was recorded
+     * @param durationMs Length of the recording, 0 if it could not be read, or
+     *                   {@link #DURATION_UNKNOWN} if not read yet
+     * @param sizeBytes Size of the file
+     * @param callId ID under which the call's transcriptions are stored
+     * @param hasTranscript Whether transcriptions exist for the call
+     */
+    public Message(File file, long timestamp, long durationMs, long sizeBytes, String callId, boolean hasTranscript) {
         this.file = file;
         this.filename = file.getName();
-        
-        // Extract timestamp from filename (format: message_[timestamp].3gp)
-        long timestamp = extractTimestampFromFilename(filename);
-        this.formattedDate = formatTimestamp(timestamp);
+        this.timestamp = timestamp;
+        this.durationMs = durationMs;
+        this.sizeBytes = sizeBytes;
+        this.callId = callId;
+        this.hasTranscript = hasTranscript;
+    }
+    
+    /**
+     * Get the call ID of a recording: its filename without the extension
+     * 
+     * @param filename The filename (format: message_[timestamp].3gp)
+     * @return The call ID
+     */
+    public static String callIdOf(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot > 0 ? filename.substring(0, dot) : filename;
     }
     
     /**
@@ -47,23 +89,41 @@ public class Message {
     }
     
     /**
-     * Get the formatted date
+     * Get the recording time
      * 
-     * @return The formatted date string
+     * @return The timestamp in milliseconds since the epoch
      */
-    public String getFormattedDate() {
-        return formattedDate;
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    public long getDurationMs() {
+        return durationMs;
+    }
+    
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+    
+    public String getCallId() {
+        return callId;
+    }
+    
+    public boolean hasTranscript() {
+        return hasTranscript;
     }
     
     /**
-     * Format a timestamp as a readable date
+     * Get the formatted date. Formatted on first use, so only messages that are
+     * actually shown pay for it.
      * 
-     * @param timestamp The timestamp to format
      * @return The formatted date string
      */
-    private String formatTimestamp(long timestamp) {
-        SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy HH:mm:ss", Locale.getDefault());
-        return sdf.format(new Date(timestamp));
+    public String getFormattedDate() {
+        if (formattedDate == null) {
+            formattedDate = DATE_FORMAT.format(Instant.ofEpochMilli(timestamp));
+        }
+        return formattedDate;
     }
     
     /**
@@ -72,18 +132,22 @@ public class Message {
      * @param filename The filename (format: message_[timestamp].3gp)
      * @return The extracted timestamp, or current time if extraction fails
      */
-    private long extractTimestampFromFilename(String filename) {
-        try {
-            // Extract timestamp from message_1234567890.3gp format
-            String[] parts = filename.split("_");
-            if (parts.length >= 2) {
-                String timestampStr = parts[1].split("\\.")[0];
-                return Long.parseLong(timestampStr);
+    public static long extractTimestampFromFilename(String filename) {
+        // Extract timestamp from message_1234567890.3gp format
+        int start = filename.startsWith(FILENAME_PREFIX) ? FILENAME_PREFIX.length() : filename.indexOf('_') + 1;
+        int end = start;
+        while (end < filename.length() && Character.isDigit(filename.charAt(end))) {
+            end++;
+        }
+        if (start > 0 && end > start) {
+            try {
+                return Long.parseLong(filename.substring(start, end));
+            } catch (NumberFormatException e) {
+                // Fall through to current time
             }
-        } catch (Exception e) {
-            // If parsing fails, just return current time
         }
         
+        // If parsing fails, just return current time
         return System.currentTimeMillis();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.example.vac.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data class holding the user's allow and block lists as stored on disk.
+ * Numbers may be in any format the dialer shows; they are normalized when the index is built.
+ */
+public class ScreeningLists {
+    private List<String> allowedNumbers = new ArrayList<>();
+    private List<String> blockedNumbers = new ArrayList<>();
+    private List<String> blockedPrefixes = new ArrayList<>();
+
+    public List<String> getAllowedNumbers() {
+        return allowedNumbers != null ? allowedNumbers : new ArrayList<>();
+    }
+
+    public List<String> getBlockedNumbers() {
+        return blockedNumbers != null ? blockedNumbers : new ArrayList<>();
+    }
+
+    /**
+     * Number ranges to reject, e.g. "+48 800" for a whole block of spam numbers.
+     */
+    public List<String> getBlockedPrefixes() {
+        return blockedPrefixes != null ? blockedPrefixes : new ArrayList<>();
+    }
+
+    public void setAllowedNumbers(List<String> allowedNumbers) {
+        this.allowedNumbers = allowedNumbers;
+    }
+
+    public void setBlockedNumbers(List<String> blockedNumbers) {
+        this.blockedNumbers = blockedNumbers;
+    }
+
+    public void setBlockedPrefixes(List<String> blockedPrefixes) {
+        this.blockedPrefixes = blockedPrefixes;
+    }
+}
@@ -10,6 +10,7 @@ public class TranscriptionData {
     private final String text;
     private final String callId;
     private final SpeakerType speakerType;
+    private final int sequence;
 
     public enum SpeakerType {
         ASSISTANT,
@@ -18,10 +19,18 @@ public class TranscriptionData {
     }
 
     public TranscriptionData(long timestamp, String text, String callId, SpeakerType speakerType) {
+        this(timestamp, text, callId, speakerType, 0);
+    }
+
+    /**
+     * @param sequence Position of the snippet in its call, in the order it was produced
+     */
+    public TranscriptionData(long timestamp, String text, String callId, SpeakerType speakerType, int sequence) {
         this.timestamp = timestamp;
         this.text = text;
         this.callId = callId;
         this.speakerType = speakerType;
+        this.sequence = sequence;
     }
 
     public long getTimestamp() {
@@ -40,6 +49,14 @@ public class TranscriptionData {
         return speakerType;
     }
 
+    /**
+     * Position of the snippet in its call, telling apart snippets with the same timestamp.
+     * Snippets saved before it was recorded all have 0.
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
     @NonNull
     @Override
     public String toString() {
@@ -48,6 +65,7 @@ public class TranscriptionData {
                 ", text='" + text + '\'' +
                 ", callId='" + callId + '\'' +
                 ", speakerType=" + speakerType +
+                ", sequence=" + sequence +
                 '}';
     }
 } 
\ No newline at end of file
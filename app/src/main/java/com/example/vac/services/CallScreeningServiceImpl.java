@@ -5,7 +5,9 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Build;
+import android.os.SystemClock;
 import android.telecom.Call;
 import android.telecom.CallScreeningService;
 import android.util.Log;
@@ -15,7 +17,21 @@ import androidx.annotation.RequiresApi;
 
 import com.example.vac.R;
 import com.example.vac.handlers.CallSessionManager;
+import com.example.vac.handlers.CallerHistoryStore;
+import com.example.vac.handlers.GreetingAssets;
+import com.example.vac.handlers.IntentClassifier;
 import com.example.vac.handlers.NotificationHandler;
+import com.example.vac.handlers.ScreeningListManager;
+import com.example.vac.handlers.TranscriptBus;
+import com.example.vac.handlers.TranscriptionManager;
+import com.example.vac.models.CallerStats;
+import com.example.vac.models.TranscriptionData;
+import com.example.vac.ui.LiveTranscriptActivity;
+import com.example.vac.utils.NumberListIndex;
+import com.example.vac.utils.PreferencesManager;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Implementation of CallScreeningService that intercepts incoming calls and manages
@@ -32,13 +48,50 @@ public class CallScreeningServiceImpl extends CallScreeningService implements Ca
     CallSessionManager currentCallSessionManager;
     NotificationHandler notificationHandler;
     Call.Details activeCallDetails;
+    NumberListIndex screeningIndex = NumberListIndex.EMPTY;
+    CallerHistoryStore callerHistory;
     private boolean userHasTakenOverCall = false;
+    private ExecutorService transcriptStoreExecutor;
+    private TranscriptBus.Subscriber transcriptStore;
 
     @Override
     public void onCreate() {
         super.onCreate();
         Log.i(TAG, "CallScreeningService creating...");
         notificationHandler = new NotificationHandler(this);
+        IntentClassifier.getInstance(); // Compile keyword automaton before the first call is screened
+        new PreferencesManager(this).getSnapshot(); // Read settings and derive the greeting before the first call
+        GreetingAssets.getInstance(this); // Render the greeting before the first call
+        screeningIndex = new ScreeningListManager(this).loadIndex();
+        callerHistory = new CallerHistoryStore(this);
+        subscribeTranscriptStore();
+    }
+
+    /**
+     * Save the live transcript as it is published, so it is there once the call is over.
+     */
+    private void subscribeTranscriptStore() {
+        TranscriptionManager transcriptionManager = new TranscriptionManager(this);
+        transcriptStoreExecutor = Executors.newSingleThreadExecutor();
+        transcriptStore = new TranscriptBus.Subscriber() {
+            @Override
+            public void onCallStarted(@NonNull String callId) {
+            }
+
+            @Override
+            public void onSnippet(@NonNull TranscriptionData snippet) {
+                transcriptionManager.saveTranscriptionSnippet(snippet);
+            }
+        };
+        // No replay: what was published before this service existed was saved by its predecessor
+        TranscriptBus.getInstance().subscribe(transcriptStore, transcriptStoreExecutor, false);
+    }
+
+    private PendingIntent createLiveTranscriptPendingIntent() {
+        Intent liveTranscriptIntent = new Intent(this, LiveTranscriptActivity.class);
+        liveTranscriptIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        return PendingIntent.getActivity(this, 2, liveTranscriptIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
     }
 
     private PendingIntent createTakeOverPendingIntent() {
@@ -68,14 +121,18 @@ public class CallScreeningServiceImpl extends CallScreeningService implements Ca
     @Override
     public void onScreenCall(@NonNull Call.Details callDetails) {
         Log.i(TAG, "onScreenCall for: " + callDetails.getHandle());
-        this.activeCallDetails = callDetails;
-        this.userHasTakenOverCall = false;
 
         if (callDetails.getCallDirection() == Call.Details.DIRECTION_INCOMING) {
+            if (respondFromIndex(callDetails)) {
+                return;
+            }
+            this.activeCallDetails = callDetails;
+            this.userHasTakenOverCall = false;
             Notification notification = notificationHandler.showScreeningNotification(
                     getString(R.string.notification_message_default),
                     createTakeOverPendingIntent(),
-                    createHangUpPendingIntent()
+                    createHangUpPendingIntent(),
+                    createLiveTranscriptPendingIntent()
             );
             if (notification != null) {
                 startForeground(FOREGROUND_SERVICE_ID, notification);
@@ -84,14 +141,82 @@ public class CallScreeningServiceImpl extends CallScreeningService implements Ca
             }
 
             if (currentCallSessionManager != null) {
-                Log.w(TAG, "Previous CallSessionManager was not null. Releasing it before creating a new one.");
-                currentCallSessionManager.releaseInternal(false);
+                Log.w(TAG, "Previous CallSessionManager was not null. Stopping it before creating a new one.");
+                currentCallSessionManager.stopScreening(); // Releases on its own session thread
             }
             currentCallSessionManager = new CallSessionManager(this, callDetails, this, notificationHandler);
             currentCallSessionManager.startScreening();
         } else {
             Log.w(TAG, "Not an incoming call, ignoring: " + callDetails.getHandle());
-            stopScreeningAndSelf();
+            stopSelfIfIdle();
+        }
+    }
+
+    /**
+     * Answer the platform straight away for callers on the allow or block list, or callers the
+     * user keeps picking up, before any notification or audio setup.
+     *
+     * @return true if the call was decided and needs no screening
+     */
+    private boolean respondFromIndex(@NonNull Call.Details callDetails) {
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        String number = numberOf(callDetails);
+        NumberListIndex.Decision decision = screeningIndex.decide(number);
+        if (decision == NumberListIndex.Decision.SCREEN && callerHistory != null) {
+            CallerStats stats = callerHistory.lookup(number);
+            if (stats != null && stats.isTrustedRepeatCaller(System.currentTimeMillis())) {
+                Log.i(TAG, "Trusted repeat caller (" + stats.getCallCount() + " calls), not screening");
+                // Not recorded: whether the user picks up is not known here. Trust lapses with
+                // time instead, so the caller is screened again now and then.
+                decision = NumberListIndex.Decision.ALLOW;
+            }
+        }
+        if (decision == NumberListIndex.Decision.SCREEN) {
+            return false;
+        }
+
+        CallResponse response;
+        if (decision == NumberListIndex.Decision.REJECT) {
+            response = new CallResponse.Builder()
+                    .setDisallowCall(true)
+                    .setRejectCall(true)
+                    .setSkipNotification(true)
+                    .build();
+        } else {
+            response = new CallResponse.Builder().build();
+        }
+        respondToCall(callDetails, response);
+        Log.i(TAG, "Fast-path " + decision + " decided in "
+                + (SystemClock.elapsedRealtimeNanos() - startNanos) / 1000 + "us");
+        stopSelfIfIdle();
+        return true;
+    }
+
+    /**
+     * Stop the service after answering a call that needs no screening, unless another call is
+     * still being screened: that session keeps its notification and the service.
+     */
+    private void stopSelfIfIdle() {
+        if (currentCallSessionManager != null
+                && currentCallSessionManager.getCurrentState() != CallSessionManager.State.ENDED) {
+            Log.d(TAG, "Screening still in progress, keeping the service running");
+            return;
+        }
+        stopScreeningAndSelf();
+    }
+
+    private static String numberOf(Call.Details callDetails) {
+        Uri handle = callDetails != null ? callDetails.getHandle() : null;
+        return handle != null ? handle.getSchemeSpecificPart() : null;
+    }
+
+    /**
+     * Remember how a screened call went, for {@link CallerStats#isTrustedRepeatCaller(long)}.
+     */
+    private void recordCallerHistory(CallSessionManager session, boolean tookOver) {
+        if (callerHistory != null && activeCallDetails != null) {
+            callerHistory.recordCall(numberOf(activeCallDetails), System.currentTimeMillis(), tookOver,
+                    session.hasCallerSpoken(), session.getDetectedIntent());
         }
     }
 
@@ -136,24 +261,44 @@ public class CallScreeningServiceImpl extends CallScreeningService implements Ca
     @Override
     public void onDestroy() {
         Log.i(TAG, "CallScreeningService destroying...");
-        if (currentCallSessionManager != null) {
-            currentCallSessionManager.stopScreening();
-            currentCallSessionManager = null;
-        }
+        CallSessionManager session = currentCallSessionManager;
+        currentCallSessionManager = null;
         activeCallDetails = null;
-        if (notificationHandler != null) {
-            notificationHandler.cancelNotification();
+        if (session != null) {
+            // The session may still post to the notification and save its transcript until it has released
+            session.stopScreening(this::releaseCollaborators);
+        } else {
+            releaseCollaborators();
         }
         stopForeground(true);
         super.onDestroy();
     }
 
+    /**
+     * Close what sessions share with the service, once no session uses it any more.
+     */
+    private void releaseCollaborators() {
+        if (notificationHandler != null) {
+            notificationHandler.cancelNotification();
+            notificationHandler.release();
+        }
+        if (callerHistory != null) {
+            callerHistory.close();
+        }
+        if (transcriptStore != null) {
+            // The last snippets of the call may not have reached the store yet
+            TranscriptBus.getInstance().unsubscribe(transcriptStore, true);
+            transcriptStoreExecutor.shutdown(); // Runs the final delivery first
+        }
+    }
+
     // CallSessionManager.CallSessionListener Implementation
     @Override
     public void onUserTookOver(CallSessionManager session) {
         Log.i(TAG, "CallSessionListener: onUserTookOver for session: " + session.hashCode());
         if (session == currentCallSessionManager && activeCallDetails != null) {
             userHasTakenOverCall = true;
+            recordCallerHistory(session, true);
 
             CallResponse takeOverResponse = new CallResponse.Builder().build();
             respondToCall(activeCallDetails, takeOverResponse);
@@ -175,6 +320,9 @@ public class CallScreeningServiceImpl extends CallScreeningService implements Ca
     public void onSessionCompleted(CallSessionManager session) {
         Log.i(TAG, "CallSessionListener: onSessionCompleted for session: " + session.hashCode());
         if (session == currentCallSessionManager) {
+            if (!userHasTakenOverCall) {
+                recordCallerHistory(session, false);
+            }
             if (notificationHandler != null && !userHasTakenOverCall) {
                 notificationHandler.updateNotification(
                     getString(R.string.notification_title_screening),
@@ -202,6 +350,9 @@ public class CallScreeningServiceImpl extends CallScreeningService implements Ca
     public void onSessionError(CallSessionManager session, String errorMessage) {
         Log.e(TAG, "CallSessionListener: onSessionError for session: " + session.hashCode() + " Error: " + errorMessage);
         if (session == currentCallSessionManager) {
+            if (!userHasTakenOverCall) {
+                recordCallerHistory(session, false);
+            }
             if (notificationHandler != null && !userHasTakenOverCall) {
                 notificationHandler.updateNotification(
                     getString(R.string.notification_title_screening),
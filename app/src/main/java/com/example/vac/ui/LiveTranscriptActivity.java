@@ -0,0 +1,104 @@
+package com.example.vac.ui;
+
+import android.os.Bundle;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.vac.R;
+import com.example.vac.handlers.TranscriptBus;
+import com.example.vac.models.TranscriptionData;
+import com.google.android.material.appbar.MaterialToolbar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The transcript of the call being screened, as it is spoken. Subscribes to the
+ * {@link TranscriptBus} with replay, so opening it mid-call shows everything said so far.
+ * Rows are built on a background thread; the list only receives finished items.
+ */
+public class LiveTranscriptActivity extends AppCompatActivity implements TranscriptBus.Subscriber {
+    private RecyclerView transcriptionRecyclerView;
+    private TextView emptyText;
+    private TranscriptionAdapter transcriptionAdapter;
+    private TranscriptItem.Factory itemFactory;
+    private ExecutorService transcriptExecutor;
+
+    // Used only on transcriptExecutor
+    private final List<TranscriptItem> items = new ArrayList<>();
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_live_transcript);
+
+        MaterialToolbar toolbar = findViewById(R.id.toolbar);
+        transcriptionRecyclerView = findViewById(R.id.transcriptionRecyclerView);
+        emptyText = findViewById(R.id.emptyText);
+
+        setSupportActionBar(toolbar);
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        getSupportActionBar().setTitle(R.string.live_transcript_title);
+
+        transcriptionAdapter = new TranscriptionAdapter();
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        layoutManager.setStackFromEnd(true);
+        transcriptionRecyclerView.setLayoutManager(layoutManager);
+        transcriptionRecyclerView.setAdapter(transcriptionAdapter);
+
+        itemFactory = new TranscriptItem.Factory(this);
+        transcriptExecutor = Executors.newSingleThreadExecutor();
+        TranscriptBus.getInstance().subscribe(this, transcriptExecutor, true);
+    }
+
+    @Override
+    public void onCallStarted(@NonNull String callId) {
+        items.clear();
+        showItems();
+    }
+
+    @Override
+    public void onSnippet(@NonNull TranscriptionData snippet) {
+        items.add(itemFactory.plain(snippet));
+        showItems();
+    }
+
+    private void showItems() {
+        List<TranscriptItem> snapshot = new ArrayList<>(items);
+        runOnUiThread(() -> {
+            if (isDestroyed()) {
+                return;
+            }
+            emptyText.setVisibility(snapshot.isEmpty() ? View.VISIBLE : View.GONE);
+            transcriptionAdapter.setItems(snapshot, () -> {
+                if (!snapshot.isEmpty()) {
+                    transcriptionRecyclerView.smoothScrollToPosition(snapshot.size() - 1);
+                }
+            });
+        });
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            finish();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        TranscriptBus.getInstance().unsubscribe(this);
+        transcriptExecutor.shutdownNow();
+    }
+}
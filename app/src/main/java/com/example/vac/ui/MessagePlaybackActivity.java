@@ -4,11 +4,14 @@ import android.media.MediaPlayer;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.SearchView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
@@ -16,34 +19,48 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.vac.R;
+import com.example.vac.handlers.MessageRecorderHandler;
+import com.example.vac.handlers.RecordingCompactor;
+import com.example.vac.handlers.StreamingRecorder;
 import com.example.vac.handlers.TranscriptionManager;
+import com.example.vac.handlers.WaveformPeaks;
 import com.example.vac.models.TranscriptionData;
+import com.example.vac.utils.TranscriptAlignment;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.progressindicator.LinearProgressIndicator;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
-public class MessagePlaybackActivity extends AppCompatActivity {
+public class MessagePlaybackActivity extends AppCompatActivity implements PlaybackSync.Callback {
     private static final String TAG = "MessagePlaybackActivity";
-    private static final int UPDATE_INTERVAL_MS = 100;
 
     private MaterialToolbar toolbar;
     private RecyclerView transcriptionRecyclerView;
     private TranscriptionAdapter transcriptionAdapter;
     private LinearProgressIndicator progressIndicator;
+    private WaveformView waveformView;
     private FloatingActionButton playPauseButton;
     private TextView timestampText;
     private SearchView searchView;
 
     private MediaPlayer mediaPlayer;
-    private Handler updateHandler;
+    private PlaybackSync playbackSync;
+    private long shownSecond = -1;
     private boolean isPlaying = false;
     private String currentCallId;
     private TranscriptionManager transcriptionManager;
-    private List<TranscriptionData> transcriptions = new ArrayList<>();
+    private ExecutorService transcriptExecutor;
+    private ExecutorService waveformExecutor; // Generating peaks can take a while, searches should not wait
+    private TranscriptItem.Factory itemFactory;
+    private TranscriptSearchController searchController;
+    private TranscriptAlignment alignment = TranscriptAlignment.EMPTY;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -54,6 +71,7 @@ public class MessagePlaybackActivity extends AppCompatActivity {
         toolbar = findViewById(R.id.toolbar);
         transcriptionRecyclerView = findViewById(R.id.transcriptionRecyclerView);
         progressIndicator = findViewById(R.id.progressIndicator);
+        waveformView = findViewById(R.id.waveformView);
         playPauseButton = findViewById(R.id.playPauseButton);
         timestampText = findViewById(R.id.timestampText);
         searchView = findViewById(R.id.searchView);
@@ -65,16 +83,34 @@ public class MessagePlaybackActivity extends AppCompatActivity {
 
         // Initialize TranscriptionManager
         transcriptionManager = new TranscriptionManager(this);
+        transcriptExecutor = Executors.newSingleThreadExecutor();
+        waveformExecutor = Executors.newSingleThreadExecutor();
+        itemFactory = new TranscriptItem.Factory(this);
+        searchController = new TranscriptSearchController(transcriptionManager, transcriptExecutor,
+                new Handler(Looper.getMainLooper()), itemFactory, this::showSearchResults);
 
         // Setup RecyclerView
         transcriptionAdapter = new TranscriptionAdapter();
         transcriptionRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         transcriptionRecyclerView.setAdapter(transcriptionAdapter);
 
+        playbackSync = new PlaybackSync(Choreographer.getInstance(), new PlaybackSync.PositionSource() {
+            @Override
+            public int getPositionMs() {
+                return mediaPlayer != null ? mediaPlayer.getCurrentPosition() : 0;
+            }
+
+            @Override
+            public int getDurationMs() {
+                return mediaPlayer != null ? mediaPlayer.getDuration() : 0;
+            }
+        }, this);
+
         // Get call ID from intent
         currentCallId = getIntent().getStringExtra("call_id");
         if (currentCallId != null) {
             loadTranscriptions(currentCallId);
+            waveformView.post(() -> loadWaveform(currentCallId)); // Once laid out, for its width
         }
 
         // Setup click listeners
@@ -82,31 +118,73 @@ public class MessagePlaybackActivity extends AppCompatActivity {
         searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
             @Override
             public boolean onQueryTextSubmit(String query) {
-                searchTranscriptions(query);
+                searchController.searchNow(query);
                 return true;
             }
 
             @Override
             public boolean onQueryTextChange(String newText) {
                 if (newText.isEmpty()) {
-                    loadTranscriptions(currentCallId);
+                    searchController.cancel();
+                    if (currentCallId != null) {
+                        loadTranscriptions(currentCallId);
+                    }
+                } else {
+                    searchController.setQuery(newText);
                 }
                 return true;
             }
         });
-
-        // Initialize update handler
-        updateHandler = new Handler(Looper.getMainLooper());
     }
 
     private void loadTranscriptions(String callId) {
-        transcriptions = transcriptionManager.getTranscriptionForCall(callId);
-        transcriptionAdapter.setTranscriptions(transcriptions);
+        // Only compacted recordings have a time map, and those are always AAC
+        File compacted = new File(getFilesDir(), callId + StreamingRecorder.FILE_EXTENSION);
+        transcriptExecutor.execute(() -> {
+            List<TranscriptionData> transcript = transcriptionManager.getTranscriptionForCall(callId);
+            TranscriptAlignment loadedAlignment = TranscriptAlignment.build(transcript,
+                    transcriptionManager.getRecordingStart(callId), RecordingCompactor.readTimeMap(compacted));
+            List<TranscriptItem> items = itemFactory.plain(transcript);
+            runOnUiThread(() -> {
+                if (isDestroyed() || searchView.getQuery().length() > 0) {
+                    return; // A search started meanwhile and owns the list
+                }
+                alignment = loadedAlignment;
+                transcriptionAdapter.setItems(items);
+                playbackSync.setAlignment(alignment);
+            });
+        });
     }
 
-    private void searchTranscriptions(String query) {
-        transcriptions = transcriptionManager.searchTranscriptions(query);
-        transcriptionAdapter.setTranscriptions(transcriptions);
+    private void loadWaveform(String callId) {
+        int width = waveformView.getWidth();
+        waveformExecutor.execute(() -> {
+            File recording = findRecording(callId);
+            WaveformPeaks peaks = recording != null ? WaveformPeaks.readOrGenerate(recording, width) : null;
+            runOnUiThread(() -> {
+                if (isDestroyed() || peaks == null) {
+                    return; // Only the progress bar then
+                }
+                waveformView.setPeaks(peaks);
+                waveformView.setVisibility(View.VISIBLE);
+            });
+        });
+    }
+
+    private File findRecording(String callId) {
+        for (MessageRecorderHandler.Mode mode : MessageRecorderHandler.Mode.values()) {
+            File file = new File(getFilesDir(), callId + mode.fileExtension);
+            if (file.exists()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private void showSearchResults(String query, List<TranscriptItem> results) {
+        alignment = TranscriptAlignment.EMPTY; // Results span calls, none of them is playing
+        transcriptionAdapter.setItems(results);
+        playbackSync.setAlignment(alignment);
     }
 
     private void togglePlayback() {
@@ -119,69 +197,76 @@ public class MessagePlaybackActivity extends AppCompatActivity {
 
     private void startPlayback() {
         if (mediaPlayer == null) {
-            // TODO: Initialize MediaPlayer with the audio file
-            // mediaPlayer = MediaPlayer.create(this, audioFileUri);
+            mediaPlayer = createPlayer();
         }
 
         if (mediaPlayer != null) {
             mediaPlayer.start();
             isPlaying = true;
-            playPauseButton.setImageResource(R.drawable.ic_pause);
-            startProgressUpdates();
+            playPauseButton.setImageResource(android.R.drawable.ic_media_pause);
+            playbackSync.start();
+        }
+    }
+
+    private MediaPlayer createPlayer() {
+        File recording = currentCallId != null ? findRecording(currentCallId) : null;
+        if (recording == null) {
+            Toast.makeText(this, R.string.error_playing_message, Toast.LENGTH_SHORT).show();
+            return null;
+        }
+        MediaPlayer player = new MediaPlayer();
+        try {
+            player.setDataSource(recording.getAbsolutePath());
+            player.prepare();
+        } catch (IOException e) {
+            Log.e(TAG, "Error preparing " + recording.getName(), e);
+            Toast.makeText(this, R.string.error_playing_message, Toast.LENGTH_SHORT).show();
+            player.release();
+            return null;
         }
+        player.setOnCompletionListener(mp -> {
+            isPlaying = false;
+            playPauseButton.setImageResource(android.R.drawable.ic_media_play);
+            playbackSync.stop();
+            onPositionChanged(mp.getDuration(), mp.getDuration()); // The last frame may have missed the end
+        });
+        return player;
     }
 
     private void pausePlayback() {
         if (mediaPlayer != null && mediaPlayer.isPlaying()) {
             mediaPlayer.pause();
             isPlaying = false;
-            playPauseButton.setImageResource(R.drawable.ic_play);
-            stopProgressUpdates();
+            playPauseButton.setImageResource(android.R.drawable.ic_media_play);
+            playbackSync.stop();
         }
     }
 
-    private void startProgressUpdates() {
-        updateHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                if (mediaPlayer != null && isPlaying) {
-                    int currentPosition = mediaPlayer.getCurrentPosition();
-                    int duration = mediaPlayer.getDuration();
-                    
-                    // Update progress
-                    progressIndicator.setMax(duration);
-                    progressIndicator.setProgress(currentPosition);
-                    
-                    // Update timestamp
-                    updateTimestamp(currentPosition);
-                    
-                    // Update highlighted transcription
-                    updateHighlightedTranscription(currentPosition);
-                    
-                    updateHandler.postDelayed(this, UPDATE_INTERVAL_MS);
-                }
-            }
-        });
-    }
-
-    private void stopProgressUpdates() {
-        updateHandler.removeCallbacksAndMessages(null);
+    @Override
+    public void onPositionChanged(int positionMs, int durationMs) {
+        if (progressIndicator.getMax() != durationMs) {
+            progressIndicator.setMax(durationMs);
+        }
+        progressIndicator.setProgress(positionMs);
+        waveformView.setProgress(durationMs > 0 ? (float) positionMs / durationMs : 0);
+        long second = TimeUnit.MILLISECONDS.toSeconds(positionMs);
+        if (second != shownSecond) {
+            shownSecond = second;
+            timestampText.setText(String.format(Locale.ROOT, "%02d:%02d", second / 60, second % 60));
+        }
     }
 
-    private void updateTimestamp(int position) {
-        long minutes = TimeUnit.MILLISECONDS.toMinutes(position);
-        long seconds = TimeUnit.MILLISECONDS.toSeconds(position) % 60;
-        timestampText.setText(String.format("%02d:%02d", minutes, seconds));
+    @Override
+    public void onSnippetChanged(int snippet) {
+        transcriptionAdapter.setHighlightedPosition(snippet);
     }
 
-    private void updateHighlightedTranscription(int currentPosition) {
-        for (int i = 0; i < transcriptions.size(); i++) {
-            TranscriptionData transcription = transcriptions.get(i);
-            if (transcription.getTimestamp() <= currentPosition) {
-                transcriptionAdapter.setHighlightedPosition(i);
-                transcriptionRecyclerView.smoothScrollToPosition(i);
-                break;
-            }
+    @Override
+    public void onScrollTo(int snippet, boolean smooth) {
+        if (smooth) {
+            transcriptionRecyclerView.smoothScrollToPosition(snippet);
+        } else {
+            transcriptionRecyclerView.scrollToPosition(snippet);
         }
     }
 
@@ -192,7 +277,10 @@ public class MessagePlaybackActivity extends AppCompatActivity {
             mediaPlayer.release();
             mediaPlayer = null;
         }
-        stopProgressUpdates();
+        playbackSync.stop();
+        searchController.cancel();
+        transcriptExecutor.shutdownNow();
+        waveformExecutor.shutdownNow();
     }
 
     @Override
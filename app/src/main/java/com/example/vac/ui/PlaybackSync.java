@@ -0,0 +1,132 @@
+package com.example.vac.ui;
+
+import android.view.Choreographer;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import com.example.vac.utils.TranscriptAlignment;
+
+/**
+ * Keeps the playback position, progress bar and transcript in step with the player, reading the
+ * position once per display frame. Nothing is dispatched unless something changed: the position
+ * when it moved, the highlighted snippet when another one starts.
+ * <p>
+ * Scrolling runs slightly ahead of playback: the transcript starts scrolling to the next snippet
+ * {@link #SCROLL_LEAD_MS} before it is spoken, so the animation ends as it is highlighted. After
+ * a seek or a stall that leaves the list more than {@link #CATCH_UP_DISTANCE} items behind, it
+ * jumps instead of animating through everything in between.
+ */
+@MainThread
+public class PlaybackSync implements Choreographer.FrameCallback {
+    static final long SCROLL_LEAD_MS = 250; // About as long as a short smooth scroll
+    static final int CATCH_UP_DISTANCE = 3;
+    private static final int UNKNOWN = -2; // Not worked out yet; -1 is "before the first snippet"
+
+    /**
+     * Where the position comes from, typically a MediaPlayer.
+     */
+    public interface PositionSource {
+        int getPositionMs();
+        int getDurationMs();
+    }
+
+    public interface Callback {
+        void onPositionChanged(int positionMs, int durationMs);
+        /** @param snippet Index in the transcript, -1 before the first one */
+        void onSnippetChanged(int snippet);
+        void onScrollTo(int snippet, boolean smooth);
+    }
+
+    private final Choreographer choreographer;
+    private final PositionSource source;
+    private final Callback callback;
+    private TranscriptAlignment alignment = TranscriptAlignment.EMPTY;
+    private boolean running;
+    private int lastPositionMs = -1;
+    private int lastDurationMs = -1;
+    private int activeSnippet = UNKNOWN;
+    private int scrolledTo = -1;
+
+    public PlaybackSync(@NonNull Choreographer choreographer, @NonNull PositionSource source, @NonNull Callback callback) {
+        this.choreographer = choreographer;
+        this.source = source;
+        this.callback = callback;
+    }
+
+    /**
+     * Use another transcript. The highlight and scroll position are worked out again on the next
+     * frame, or right away if not running.
+     */
+    public void setAlignment(@NonNull TranscriptAlignment alignment) {
+        this.alignment = alignment;
+        activeSnippet = UNKNOWN;
+        scrolledTo = -1;
+        lastPositionMs = -1;
+        if (!running) {
+            sync(source.getPositionMs(), source.getDurationMs());
+        }
+    }
+
+    public void start() {
+        if (!running) {
+            running = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Stop following the player, after bringing everything up to its current position.
+     */
+    public void stop() {
+        if (running) {
+            running = false;
+            choreographer.removeFrameCallback(this);
+        }
+        sync(source.getPositionMs(), source.getDurationMs());
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) {
+            return;
+        }
+        sync(source.getPositionMs(), source.getDurationMs());
+        choreographer.postFrameCallback(this);
+    }
+
+    void sync(int positionMs, int durationMs) {
+        if (positionMs == lastPositionMs && durationMs == lastDurationMs) {
+            return;
+        }
+        lastPositionMs = positionMs;
+        lastDurationMs = durationMs;
+        callback.onPositionChanged(positionMs, durationMs);
+
+        int snippet = alignment.snippetAt(positionMs);
+        if (snippet != activeSnippet) {
+            activeSnippet = snippet;
+            callback.onSnippetChanged(snippet);
+            if (snippet != -1 && snippet != scrolledTo) {
+                scrollTo(snippet);
+            }
+        }
+        long nextStartMs = alignment.nextStartAfter(positionMs);
+        if (nextStartMs != -1 && nextStartMs - positionMs <= SCROLL_LEAD_MS) {
+            int next = alignment.snippetAt(nextStartMs);
+            if (next != scrolledTo) {
+                scrollTo(next);
+            }
+        }
+    }
+
+    private void scrollTo(int snippet) {
+        boolean smooth = scrolledTo != -1 && Math.abs(snippet - scrolledTo) <= CATCH_UP_DISTANCE;
+        scrolledTo = snippet;
+        callback.onScrollTo(snippet, smooth);
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.vac.ui;
+
+import android.content.Context;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.BackgroundColorSpan;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+import androidx.core.content.ContextCompat;
+
+import com.example.vac.R;
+import com.example.vac.models.TranscriptionData;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A transcript snippet as shown in the list. Everything bound to a row (speaker name, time,
+ * colour, text with search matches highlighted) is worked out when the item is built, off the
+ * main thread, so binding only sets fields.
+ */
+public final class TranscriptItem {
+    public final TranscriptionData transcription;
+    /** Start and end of each search match in the text, in pairs; empty when not searching */
+    public final int[] ranges;
+    final long stableId;
+    final CharSequence displayText;
+    final String speakerName;
+    final String timeText;
+    @ColorInt
+    final int backgroundColor;
+
+    private TranscriptItem(TranscriptionData transcription, int[] ranges, CharSequence displayText,
+                           String speakerName, String timeText, int backgroundColor) {
+        this.transcription = transcription;
+        this.ranges = ranges;
+        this.displayText = displayText;
+        this.speakerName = speakerName;
+        this.timeText = timeText;
+        this.backgroundColor = backgroundColor;
+        // The same snippet keeps its id in the call's transcript and in search results. Within
+        // a call, timestamps fit in 48 bits, so the sequence tells apart snippets sharing one.
+        this.stableId = ((long) transcription.getCallId().hashCode() << 32)
+                ^ ((long) transcription.getSequence() << 48) ^ transcription.getTimestamp();
+    }
+
+    boolean isSameSnippet(@NonNull TranscriptItem other) {
+        return transcription.getTimestamp() == other.transcription.getTimestamp()
+                && transcription.getSequence() == other.transcription.getSequence()
+                && transcription.getCallId().equals(other.transcription.getCallId());
+    }
+
+    boolean sameContentAs(@NonNull TranscriptItem other) {
+        return transcription.getText().equals(other.transcription.getText())
+                && transcription.getSpeakerType() == other.transcription.getSpeakerType()
+                && Arrays.equals(ranges, other.ranges);
+    }
+
+    /**
+     * Builds items with resources resolved once. Create on the main thread, use on any.
+     */
+    public static final class Factory {
+        private final DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("HH:mm:ss", Locale.getDefault())
+                .withZone(ZoneId.systemDefault());
+        @ColorInt
+        private final int assistantColor;
+        @ColorInt
+        private final int userColor;
+        @ColorInt
+        private final int callerColor;
+        @ColorInt
+        private final int defaultColor;
+        @ColorInt
+        private final int matchColor;
+
+        @MainThread
+        public Factory(@NonNull Context context) {
+            this(ContextCompat.getColor(context, R.color.assistant_background),
+                    ContextCompat.getColor(context, R.color.user_background),
+                    ContextCompat.getColor(context, R.color.caller_background),
+                    ContextCompat.getColor(context, R.color.default_background),
+                    ContextCompat.getColor(context, R.color.search_match));
+        }
+
+        Factory(int assistantColor, int userColor, int callerColor, int defaultColor, int matchColor) {
+            this.assistantColor = assistantColor;
+            this.userColor = userColor;
+            this.callerColor = callerColor;
+            this.defaultColor = defaultColor;
+            this.matchColor = matchColor;
+        }
+
+        @NonNull
+        @WorkerThread
+        public TranscriptItem plain(@NonNull TranscriptionData transcription) {
+            return build(transcription, new int[0], transcription.getText());
+        }
+
+        @NonNull
+        @WorkerThread
+        public List<TranscriptItem> plain(@NonNull List<TranscriptionData> transcriptions) {
+            List<TranscriptItem> items = new ArrayList<>(transcriptions.size());
+            for (TranscriptionData transcription : transcriptions) {
+                items.add(plain(transcription));
+            }
+            return items;
+        }
+
+        /**
+         * An item with search matches highlighted.
+         */
+        @NonNull
+        @WorkerThread
+        public TranscriptItem highlighted(@NonNull TranscriptionData transcription, @NonNull int[] ranges) {
+            if (ranges.length == 0) {
+                return plain(transcription);
+            }
+            SpannableString text = new SpannableString(transcription.getText());
+            for (int i = 0; i < ranges.length; i += 2) {
+                text.setSpan(new BackgroundColorSpan(matchColor), ranges[i], ranges[i + 1], Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+            return build(transcription, ranges, text);
+        }
+
+        private TranscriptItem build(TranscriptionData transcription, int[] ranges, CharSequence displayText) {
+            return new TranscriptItem(transcription, ranges, displayText, speakerName(transcription.getSpeakerType()),
+                    timeFormat.format(Instant.ofEpochMilli(transcription.getTimestamp())),
+                    speakerColor(transcription.getSpeakerType()));
+        }
+
+        private static String speakerName(TranscriptionData.SpeakerType speakerType) {
+            switch (speakerType) {
+                case ASSISTANT:
+                    return "Assistant";
+                case USER:
+                    return "You";
+                case CALLER:
+                    return "Caller";
+                default:
+                    return "Unknown";
+            }
+        }
+
+        private int speakerColor(TranscriptionData.SpeakerType speakerType) {
+            switch (speakerType) {
+                case ASSISTANT:
+                    return assistantColor;
+                case USER:
+                    return userColor;
+                case CALLER:
+                    return callerColor;
+                default:
+                    return defaultColor;
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.vac.ui;
+
+import android.os.Handler;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.example.vac.handlers.TranscriptionManager;
+import com.example.vac.models.TranscriptionData;
+import com.example.vac.utils.FoldedText;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Search-as-you-type over all transcripts, off the main thread.
+ * <p>
+ * Queries are debounced by {@link #DEBOUNCE_MS}, and a newer query cancels the search of an
+ * older one, which stops at its next check and never reports. The transcripts are loaded once
+ * and kept with their {@link FoldedText} until the transcripts file changes, so matching ignores
+ * case and diacritics. A query that extends the previous one only looks at the previous results.
+ * <p>
+ * Results come as {@link TranscriptItem}s with their matches already highlighted, mapped back to
+ * the original text.
+ */
+@MainThread
+public class TranscriptSearchController {
+    static final long DEBOUNCE_MS = 200;
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+
+    public interface Listener {
+        /**
+         * Results of the latest query, sorted by timestamp.
+         */
+        void onResults(@NonNull String query, @NonNull List<TranscriptItem> results);
+    }
+
+    private final TranscriptionManager transcriptionManager;
+    private final Executor executor;
+    private final Handler mainHandler;
+    private final Listener listener;
+    private final TranscriptItem.Factory itemFactory;
+    private final AtomicInteger generation = new AtomicInteger();
+    private Runnable pending;
+
+    // Used only on the executor
+    private Index index;
+    private String refinedQuery;
+    private int[] refinedMatches;
+
+    /**
+     * @param executor Runs searches one at a time
+     * @param mainHandler Delivers results and runs the debounce timer
+     * @param itemFactory Builds the result items on the executor
+     */
+    public TranscriptSearchController(@NonNull TranscriptionManager transcriptionManager, @NonNull Executor executor,
+                                      @NonNull Handler mainHandler, @NonNull TranscriptItem.Factory itemFactory,
+                                      @NonNull Listener listener) {
+        this.transcriptionManager = transcriptionManager;
+        this.executor = executor;
+        this.mainHandler = mainHandler;
+        this.itemFactory = itemFactory;
+        this.listener = listener;
+    }
+
+    /**
+     * Search once typing has paused.
+     */
+    public void setQuery(@NonNull String query) {
+        cancel();
+        pending = () -> search(query);
+        mainHandler.postDelayed(pending, DEBOUNCE_MS);
+    }
+
+    /**
+     * Search right away, e.g. when the query was submitted.
+     */
+    public void searchNow(@NonNull String query) {
+        cancel();
+        search(query);
+    }
+
+    /**
+     * Drop the pending query and any search in progress.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+        if (pending != null) {
+            mainHandler.removeCallbacks(pending);
+            pending = null;
+        }
+    }
+
+    private void search(String query) {
+        pending = null;
+        int searchGeneration = generation.incrementAndGet();
+        executor.execute(() -> {
+            List<TranscriptItem> results = runSearch(query, () -> generation.get() != searchGeneration);
+            if (results == null) {
+                return;
+            }
+            mainHandler.post(() -> {
+                if (generation.get() == searchGeneration) {
+                    listener.onResults(query, results);
+                }
+            });
+        });
+    }
+
+    /**
+     * @return The results, or null if cancelled
+     */
+    @WorkerThread
+    private List<TranscriptItem> runSearch(String query, Index.Cancellation cancellation) {
+        long modified = transcriptionManager.getLastModified();
+        if (index == null || index.lastModified != modified) {
+            index = new Index(transcriptionManager.getAllTranscriptions(), modified);
+            refinedQuery = null;
+            refinedMatches = null;
+        }
+        String folded = FoldedText.fold(query);
+        // Anything matching the longer query also matched the shorter one
+        int[] within = refinedQuery != null && folded.contains(refinedQuery) ? refinedMatches : null;
+        int[] matches = index.search(folded, within, cancellation);
+        if (matches == null) {
+            return null;
+        }
+        refinedQuery = folded;
+        refinedMatches = matches;
+        return index.matches(matches, folded, itemFactory);
+    }
+
+    /**
+     * All transcripts, sorted by timestamp, with their text folded for matching.
+     */
+    static final class Index {
+        interface Cancellation {
+            boolean isCancelled();
+        }
+
+        final long lastModified;
+        private final TranscriptionData[] snippets;
+        private final FoldedText[] foldedTexts;
+
+        Index(List<TranscriptionData> transcriptions, long lastModified) {
+            this.lastModified = lastModified;
+            snippets = transcriptions.toArray(new TranscriptionData[0]);
+            Arrays.sort(snippets, (t1, t2) -> Long.compare(t1.getTimestamp(), t2.getTimestamp()));
+            foldedTexts = new FoldedText[snippets.length];
+            for (int i = 0; i < snippets.length; i++) {
+                foldedTexts[i] = FoldedText.of(snippets[i].getText());
+            }
+        }
+
+        /**
+         * Positions of the snippets containing the query.
+         *
+         * @param within Positions to look at, all if null
+         * @return The positions in ascending order, or null if cancelled
+         */
+        int[] search(String foldedQuery, int[] within, Cancellation cancellation) {
+            int count = within != null ? within.length : snippets.length;
+            int[] matches = new int[Math.min(count, 64)];
+            int matchCount = 0;
+            for (int i = 0; i < count; i++) {
+                if (i % CANCEL_CHECK_INTERVAL == 0 && cancellation.isCancelled()) {
+                    return null;
+                }
+                int position = within != null ? within[i] : i;
+                if (foldedTexts[position].contains(foldedQuery)) {
+                    if (matchCount == matches.length) {
+                        matches = Arrays.copyOf(matches, matches.length * 2);
+                    }
+                    matches[matchCount++] = position;
+                }
+            }
+            return Arrays.copyOf(matches, matchCount);
+        }
+
+        /**
+         * The snippets at these positions, with where the query occurs in each.
+         */
+        List<TranscriptItem> matches(int[] positions, String foldedQuery, TranscriptItem.Factory itemFactory) {
+            if (positions.length == 0) {
+                return Collections.emptyList();
+            }
+            List<TranscriptItem> result = new ArrayList<>(positions.length);
+            for (int position : positions) {
+                result.add(itemFactory.highlighted(snippets[position], foldedTexts[position].findInOriginal(foldedQuery)));
+            }
+            return result;
+        }
+    }
+}
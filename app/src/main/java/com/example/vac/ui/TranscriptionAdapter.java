@@ -7,50 +7,79 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.vac.R;
-import com.example.vac.models.TranscriptionData;
 import com.google.android.material.card.MaterialCardView;
 
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 
+/**
+ * Shows {@link TranscriptItem}s, whose display fields are prepared before they get here, so
+ * binding does not format or allocate. New lists are diffed in the background and only the
+ * rows that changed are rebound; moving the playback highlight only restyles two cards.
+ */
 public class TranscriptionAdapter extends RecyclerView.Adapter<TranscriptionAdapter.ViewHolder> {
-    private List<TranscriptionData> transcriptions = new ArrayList<>();
+    private static final Object PAYLOAD_HIGHLIGHT = new Object();
+    private static final int HIGHLIGHT_STROKE_WIDTH = 4;
+
+    private static final DiffUtil.ItemCallback<TranscriptItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<TranscriptItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull TranscriptItem oldItem, @NonNull TranscriptItem newItem) {
+            return oldItem.isSameSnippet(newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull TranscriptItem oldItem, @NonNull TranscriptItem newItem) {
+            return oldItem.sameContentAs(newItem);
+        }
+    };
+
+    // Diffs on a background thread, so a new result list never blocks typing
+    private final AsyncListDiffer<TranscriptItem> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
     private int highlightedPosition = -1;
-    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
+    private int highlightColor;
+
+    public TranscriptionAdapter() {
+        setHasStableIds(true);
+    }
 
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_transcription, parent, false);
+        if (highlightColor == 0) {
+            highlightColor = ContextCompat.getColor(parent.getContext(), R.color.highlight);
+        }
         return new ViewHolder(view);
     }
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        TranscriptionData transcription = transcriptions.get(position);
-        
-        // Set speaker name and text
-        holder.speakerNameText.setText(getSpeakerName(transcription.getSpeakerType()));
-        holder.transcriptionText.setText(transcription.getText());
-        
-        // Set timestamp
-        holder.timestampText.setText(timeFormat.format(new Date(transcription.getTimestamp())));
-        
-        // Set background color based on speaker type
-        int backgroundColor = getSpeakerColor(transcription.getSpeakerType());
-        holder.cardView.setCardBackgroundColor(backgroundColor);
-        
-        // Highlight current position
+        TranscriptItem item = differ.getCurrentList().get(position);
+        holder.speakerNameText.setText(item.speakerName);
+        holder.transcriptionText.setText(item.displayText);
+        holder.timestampText.setText(item.timeText);
+        holder.cardView.setCardBackgroundColor(item.backgroundColor);
+        bindHighlight(holder, position);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.size() == 1 && payloads.get(0) == PAYLOAD_HIGHLIGHT) {
+            bindHighlight(holder, position);
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    private void bindHighlight(ViewHolder holder, int position) {
         if (position == highlightedPosition) {
-            holder.cardView.setStrokeWidth(4);
-            holder.cardView.setStrokeColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.highlight));
+            holder.cardView.setStrokeWidth(HIGHLIGHT_STROKE_WIDTH);
+            holder.cardView.setStrokeColor(highlightColor);
         } else {
             holder.cardView.setStrokeWidth(0);
         }
@@ -58,48 +87,39 @@ public class TranscriptionAdapter extends RecyclerView.Adapter<TranscriptionAdap
 
     @Override
     public int getItemCount() {
-        return transcriptions.size();
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).stableId;
     }
 
-    public void setTranscriptions(List<TranscriptionData> transcriptions) {
-        this.transcriptions = transcriptions;
-        notifyDataSetChanged();
+    /**
+     * Show new items, built with a {@link TranscriptItem.Factory}.
+     */
+    public void setItems(List<TranscriptItem> items) {
+        differ.submitList(items);
+    }
+
+    /**
+     * Show new items and run something once the list shows them.
+     */
+    public void setItems(List<TranscriptItem> items, Runnable onShown) {
+        differ.submitList(items, onShown);
     }
 
     public void setHighlightedPosition(int position) {
         int oldPosition = highlightedPosition;
+        if (position == oldPosition) {
+            return;
+        }
         highlightedPosition = position;
         if (oldPosition != -1) {
-            notifyItemChanged(oldPosition);
+            notifyItemChanged(oldPosition, PAYLOAD_HIGHLIGHT);
         }
         if (position != -1) {
-            notifyItemChanged(position);
-        }
-    }
-
-    private String getSpeakerName(TranscriptionData.SpeakerType speakerType) {
-        switch (speakerType) {
-            case ASSISTANT:
-                return "Assistant";
-            case USER:
-                return "You";
-            case CALLER:
-                return "Caller";
-            default:
-                return "Unknown";
-        }
-    }
-
-    private int getSpeakerColor(TranscriptionData.SpeakerType speakerType) {
-        switch (speakerType) {
-            case ASSISTANT:
-                return ContextCompat.getColor(holder.itemView.getContext(), R.color.assistant_background);
-            case USER:
-                return ContextCompat.getColor(holder.itemView.getContext(), R.color.user_background);
-            case CALLER:
-                return ContextCompat.getColor(holder.itemView.getContext(), R.color.caller_background);
-            default:
-                return ContextCompat.getColor(holder.itemView.getContext(), R.color.default_background);
+            notifyItemChanged(position, PAYLOAD_HIGHLIGHT);
         }
     }
 
@@ -117,4 +137,4 @@ public class TranscriptionAdapter extends RecyclerView.Adapter<TranscriptionAdap
             timestampText = view.findViewById(R.id.timestampText);
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+package com.example.vac.ui;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.example.vac.R;
+import com.example.vac.handlers.WaveformPeaks;
+
+/**
+ * Draws a recording's {@link WaveformPeaks} as one vertical line per pixel column, the part
+ * already played in the accent colour. The lines are worked out into one reused buffer whenever
+ * the size or the peaks change, and progress only redraws when the played part gains a column,
+ * so following playback neither allocates nor draws more than needed.
+ */
+public class WaveformView extends View {
+    private final Paint playedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint unplayedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    @Nullable
+    private WaveformPeaks peaks;
+    private float[] lines = new float[0]; // x, top, x, bottom of every column
+    private int columnCount;
+    private float progress;
+    private int playedColumns;
+
+    public WaveformView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        playedPaint.setColor(ContextCompat.getColor(context, R.color.accent));
+        unplayedPaint.setColor(ContextCompat.getColor(context, R.color.primary));
+    }
+
+    public void setPeaks(@Nullable WaveformPeaks peaks) {
+        this.peaks = peaks;
+        updateColumns(getWidth(), getHeight());
+        invalidate();
+    }
+
+    /**
+     * @param progress Part of the recording played, from 0 to 1
+     */
+    public void setProgress(float progress) {
+        this.progress = progress;
+        int played = playedColumns(progress, columnCount);
+        if (played != playedColumns) {
+            playedColumns = played;
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        updateColumns(width, height);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (columnCount == 0) {
+            return;
+        }
+        canvas.drawLines(lines, 0, playedColumns * 4, playedPaint);
+        canvas.drawLines(lines, playedColumns * 4, (columnCount - playedColumns) * 4, unplayedPaint);
+    }
+
+    private void updateColumns(int width, int height) {
+        if (peaks == null || peaks.getBucketCount() == 0 || width == 0) {
+            columnCount = 0;
+        } else {
+            if (lines.length < width * 4) {
+                lines = new float[width * 4];
+            }
+            columnCount = width;
+            columns(peaks, width, height, lines);
+        }
+        playedColumns = playedColumns(progress, columnCount);
+    }
+
+    private static int playedColumns(float progress, int columnCount) {
+        return Math.max(0, Math.min(columnCount, Math.round(progress * columnCount)));
+    }
+
+    /**
+     * One line per column, spanning the lowest to the highest sample of the buckets under it.
+     */
+    private static void columns(WaveformPeaks peaks, int width, int height, float[] lines) {
+        float middle = height / 2f;
+        float scale = middle / 128f;
+        int buckets = peaks.getBucketCount();
+        for (int x = 0; x < width; x++) {
+            int from = (int) ((long) x * buckets / width);
+            int to = Math.max(from + 1, (int) ((long) (x + 1) * buckets / width));
+            int min = 0;
+            int max = 0;
+            for (int bucket = from; bucket < to; bucket++) {
+                min = Math.min(min, peaks.getMin(bucket));
+                max = Math.max(max, peaks.getMax(bucket));
+            }
+            lines[x * 4] = x + 0.5f;
+            lines[x * 4 + 1] = middle - max * scale;
+            lines[x * 4 + 2] = x + 0.5f;
+            lines[x * 4 + 3] = middle - min * scale + 1; // Silence still shows as a line
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.vac.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * Immutable copy of the settings a screened call needs, with everything derived from them
+ * worked out once: the greeting as it is spoken and the greeting file to play. Obtained from
+ * {@link PreferencesManager#getSnapshot()}, which replaces it whenever a setting changes, so
+ * a call reads one reference instead of several preference keys.
+ */
+public final class ConfigSnapshot {
+    public static final String RECORDING_NOTICE = " Ta rozmowa jest nagrywana.";
+    private static final String RECORDING_KEYPHRASE = "rozmowa jest nagrywana";
+
+    private final String userName;
+    private final String greetingText;
+    private final String greetingSpeech;
+    private final String customGreetingFilePath;
+    private final boolean useStreamingRecorder;
+    private final boolean useSegmentedRecording;
+
+    private ConfigSnapshot(String userName, String greetingText, String greetingSpeech, String customGreetingFilePath,
+                           boolean useStreamingRecorder, boolean useSegmentedRecording) {
+        this.userName = userName;
+        this.greetingText = greetingText;
+        this.greetingSpeech = greetingSpeech;
+        this.customGreetingFilePath = customGreetingFilePath;
+        this.useStreamingRecorder = useStreamingRecorder;
+        this.useSegmentedRecording = useSegmentedRecording;
+    }
+
+    /**
+     * Read the current settings.
+     *
+     * @param defaultGreetingTemplate Greeting spoken when the user did not write one, with
+     *                                {@code %1$s} for their name
+     */
+    @NonNull
+    public static ConfigSnapshot read(@NonNull PreferencesManager preferences, @NonNull String defaultGreetingTemplate) {
+        String userName = nonNull(preferences.getUserName());
+        String greetingText = nonNull(preferences.getGreetingText());
+        String customGreetingFilePath = null;
+        if (preferences.shouldUseCustomGreetingFile()) {
+            String path = preferences.getCustomGreetingFilePath();
+            customGreetingFilePath = path != null && !path.isEmpty() ? path : null;
+        }
+        return new ConfigSnapshot(userName, greetingText,
+                composeGreeting(userName, greetingText, defaultGreetingTemplate), customGreetingFilePath,
+                preferences.shouldUseStreamingRecorder(), preferences.shouldUseSegmentedRecording());
+    }
+
+    /**
+     * The greeting to speak: the user's own text with the recording notice added if it does not
+     * mention recording, or the default greeting, which does.
+     */
+    @NonNull
+    public static String composeGreeting(@Nullable String userName, @Nullable String greetingText,
+                                         @NonNull String defaultGreetingTemplate) {
+        if (greetingText != null && !greetingText.trim().isEmpty()) {
+            if (!greetingText.toLowerCase(Locale.ROOT).contains(RECORDING_KEYPHRASE)) {
+                return greetingText + RECORDING_NOTICE;
+            }
+            return greetingText;
+        }
+        return String.format(defaultGreetingTemplate, userName != null ? userName : "");
+    }
+
+    private static String nonNull(String value) {
+        return value != null ? value : "";
+    }
+
+    @NonNull
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * The greeting as the user wrote it, empty if they did not.
+     */
+    @NonNull
+    public String getGreetingText() {
+        return greetingText;
+    }
+
+    /**
+     * The greeting as it is spoken to the caller.
+     */
+    @NonNull
+    public String getGreetingSpeech() {
+        return greetingSpeech;
+    }
+
+    /**
+     * The generated greeting to play instead of speaking {@link #getGreetingSpeech()}, or null
+     * if the user did not choose one.
+     */
+    @Nullable
+    public String getCustomGreetingFilePath() {
+        return customGreetingFilePath;
+    }
+
+    public boolean shouldUseStreamingRecorder() {
+        return useStreamingRecorder;
+    }
+
+    public boolean shouldUseSegmentedRecording() {
+        return useSegmentedRecording;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.vac.utils;
+
+import androidx.annotation.NonNull;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * Text lowercased and stripped of diacritics for matching ("Łódź" matches "lodz"), remembering
+ * where each folded character came from so matches can be mapped back to the original text.
+ */
+public final class FoldedText {
+    private final String text;
+    private final int[] origins; // Original index of each folded char, then the original length
+
+    private FoldedText(String text, int[] origins) {
+        this.text = text;
+        this.origins = origins;
+    }
+
+    @NonNull
+    public static FoldedText of(@NonNull String original) {
+        int length = original.length();
+        StringBuilder folded = new StringBuilder(length);
+        int[] origins = new int[length + 1];
+        for (int i = 0; i < length; i++) {
+            char c = original.charAt(i);
+            if (c < 0x80) { // Fast path for ASCII, which has nothing to strip
+                origins[folded.length()] = i;
+                folded.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+                continue;
+            }
+            String decomposed = Normalizer.normalize(String.valueOf(foldLetter(Character.toLowerCase(c))), Normalizer.Form.NFD);
+            for (int j = 0; j < decomposed.length(); j++) {
+                char part = decomposed.charAt(j);
+                if (Character.getType(part) == Character.NON_SPACING_MARK) {
+                    continue;
+                }
+                if (folded.length() + 1 >= origins.length) {
+                    origins = Arrays.copyOf(origins, origins.length * 2);
+                }
+                origins[folded.length()] = i;
+                folded.append(part);
+            }
+        }
+        origins[folded.length()] = length;
+        return new FoldedText(folded.toString(), Arrays.copyOf(origins, folded.length() + 1));
+    }
+
+    /**
+     * Fold a query the same way, without keeping track of origins.
+     */
+    @NonNull
+    public static String fold(@NonNull String query) {
+        return of(query).text;
+    }
+
+    /**
+     * Letters with a stroke have no decomposition, so they are mapped by hand.
+     */
+    private static char foldLetter(char c) {
+        switch (c) {
+            case 'ł':
+                return 'l';
+            case 'đ':
+                return 'd';
+            case 'ø':
+                return 'o';
+            case 'ı':
+                return 'i';
+            default:
+                return c;
+        }
+    }
+
+    @NonNull
+    public String getText() {
+        return text;
+    }
+
+    public boolean contains(@NonNull String foldedQuery) {
+        return text.contains(foldedQuery);
+    }
+
+    /**
+     * Where a folded query occurs in the original text.
+     *
+     * @return Start and end (exclusive) of each match, in pairs, in order
+     */
+    @NonNull
+    public int[] findInOriginal(@NonNull String foldedQuery) {
+        if (foldedQuery.isEmpty()) {
+            return new int[0];
+        }
+        int[] ranges = new int[2];
+        int count = 0;
+        int from = 0;
+        int index;
+        while ((index = text.indexOf(foldedQuery, from)) >= 0) {
+            if (count == ranges.length) {
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            }
+            ranges[count++] = origins[index];
+            // Up to the next folded char, so marks trailing the last matched char are included
+            ranges[count++] = origins[index + foldedQuery.length()];
+            from = index + foldedQuery.length();
+        }
+        return Arrays.copyOf(ranges, count);
+    }
+}
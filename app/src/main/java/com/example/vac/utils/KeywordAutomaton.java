@@ -0,0 +1,172 @@
+package com.example.vac.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton matching many keyword stems against a text in a single pass.
+ * Text and keywords are folded to a small alphabet (lowercase ASCII letters and digits, Polish
+ * diacritics mapped to their base letter, everything else a word separator), and the
+ * goto/failure functions are flattened into one transition table, so matching is a table
+ * lookup per character with no allocation.
+ * <p>
+ * Keywords only match at the start of a word, which makes them behave like stems:
+ * "paczk" matches "paczka" and "paczkomat" but not "opaczka".
+ */
+public class KeywordAutomaton {
+    private static final int SEPARATOR = 0;
+    private static final int ALPHABET = 1 + 26 + 10;
+
+    /**
+     * Receives every keyword occurrence, in text order.
+     */
+    public interface MatchListener {
+        void onMatch(int keywordIndex, int endExclusive);
+    }
+
+    private final int[] transitions; // state * ALPHABET + symbol -> state
+    private final int[][] outputs;   // state -> keyword indices ending here, incl. via failure links
+    private final int keywordCount;
+
+    private KeywordAutomaton(int[] transitions, int[][] outputs, int keywordCount) {
+        this.transitions = transitions;
+        this.outputs = outputs;
+        this.keywordCount = keywordCount;
+    }
+
+    /**
+     * Compile the automaton. Keyword indices reported by {@link #match} are positions in this list.
+     *
+     * @throws IllegalArgumentException if a keyword has no letters or digits
+     */
+    public static KeywordAutomaton compile(List<String> keywords) {
+        List<int[]> children = new ArrayList<>();
+        List<List<Integer>> terminal = new ArrayList<>();
+        children.add(newRow());
+        terminal.add(new ArrayList<>());
+
+        for (int k = 0; k < keywords.size(); k++) {
+            String keyword = keywords.get(k);
+            // Leading separator anchors the keyword to a word start
+            int state = child(children, terminal, 0, SEPARATOR);
+            boolean hasSymbols = false;
+            for (int i = 0; i < keyword.length(); i++) {
+                int symbol = symbolOf(keyword.charAt(i));
+                if (symbol == SEPARATOR) {
+                    throw new IllegalArgumentException("Keyword must be a single word: '" + keyword + "'");
+                }
+                state = child(children, terminal, state, symbol);
+                hasSymbols = true;
+            }
+            if (!hasSymbols) {
+                throw new IllegalArgumentException("Empty keyword at index " + k);
+            }
+            terminal.get(state).add(k);
+        }
+
+        // Breadth-first: fill missing transitions from the failure state and inherit its outputs
+        int stateCount = children.size();
+        int[] transitions = new int[stateCount * ALPHABET];
+        int[] failure = new int[stateCount];
+        int[][] outputs = new int[stateCount][];
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+
+        outputs[0] = toArray(terminal.get(0), null);
+        for (int symbol = 0; symbol < ALPHABET; symbol++) {
+            int next = children.get(0)[symbol];
+            if (next > 0) {
+                failure[next] = 0;
+                transitions[symbol] = next;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            outputs[state] = toArray(terminal.get(state), outputs[failure[state]]);
+            for (int symbol = 0; symbol < ALPHABET; symbol++) {
+                int next = children.get(state)[symbol];
+                if (next > 0) {
+                    failure[next] = transitions[failure[state] * ALPHABET + symbol];
+                    transitions[state * ALPHABET + symbol] = next;
+                    queue[tail++] = next;
+                } else {
+                    transitions[state * ALPHABET + symbol] = transitions[failure[state] * ALPHABET + symbol];
+                }
+            }
+        }
+        return new KeywordAutomaton(transitions, outputs, keywords.size());
+    }
+
+    public int getKeywordCount() {
+        return keywordCount;
+    }
+
+    /**
+     * Report every keyword occurrence in the text.
+     */
+    public void match(CharSequence text, MatchListener listener) {
+        int state = transitions[SEPARATOR]; // As if the text were preceded by a separator
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * ALPHABET + symbolOf(text.charAt(i))];
+            int[] found = outputs[state];
+            for (int keywordIndex : found) {
+                listener.onMatch(keywordIndex, i + 1);
+            }
+        }
+    }
+
+    static int symbolOf(char c) {
+        char folded = fold(Character.toLowerCase(c));
+        if (folded >= 'a' && folded <= 'z') {
+            return 1 + (folded - 'a');
+        }
+        if (folded >= '0' && folded <= '9') {
+            return 27 + (folded - '0');
+        }
+        return SEPARATOR;
+    }
+
+    private static char fold(char c) {
+        switch (c) {
+            case 'ą': return 'a';
+            case 'ć': return 'c';
+            case 'ę': return 'e';
+            case 'ł': return 'l';
+            case 'ń': return 'n';
+            case 'ó': return 'o';
+            case 'ś': return 's';
+            case 'ź':
+            case 'ż': return 'z';
+            default: return c;
+        }
+    }
+
+    private static int[] newRow() {
+        return new int[ALPHABET];
+    }
+
+    private static int child(List<int[]> children, List<List<Integer>> terminal, int state, int symbol) {
+        int next = children.get(state)[symbol];
+        if (next == 0) {
+            next = children.size();
+            children.add(newRow());
+            terminal.add(new ArrayList<>());
+            children.get(state)[symbol] = next;
+        }
+        return next;
+    }
+
+    private static int[] toArray(List<Integer> own, int[] inherited) {
+        int inheritedLength = inherited != null ? inherited.length : 0;
+        int[] result = new int[own.size() + inheritedLength];
+        for (int i = 0; i < own.size(); i++) {
+            result[i] = own.get(i);
+        }
+        if (inheritedLength > 0) {
+            System.arraycopy(inherited, 0, result, own.size(), inheritedLength);
+        }
+        return result;
+    }
+}
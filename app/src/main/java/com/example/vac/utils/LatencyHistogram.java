@@ -0,0 +1,174 @@
+package com.example.vac.utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Fixed-memory log-linear histogram of latencies in microseconds.
+ * Each power-of-two range is split into 16 linear sub-buckets, so any recorded value
+ * is reported within 1/16 (6.25%) of its true value. Values above ~71 minutes are
+ * clamped into the last bucket.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MSB = 31; // 2^32 us ~= 71 minutes
+    static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_MSB - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    // Non-final so Gson can restore persisted histograms
+    private long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Record a single value.
+     *
+     * @param valueMicros Latency in microseconds; negative values are recorded as 0.
+     */
+    public synchronized void record(long valueMicros) {
+        ensureCounts();
+        long value = Math.max(0, valueMicros);
+        counts[bucketIndex(value)]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Merge all values of another histogram into this one.
+     */
+    public void add(LatencyHistogram other) {
+        long[] otherCounts;
+        long otherTotal, otherSum, otherMin, otherMax;
+        synchronized (other) {
+            other.ensureCounts();
+            otherCounts = other.counts.clone();
+            otherTotal = other.totalCount;
+            otherSum = other.sum;
+            otherMin = other.min;
+            otherMax = other.max;
+        }
+        synchronized (this) {
+            ensureCounts();
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += otherCounts[i];
+            }
+            totalCount += otherTotal;
+            sum += otherSum;
+            min = Math.min(min, otherMin);
+            max = Math.max(max, otherMax);
+        }
+    }
+
+    /**
+     * Get the value at the given percentile.
+     *
+     * @param percentile Percentile in the range 0-100.
+     * @return The representative value of the bucket holding that rank, or 0 if empty.
+     */
+    public synchronized long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        ensureCounts();
+        double clamped = Math.min(100.0, Math.max(0.0, percentile));
+        long rank = Math.max(1, (long) Math.ceil(clamped / 100.0 * totalCount));
+        if (rank >= totalCount) {
+            return max; // Tracked exactly
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // Never report outside the exact observed range
+                return Math.min(max, Math.max(min, bucketMidpoint(i)));
+            }
+        }
+        return max;
+    }
+
+    public synchronized long getCount() {
+        return totalCount;
+    }
+
+    public synchronized long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized long getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    public synchronized void reset() {
+        counts = new long[BUCKET_COUNT];
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * One-line p50/p95/p99 summary in milliseconds.
+     */
+    public synchronized String summary() {
+        return String.format(Locale.ROOT, "n=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                totalCount,
+                getValueAtPercentile(50) / 1000.0,
+                getValueAtPercentile(95) / 1000.0,
+                getValueAtPercentile(99) / 1000.0,
+                max / 1000.0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        if (msb > MAX_MSB) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = msb - SUB_BUCKET_BITS;
+        int subBucket = (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << shift;
+    }
+
+    static long bucketMidpoint(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        return bucketLowerBound(index) + ((1L << shift) - 1) / 2;
+    }
+
+    private void ensureCounts() {
+        if (counts == null || counts.length != BUCKET_COUNT) {
+            // Persisted with a different layout; start over rather than misreport
+            counts = new long[BUCKET_COUNT];
+            totalCount = 0;
+            sum = 0;
+            min = Long.MAX_VALUE;
+            max = 0;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LatencyHistogram{" + summary() + ", buckets=" + Arrays.stream(counts).filter(c -> c > 0).count() + "}";
+    }
+}
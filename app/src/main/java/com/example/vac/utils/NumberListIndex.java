@@ -0,0 +1,205 @@
+package com.example.vac.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable lookup structure deciding whether an incoming number can skip screening.
+ * Exact numbers are kept as sorted {@code long[]} arrays searched with binary search, and
+ * blocked ranges live in a digit trie flattened into a single {@code int[]}, so a decision is
+ * a handful of array reads with no allocation beyond normalizing the caller's number.
+ * <p>
+ * Numbers are normalized to their international digits ("+48 600-100-200", "0048600100200"
+ * and the bare national "600100200" are the same number) and packed into a long behind a
+ * leading 1, which keeps leading zeros significant.
+ */
+public class NumberListIndex {
+    private static final String DEFAULT_COUNTRY_CODE = "48";
+    private static final int NATIONAL_NUMBER_LENGTH = 9;
+    private static final int MAX_DIGITS = 18; // "1" + 18 digits still fits in a long
+    private static final int RADIX = 10;
+    private static final int ROOT = 0;
+
+    public enum Decision {
+        /** Known caller: let the call ring normally. */
+        ALLOW,
+        /** Blocked number or range: reject without ringing. */
+        REJECT,
+        /** Unknown caller: run the assistant. */
+        SCREEN
+    }
+
+    public static final NumberListIndex EMPTY = new NumberListIndex(new long[0], new long[0], new int[RADIX], new boolean[1]);
+
+    private final long[] allowed;
+    private final long[] blocked;
+    private final int[] prefixTransitions; // node * RADIX + digit -> child node, 0 if none
+    private final boolean[] prefixTerminal;
+
+    private NumberListIndex(long[] allowed, long[] blocked, int[] prefixTransitions, boolean[] prefixTerminal) {
+        this.allowed = allowed;
+        this.blocked = blocked;
+        this.prefixTransitions = prefixTransitions;
+        this.prefixTerminal = prefixTerminal;
+    }
+
+    /**
+     * Build the index. Entries that do not normalize to a number are skipped.
+     */
+    @NonNull
+    public static NumberListIndex build(@NonNull List<String> allowedNumbers, @NonNull List<String> blockedNumbers,
+                                        @NonNull List<String> blockedPrefixes) {
+        int[] transitions = new int[RADIX * (1 + totalLength(blockedPrefixes))];
+        boolean[] terminal = new boolean[transitions.length / RADIX];
+        int nodeCount = 1;
+        for (String prefix : blockedPrefixes) {
+            String digits = normalizePrefix(prefix);
+            if (digits == null) {
+                continue;
+            }
+            int node = ROOT;
+            for (int i = 0; i < digits.length(); i++) {
+                int slot = node * RADIX + (digits.charAt(i) - '0');
+                if (transitions[slot] == 0) {
+                    transitions[slot] = nodeCount++;
+                }
+                node = transitions[slot];
+            }
+            terminal[node] = true;
+        }
+        return new NumberListIndex(toSortedKeys(allowedNumbers), toSortedKeys(blockedNumbers),
+                Arrays.copyOf(transitions, nodeCount * RADIX), Arrays.copyOf(terminal, nodeCount));
+    }
+
+    /**
+     * Decide how to handle a caller. An allowed number wins over a blocked number or range, so
+     * a contact inside a spam range still gets through.
+     *
+     * @param number The caller's number in any format, or null if withheld
+     */
+    @NonNull
+    public Decision decide(@Nullable String number) {
+        String digits = normalize(number);
+        if (digits == null) {
+            return Decision.SCREEN;
+        }
+        long key = toKey(digits);
+        if (Arrays.binarySearch(allowed, key) >= 0) {
+            return Decision.ALLOW;
+        }
+        if (Arrays.binarySearch(blocked, key) >= 0 || matchesBlockedPrefix(digits)) {
+            return Decision.REJECT;
+        }
+        return Decision.SCREEN;
+    }
+
+    public int size() {
+        return allowed.length + blocked.length;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0 && prefixTransitions.length == RADIX;
+    }
+
+    /**
+     * Compact key for a caller's number, equal for every format of the same number. Lets other
+     * stores share this class's normalization.
+     *
+     * @return The key, always positive, or 0 if the number is withheld or not a phone number
+     */
+    public static long keyOf(@Nullable String number) {
+        String digits = normalize(number);
+        return digits != null ? toKey(digits) : 0;
+    }
+
+    /**
+     * Normalize a number to its international digits.
+     *
+     * @return The digits including the country code, or null if the number is empty or too long
+     */
+    @Nullable
+    static String normalize(@Nullable String number) {
+        return normalize(number, false);
+    }
+
+    /**
+     * Normalize a range prefix. Unlike a full number, a prefix without a country code is
+     * always national, whatever its length.
+     */
+    @Nullable
+    static String normalizePrefix(@Nullable String prefix) {
+        return normalize(prefix, true);
+    }
+
+    private static String normalize(String number, boolean isPrefix) {
+        if (number == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(number.length());
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        if (digits.length() == 0) {
+            return null;
+        }
+        boolean international = number.trim().startsWith("+");
+        if (!international && digits.length() > 2 && digits.charAt(0) == '0' && digits.charAt(1) == '0') {
+            digits.delete(0, 2);
+            international = true;
+        }
+        if (!international && (isPrefix || digits.length() == NATIONAL_NUMBER_LENGTH)) {
+            digits.insert(0, DEFAULT_COUNTRY_CODE);
+        }
+        return digits.length() <= MAX_DIGITS ? digits.toString() : null;
+    }
+
+    private boolean matchesBlockedPrefix(String digits) {
+        int node = ROOT;
+        for (int i = 0; i < digits.length(); i++) {
+            node = prefixTransitions[node * RADIX + (digits.charAt(i) - '0')];
+            if (node == ROOT) {
+                return false;
+            }
+            if (prefixTerminal[node]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long toKey(String digits) {
+        long key = 1;
+        for (int i = 0; i < digits.length(); i++) {
+            key = key * RADIX + (digits.charAt(i) - '0');
+        }
+        return key;
+    }
+
+    private static long[] toSortedKeys(List<String> numbers) {
+        long[] keys = new long[numbers.size()];
+        int count = 0;
+        for (String number : numbers) {
+            String digits = normalize(number);
+            if (digits != null) {
+                keys[count++] = toKey(digits);
+            }
+        }
+        keys = Arrays.copyOf(keys, count);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    private static int totalLength(List<String> strings) {
+        int length = 0;
+        for (String s : strings) {
+            length += s != null ? s.length() + DEFAULT_COUNTRY_CODE.length() : 0;
+        }
+        return length;
+    }
+}
@@ -3,8 +3,18 @@ package com.example.vac.utils;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import androidx.annotation.NonNull;
+
+import com.example.vac.R;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * Utility class to manage application preferences.
+ * <p>
+ * Calls read a {@link ConfigSnapshot} instead of single keys. One snapshot is shared by the
+ * whole process and rebuilt when a preference changes.
  */
 public class PreferencesManager {
     private static final String PREF_NAME = "VAC_PREFS";
@@ -12,13 +22,94 @@ public class PreferencesManager {
     private static final String KEY_GREETING_TEXT = "greeting_text";
     private static final String KEY_CUSTOM_GREETING_FILE_PATH = "custom_greeting_file_path";
     private static final String KEY_USE_CUSTOM_GREETING_FILE = "use_custom_greeting_file";
+    private static final String KEY_USE_STREAMING_RECORDER = "use_streaming_recorder";
+    private static final String KEY_USE_SEGMENTED_RECORDING = "use_segmented_recording";
     private static final String DEFAULT_USER_NAME = "";
     private static final String DEFAULT_GREETING_TEXT = "";
     
+    // The snapshot of the preferences instance in use, which is one per process
+    private static volatile SnapshotCache snapshotCache;
+
     private final SharedPreferences preferences;
+    private final Context context;
     
     public PreferencesManager(Context context) {
         preferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        Context applicationContext = context.getApplicationContext();
+        this.context = applicationContext != null ? applicationContext : context;
+    }
+
+    /**
+     * The current settings, read from preferences only after they changed. Cheap to call from
+     * any thread.
+     */
+    @NonNull
+    public ConfigSnapshot getSnapshot() {
+        SnapshotCache cache = snapshotCache();
+        ConfigSnapshot snapshot = cache.snapshot.get();
+        if (snapshot == null) {
+            ConfigSnapshot built = readSnapshot();
+            // A change that was published meanwhile wins over what was just read
+            snapshot = cache.snapshot.compareAndSet(null, built) ? built : cache.snapshot.get();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Run something after the snapshot was replaced because a preference changed. Called on the
+     * main thread; hand any real work to another thread.
+     */
+    public void observeSnapshot(@NonNull Runnable observer) {
+        snapshotCache().observers.add(observer);
+    }
+
+    /**
+     * Read the snapshot again although no preference changed, e.g. because the locale did and
+     * with it the default greeting.
+     */
+    public void refreshSnapshot() {
+        snapshotCache().refresh();
+    }
+
+    private ConfigSnapshot readSnapshot() {
+        return ConfigSnapshot.read(this, context.getString(R.string.default_greeting));
+    }
+
+    private SnapshotCache snapshotCache() {
+        SnapshotCache cache = snapshotCache;
+        if (cache != null && cache.preferences == preferences) {
+            return cache;
+        }
+        synchronized (PreferencesManager.class) {
+            if (snapshotCache == null || snapshotCache.preferences != preferences) {
+                snapshotCache = new SnapshotCache(preferences, this);
+            }
+            return snapshotCache;
+        }
+    }
+
+    private static final class SnapshotCache {
+        final SharedPreferences preferences;
+        final AtomicReference<ConfigSnapshot> snapshot = new AtomicReference<>();
+        // Held here because SharedPreferences only keeps a weak reference to its listeners
+        final SharedPreferences.OnSharedPreferenceChangeListener listener;
+        final CopyOnWriteArrayList<Runnable> observers = new CopyOnWriteArrayList<>();
+        private final PreferencesManager reader;
+
+        SnapshotCache(SharedPreferences preferences, PreferencesManager reader) {
+            this.preferences = preferences;
+            this.reader = reader;
+            // Registered before the first read, so no change can fall in between
+            listener = (changed, key) -> refresh();
+            preferences.registerOnSharedPreferenceChangeListener(listener);
+        }
+
+        void refresh() {
+            snapshot.set(reader.readSnapshot());
+            for (Runnable observer : observers) {
+                observer.run();
+            }
+        }
     }
     
     /**
@@ -102,6 +193,43 @@ public class PreferencesManager {
     public boolean shouldUseCustomGreetingFile() {
         return preferences.getBoolean(KEY_USE_CUSTOM_GREETING_FILE, false);
     }
+
+    /**
+     * Set whether calls are recorded as AAC from PCM instead of AMR-NB via MediaRecorder.
+     *
+     * @param use true to use the streaming recorder, false otherwise.
+     */
+    public void setUseStreamingRecorder(boolean use) {
+        preferences.edit().putBoolean(KEY_USE_STREAMING_RECORDER, use).apply();
+    }
+
+    /**
+     * Check if calls should be recorded with the streaming recorder.
+     *
+     * @return true to use the streaming recorder, false otherwise (defaults to false).
+     */
+    public boolean shouldUseStreamingRecorder() {
+        return preferences.getBoolean(KEY_USE_STREAMING_RECORDER, false);
+    }
+
+    /**
+     * Set whether the streaming recorder writes rolling segments that survive a crash and can
+     * be played during the call.
+     *
+     * @param use true to record in segments, false otherwise.
+     */
+    public void setUseSegmentedRecording(boolean use) {
+        preferences.edit().putBoolean(KEY_USE_SEGMENTED_RECORDING, use).apply();
+    }
+
+    /**
+     * Check if the streaming recorder should write rolling segments.
+     *
+     * @return true to record in segments, false otherwise (defaults to false).
+     */
+    public boolean shouldUseSegmentedRecording() {
+        return preferences.getBoolean(KEY_USE_SEGMENTED_RECORDING, false);
+    }
     
     /**
      * Check if the user has completed the setup process.
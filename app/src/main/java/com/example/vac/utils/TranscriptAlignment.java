@@ -0,0 +1,101 @@
+package com.example.vac.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.vac.handlers.RecordingCompactor;
+import com.example.vac.models.TranscriptionData;
+
+import java.util.List;
+
+/**
+ * Immutable index from a position in a call's recording to the transcript snippet being spoken
+ * there. Snippet timestamps are wall-clock times; they are made relative to the recording start
+ * and, for compacted recordings, mapped through the time map once when the index is built. The
+ * start times are kept as a sorted {@code long[]}, so a lookup is a binary search.
+ */
+public class TranscriptAlignment {
+    public static final TranscriptAlignment EMPTY = new TranscriptAlignment(new long[0], new int[0]);
+
+    private final long[] startsMs; // Position in the recording, ascending
+    private final int[] snippets; // Index of the snippet starting at each position
+
+    private TranscriptAlignment(long[] startsMs, int[] snippets) {
+        this.startsMs = startsMs;
+        this.snippets = snippets;
+    }
+
+    /**
+     * Build the index for the snippets of one call.
+     *
+     * @param recordingStartMillis Wall-clock time the recording started
+     * @param timeMap Time map of the recording if it was compacted, else null
+     */
+    @NonNull
+    public static TranscriptAlignment build(@NonNull List<TranscriptionData> transcript, long recordingStartMillis,
+                                            @Nullable List<RecordingCompactor.TimeMapEntry> timeMap) {
+        int count = transcript.size();
+        long[] startsMs = new long[count];
+        int[] snippets = new int[count];
+        for (int i = 0; i < count; i++) {
+            long originalMs = Math.max(0, transcript.get(i).getTimestamp() - recordingStartMillis);
+            startsMs[i] = timeMap != null ? RecordingCompactor.toCompactMs(timeMap, originalMs) : originalMs;
+            snippets[i] = i;
+        }
+        // Snippets usually arrive in order; insertion sort keeps the pairs together either way
+        for (int i = 1; i < count; i++) {
+            long start = startsMs[i];
+            int snippet = snippets[i];
+            int j = i - 1;
+            while (j >= 0 && startsMs[j] > start) {
+                startsMs[j + 1] = startsMs[j];
+                snippets[j + 1] = snippets[j];
+                j--;
+            }
+            startsMs[j + 1] = start;
+            snippets[j + 1] = snippet;
+        }
+        return new TranscriptAlignment(startsMs, snippets);
+    }
+
+    /**
+     * Index in the transcript of the snippet spoken at a playback position.
+     *
+     * @return The latest snippet that started at or before the position, -1 before the first
+     */
+    public int snippetAt(long positionMs) {
+        int entry = entryAt(positionMs);
+        return entry >= 0 ? snippets[entry] : -1;
+    }
+
+    /**
+     * Playback position at which the snippet after the one at this position starts.
+     *
+     * @return The position, or -1 if no snippet follows
+     */
+    public long nextStartAfter(long positionMs) {
+        int next = entryAt(positionMs) + 1;
+        return next < startsMs.length ? startsMs[next] : -1;
+    }
+
+    public int size() {
+        return startsMs.length;
+    }
+
+    /**
+     * Last entry starting at or before the position, -1 if there is none.
+     */
+    private int entryAt(long positionMs) {
+        int low = 0;
+        int high = startsMs.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (startsMs[mid] <= positionMs) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+}
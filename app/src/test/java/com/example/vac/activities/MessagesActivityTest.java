@@ -1,6 +1,7 @@
 package com.example.vac.activities;
 
 import android.media.MediaPlayer;
+import android.os.Looper;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
@@ -28,6 +29,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -49,6 +51,20 @@ public class MessagesActivityTest {
         MockitoAnnotations.openMocks(this);
     }
 
+    /**
+     * Messages are scanned on a background executor; wait for it and publish the result.
+     */
+    private static void awaitMessageScan(ActivityScenario<MessagesActivity> scenario) {
+        scenario.onActivity(activity -> {
+            try {
+                activity.scanExecutor.submit(() -> { }).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new AssertionError(e);
+            }
+            Shadows.shadowOf(Looper.getMainLooper()).idle();
+        });
+    }
+
     @Test
     public void test_loadMessageList_displaysEmptyViewWhenNoMessages() {
         // Create a test directory with no message files
@@ -62,6 +78,7 @@ public class MessagesActivityTest {
         }
 
         try (ActivityScenario<MessagesActivity> scenario = ActivityScenario.launch(MessagesActivity.class)) {
+            awaitMessageScan(scenario);
             scenario.onActivity(activity -> {
                 RecyclerView recyclerView = activity.findViewById(R.id.recycler_view_messages);
                 TextView emptyView = activity.findViewById(R.id.tv_empty_messages);
@@ -80,6 +97,7 @@ public class MessagesActivityTest {
         List<File> testFiles = createTestMessageFiles(testDir, 3);
 
         try (ActivityScenario<MessagesActivity> scenario = ActivityScenario.launch(MessagesActivity.class)) {
+            awaitMessageScan(scenario);
             scenario.onActivity(activity -> {
                 RecyclerView recyclerView = activity.findViewById(R.id.recycler_view_messages);
                 TextView emptyView = activity.findViewById(R.id.tv_empty_messages);
@@ -114,11 +132,14 @@ public class MessagesActivityTest {
         assertTrue(testFile.exists());
 
         try (ActivityScenario<MessagesActivity> scenario = ActivityScenario.launch(MessagesActivity.class)) {
+            awaitMessageScan(scenario);
             scenario.onActivity(activity -> {
                 // Manually trigger the onDeleteMessage method
                 Message testMessage = new Message(testFile);
                 activity.onDeleteMessage(testMessage);
-
+            });
+            awaitMessageScan(scenario); // Deleted on the scan thread
+            scenario.onActivity(activity -> {
                 // Verify Toast is shown
                 assertEquals(activity.getString(R.string.message_deleted), ShadowToast.getTextOfLatestToast());
                 
@@ -0,0 +1,152 @@
+package com.example.vac.adapters;
+
+import com.example.vac.handlers.MessageLibrary;
+import com.example.vac.models.Message;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class MessagePagerTest {
+    private static final int MESSAGE_COUNT = 500;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private MessageLibrary library;
+    private final List<String> events = new ArrayList<>();
+    private final MessagePager.Callback callback = new MessagePager.Callback() {
+        @Override
+        public void onReset() {
+            events.add("reset");
+        }
+
+        @Override
+        public void onItemsChanged(int position, int count) {
+            events.add("changed " + position + "+" + count);
+        }
+
+        @Override
+        public void onItemInserted(int position) {
+            events.add("inserted " + position);
+        }
+
+        @Override
+        public void onItemRemoved(int position) {
+            events.add("removed " + position);
+        }
+    };
+    private MessagePager pager;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.newFolder("files");
+        for (int i = 1; i <= MESSAGE_COUNT; i++) {
+            newMessageFile(directory, i);
+        }
+        library = new MessageLibrary(directory);
+        // Loads and main-thread work run inline
+        pager = new MessagePager(library, Runnable::run, Runnable::run, callback);
+        library.addChangeListener(pager);
+        pager.open();
+    }
+
+    private static File newMessageFile(File dir, int timestamp) throws IOException {
+        File file = new File(dir, "message_" + timestamp + ".3gp");
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write('x');
+        }
+        return file;
+    }
+
+    /** Timestamp of the message expected at a position, newest first. */
+    private static long timestampAt(int position) {
+        return MESSAGE_COUNT - position;
+    }
+
+    @Test
+    public void testOpenLoadsOnlyFirstPage() {
+        assertEquals(List.of("reset"), events);
+        assertEquals(MESSAGE_COUNT, pager.getCount());
+        assertEquals(timestampAt(0), pager.get(0).getTimestamp());
+    }
+
+    @Test
+    public void testScrollingPrefetchesNextPageAndBoundsWindow() {
+        for (int position = 0; position < MESSAGE_COUNT; position++) {
+            Message message = pager.get(position);
+            assertNotNull("Position " + position + " should be prefetched", message);
+            assertEquals(timestampAt(position), message.getTimestamp());
+        }
+        // The start of the list was dropped on the way down and is a placeholder again
+        assertNull(pager.get(0));
+    }
+
+    @Test
+    public void testJumpLoadsPageByPosition() {
+        assertNull(pager.get(400));
+
+        Message message = pager.get(400);
+        assertNotNull(message);
+        assertEquals(timestampAt(400), message.getTimestamp());
+        assertTrue(events.contains("changed 0+" + MessagePager.PAGE_SIZE));
+    }
+
+    @Test
+    public void testChangesShiftLoadedMessages() throws IOException {
+        // Outside the watched dir, so only these calls report changes
+        File incoming = temporaryFolder.newFolder("incoming");
+        assertTrue(library.add(newMessageFile(incoming, MESSAGE_COUNT + 1)));
+        assertTrue(library.remove("message_" + MESSAGE_COUNT + ".3gp"));
+
+        assertEquals(List.of("reset", "inserted 0", "removed 1"), events);
+        assertEquals(MESSAGE_COUNT, pager.getCount());
+        assertEquals(MESSAGE_COUNT + 1, pager.get(0).getTimestamp());
+        assertEquals(timestampAt(1), pager.get(1).getTimestamp());
+    }
+
+    @Test
+    public void testChangeBetweenOpenReadAndItsDeliveryIsApplied() throws IOException {
+        File added = newMessageFile(temporaryFolder.newFolder("incoming"), MESSAGE_COUNT + 1);
+        Deque<Runnable> mainQueue = new ArrayDeque<>();
+        boolean[] raced = {false};
+        MessagePager opening = new MessagePager(library, Runnable::run, task -> {
+            if (!raced[0]) {
+                // The first page was just read; this change is posted ahead of it
+                raced[0] = true;
+                assertTrue(library.add(added));
+            }
+            mainQueue.add(task);
+        }, callback);
+        library.addChangeListener(opening);
+
+        opening.open();
+        while (!mainQueue.isEmpty()) {
+            mainQueue.poll().run();
+        }
+
+        assertEquals(MESSAGE_COUNT + 1, opening.getCount());
+        assertEquals(MESSAGE_COUNT + 1, opening.get(0).getTimestamp());
+        assertEquals(timestampAt(0), opening.get(1).getTimestamp());
+    }
+}
@@ -19,11 +19,17 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static org.mockito.Mockito.*;
 import static org.junit.Assert.*;
@@ -57,6 +63,8 @@ public class AudioHandlerTest {
     private AudioHandler.AudioHandlerListener mockListener;
     @Mock
     private MediaPlayer mockMediaPlayer;
+    @Mock
+    private TextToSpeech mockTts;
 
     @Captor
     private ArgumentCaptor<UtteranceProgressListener> utteranceProgressListenerCaptor;
@@ -240,4 +248,86 @@ public class AudioHandlerTest {
         // If we get here without exception, the test passes
         assertTrue("Test completed without exceptions", true);
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void synthesizeBatch_keepsAtMostMaxInFlightJobsInTheEngine() throws Exception {
+        List<String> utteranceIds = new ArrayList<>();
+        when(mockTts.synthesizeToFile(anyString(), isNull(), any(File.class), anyString())).thenAnswer(invocation -> {
+            utteranceIds.add(invocation.getArgument(3));
+            return TextToSpeech.SUCCESS;
+        });
+        AudioHandler handler = new AudioHandler(mockContext, mockListener, mockTts);
+        verify(mockTts).setOnUtteranceProgressListener(utteranceProgressListenerCaptor.capture());
+        UtteranceProgressListener engine = utteranceProgressListenerCaptor.getValue();
+        List<AudioHandler.SynthesisJob> jobs = Arrays.asList(
+                new AudioHandler.SynthesisJob("Jeden", new File("one.wav")),
+                new AudioHandler.SynthesisJob("Dwa", new File("two.wav")),
+                new AudioHandler.SynthesisJob("Trzy", new File("three.wav")));
+        List<Integer> progress = new ArrayList<>();
+
+        List<CompletableFuture<File>> futures = handler.synthesizeBatch(jobs, 2, (finished, total) -> progress.add(finished));
+
+        assertEquals(2, utteranceIds.size());
+        engine.onDone(utteranceIds.get(0));
+        assertEquals("A finished job starts the next one", 3, utteranceIds.size());
+        engine.onDone(utteranceIds.get(1));
+        engine.onError(utteranceIds.get(2), TextToSpeech.ERROR);
+
+        assertEquals(new File("one.wav"), futures.get(0).get());
+        assertEquals(new File("two.wav"), futures.get(1).get());
+        assertTrue(futures.get(2).isCompletedExceptionally());
+        assertEquals(Arrays.asList(1, 2, 3), progress);
+    }
+
+    @Test
+    public void synthesizeBatch_failsEveryJobWhenTheEngineRejectsThem() {
+        when(mockTts.synthesizeToFile(anyString(), isNull(), any(File.class), anyString())).thenReturn(TextToSpeech.ERROR);
+        AudioHandler handler = new AudioHandler(mockContext, mockListener, mockTts);
+
+        List<CompletableFuture<File>> futures = handler.synthesizeBatch(Arrays.asList(
+                new AudioHandler.SynthesisJob("Jeden", new File("one.wav")),
+                new AudioHandler.SynthesisJob("Dwa", new File("two.wav"))), 1, null);
+
+        for (CompletableFuture<File> future : futures) {
+            ExecutionException e = assertThrows(ExecutionException.class, future::get);
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void synthesizeBatch_largeBatchFailingFastDoesNotRecurse() {
+        when(mockTts.synthesizeToFile(anyString(), isNull(), any(File.class), anyString())).thenReturn(TextToSpeech.ERROR);
+        AudioHandler handler = new AudioHandler(mockContext, mockListener, mockTts);
+        List<AudioHandler.SynthesisJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            jobs.add(new AudioHandler.SynthesisJob("Jeden", new File("one.wav")));
+        }
+        int[] lastProgress = new int[1];
+
+        List<CompletableFuture<File>> futures = handler.synthesizeBatch(jobs, 1, (finished, total) -> lastProgress[0] = finished);
+
+        assertEquals(jobs.size(), lastProgress[0]);
+        assertTrue(futures.get(jobs.size() - 1).isCompletedExceptionally());
+    }
+
+    @Test
+    public void outputSession_keepsAudioFocusAcrossPromptsUntilItEnds() {
+        AudioHandler handler = new AudioHandler(mockContext, mockListener, mockTts);
+        verify(mockTts).setOnUtteranceProgressListener(utteranceProgressListenerCaptor.capture());
+        UtteranceProgressListener engine = utteranceProgressListenerCaptor.getValue();
+
+        handler.beginOutputSession(null);
+        handler.playGreeting("Dzień dobry.");
+        engine.onDone(AudioHandler.UTTERANCE_ID_GREETING);
+        handler.speak("W jakiej sprawie?", "response", "pl-PL");
+        engine.onDone("response");
+
+        // In JUnit, Build.VERSION.SDK_INT is 0, so the older focus API is used.
+        verify(mockAudioManager, times(1)).requestAudioFocus(
+                any(AudioManager.OnAudioFocusChangeListener.class), anyInt(), anyInt());
+        verify(mockAudioManager, never()).abandonAudioFocus(null);
+
+        handler.endOutputSession();
+        verify(mockAudioManager, times(1)).abandonAudioFocus(null);
+    }
+}
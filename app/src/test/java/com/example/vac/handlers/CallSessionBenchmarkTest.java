@@ -0,0 +1,123 @@
+package com.example.vac.handlers;
+
+import com.example.vac.handlers.CallSessionSimulator.CallerTurn;
+import com.example.vac.handlers.CallSessionSimulator.Latencies;
+import com.example.vac.handlers.CallSessionSimulator.Report;
+import com.example.vac.handlers.CallSessionSimulator.Script;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Turn-taking budgets for the session orchestration. The fake components have fixed
+ * latencies, so anything above them is added by CallSessionManager itself (extra hops,
+ * misplaced timers, waiting on the wrong event) and fails the build.
+ * <p>
+ * The session runs on the main looper here, not on its own HandlerThread, so the hop from
+ * component callbacks to the session thread is not part of what these budgets measure.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = Config.NEWEST_SDK)
+public class CallSessionBenchmarkTest {
+    private static final long ORCHESTRATION_BUDGET_MS = 20;
+    private static final long STT_SILENCE_TIMEOUT_MS = 3000; // Match constant in SUT
+
+    private final Latencies latencies = new Latencies();
+
+    private Report simulate(Script script) {
+        Report report = new CallSessionSimulator(latencies, script).run();
+        assertTrue("Simulated call never completed\n" + report.format(), report.completed);
+        assertEquals(report.format(), CallSessionManager.State.ENDED, report.finalState);
+        return report;
+    }
+
+    private static void assertWithinBudget(String what, long expectedMs, long actualMs) {
+        assertTrue(what + " took " + actualMs + "ms, budget " + (expectedMs + ORCHESTRATION_BUDGET_MS) + "ms",
+                actualMs <= expectedMs + ORCHESTRATION_BUDGET_MS);
+    }
+
+    @Test
+    public void test_conversationTurnTimingsStayWithinBudget() {
+        Report report = simulate(new Script()
+                .then(CallerTurn.says("Dzień dobry, dzwonię w sprawie faktury", 400, 2000))
+                .then(CallerTurn.says("Proszę o kontakt jutro", 200, 1200)));
+
+        assertWithinBudget("Time to greeting", latencies.ttsStartMs, report.maxOf(CallTracer.Span.TIME_TO_GREETING));
+        assertWithinBudget("Recording start", latencies.recorderStartMs, report.maxOf(CallTracer.Span.RECORDING_START));
+        assertEquals(3, report.span(CallTracer.Span.PROMPT_TO_LISTENING).size());
+        assertWithinBudget("Prompt to listening", latencies.sttReadyMs, report.maxOf(CallTracer.Span.PROMPT_TO_LISTENING));
+
+        long responseBudget = latencies.sttFinalizeMs + latencies.ttsStartMs;
+        assertEquals(2, report.span(CallTracer.Span.SPEECH_TO_RESPONSE).size());
+        assertWithinBudget("Speech to response", responseBudget, report.maxOf(CallTracer.Span.SPEECH_TO_RESPONSE));
+        assertEquals(2, report.turnGapsMs.size());
+        for (long gap : report.turnGapsMs) {
+            assertWithinBudget("Turn gap", responseBudget, gap);
+        }
+    }
+
+    @Test
+    public void test_silentCallerGetsFollowUpAfterSilenceTimeout() {
+        Report report = simulate(new Script().then(CallerTurn.staysSilent()));
+
+        assertEquals(1, report.turnGapsMs.size());
+        long gap = report.turnGapsMs.get(0);
+        long expected = STT_SILENCE_TIMEOUT_MS - latencies.sttReadyMs + latencies.ttsStartMs;
+        assertTrue("Follow-up played before the silence timeout: " + gap + "ms", gap >= expected);
+        assertWithinBudget("Silent turn gap", expected, gap);
+        assertWithinBudget("Timeout to follow-up", latencies.ttsStartMs, report.maxOf(CallTracer.Span.SPEECH_TO_RESPONSE));
+    }
+
+    @Test
+    public void test_confirmedSpeculationSkipsTtsLatency() {
+        Report report = simulate(new Script()
+                .then(CallerTurn.says("Dzień dobry, jestem kurierem, mam dla Pana paczkę", 200, 2000)));
+
+        assertEquals(1, report.span(CallTracer.Span.RESPONSE_START_SPECULATED).size());
+        assertTrue(report.span(CallTracer.Span.RESPONSE_START_SYNTHESIZED).isEmpty());
+        assertWithinBudget("Pre-rendered response start", latencies.fileStartMs,
+                report.maxOf(CallTracer.Span.RESPONSE_START_SPECULATED));
+        assertWithinBudget("Speech to pre-rendered response", latencies.sttFinalizeMs + latencies.fileStartMs,
+                report.maxOf(CallTracer.Span.SPEECH_TO_RESPONSE));
+    }
+
+    @Test
+    public void test_lateIntentFallsBackToLiveSynthesis() {
+        // The intent only shows up in the last words; rendering cannot finish before the final result
+        Report report = simulate(new Script()
+                .then(CallerTurn.says("Dzwonię w sprawie, która jest bardzo pilna", 200, 2000)));
+
+        assertTrue(report.span(CallTracer.Span.RESPONSE_START_SPECULATED).isEmpty());
+        assertEquals(1, report.span(CallTracer.Span.RESPONSE_START_SYNTHESIZED).size());
+        assertWithinBudget("Speech to response", latencies.sttFinalizeMs + latencies.ttsStartMs,
+                report.maxOf(CallTracer.Span.SPEECH_TO_RESPONSE));
+    }
+
+    @Test
+    public void test_timeToGreetingTracksTtsStartLatency() {
+        latencies.ttsStartMs = 600; // Cold TTS engine
+        Report report = simulate(new Script().hangUpAfter(100));
+
+        assertWithinBudget("Time to TTS greeting", 600, report.maxOf(CallTracer.Span.TIME_TO_GREETING));
+        assertTrue(report.maxOf(CallTracer.Span.TIME_TO_GREETING) >= 600);
+    }
+
+    @Test
+    public void test_sameScriptProducesIdenticalTimings() {
+        Script script = new Script()
+                .then(CallerTurn.says("Halo?", 100, 600))
+                .then(CallerTurn.staysSilent());
+
+        Report first = simulate(script);
+        Report second = simulate(script);
+
+        assertEquals(first.timeline, second.timeline);
+        assertEquals(first.spansMs, second.spansMs);
+        assertEquals(first.turnGapsMs, second.turnGapsMs);
+    }
+}
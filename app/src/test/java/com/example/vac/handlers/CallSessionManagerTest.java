@@ -8,6 +8,7 @@ import android.net.Uri;
 import android.app.PendingIntent;
 
 import com.example.vac.R; // For R.string.default_greeting
+import com.example.vac.utils.ConfigSnapshot;
 import com.example.vac.utils.PreferencesManager;
 
 import org.junit.Before;
@@ -54,6 +55,7 @@ public class CallSessionManagerTest {
     @Mock private PreferencesManager mockPreferencesManager;
     @Mock private SpeechRecognitionHandler mockSpeechRecognitionHandler;
     @Mock private MessageRecorderHandler mockMessageRecorderHandler;
+    @Mock private GreetingAssets mockGreetingAssets;
 
     private CallSessionManager callSessionManager;
     private String defaultGreetingFormatString = "Witaj, dodzwoniłeś się do %1$s. Jestem jego wirtualnym asystentem. Uprzedzam, że rozmowa jest nagrywana. Powiedz proszę w jakiej sprawie dzwonisz a ja postaram Ci się pomóc.";
@@ -73,6 +75,9 @@ public class CallSessionManagerTest {
         when(mockContext.getApplicationContext()).thenReturn(realContext);
         when(mockContext.getString(R.string.default_greeting)).thenReturn(defaultGreetingFormatString);
         when(mockContext.getString(R.string.notification_message_listening)).thenReturn("Listening to caller..."); // Added mock for new string
+        // Built from the stubbed getters when read, as the real snapshot is after a change
+        when(mockPreferencesManager.getSnapshot()).thenAnswer(
+                invocation -> ConfigSnapshot.read(mockPreferencesManager, defaultGreetingFormatString));
         // Ensure Looper is prepared for the sttTimeoutHandler if not already by default in Robolectric
         // ShadowLooper.pauseMainLooper(); // Might be useful to control execution precisely
 
@@ -82,6 +87,16 @@ public class CallSessionManagerTest {
                 return mockPreferencesManager;
             }
 
+            @Override
+            protected Looper createSessionLooper() {
+                return Looper.getMainLooper(); // Dispatch session events synchronously on the test thread
+            }
+
+            @Override
+            protected GreetingAssets createGreetingAssets(Context context) {
+                return mockGreetingAssets;
+            }
+
             @Override
             protected AudioHandler createAudioHandler(Context context, AudioHandler.AudioHandlerListener listener) {
                 return mockAudioHandler;
@@ -110,6 +125,7 @@ public class CallSessionManagerTest {
 
         when(mockPreferencesManager.shouldUseCustomGreetingFile()).thenReturn(true);
         when(mockPreferencesManager.getCustomGreetingFilePath()).thenReturn(fakeFilePath);
+        when(mockGreetingAssets.getReady(any(ConfigSnapshot.class))).thenReturn(dummyFile); // Published as ready
 
         callSessionManager.startGreeting();
 
@@ -321,6 +337,33 @@ public class CallSessionManagerTest {
         assertEquals(CallSessionManager.State.ENDED, callSessionManager.getCurrentState());
     }
 
+    @Test
+    public void test_stopScreeningWithCallback_runsItOnceTheSessionHasReleased() {
+        callSessionManager.startGreeting();
+        boolean[] ran = {false};
+
+        callSessionManager.stopScreening(() -> {
+            verify(mockAudioHandler).release();
+            verify(mockMessageRecorderHandler).release();
+            ran[0] = true;
+        });
+        ShadowLooper.idleMainLooper();
+
+        assertTrue(ran[0]);
+        assertEquals(CallSessionManager.State.ENDED, callSessionManager.getCurrentState());
+    }
+
+    @Test
+    public void test_stopScreeningWithCallback_afterTheSessionEnded_stillRunsIt() {
+        callSessionManager.stopScreening();
+        boolean[] ran = {false};
+
+        callSessionManager.stopScreening(() -> ran[0] = true);
+        ShadowLooper.idleMainLooper();
+
+        assertTrue(ran[0]);
+    }
+
     @Test
     public void test_multipleOnEndOfSpeech_resetsTimeoutCorrectly() {
         setupSessionForListeningState();
@@ -438,6 +481,16 @@ public class CallSessionManagerTest {
             protected PreferencesManager createPreferencesManager(Context context) {
                 return mockPreferencesManager;
             }
+
+            @Override
+            protected Looper createSessionLooper() {
+                return Looper.getMainLooper(); // Dispatch session events synchronously on the test thread
+            }
+
+            @Override
+            protected GreetingAssets createGreetingAssets(Context context) {
+                return mockGreetingAssets;
+            }
             
             @Override
             protected SpeechRecognitionHandler createSpeechRecognitionHandler(Context context, SpeechRecognitionHandler.SpeechRecognitionCallbacks callbacks) {
@@ -513,4 +566,19 @@ public class CallSessionManagerTest {
         verify(mockMessageRecorderHandler).stopRecording();
         verify(mockMessageRecorderHandler).release();
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void test_partialSpeechResult_keepsListeningAndRestartsTimeout() {
+        setupSessionForListeningState();
+        org.mockito.Mockito.clearInvocations(mockAudioHandler);
+
+        ShadowLooper.idleMainLooper(STT_SILENCE_TIMEOUT_MS_TEST - 500, java.util.concurrent.TimeUnit.MILLISECONDS);
+        callSessionManager.onPartialSpeechResult("Dzień dobry");
+        ShadowLooper.idleMainLooper(STT_SILENCE_TIMEOUT_MS_TEST - 500, java.util.concurrent.TimeUnit.MILLISECONDS);
+
+        // A partial hypothesis is not an answer: no response yet and the caller is not cut off
+        assertEquals(CallSessionManager.State.LISTENING, callSessionManager.getCurrentState());
+        verify(mockAudioHandler, never()).playFollowUpResponse();
+        verify(mockAudioHandler, never()).speak(anyString(), anyString(), anyString());
+    }
+}
@@ -0,0 +1,402 @@
+package com.example.vac.handlers;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.telecom.Call;
+
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Drives a real {@link CallSessionManager} through a scripted call with fake audio, STT and
+ * recorder components whose latencies are configurable. Everything runs on Robolectric's
+ * paused main looper, so time is virtual and every run of the same script yields the same
+ * timings. Must be used from a Robolectric test.
+ */
+class CallSessionSimulator {
+    private static final long STEP_MS = 10;
+    private static final long MAX_CALL_MS = 5 * 60 * 1000;
+
+    /**
+     * Latencies of the fake components, in milliseconds.
+     */
+    static class Latencies {
+        long ttsStartMs = 150;
+        long ttsMsPerChar = 15;
+        long followUpDurationMs = 1500;
+        long ttsRenderMs = 400;
+        long fileStartMs = 40;
+        long fileDurationMs = 4000;
+        long sttReadyMs = 100;
+        long sttFinalizeMs = 300;
+        long recorderStartMs = 50;
+        long recorderStopMs = 20;
+    }
+
+    /**
+     * What the caller does once the assistant listens: speak (after a pause) or stay silent.
+     */
+    static class CallerTurn {
+        final String text; // null for silence
+        final long pauseMs;
+        final long speechMs;
+
+        private CallerTurn(String text, long pauseMs, long speechMs) {
+            this.text = text;
+            this.pauseMs = pauseMs;
+            this.speechMs = speechMs;
+        }
+
+        static CallerTurn says(String text, long pauseMs, long speechMs) {
+            return new CallerTurn(text, pauseMs, speechMs);
+        }
+
+        static CallerTurn staysSilent() {
+            return new CallerTurn(null, 0, 0);
+        }
+    }
+
+    /**
+     * Caller turns in order. Once they are used up, the caller hangs up the next time the
+     * assistant listens.
+     */
+    static class Script {
+        final List<CallerTurn> turns = new ArrayList<>();
+        long hangUpAfterMs = 500;
+
+        Script then(CallerTurn turn) {
+            turns.add(turn);
+            return this;
+        }
+
+        Script hangUpAfter(long delayMs) {
+            this.hangUpAfterMs = delayMs;
+            return this;
+        }
+    }
+
+    /**
+     * Timings of one simulated call.
+     */
+    static class Report {
+        final Map<CallTracer.Span, List<Long>> spansMs = new EnumMap<>(CallTracer.Span.class);
+        final List<Long> turnGapsMs = new ArrayList<>();
+        final List<String> timeline = new ArrayList<>();
+        CallSessionManager.State finalState;
+        long callDurationMs;
+        boolean completed;
+
+        List<Long> span(CallTracer.Span span) {
+            List<Long> values = spansMs.get(span);
+            return values != null ? values : Collections.emptyList();
+        }
+
+        long maxOf(CallTracer.Span span) {
+            long max = 0;
+            for (long value : span(span)) {
+                max = Math.max(max, value);
+            }
+            return max;
+        }
+
+        String format() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format(Locale.ROOT, "call %dms, final state %s%n", callDurationMs, finalState));
+            for (Map.Entry<CallTracer.Span, List<Long>> entry : spansMs.entrySet()) {
+                builder.append("  ").append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+            }
+            builder.append("  turn gaps ").append(turnGapsMs).append('\n');
+            for (String event : timeline) {
+                builder.append("    ").append(event).append('\n');
+            }
+            return builder.toString();
+        }
+    }
+
+    private final Latencies latencies;
+    private final Script script;
+    private final Handler clock = new Handler(Looper.getMainLooper());
+    private final Object audioToken = new Object();
+    private final Object sttToken = new Object();
+    private final Object renderToken = new Object();
+    private final Report report = new Report();
+
+    private CallSessionManager session;
+    private long startedAt;
+    private int nextTurn;
+    private long callerFinishedAt = -1;
+    private boolean ended;
+
+    CallSessionSimulator(Latencies latencies, Script script) {
+        this.latencies = latencies;
+        this.script = script;
+    }
+
+    /**
+     * Runs the whole call and returns its timings.
+     */
+    Report run() {
+        Context context = RuntimeEnvironment.getApplication();
+        startedAt = SystemClock.uptimeMillis();
+
+        session = new CallSessionManager(context, mock(Call.Details.class), new SessionListener(),
+                mock(NotificationHandler.class)) {
+            @Override
+            protected Looper createSessionLooper() {
+                return Looper.getMainLooper(); // Virtual time; the session thread hop is not simulated
+            }
+
+            @Override
+            protected GreetingAssets createGreetingAssets(Context context) {
+                return null; // The greeting goes through the fake TTS
+            }
+
+            @Override
+            protected LatencyStatsManager createLatencyStatsManager(Context context) {
+                return new LatencyStatsManager(context) {
+                    @Override
+                    public boolean recordCall(CallTracer tracer) {
+                        tracer.forEachSpan((span, durationNanos) -> {
+                            List<Long> values = report.spansMs.get(span);
+                            if (values == null) {
+                                values = new ArrayList<>();
+                                report.spansMs.put(span, values);
+                            }
+                            values.add(TimeUnit.NANOSECONDS.toMillis(durationNanos));
+                        });
+                        return true;
+                    }
+                };
+            }
+
+            @Override
+            protected AudioHandler createAudioHandler(Context context, AudioHandler.AudioHandlerListener listener) {
+                return fakeAudio(listener);
+            }
+
+            @Override
+            protected SpeechRecognitionHandler createSpeechRecognitionHandler(Context context,
+                    SpeechRecognitionHandler.SpeechRecognitionCallbacks callbacks) {
+                return fakeRecognizer(callbacks);
+            }
+
+            @Override
+            protected MessageRecorderHandler createMessageRecorderHandler(Context context,
+                    MessageRecorderHandler.MessageRecorderListener listener) {
+                return fakeRecorder(listener);
+            }
+        };
+
+        session.startScreening();
+        while (!ended && now() < MAX_CALL_MS) {
+            ShadowLooper.idleMainLooper(STEP_MS, TimeUnit.MILLISECONDS);
+        }
+        // Let trailing callbacks (recorder stop) drain
+        ShadowLooper.idleMainLooper(1000, TimeUnit.MILLISECONDS);
+
+        report.completed = ended;
+        report.finalState = session.getCurrentState();
+        return report;
+    }
+
+    private AudioHandler fakeAudio(AudioHandler.AudioHandlerListener listener) {
+        AudioHandler audio = mock(AudioHandler.class);
+        doAnswer(invocation -> {
+            play(listener, "greeting", latencies.ttsStartMs, ttsDuration(invocation.getArgument(0)));
+            return null;
+        }).when(audio).playGreeting(anyString());
+        doAnswer(invocation -> {
+            play(listener, "audio file", latencies.fileStartMs, latencies.fileDurationMs);
+            return null;
+        }).when(audio).playAudioFile(any(Uri.class));
+        doAnswer(invocation -> {
+            play(listener, "response", latencies.ttsStartMs, ttsDuration(invocation.getArgument(0)));
+            return null;
+        }).when(audio).speak(anyString(), anyString(), anyString());
+        doAnswer(invocation -> {
+            play(listener, "follow-up", latencies.ttsStartMs, latencies.followUpDurationMs);
+            return null;
+        }).when(audio).playFollowUpResponse();
+        doAnswer(invocation -> {
+            clock.removeCallbacksAndMessages(audioToken);
+            return null;
+        }).when(audio).stopSpeaking();
+        doAnswer(invocation -> {
+            File output = invocation.getArgument(1);
+            AudioHandler.SynthesisCallback callback = invocation.getArgument(2);
+            log("assistant renders " + output.getName());
+            at(renderToken, latencies.ttsRenderMs, () -> {
+                try {
+                    output.createNewFile();
+                    callback.onSuccess(output.getAbsolutePath());
+                } catch (IOException e) {
+                    callback.onError(e.getMessage());
+                }
+            });
+            return null;
+        }).when(audio).synthesizeToFile(anyString(), any(File.class), any(AudioHandler.SynthesisCallback.class));
+        doAnswer(invocation -> {
+            clock.removeCallbacksAndMessages(audioToken);
+            clock.removeCallbacksAndMessages(renderToken);
+            return null;
+        }).when(audio).release();
+        return audio;
+    }
+
+    private void play(AudioHandler.AudioHandlerListener listener, String what, long startMs, long durationMs) {
+        log("assistant queues " + what);
+        at(audioToken, startMs, () -> {
+            log("assistant audio starts (" + what + ")");
+            if (callerFinishedAt >= 0) {
+                report.turnGapsMs.add(now() - callerFinishedAt);
+                callerFinishedAt = -1;
+            }
+            listener.onPlaybackStarted();
+        });
+        at(audioToken, startMs + durationMs, () -> {
+            log("assistant audio done (" + what + ")");
+            listener.onPlaybackCompleted();
+        });
+    }
+
+    private SpeechRecognitionHandler fakeRecognizer(SpeechRecognitionHandler.SpeechRecognitionCallbacks callbacks) {
+        SpeechRecognitionHandler recognizer = mock(SpeechRecognitionHandler.class);
+        doAnswer(invocation -> {
+            listen(callbacks);
+            return null;
+        }).when(recognizer).startListening(anyString());
+        doAnswer(invocation -> {
+            clock.removeCallbacksAndMessages(sttToken);
+            return null;
+        }).when(recognizer).stopListening();
+        doAnswer(invocation -> {
+            clock.removeCallbacksAndMessages(sttToken);
+            return null;
+        }).when(recognizer).release();
+        return recognizer;
+    }
+
+    private void listen(SpeechRecognitionHandler.SpeechRecognitionCallbacks callbacks) {
+        log("recognizer starting");
+        clock.removeCallbacksAndMessages(sttToken);
+        long ready = latencies.sttReadyMs;
+        at(sttToken, ready, () -> {
+            log("recognizer ready");
+            callbacks.onReadyForSpeech();
+        });
+
+        if (nextTurn >= script.turns.size()) {
+            at(sttToken, ready + script.hangUpAfterMs, () -> {
+                log("caller hangs up");
+                session.stopScreening();
+            });
+            return;
+        }
+
+        CallerTurn turn = script.turns.get(nextTurn++);
+        if (turn.text == null) {
+            at(sttToken, ready, () -> callerFinishedAt = now());
+            return;
+        }
+        long endOfSpeech = ready + turn.pauseMs + turn.speechMs;
+        // Recognizers stream hypotheses: the first half of the words mid-utterance, all of them at the end
+        String[] words = turn.text.split(" ");
+        String firstHalf = String.join(" ", Arrays.copyOf(words, (words.length + 1) / 2));
+        at(sttToken, ready + turn.pauseMs + turn.speechMs / 2, () -> callbacks.onPartialSpeechResult(firstHalf));
+        at(sttToken, endOfSpeech, () -> callbacks.onPartialSpeechResult(turn.text));
+        at(sttToken, endOfSpeech, () -> {
+            log("caller stops speaking");
+            callerFinishedAt = now();
+            callbacks.onEndOfSpeech();
+        });
+        at(sttToken, endOfSpeech + latencies.sttFinalizeMs, () -> {
+            log("recognizer result '" + turn.text + "'");
+            callbacks.onSpeechResult(turn.text);
+        });
+    }
+
+    private MessageRecorderHandler fakeRecorder(MessageRecorderHandler.MessageRecorderListener listener) {
+        MessageRecorderHandler recorder = mock(MessageRecorderHandler.class);
+        doAnswer(invocation -> {
+            String fileName = invocation.getArgument(0);
+            at(null, latencies.recorderStartMs, () -> {
+                log("recorder started");
+                listener.onRecordingStarted();
+            });
+            doAnswer(stop -> {
+                at(null, latencies.recorderStopMs, () -> {
+                    log("recorder stopped");
+                    listener.onRecordingStopped(fileName, true);
+                });
+                return null;
+            }).when(recorder).stopRecording();
+            return null;
+        }).when(recorder).startRecording(anyString());
+        return recorder;
+    }
+
+    private long ttsDuration(String text) {
+        return (text != null ? text.length() : 0) * latencies.ttsMsPerChar;
+    }
+
+    private void at(Object token, long delayMs, Runnable event) {
+        clock.postAtTime(event, token, SystemClock.uptimeMillis() + delayMs);
+    }
+
+    private long now() {
+        return SystemClock.uptimeMillis() - startedAt;
+    }
+
+    private void log(String event) {
+        report.timeline.add(String.format(Locale.ROOT, "%6dms %s", now(), event));
+    }
+
+    private class SessionListener implements CallSessionManager.CallSessionListener {
+        @Override
+        public void onSessionCompleted(CallSessionManager completed) {
+            log("session completed");
+            finish();
+        }
+
+        @Override
+        public void onSessionError(CallSessionManager failed, String errorMessage) {
+            log("session error: " + errorMessage);
+            finish();
+        }
+
+        @Override
+        public void onUserTookOver(CallSessionManager takenOver) {
+            log("user took over");
+            finish();
+        }
+
+        @Override
+        public void onTranscriptionUpdate(String latestTranscript) {
+            log("transcript '" + latestTranscript + "'");
+        }
+
+        private void finish() {
+            ended = true;
+            report.callDurationMs = now();
+        }
+    }
+}
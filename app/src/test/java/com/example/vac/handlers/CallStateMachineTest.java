@@ -0,0 +1,130 @@
+package com.example.vac.handlers;
+
+import android.os.Looper;
+
+import com.example.vac.handlers.CallSessionManager.State;
+import com.example.vac.handlers.CallStateMachine.Event;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = Config.NEWEST_SDK)
+public class CallStateMachineTest {
+
+    private final List<String> trace = new ArrayList<>();
+
+    private CallStateMachine.Builder baseBuilder() {
+        return new CallStateMachine.Builder(State.INITIALIZING)
+                .onEntry(State.LISTENING, p -> trace.add("enter LISTENING"))
+                .onExit(State.LISTENING, p -> trace.add("exit LISTENING"))
+                .timer(State.LISTENING, Event.SILENCE_TIMEOUT, 1000)
+                .transition(State.INITIALIZING, Event.GREETING_REQUESTED, State.GREETING)
+                .transition(State.GREETING, Event.PLAYBACK_COMPLETED, State.LISTENING)
+                .transition(State.LISTENING, Event.SILENCE_TIMEOUT, State.RESPONDING, null, p -> trace.add("timeout"))
+                .internal(EnumSet.of(State.LISTENING), Event.END_OF_SPEECH, p -> trace.add("end of speech"), true);
+    }
+
+    @Test
+    public void test_transitionRunsExitThenActionThenEntry() {
+        CallStateMachine machine = baseBuilder()
+                .transition(State.LISTENING, Event.SPEECH_RESULT, State.RESPONDING, null, p -> trace.add("action " + p))
+                .build(Looper.getMainLooper());
+
+        machine.fire(Event.GREETING_REQUESTED);
+        machine.fire(Event.PLAYBACK_COMPLETED);
+        machine.fire(Event.SPEECH_RESULT, "hello");
+
+        assertEquals(State.RESPONDING, machine.getState());
+        assertEquals(List.of("enter LISTENING", "exit LISTENING", "action hello"), trace);
+    }
+
+    @Test
+    public void test_unhandledEventIsIgnored() {
+        CallStateMachine machine = baseBuilder().build(Looper.getMainLooper());
+
+        machine.fire(Event.PLAYBACK_COMPLETED);
+
+        assertEquals(State.INITIALIZING, machine.getState());
+        assertTrue(machine.getTransitionHistory().isEmpty());
+    }
+
+    @Test
+    public void test_firstAllowingGuardWins() {
+        CallStateMachine machine = new CallStateMachine.Builder(State.LISTENING)
+                .transition(State.LISTENING, Event.SPEECH_RESULT, State.USER_TAKEOVER, p -> "takeover".equals(p), null)
+                .transition(State.LISTENING, Event.SPEECH_RESULT, State.RESPONDING, null, null)
+                .build(Looper.getMainLooper());
+
+        machine.fire(Event.SPEECH_RESULT, "something else");
+
+        assertEquals(State.RESPONDING, machine.getState());
+    }
+
+    @Test
+    public void test_timerFiresAfterDelay_andInternalTransitionRestartsIt() {
+        CallStateMachine machine = baseBuilder().build(Looper.getMainLooper());
+        machine.fire(Event.GREETING_REQUESTED);
+        machine.fire(Event.PLAYBACK_COMPLETED);
+
+        ShadowLooper.idleMainLooper(800, TimeUnit.MILLISECONDS);
+        machine.fire(Event.END_OF_SPEECH);
+        ShadowLooper.idleMainLooper(800, TimeUnit.MILLISECONDS);
+        assertEquals("Restarted timer should not have fired yet", State.LISTENING, machine.getState());
+        assertEquals(List.of("enter LISTENING", "end of speech"), trace);
+
+        ShadowLooper.idleMainLooper(300, TimeUnit.MILLISECONDS);
+        assertEquals(State.RESPONDING, machine.getState());
+        assertEquals(List.of("enter LISTENING", "end of speech", "exit LISTENING", "timeout"), trace);
+    }
+
+    @Test
+    public void test_timerIsCancelledWhenStateIsLeft() {
+        CallStateMachine machine = baseBuilder()
+                .transition(State.LISTENING, Event.STOP, State.ENDED)
+                .build(Looper.getMainLooper());
+        machine.fire(Event.GREETING_REQUESTED);
+        machine.fire(Event.PLAYBACK_COMPLETED);
+
+        machine.fire(Event.STOP);
+        ShadowLooper.idleMainLooper(2000, TimeUnit.MILLISECONDS);
+
+        assertEquals(State.ENDED, machine.getState());
+        assertTrue(!trace.contains("timeout"));
+    }
+
+    @Test
+    public void test_eventsFiredFromActionsRunAfterCurrentTransition() {
+        CallStateMachine[] holder = new CallStateMachine[1];
+        CallStateMachine machine = new CallStateMachine.Builder(State.INITIALIZING)
+                .onEntry(State.GREETING, p -> trace.add("enter GREETING"))
+                .transition(State.INITIALIZING, Event.GREETING_REQUESTED, State.GREETING, null, p -> {
+                    holder[0].fire(Event.STOP);
+                    trace.add("action done, state " + holder[0].getState());
+                })
+                .transition(State.GREETING, Event.STOP, State.ENDED)
+                .build(Looper.getMainLooper());
+        holder[0] = machine;
+
+        machine.fire(Event.GREETING_REQUESTED);
+
+        assertEquals(State.ENDED, machine.getState());
+        assertEquals(List.of("action done, state GREETING", "enter GREETING"), trace);
+        List<CallStateMachine.TransitionRecord> history = machine.getTransitionHistory();
+        assertEquals(2, history.size());
+        assertEquals(Event.GREETING_REQUESTED, history.get(0).event);
+        assertEquals(State.ENDED, history.get(1).to);
+        assertTrue(history.get(1).completedAtNanos >= history.get(0).completedAtNanos);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.vac.handlers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CallTracerTest {
+
+    private static List<String> spans(CallTracer tracer) {
+        List<String> result = new ArrayList<>();
+        tracer.forEachSpan((span, durationNanos) -> result.add(span + "=" + durationNanos));
+        return result;
+    }
+
+    @Test
+    public void testPairsBeginAndEndInTimestampOrder() {
+        CallTracer tracer = new CallTracer();
+        // Marks from different threads may land in the buffer out of order
+        tracer.end(CallTracer.Span.TIME_TO_GREETING, 400);
+        tracer.begin(CallTracer.Span.TIME_TO_GREETING, 100);
+        tracer.begin(CallTracer.Span.GREETING_DURATION, 400);
+        tracer.end(CallTracer.Span.GREETING_DURATION, 1400);
+
+        assertEquals(List.of("TIME_TO_GREETING=300", "GREETING_DURATION=1000"), spans(tracer));
+    }
+
+    @Test
+    public void testRepeatedBeginsCollapseIntoFirstAndUnmatchedEndsAreIgnored() {
+        CallTracer tracer = new CallTracer();
+        tracer.end(CallTracer.Span.SPEECH_TO_RESPONSE, 50);
+        tracer.begin(CallTracer.Span.SPEECH_TO_RESPONSE, 100);
+        tracer.begin(CallTracer.Span.SPEECH_TO_RESPONSE, 200);
+        tracer.end(CallTracer.Span.SPEECH_TO_RESPONSE, 700);
+        tracer.begin(CallTracer.Span.SPEECH_TO_RESPONSE, 1000);
+        tracer.end(CallTracer.Span.SPEECH_TO_RESPONSE, 1100);
+
+        assertEquals(List.of("SPEECH_TO_RESPONSE=600", "SPEECH_TO_RESPONSE=100"), spans(tracer));
+    }
+
+    @Test
+    public void testMarksBeyondCapacityAreDropped() {
+        CallTracer tracer = new CallTracer(2);
+        tracer.begin(CallTracer.Span.RECORDING_START, 10);
+        tracer.end(CallTracer.Span.RECORDING_START, 30);
+        tracer.begin(CallTracer.Span.RECORDING_START, 40);
+
+        assertEquals(1, tracer.getDroppedCount());
+        assertEquals(List.of("RECORDING_START=20"), spans(tracer));
+        assertTrue(tracer.summary().contains("1 marks dropped"));
+    }
+}
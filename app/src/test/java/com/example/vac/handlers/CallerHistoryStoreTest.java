@@ -0,0 +1,144 @@
+package com.example.vac.handlers;
+
+import com.example.vac.models.CallerStats;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class CallerHistoryStoreTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File historyFile;
+    private CallerHistoryStore store;
+
+    @Before
+    public void setUp() {
+        historyFile = new File(temporaryFolder.getRoot(), "caller_history.bin");
+        store = new CallerHistoryStore(historyFile);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void testRecordsAccumulatePerNumberAcrossFormats() {
+        assertTrue(store.recordCall("+48 600 100 200", 1_000, true, true, IntentClassifier.Intent.BANK));
+        assertTrue(store.recordCall("600100200", 3_000, false, false, IntentClassifier.Intent.BANK));
+        assertTrue(store.recordCall("0048600100200", 2_000, false, true, null));
+
+        CallerStats stats = store.lookup("600 100 200");
+        assertEquals(1, store.size());
+        assertEquals(3, stats.getCallCount());
+        assertEquals(3_000, stats.getLastSeenMillis());
+        assertEquals(1, stats.getTakeOverCount());
+        assertEquals(2, stats.getMessageCount());
+        assertEquals(2, stats.getIntentCount(IntentClassifier.Intent.BANK));
+        assertEquals(IntentClassifier.Intent.BANK, stats.getDominantIntent());
+    }
+
+    @Test
+    public void testUnknownAndWithheldNumbers() {
+        assertNull(store.lookup("+48 600 100 200"));
+        assertNull(store.lookup(null));
+        assertFalse(store.recordCall(null, 1_000, true, true, null));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testHistorySurvivesReopenAndGrowth() {
+        int callers = CallerHistoryStore.INITIAL_CAPACITY * 2;
+        for (int i = 0; i < callers; i++) {
+            store.recordCall("+48 600 " + (100_000 + i), i, i % 2 == 0, false, null);
+        }
+        store.close();
+
+        store = new CallerHistoryStore(historyFile);
+        assertEquals(callers, store.size());
+        for (int i = 0; i < callers; i++) {
+            CallerStats stats = store.lookup("600" + (100_000 + i));
+            assertEquals(1, stats.getCallCount());
+            assertEquals(i, stats.getLastSeenMillis());
+            assertEquals(i % 2 == 0 ? 1 : 0, stats.getTakeOverCount());
+        }
+    }
+
+    @Test
+    public void testFailedGrowthKeepsHistory() {
+        assertTrue(new File(historyFile.getPath() + ".tmp").mkdir()); // The grown table cannot be written
+        int callers = 0;
+        while (store.recordCall("+48 600 " + (100_000 + callers), callers, true, false, null)) {
+            callers++;
+        }
+        assertTrue(callers > 0);
+        store.close();
+
+        store = new CallerHistoryStore(historyFile);
+        assertEquals(callers, store.size());
+        assertEquals(1, store.lookup("600100000").getCallCount());
+    }
+
+    @Test
+    public void testCorruptFileStartsOver() throws IOException {
+        store.close();
+        try (FileWriter writer = new FileWriter(historyFile)) {
+            writer.write("not a caller history file");
+        }
+
+        store = new CallerHistoryStore(historyFile);
+        assertEquals(0, store.size());
+        assertTrue(store.recordCall("600100200", 1_000, true, false, null));
+        assertEquals(1, store.lookup("600100200").getCallCount());
+    }
+
+    @Test
+    public void testTrustedRepeatCaller() {
+        for (int i = 0; i < 2; i++) {
+            store.recordCall("600100200", i, true, false, null);
+        }
+        assertFalse("Two calls are not enough", store.lookup("600100200").isTrustedRepeatCaller(10));
+        store.recordCall("600100200", 2, false, true, IntentClassifier.Intent.DELIVERY);
+        assertTrue(store.lookup("600100200").isTrustedRepeatCaller(10));
+
+        for (int i = 0; i < 3; i++) {
+            store.recordCall("700100200", i, true, true, IntentClassifier.Intent.SALES);
+        }
+        assertFalse("Sales callers stay screened", store.lookup("700100200").isTrustedRepeatCaller(10));
+
+        for (int i = 0; i < 4; i++) {
+            store.recordCall("800100200", i, i == 0, true, null);
+        }
+        assertFalse("Rarely picked up", store.lookup("800100200").isTrustedRepeatCaller(10));
+    }
+
+    @Test
+    public void testTrustLapsesWithoutScreenedCalls() {
+        long now = 100L * 24 * 60 * 60 * 1000;
+        for (int i = 0; i < 3; i++) {
+            store.recordCall("600100200", now - 40L * 24 * 60 * 60 * 1000, true, false, null);
+        }
+        assertFalse("Not screened for 40 days", store.lookup("600100200").isTrustedRepeatCaller(now));
+
+        store.recordCall("600100200", now, true, false, null);
+        assertTrue("Picked up again when screened", store.lookup("600100200").isTrustedRepeatCaller(now));
+    }
+}
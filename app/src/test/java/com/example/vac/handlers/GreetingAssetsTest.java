@@ -0,0 +1,82 @@
+package com.example.vac.handlers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GreetingAssetsTest {
+    private static final Locale POLISH = Locale.forLanguageTag("pl-PL");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testKeyIsStableForTheSameInputs() {
+        assertEquals(GreetingAssets.keyFor("Dzień dobry.", null, POLISH),
+                GreetingAssets.keyFor("Dzień dobry.", null, POLISH));
+    }
+
+    @Test
+    public void testKeyChangesWithTextAndLocale() {
+        String key = GreetingAssets.keyFor("Dzień dobry.", null, POLISH);
+        assertNotEquals(key, GreetingAssets.keyFor("Dzień dobry!", null, POLISH));
+        assertNotEquals(key, GreetingAssets.keyFor("Dzień dobry.", null, Locale.UK));
+    }
+
+    @Test
+    public void testKeyChangesWhenOwnFileIsRegenerated() throws IOException {
+        File own = writeWav("own.wav", 100);
+        String key = GreetingAssets.keyFor("Dzień dobry.", own.getPath(), POLISH);
+        assertTrue(own.setLastModified(own.lastModified() - 10_000));
+        assertNotEquals(key, GreetingAssets.keyFor("Dzień dobry.", own.getPath(), POLISH));
+    }
+
+    @Test
+    public void testAssetMatchesOnlyTheGreetingSettings() {
+        GreetingAssets.Asset asset = new GreetingAssets.Asset("Dzień dobry.", null, POLISH,
+                GreetingAssets.keyFor("Dzień dobry.", null, POLISH), new File("greeting.wav"));
+
+        assertTrue("Equal settings from a newer snapshot", asset.isFor(new String("Dzień dobry."), null, POLISH));
+        assertFalse(asset.isFor("Dzień dobry!", null, POLISH));
+        assertFalse(asset.isFor("Dzień dobry.", "own.wav", POLISH));
+        assertFalse(asset.isFor("Dzień dobry.", null, Locale.UK));
+    }
+
+    @Test
+    public void testCompleteWavIsAccepted() throws IOException {
+        assertTrue(GreetingAssets.isCompleteWav(writeWav("greeting.wav", 100)));
+    }
+
+    @Test
+    public void testHeaderOnlyOrForeignFilesAreRejected() throws IOException {
+        assertFalse(GreetingAssets.isCompleteWav(writeWav("truncated.wav", 0)));
+        assertFalse(GreetingAssets.isCompleteWav(new File(folder.getRoot(), "missing.wav")));
+        File text = folder.newFile("greeting.txt");
+        try (FileOutputStream out = new FileOutputStream(text)) {
+            out.write(new byte[200]);
+        }
+        assertFalse(GreetingAssets.isCompleteWav(text));
+    }
+
+    private File writeWav(String name, int audioBytes) throws IOException {
+        File file = folder.newFile(name);
+        byte[] wav = new byte[44 + audioBytes];
+        System.arraycopy("RIFF".getBytes(StandardCharsets.US_ASCII), 0, wav, 0, 4);
+        System.arraycopy("WAVE".getBytes(StandardCharsets.US_ASCII), 0, wav, 8, 4);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(wav);
+        }
+        return file;
+    }
+}
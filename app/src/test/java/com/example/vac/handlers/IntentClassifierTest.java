@@ -0,0 +1,40 @@
+package com.example.vac.handlers;
+
+import com.example.vac.handlers.IntentClassifier.Intent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IntentClassifierTest {
+    private final IntentClassifier classifier = IntentClassifier.getInstance();
+
+    @Test
+    public void testClassifiesTypicalCallers() {
+        assertEquals(Intent.DELIVERY, classifier.classify("Dzień dobry, jestem kurierem, mam paczkę dla Pana"));
+        assertEquals(Intent.BANK, classifier.classify("Dzwonię z banku w sprawie podejrzanej transakcji na koncie"));
+        assertEquals(Intent.SALES, classifier.classify("Mamy dla Pani wyjątkową ofertę na fotowoltaikę"));
+        assertEquals(Intent.URGENT, classifier.classify("To bardzo pilne, mąż miał wypadek i jest w szpitalu"));
+    }
+
+    @Test
+    public void testWeakOrMissingEvidenceFallsBackToOther() {
+        assertEquals(Intent.OTHER, classifier.classify("Halo, kto mówi?"));
+        assertEquals(Intent.OTHER, classifier.classify("Nagle mi się przypomniało"));
+        assertEquals(Intent.OTHER, classifier.classify(""));
+        assertEquals(Intent.OTHER, classifier.classify(null));
+    }
+
+    @Test
+    public void testTieGoesToMoreUrgentIntent() {
+        assertEquals(Intent.URGENT, classifier.classify("Pilna sprawa z bankiem"));
+    }
+
+    @Test
+    public void testEveryIntentHasResponseTemplate() {
+        for (Intent intent : Intent.values()) {
+            assertTrue(intent + " has no template", intent.responseTemplate != 0);
+        }
+    }
+}
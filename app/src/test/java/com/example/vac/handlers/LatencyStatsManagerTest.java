@@ -0,0 +1,78 @@
+package com.example.vac.handlers;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.vac.utils.LatencyHistogram;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class LatencyStatsManagerTest {
+    private LatencyStatsManager latencyStatsManager;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        latencyStatsManager = new LatencyStatsManager(context);
+        latencyStatsManager.reset();
+    }
+
+    private static CallTracer tracedCall(long timeToGreetingMs) {
+        CallTracer tracer = new CallTracer();
+        tracer.begin(CallTracer.Span.TIME_TO_GREETING, 1_000_000);
+        tracer.end(CallTracer.Span.TIME_TO_GREETING, 1_000_000 + timeToGreetingMs * 1_000_000);
+        return tracer;
+    }
+
+    @Test
+    public void testRecordCallAccumulatesAcrossInstances() {
+        assertTrue(latencyStatsManager.recordCall(tracedCall(200)));
+        LatencyStatsManager reopened = new LatencyStatsManager(ApplicationProvider.getApplicationContext());
+        assertTrue(reopened.recordCall(tracedCall(400)));
+
+        Map<CallTracer.Span, LatencyHistogram> stats = latencyStatsManager.getStats();
+        LatencyHistogram timeToGreeting = stats.get(CallTracer.Span.TIME_TO_GREETING);
+        assertEquals(1, stats.size());
+        assertEquals(2, timeToGreeting.getCount());
+        assertEquals(200_000, timeToGreeting.getMin());
+        assertEquals(400_000, timeToGreeting.getMax());
+    }
+
+    @Test
+    public void testCorruptStatsFileIsDiscarded() throws IOException {
+        File statsFile = new File(ApplicationProvider.getApplicationContext().getFilesDir(), "latency_stats.json");
+        try (FileWriter writer = new FileWriter(statsFile)) {
+            writer.write("{\"TIME_TO_GREETING\": {\"coun"); // Cut off mid-write
+        }
+
+        assertTrue(latencyStatsManager.recordCall(tracedCall(200)));
+
+        assertEquals(1, latencyStatsManager.getStats().get(CallTracer.Span.TIME_TO_GREETING).getCount());
+    }
+
+    @Test
+    public void testDumpAndReset() {
+        assertEquals("No calls traced yet.", latencyStatsManager.dump());
+
+        latencyStatsManager.recordCall(tracedCall(250));
+        assertTrue(latencyStatsManager.dump().startsWith("TIME_TO_GREETING: n=1 p50=250.0ms"));
+
+        assertTrue(latencyStatsManager.reset());
+        assertTrue(latencyStatsManager.getStats().isEmpty());
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.vac.handlers;
+
+import com.example.vac.models.Message;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class MessageLibraryTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private File indexFile;
+    private TranscriptionManager transcriptionManager;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.newFolder("files");
+        indexFile = new File(temporaryFolder.getRoot(), "messages_index.json");
+        transcriptionManager = mock(TranscriptionManager.class);
+        when(transcriptionManager.getCallIds()).thenReturn(Collections.singleton("message_2000"));
+        when(transcriptionManager.getLastModified()).thenReturn(1L);
+    }
+
+    private File newMessageFile(String name, int sizeBytes) throws IOException {
+        File file = new File(directory, name);
+        try (FileWriter writer = new FileWriter(file)) {
+            for (int i = 0; i < sizeBytes; i++) {
+                writer.write('x');
+            }
+        }
+        return file;
+    }
+
+    private MessageLibrary newLibrary() {
+        return new MessageLibrary(directory, indexFile, transcriptionManager);
+    }
+
+    private static void awaitPendingUpdates(MessageLibrary library) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        library.runAfterPendingUpdates(done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLoadReturnsOnlyMessagesNewestFirst() throws IOException {
+        newMessageFile("message_1000.3gp", 1);
+        newMessageFile("message_3000.3gp", 3);
+        newMessageFile("message_2000.3gp", 2);
+        newMessageFile("transcriptions.json", 1);
+        newMessageFile("message_4000.wav", 1);
+
+        List<Message> messages = newLibrary().load();
+
+        assertEquals(3, messages.size());
+        assertEquals(3000, messages.get(0).getTimestamp());
+        assertEquals(2000, messages.get(1).getTimestamp());
+        assertEquals(1000, messages.get(2).getTimestamp());
+        assertEquals(3, messages.get(0).getSizeBytes());
+        assertEquals("message_2000", messages.get(1).getCallId());
+        assertTrue(messages.get(1).hasTranscript());
+        assertFalse(messages.get(0).hasTranscript());
+    }
+
+    @Test
+    public void testIndexIsReusedAndReconciledWithDirectory() throws IOException {
+        newMessageFile("message_1000.3gp", 1);
+        File removed = newMessageFile("message_2000.3gp", 2);
+        newLibrary().load();
+        assertTrue(indexFile.exists());
+
+        assertTrue(removed.delete());
+        newMessageFile("message_3000.3gp", 3);
+        List<Message> messages = newLibrary().load();
+
+        assertEquals(2, messages.size());
+        assertEquals("message_3000.3gp", messages.get(0).getFilename());
+        assertEquals("message_1000.3gp", messages.get(1).getFilename());
+    }
+
+    @Test
+    public void testAddAndRemoveNotifyListenersOnce() throws IOException {
+        MessageLibrary library = newLibrary();
+        library.load();
+        // Written before watching starts, so only the calls below report changes
+        File file = newMessageFile("message_1000.3gp", 1);
+        List<String> events = new ArrayList<>();
+        MessageLibrary.ChangeListener listener = new MessageLibrary.ChangeListener() {
+            @Override
+            public void onMessageAdded(Message message, int position, long version) {
+                events.add("+" + message.getFilename() + "@" + position);
+            }
+
+            @Override
+            public void onMessageRemoved(String filename, int position, long version) {
+                events.add("-" + filename + "@" + position);
+            }
+        };
+        library.addChangeListener(listener);
+
+        assertTrue(library.add(file));
+        assertFalse("Unchanged file is not re-added", library.add(file));
+        assertTrue(library.remove("message_1000.3gp"));
+        assertFalse(library.remove("message_1000.3gp"));
+        library.removeChangeListener(listener);
+        assertTrue(file.delete());
+
+        assertEquals(List.of("+message_1000.3gp@0", "-message_1000.3gp@0"), events);
+        assertTrue(newLibrary().load().isEmpty());
+    }
+
+    @Test
+    public void testAddBeforeLoadKeepsIndexedMessages() throws IOException {
+        newMessageFile("message_1000.3gp", 1);
+        newLibrary().load();
+
+        assertTrue(newLibrary().add(newMessageFile("message_2000.3gp", 2)));
+
+        assertEquals(2, newLibrary().load().size());
+    }
+
+    @Test
+    public void testPagesByPositionAndKeyset() throws IOException {
+        for (int i = 1; i <= 10; i++) {
+            newMessageFile("message_" + i + "000.3gp", 1);
+        }
+        MessageLibrary library = newLibrary();
+
+        MessageLibrary.Page first = library.open(4);
+        assertEquals(10, first.totalCount);
+        assertEquals(0, first.offset);
+        assertEquals(10000, first.messages.get(0).getTimestamp());
+        assertEquals(7000, first.messages.get(3).getTimestamp());
+
+        MessageLibrary.Page older = library.pageOlderThan(first.messages.get(3), 4);
+        assertEquals(4, older.offset);
+        assertEquals(6000, older.messages.get(0).getTimestamp());
+
+        MessageLibrary.Page newer = library.pageNewerThan(older.messages.get(0), 2);
+        assertEquals(2, newer.offset);
+        assertEquals(8000, newer.messages.get(0).getTimestamp());
+        assertEquals(7000, newer.messages.get(1).getTimestamp());
+
+        MessageLibrary.Page last = library.pageAt(8, 4);
+        assertEquals(2, last.messages.size());
+        assertEquals(1000, last.messages.get(1).getTimestamp());
+    }
+
+    @Test
+    public void testKeysetPageSurvivesRemovedAnchorAndBumpsVersion() throws IOException, InterruptedException {
+        for (int i = 1; i <= 5; i++) {
+            newMessageFile("message_" + i + "000.3gp", 1);
+        }
+        MessageLibrary library = newLibrary();
+        library.open(2);
+        awaitPendingUpdates(library); // Durations are filled in by then, so only the removal changes the version
+        MessageLibrary.Page first = library.pageAt(0, 2);
+        Message anchor = first.messages.get(1); // 4000
+
+        assertTrue(new File(directory, anchor.getFilename()).delete());
+        assertTrue(library.remove(anchor.getFilename()));
+        MessageLibrary.Page older = library.pageOlderThan(anchor, 2);
+
+        assertEquals(first.version + 1, older.version);
+        assertEquals(1, older.offset);
+        assertEquals(3000, older.messages.get(0).getTimestamp());
+        assertEquals(4, older.totalCount);
+    }
+
+    @Test
+    public void testDurationsAreReadAfterOpening() throws IOException, InterruptedException {
+        newMessageFile("message_1000.3gp", 1);
+        MessageLibrary library = newLibrary();
+        List<String> events = new ArrayList<>();
+        library.addChangeListener(new MessageLibrary.ChangeListener() {
+            @Override
+            public void onMessageAdded(Message message, int position, long version) {
+                events.add("+" + message.getFilename() + "@" + position);
+            }
+
+            @Override
+            public void onMessageRemoved(String filename, int position, long version) {
+                events.add("-" + filename + "@" + position);
+            }
+        });
+
+        Message opened = library.open(10).messages.get(0);
+        awaitPendingUpdates(library);
+
+        assertEquals(Message.DURATION_UNKNOWN, opened.getDurationMs());
+        assertTrue("Unreadable test file counts as read", library.pageAt(0, 1).messages.get(0).getDurationMs() >= 0);
+        assertEquals(List.of("-message_1000.3gp@0", "+message_1000.3gp@0"), events);
+        assertTrue(newLibrary().load().get(0).getDurationMs() >= 0);
+        assertFalse(new File(indexFile.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testDeleteRemovesSidecarsAndTranscripts() throws IOException {
+        File file = newMessageFile("message_2000.3gp", 1);
+        File peaks = newMessageFile("message_2000" + WaveformPeaks.FILE_SUFFIX, 1);
+        File timeMap = newMessageFile("message_2000" + RecordingCompactor.TIME_MAP_SUFFIX, 1);
+        File otherPeaks = newMessageFile("message_1000" + WaveformPeaks.FILE_SUFFIX, 1);
+        MessageLibrary library = newLibrary();
+        Message message = library.load().get(0);
+
+        assertTrue(library.delete(message));
+
+        assertFalse(file.exists());
+        assertFalse(peaks.exists());
+        assertFalse(timeMap.exists());
+        assertTrue(otherPeaks.exists());
+        verify(transcriptionManager).deleteCall("message_2000");
+        assertEquals(0, library.getCount());
+    }
+
+    @Test
+    public void testLoadOfMissingDirIsEmpty() {
+        assertTrue(new MessageLibrary(new File(temporaryFolder.getRoot(), "missing")).load().isEmpty());
+    }
+}
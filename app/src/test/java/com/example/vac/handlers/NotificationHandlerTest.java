@@ -7,6 +7,7 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.os.Looper;
 
 import androidx.core.app.NotificationCompat;
 import androidx.test.core.app.ApplicationProvider;
@@ -24,6 +25,8 @@ import org.robolectric.Shadows;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowNotificationManager;
 
+import java.time.Duration;
+
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
@@ -105,6 +108,7 @@ public class NotificationHandlerTest {
 
         String transcribedText = "Hello, this is a test.";
         notificationHandler.updateTranscription(transcribedText);
+        idleFlushThread();
 
         Notification postedNotification = shadowManager.getNotification(NOTIFICATION_ID);
         assertNotNull(postedNotification);
@@ -121,6 +125,7 @@ public class NotificationHandlerTest {
 
         String newMessage = "Call taken over.";
         notificationHandler.updateNotification(context.getString(R.string.notification_title_screening), newMessage, null);
+        idleFlushThread();
 
         Notification postedNotification = shadowManager.getNotification(NOTIFICATION_ID);
         assertNotNull(postedNotification);
@@ -140,6 +145,64 @@ public class NotificationHandlerTest {
         // assertNull("Notification builder should be nulled after cancel", notificationHandler.getNotificationBuilder()); // Requires a getter for testing
     }
 
+    private String postedText() {
+        Notification posted = getShadowManager().getNotification(NOTIFICATION_ID);
+        return posted == null ? null : Shadows.shadowOf(posted).getContentText().toString();
+    }
+
+    private void idleFlushThread() {
+        Looper flushLooper = notificationHandler.getFlushLooper();
+        assertNotNull("Deferred updates should start the flush thread", flushLooper);
+        Shadows.shadowOf(flushLooper).idleFor(Duration.ofMillis(NotificationHandler.MIN_UPDATE_INTERVAL_MS));
+    }
+
+    @Test
+    public void rapidUpdates_areCoalescedIntoLatestContent() {
+        notificationHandler.showScreeningNotification("Screening...", null, null);
+
+        notificationHandler.updateNotificationMessage("first"); // Within the interval of the initial post
+        notificationHandler.updateNotificationMessage("second");
+        notificationHandler.updateTranscription("third");
+        assertEquals("Screening...", postedText());
+
+        idleFlushThread();
+        assertEquals("third", postedText());
+    }
+
+    @Test
+    public void unchangedUpdate_isSkipped() {
+        notificationHandler.showScreeningNotification("Listening...", null, null);
+
+        notificationHandler.updateNotificationMessage("Listening...");
+        idleFlushThread();
+
+        assertEquals(1, notificationHandler.getSkippedUpdateCount());
+    }
+
+    @Test
+    public void flush_deliversPendingUpdateImmediately() {
+        notificationHandler.showScreeningNotification("Screening...", null, null);
+        notificationHandler.updateNotificationMessage("first");
+        notificationHandler.updateNotification(null, "Call has ended.", null);
+
+        notificationHandler.flush();
+
+        assertEquals("Call has ended.", postedText());
+    }
+
+    @Test
+    public void cancelNotification_dropsPendingUpdate() {
+        ShadowNotificationManager shadowManager = getShadowManager();
+        notificationHandler.showScreeningNotification("Screening...", null, null);
+        notificationHandler.updateNotificationMessage("first");
+        notificationHandler.updateNotificationMessage("second");
+
+        notificationHandler.cancelNotification();
+        idleFlushThread();
+
+        assertEquals("Pending update must not bring the notification back", 0, shadowManager.size());
+    }
+
     // Helper method in NotificationHandler to get notificationBuilder for testing (add if needed)
     // public NotificationCompat.Builder getNotificationBuilder() { return notificationBuilder; }
 } 
\ No newline at end of file
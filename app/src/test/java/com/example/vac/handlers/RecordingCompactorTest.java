@@ -0,0 +1,84 @@
+package com.example.vac.handlers;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecordingCompactorTest {
+    private static final float SPEECH = -20f;
+    private static final float SILENCE = -70f;
+
+    private static float[] levels(int frameCount, int speechFrom, int speechTo) {
+        float[] levels = new float[frameCount];
+        Arrays.fill(levels, SILENCE);
+        Arrays.fill(levels, speechFrom, speechTo, SPEECH);
+        return levels;
+    }
+
+    @Test
+    public void testRecordingWithNextToNothingKeptIsLeftAlone() {
+        int minKept = RecordingCompactor.MIN_KEPT_MS / RecordingCompactor.FRAME_MS;
+
+        assertFalse("Nothing measured", RecordingCompactor.worthCompacting(0, 0));
+        assertFalse("All silent", RecordingCompactor.worthCompacting(0, 3000));
+        assertFalse(RecordingCompactor.worthCompacting(minKept - 1, 3000));
+        assertTrue(RecordingCompactor.worthCompacting(minKept, 3000));
+        assertFalse("Not noticeably smaller", RecordingCompactor.worthCompacting(2900, 3000));
+    }
+
+    @Test
+    public void testSilenceAroundSpeechIsCutWithPadding() {
+        boolean[] keep = RecordingCompactor.keepFrames(levels(200, 100, 110), 200, new boolean[200]);
+
+        int padding = RecordingCompactor.PADDING_MS / RecordingCompactor.FRAME_MS;
+        for (int i = 0; i < 200; i++) {
+            assertEquals("Frame " + i, i >= 100 - padding && i < 110 + padding, keep[i]);
+        }
+    }
+
+    @Test
+    public void testShortPauseBetweenWordsIsKept() {
+        float[] levels = levels(300, 100, 110);
+        Arrays.fill(levels, 130, 140, SPEECH); // 20 silent frames after padding is shorter than a cut
+
+        boolean[] keep = RecordingCompactor.keepFrames(levels, 300, new boolean[300]);
+
+        for (int i = 110; i < 130; i++) {
+            assertTrue("Frame " + i, keep[i]);
+        }
+    }
+
+    @Test
+    public void testAssistantPlaybackIsCutEvenWhenLoud() {
+        float[] levels = levels(300, 0, 300);
+        boolean[] assistant = RecordingCompactor.assistantFrames(
+                List.of(new RecordingCompactor.Span(0, 3000)), 300);
+
+        boolean[] keep = RecordingCompactor.keepFrames(levels, 300, assistant);
+
+        assertFalse(keep[0]);
+        assertFalse(keep[150 - RecordingCompactor.PADDING_MS / RecordingCompactor.FRAME_MS - 1]); // Before the padding
+        assertTrue(keep[150]);
+        assertTrue(keep[299]);
+    }
+
+    @Test
+    public void testTimeMapMapsCompactPositionsBackToOriginal() {
+        boolean[] keep = new boolean[100];
+        Arrays.fill(keep, 10, 20, true); // 200-400 ms
+        Arrays.fill(keep, 50, 60, true); // 1000-1200 ms
+
+        List<RecordingCompactor.TimeMapEntry> timeMap = RecordingCompactor.timeMap(keep);
+
+        assertEquals(2, timeMap.size());
+        assertEquals(200, timeMap.get(1).compactStartMs);
+        assertEquals(1000, timeMap.get(1).originalStartMs);
+        assertEquals(250, RecordingCompactor.toOriginalMs(timeMap, 50));
+        assertEquals(1100, RecordingCompactor.toOriginalMs(timeMap, 300));
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.vac.handlers;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.vac.handlers.IntentClassifier.Intent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class ResponseSpeculatorTest {
+    private ResponseSpeculator speculator;
+    private AudioHandler mockAudioHandler;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        speculator = new ResponseSpeculator(context, IntentClassifier.getInstance());
+        mockAudioHandler = mock(AudioHandler.class);
+    }
+
+    private File completeRender() throws IOException {
+        ArgumentCaptor<File> file = ArgumentCaptor.forClass(File.class);
+        ArgumentCaptor<AudioHandler.SynthesisCallback> callback = ArgumentCaptor.forClass(AudioHandler.SynthesisCallback.class);
+        verify(mockAudioHandler).synthesizeToFile(anyString(), file.capture(), callback.capture());
+        file.getValue().createNewFile();
+        callback.getValue().onSuccess(file.getValue().getAbsolutePath());
+        return file.getValue();
+    }
+
+    @Test
+    public void testRenderedResponseIsClaimedOnConfirmedIntent() throws IOException {
+        speculator.onPartialResult(mockAudioHandler, "Dzień dobry, jestem kurierem");
+        File rendered = completeRender();
+
+        assertEquals(rendered, speculator.claim(Intent.DELIVERY));
+        assertEquals(1, speculator.getHitCount());
+    }
+
+    @Test
+    public void testPendingOrUnrenderedIntentIsAMiss() {
+        speculator.onPartialResult(mockAudioHandler, "Dzień dobry, jestem kurierem");
+
+        assertNull("Render not finished yet", speculator.claim(Intent.DELIVERY));
+        assertNull(speculator.claim(Intent.BANK));
+        assertEquals(0, speculator.getHitCount());
+        assertEquals(2, speculator.getMissCount());
+    }
+
+    @Test
+    public void testOtherIntentIsNotCounted() {
+        assertNull(speculator.claim(Intent.OTHER));
+        assertEquals(0, speculator.getMissCount());
+    }
+
+    @Test
+    public void testFailedRenderIsRetried() {
+        speculator.onPartialResult(mockAudioHandler, "jestem kurierem");
+        ArgumentCaptor<AudioHandler.SynthesisCallback> callback = ArgumentCaptor.forClass(AudioHandler.SynthesisCallback.class);
+        verify(mockAudioHandler).synthesizeToFile(anyString(), any(File.class), callback.capture());
+        callback.getValue().onError("TTS synthesis stopped");
+
+        speculator.onPartialResult(mockAudioHandler, "jestem kurierem z paczką");
+
+        verify(mockAudioHandler, times(2)).synthesizeToFile(anyString(), any(File.class), any(AudioHandler.SynthesisCallback.class));
+    }
+
+    @Test
+    public void testEachIntentIsRenderedOnce() {
+        speculator.onPartialResult(mockAudioHandler, "jestem kurierem");
+        speculator.onPartialResult(mockAudioHandler, "jestem kurierem z paczką");
+        speculator.onPartialResult(mockAudioHandler, "Halo?");
+
+        verify(mockAudioHandler, times(1)).synthesizeToFile(anyString(), any(File.class), any(AudioHandler.SynthesisCallback.class));
+    }
+
+    @Test
+    public void testReleaseDeletesRendersAndDropsLateCompletions() throws IOException {
+        speculator.onPartialResult(mockAudioHandler, "jestem kurierem");
+        File rendered = completeRender();
+
+        speculator.release();
+
+        assertFalse(rendered.exists());
+        assertNull(speculator.claim(Intent.DELIVERY));
+    }
+
+    @Test
+    public void testOverlappingSessionsKeepTheirOwnFiles() throws IOException {
+        ResponseSpeculator next = new ResponseSpeculator(ApplicationProvider.getApplicationContext(),
+                IntentClassifier.getInstance());
+        AudioHandler nextAudioHandler = mock(AudioHandler.class);
+        speculator.onPartialResult(mockAudioHandler, "jestem kurierem");
+        File rendered = completeRender();
+        next.onPartialResult(nextAudioHandler, "jestem kurierem");
+        ArgumentCaptor<File> nextFile = ArgumentCaptor.forClass(File.class);
+        verify(nextAudioHandler).synthesizeToFile(anyString(), nextFile.capture(), any(AudioHandler.SynthesisCallback.class));
+
+        next.release();
+
+        assertNotEquals(rendered, nextFile.getValue());
+        assertTrue("The other session's render is left alone", rendered.exists());
+        assertEquals(rendered, speculator.claim(Intent.DELIVERY));
+    }
+
+    @Test
+    public void testNoAudioHandlerMeansNoSpeculation() {
+        speculator.onPartialResult(null, "jestem kurierem");
+
+        verify(mockAudioHandler, never()).synthesizeToFile(anyString(), any(File.class), any(AudioHandler.SynthesisCallback.class));
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.vac.handlers;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.vac.models.ScreeningLists;
+import com.example.vac.utils.NumberListIndex;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class ScreeningListManagerTest {
+    private Context context;
+    private ScreeningListManager screeningListManager;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        new File(context.getFilesDir(), "screening_lists.json").delete();
+        screeningListManager = new ScreeningListManager(context);
+    }
+
+    @Test
+    public void testMissingFileLoadsEmptyIndex() {
+        assertTrue(screeningListManager.load().getAllowedNumbers().isEmpty());
+        assertTrue(screeningListManager.loadIndex().isEmpty());
+    }
+
+    @Test
+    public void testSavedListsAreIndexedByNewInstance() {
+        ScreeningLists lists = new ScreeningLists();
+        lists.setAllowedNumbers(Collections.singletonList("+48 600 100 200"));
+        lists.setBlockedPrefixes(Collections.singletonList("801"));
+        assertTrue(screeningListManager.save(lists));
+
+        NumberListIndex index = new ScreeningListManager(context).loadIndex();
+        assertEquals(NumberListIndex.Decision.ALLOW, index.decide("600100200"));
+        assertEquals(NumberListIndex.Decision.REJECT, index.decide("801 000 111"));
+        assertEquals(NumberListIndex.Decision.SCREEN, index.decide("700 000 111"));
+    }
+
+    @Test
+    public void testCorruptFileLoadsEmptyIndex() throws IOException {
+        try (FileWriter writer = new FileWriter(new File(context.getFilesDir(), "screening_lists.json"))) {
+            writer.write("{ not json");
+        }
+        assertTrue(screeningListManager.loadIndex().isEmpty());
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.vac.handlers;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedRecordingTest {
+    private static final long FRAME_US = 64_000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File filesDir;
+    private File segmentDir;
+
+    @Before
+    public void setUp() throws IOException {
+        filesDir = temporaryFolder.newFolder("files");
+        segmentDir = SegmentedRecording.directoryFor(new File(filesDir, "message_1000.aac"));
+    }
+
+    /**
+     * Write one byte per frame, with the frame index as its value.
+     */
+    private static void writeFrames(SegmentedRecording recording, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            long presentationTimeUs = i * FRAME_US;
+            FileChannel channel = recording.channelFor(presentationTimeUs);
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) i}));
+            recording.onFrameWritten(presentationTimeUs, 1);
+        }
+    }
+
+    private static int framesPerSegment() {
+        return (int) ((SegmentedRecording.SEGMENT_DURATION_US + FRAME_US - 1) / FRAME_US);
+    }
+
+    @Test
+    public void testCompletedSegmentsAreListedWhileRecording() throws IOException {
+        SegmentedRecording recording = new SegmentedRecording(segmentDir, FRAME_US);
+        recording.open();
+        assertTrue(SegmentedRecording.completedSegments(segmentDir).isEmpty());
+
+        writeFrames(recording, 0, framesPerSegment() * 2 + 1);
+
+        List<SegmentedRecording.Segment> segments = SegmentedRecording.completedSegments(segmentDir);
+        assertEquals("The third segment is still being written", 2, segments.size());
+        assertEquals(0, segments.get(0).startUs);
+        assertEquals(framesPerSegment(), segments.get(0).bytes);
+        assertEquals(framesPerSegment() * FRAME_US, segments.get(0).durationUs);
+        assertEquals(framesPerSegment() * FRAME_US, segments.get(1).startUs);
+
+        recording.close(true);
+        assertEquals(3, SegmentedRecording.completedSegments(segmentDir).size());
+    }
+
+    @Test
+    public void testStitchJoinsSegmentsInOrder() throws IOException {
+        int frames = framesPerSegment() * 3 - 5;
+        SegmentedRecording recording = new SegmentedRecording(segmentDir, FRAME_US);
+        recording.open();
+        writeFrames(recording, 0, frames);
+        recording.close(true);
+        File target = new File(filesDir, "message_1000.aac");
+
+        assertTrue(SegmentedRecording.stitch(segmentDir, target));
+
+        byte[] expected = new byte[frames];
+        for (int i = 0; i < frames; i++) {
+            expected[i] = (byte) i;
+        }
+        assertArrayEquals(expected, Files.readAllBytes(target.toPath()));
+        assertFalse(segmentDir.exists());
+    }
+
+    @Test
+    public void testRecoverAbandonedStitchesUnfinishedRecording() throws IOException {
+        SegmentedRecording recording = new SegmentedRecording(segmentDir, FRAME_US);
+        recording.open();
+        writeFrames(recording, 0, framesPerSegment() + 3); // Never closed, as if the process died
+
+        assertEquals("A live recording is left alone", 0, SegmentedRecording.recoverAbandoned(filesDir, 60_000));
+        assertEquals(1, SegmentedRecording.recoverAbandoned(filesDir, 0));
+
+        File target = new File(filesDir, "message_1000.aac");
+        assertEquals(framesPerSegment() + 3, target.length());
+        assertFalse(segmentDir.exists());
+    }
+}
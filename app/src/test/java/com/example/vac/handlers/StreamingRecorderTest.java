@@ -0,0 +1,45 @@
+package com.example.vac.handlers;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class StreamingRecorderTest {
+
+    @Test
+    public void testAdtsHeaderDescribesAacLcMono16kFrame() {
+        ByteBuffer header = ByteBuffer.allocate(StreamingRecorder.ADTS_HEADER_SIZE);
+        int frameLength = StreamingRecorder.ADTS_HEADER_SIZE + 300;
+
+        StreamingRecorder.writeAdtsHeader(header, frameLength, 16000, 1);
+
+        byte[] bytes = header.array();
+        assertEquals(StreamingRecorder.ADTS_HEADER_SIZE, header.position());
+        assertEquals(0xFFF, ((bytes[0] & 0xFF) << 4) | ((bytes[1] & 0xF0) >> 4)); // Sync word
+        assertEquals(1, bytes[1] & 0x01); // No CRC
+        assertEquals(1, (bytes[2] & 0xC0) >> 6); // AAC LC
+        assertEquals(8, (bytes[2] & 0x3C) >> 2); // 16000 Hz
+        assertEquals(1, ((bytes[2] & 0x01) << 2) | ((bytes[3] & 0xC0) >> 6)); // Mono
+        int length = ((bytes[3] & 0x03) << 11) | ((bytes[4] & 0xFF) << 3) | ((bytes[5] & 0xE0) >> 5);
+        assertEquals(frameLength, length);
+    }
+
+    @Test
+    public void testAdtsHeaderEncodesLargeFrameAndOtherRate() {
+        ByteBuffer header = ByteBuffer.allocate(StreamingRecorder.ADTS_HEADER_SIZE);
+
+        StreamingRecorder.writeAdtsHeader(header, 4097, 8000, 1);
+
+        byte[] bytes = header.array();
+        assertEquals(11, (bytes[2] & 0x3C) >> 2); // 8000 Hz
+        int length = ((bytes[3] & 0x03) << 11) | ((bytes[4] & 0xFF) << 3) | ((bytes[5] & 0xE0) >> 5);
+        assertEquals(4097, length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdtsHeaderRejectsUnsupportedSampleRate() {
+        StreamingRecorder.writeAdtsHeader(ByteBuffer.allocate(StreamingRecorder.ADTS_HEADER_SIZE), 100, 17000, 1);
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.vac.handlers;
+
+import androidx.annotation.NonNull;
+
+import com.example.vac.models.TranscriptionData;
+import com.example.vac.models.TranscriptionData.SpeakerType;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TranscriptBusTest {
+    /** Runs tasks only when asked, like a looper that has not had a turn yet */
+    private static final class QueuedExecutor implements Executor {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+    }
+
+    private static final class Recorder implements TranscriptBus.Subscriber {
+        final List<String> calls = new ArrayList<>();
+        final List<TranscriptionData> snippets = new ArrayList<>();
+
+        @Override
+        public void onCallStarted(@NonNull String callId) {
+            calls.add(callId);
+        }
+
+        @Override
+        public void onSnippet(@NonNull TranscriptionData snippet) {
+            snippets.add(snippet);
+        }
+    }
+
+    private final TranscriptBus bus = new TranscriptBus();
+
+    @Test
+    public void testReplayDeliversBacklogThenLiveSnippets() {
+        bus.beginCall("call-1");
+        TranscriptionData greeting = bus.publish("call-1", "Hello", SpeakerType.ASSISTANT);
+        Recorder recorder = new Recorder();
+
+        bus.subscribe(recorder, Runnable::run, true);
+        TranscriptionData answer = bus.publish("call-1", "It's me", SpeakerType.CALLER);
+
+        assertEquals(List.of("call-1"), recorder.calls);
+        assertEquals(2, recorder.snippets.size());
+        assertSame(greeting, recorder.snippets.get(0));
+        assertSame(answer, recorder.snippets.get(1));
+        assertEquals("Numbered in the call", 1, answer.getSequence());
+    }
+
+    @Test
+    public void testWithoutReplayOnlyNewSnippetsArrive() {
+        bus.beginCall("call-1");
+        bus.publish("call-1", "Hello", SpeakerType.ASSISTANT);
+        Recorder recorder = new Recorder();
+
+        bus.subscribe(recorder, Runnable::run, false);
+        TranscriptionData answer = bus.publish("call-1", "It's me", SpeakerType.CALLER);
+
+        assertTrue(recorder.calls.isEmpty());
+        assertEquals(List.of(answer), recorder.snippets);
+    }
+
+    @Test
+    public void testSubscribersShareTheSameSnippetObjects() {
+        Recorder ui = new Recorder();
+        Recorder storage = new Recorder();
+        bus.subscribe(ui, Runnable::run, true);
+        bus.subscribe(storage, Runnable::run, false);
+
+        bus.beginCall("call-1");
+        bus.publish("call-1", "Hello", SpeakerType.ASSISTANT);
+
+        assertSame(ui.snippets.get(0), storage.snippets.get(0));
+    }
+
+    @Test
+    public void testPublishesBeforeADrainRunAreDeliveredTogetherInOrder() {
+        QueuedExecutor executor = new QueuedExecutor();
+        Recorder recorder = new Recorder();
+        bus.subscribe(recorder, executor, true);
+        executor.runAll();
+
+        bus.beginCall("call-1");
+        bus.publish("call-1", "one", SpeakerType.ASSISTANT);
+        bus.publish("call-1", "two", SpeakerType.CALLER);
+        bus.publish("call-1", "three", SpeakerType.ASSISTANT);
+
+        assertEquals("Drains are coalesced", 1, executor.tasks.size());
+        executor.runAll();
+        assertEquals(3, recorder.snippets.size());
+        assertEquals("three", recorder.snippets.get(2).getText());
+    }
+
+    @Test
+    public void testNewCallStartsOverAndDropsTheOldBacklog() {
+        Recorder recorder = new Recorder();
+        bus.subscribe(recorder, Runnable::run, true);
+        bus.beginCall("call-1");
+        bus.publish("call-1", "old", SpeakerType.CALLER);
+
+        bus.beginCall("call-2");
+        bus.publish("call-2", "new", SpeakerType.CALLER);
+
+        assertEquals(List.of("call-1", "call-2"), recorder.calls);
+        assertEquals(2, recorder.snippets.size());
+        assertEquals(1, bus.getBacklog().length);
+        assertEquals("new", bus.getBacklog()[0].getText());
+    }
+
+    @Test
+    public void testUnsubscribedSubscriberGetsNothingMore() {
+        QueuedExecutor executor = new QueuedExecutor();
+        Recorder recorder = new Recorder();
+        bus.subscribe(recorder, executor, true);
+        bus.beginCall("call-1");
+        bus.publish("call-1", "Hello", SpeakerType.ASSISTANT);
+
+        bus.unsubscribe(recorder);
+        executor.runAll();
+        bus.publish("call-1", "Anyone there?", SpeakerType.ASSISTANT);
+
+        assertTrue(recorder.snippets.isEmpty());
+        assertTrue(executor.tasks.isEmpty());
+    }
+
+    @Test
+    public void testUnsubscribeCanStillDeliverPendingSnippets() {
+        QueuedExecutor executor = new QueuedExecutor();
+        Recorder recorder = new Recorder();
+        bus.subscribe(recorder, executor, true);
+        bus.beginCall("call-1");
+        TranscriptionData first = bus.publish("call-1", "Hello", SpeakerType.ASSISTANT);
+        TranscriptionData last = bus.publish("call-1", "Bye", SpeakerType.CALLER);
+
+        bus.unsubscribe(recorder, true);
+        bus.publish("call-1", "After the store let go", SpeakerType.ASSISTANT);
+        executor.runAll();
+
+        assertEquals(List.of("call-1"), recorder.calls);
+        assertEquals(List.of(first, last), recorder.snippets);
+        assertTrue(executor.tasks.isEmpty());
+    }
+
+    @Test
+    public void testEndedCallIsFinishedBeforeTheNextOneStarts() {
+        QueuedExecutor executor = new QueuedExecutor();
+        Recorder recorder = new Recorder();
+        bus.subscribe(recorder, executor, true);
+        bus.beginCall("call-1");
+        executor.runAll();
+        TranscriptionData lastWords = bus.publish("call-1", "Bye", SpeakerType.CALLER);
+
+        bus.beginCall("call-2");
+        TranscriptionData greeting = bus.publish("call-2", "Hello", SpeakerType.ASSISTANT);
+        executor.runAll();
+
+        assertEquals(List.of("call-1", "call-2"), recorder.calls);
+        assertEquals(List.of(lastWords, greeting), recorder.snippets);
+    }
+}
@@ -102,4 +102,40 @@ public class TranscriptionManagerTest {
         assertEquals("Second transcription should be 'Second'", "Second", transcriptions.get(1).getText());
         assertEquals("Third transcription should be 'Third'", "Third", transcriptions.get(2).getText());
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void testRecordingStartIsSavedPerCall() {
+        assertTrue(transcriptionManager.saveRecordingStart("message_1000", 1250));
+
+        assertEquals(1250, transcriptionManager.getRecordingStart("message_1000"));
+        assertEquals("Falls back to the time in the name", 2000, transcriptionManager.getRecordingStart("message_2000"));
+        assertEquals(0, transcriptionManager.getRecordingStart("test-call-1"));
+    }
+
+    @Test
+    public void testSnippetsAreNumberedPerCall() {
+        transcriptionManager.saveTranscriptionSnippet("call-1", "First", 1000, SpeakerType.CALLER);
+        transcriptionManager.saveTranscriptionSnippet("call-2", "Other", 1000, SpeakerType.CALLER);
+        transcriptionManager.saveTranscriptionSnippet("call-1", "Same time", 1000, SpeakerType.ASSISTANT);
+
+        List<TranscriptionData> transcriptions = transcriptionManager.getTranscriptionForCall("call-1");
+        assertEquals(0, transcriptions.get(0).getSequence());
+        assertEquals(1, transcriptions.get(1).getSequence());
+        assertEquals(0, transcriptionManager.getTranscriptionForCall("call-2").get(0).getSequence());
+    }
+
+    @Test
+    public void testDeleteCallRemovesOnlyThatCall() {
+        transcriptionManager.saveTranscriptionSnippet("message_1000", "Delete me", 1000, SpeakerType.CALLER);
+        transcriptionManager.saveTranscriptionSnippet("message_3000", "Keep me", 3000, SpeakerType.CALLER);
+        transcriptionManager.saveRecordingStart("message_1000", 1250);
+        transcriptionManager.saveRecordingStart("message_3000", 3250);
+
+        assertTrue(transcriptionManager.deleteCall("message_1000"));
+
+        assertTrue(transcriptionManager.getTranscriptionForCall("message_1000").isEmpty());
+        assertEquals(1, transcriptionManager.getTranscriptionForCall("message_3000").size());
+        assertEquals("Falls back to the time in the name", 1000, transcriptionManager.getRecordingStart("message_1000"));
+        assertEquals(3250, transcriptionManager.getRecordingStart("message_3000"));
+    }
+}
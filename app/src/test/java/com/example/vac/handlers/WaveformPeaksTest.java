@@ -0,0 +1,82 @@
+package com.example.vac.handlers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class WaveformPeaksTest {
+    private static final int SAMPLE_RATE = 16000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /** A minute of silence with one loud bucket, fed in uneven chunks like a decoder would. */
+    private static WaveformPeaks.Builder minuteWithSpike(int spikeBucket) {
+        WaveformPeaks.Builder builder = new WaveformPeaks.Builder();
+        short[] chunk = new short[1000];
+        for (int position = 0; position < SAMPLE_RATE * 60; position += chunk.length) {
+            for (int i = 0; i < chunk.length; i++) {
+                int bucket = (position + i) / WaveformPeaks.BASE_SAMPLES_PER_BUCKET;
+                chunk[i] = (short) (bucket == spikeBucket ? (i % 2 == 0 ? 20000 : -30000) : 0);
+            }
+            builder.onPcm(chunk, chunk.length, SAMPLE_RATE);
+        }
+        return builder;
+    }
+
+    private static File newMessageFile(File dir) throws IOException {
+        File file = new File(dir, "message_1.aac");
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("audio");
+        }
+        return file;
+    }
+
+    @Test
+    public void testPeaksFoldIntoCoarserLevels() {
+        WaveformPeaks.Builder builder = minuteWithSpike(100);
+        builder.finish();
+
+        WaveformPeaks base = builder.level(0);
+        assertEquals((SAMPLE_RATE * 60 + 255) / 256, base.getBucketCount());
+        assertEquals(20000 >> 8, base.getMax(100));
+        assertEquals(-30000 >> 8, base.getMin(100));
+        assertEquals(0, base.getMax(99));
+
+        WaveformPeaks coarse = builder.level(2); // 16 base buckets each
+        assertEquals(20000 >> 8, coarse.getMax(100 / 16));
+        assertEquals(0, coarse.getMax(100 / 16 + 1));
+        assertEquals(256.0, coarse.getBucketDurationMs(), 0.001);
+    }
+
+    @Test
+    public void testReadLoadsCoarsestLevelThatFitsView() throws IOException {
+        File messageFile = newMessageFile(temporaryFolder.getRoot());
+        minuteWithSpike(0).write(WaveformPeaks.sidecarFor(messageFile), messageFile.length());
+
+        WaveformPeaks peaks = WaveformPeaks.read(messageFile, 200);
+
+        assertNotNull(peaks);
+        // A minute has 235 buckets at level 2 and 59 at level 3
+        assertEquals(235, peaks.getBucketCount());
+        assertEquals(-30000 >> 8, peaks.getMin(0));
+        assertEquals(WaveformPeaks.BASE_SAMPLES_PER_BUCKET * 16 * 1000.0 / SAMPLE_RATE, peaks.getBucketDurationMs(), 0.001);
+        assertEquals(3750, WaveformPeaks.read(messageFile, 100_000).getBucketCount()); // Finest there is
+    }
+
+    @Test
+    public void testReadIgnoresPeaksOfOlderRecording() throws IOException {
+        File messageFile = newMessageFile(temporaryFolder.getRoot());
+        minuteWithSpike(0).write(WaveformPeaks.sidecarFor(messageFile), messageFile.length() + 1);
+
+        assertNull(WaveformPeaks.read(messageFile, 200));
+    }
+}
@@ -8,12 +8,17 @@ import android.telecom.Call;
 import android.telecom.CallScreeningService;
 import android.app.NotificationManager;
 import android.content.Context;
+import android.net.Uri;
 
 import androidx.test.core.app.ApplicationProvider;
 
 import com.example.vac.R;
 import com.example.vac.handlers.CallSessionManager;
+import com.example.vac.handlers.CallerHistoryStore;
+import com.example.vac.handlers.IntentClassifier;
 import com.example.vac.handlers.NotificationHandler;
+import com.example.vac.models.CallerStats;
+import com.example.vac.utils.NumberListIndex;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -29,6 +34,8 @@ import org.robolectric.android.controller.ServiceController;
 import org.robolectric.Shadows;
 import org.robolectric.shadows.ShadowNotificationManager;
 
+import java.util.Collections;
+
 import static org.mockito.Mockito.*;
 import static org.junit.Assert.*;
 
@@ -67,6 +74,87 @@ public class CallScreeningServiceImplTest {
         assertNotNull("currentCallSessionManager should be initialized by onScreenCall", serviceInstance.currentCallSessionManager);
     }
 
+    @Test
+    public void onScreenCall_blockedNumber_rejectsWithoutScreening() {
+        controller = Robolectric.buildService(CallScreeningServiceImpl.class);
+        serviceInstance = spy(controller.create().get());
+        serviceInstance.screeningIndex = NumberListIndex.build(Collections.emptyList(),
+                Collections.emptyList(), Collections.singletonList("+48 801"));
+        doNothing().when(serviceInstance).respondToCall(any(Call.Details.class), any(CallScreeningService.CallResponse.class));
+        when(mockCallDetails.getCallDirection()).thenReturn(Call.Details.DIRECTION_INCOMING);
+        when(mockCallDetails.getHandle()).thenReturn(Uri.fromParts("tel", "+48801234567", null));
+
+        serviceInstance.onScreenCall(mockCallDetails);
+
+        ArgumentCaptor<CallScreeningService.CallResponse> responseCaptor = ArgumentCaptor.forClass(CallScreeningService.CallResponse.class);
+        verify(serviceInstance).respondToCall(eq(mockCallDetails), responseCaptor.capture());
+        assertTrue(responseCaptor.getValue().getDisallowCall());
+        assertTrue(responseCaptor.getValue().getRejectCall());
+        verify(serviceInstance, never()).startForeground(anyInt(), any(Notification.class));
+        assertNull("No session should be started for a blocked number", serviceInstance.currentCallSessionManager);
+    }
+
+    @Test
+    public void onScreenCall_blockedNumberDuringScreening_leavesSessionRunning() {
+        controller = Robolectric.buildService(CallScreeningServiceImpl.class);
+        serviceInstance = spy(controller.create().get());
+        serviceInstance.screeningIndex = NumberListIndex.build(Collections.emptyList(),
+                Collections.emptyList(), Collections.singletonList("+48 801"));
+        doNothing().when(serviceInstance).respondToCall(any(Call.Details.class), any(CallScreeningService.CallResponse.class));
+        Call.Details screenedCall = mock(Call.Details.class);
+        serviceInstance.activeCallDetails = screenedCall;
+        serviceInstance.currentCallSessionManager = mockCallSessionManager;
+        when(mockCallSessionManager.getCurrentState()).thenReturn(CallSessionManager.State.LISTENING);
+        when(mockCallDetails.getCallDirection()).thenReturn(Call.Details.DIRECTION_INCOMING);
+        when(mockCallDetails.getHandle()).thenReturn(Uri.fromParts("tel", "+48801234567", null));
+
+        serviceInstance.onScreenCall(mockCallDetails);
+
+        verify(serviceInstance).respondToCall(eq(mockCallDetails), any(CallScreeningService.CallResponse.class));
+        verify(mockCallSessionManager, never()).stopScreening();
+        verify(serviceInstance, never()).stopSelf();
+        assertSame(screenedCall, serviceInstance.activeCallDetails);
+        assertSame(mockCallSessionManager, serviceInstance.currentCallSessionManager);
+    }
+
+    @Test
+    public void onScreenCall_allowedNumber_letsCallRingWithoutScreening() {
+        controller = Robolectric.buildService(CallScreeningServiceImpl.class);
+        serviceInstance = spy(controller.create().get());
+        serviceInstance.screeningIndex = NumberListIndex.build(Collections.singletonList("600 100 200"),
+                Collections.emptyList(), Collections.emptyList());
+        doNothing().when(serviceInstance).respondToCall(any(Call.Details.class), any(CallScreeningService.CallResponse.class));
+        when(mockCallDetails.getCallDirection()).thenReturn(Call.Details.DIRECTION_INCOMING);
+        when(mockCallDetails.getHandle()).thenReturn(Uri.fromParts("tel", "+48600100200", null));
+
+        serviceInstance.onScreenCall(mockCallDetails);
+
+        ArgumentCaptor<CallScreeningService.CallResponse> responseCaptor = ArgumentCaptor.forClass(CallScreeningService.CallResponse.class);
+        verify(serviceInstance).respondToCall(eq(mockCallDetails), responseCaptor.capture());
+        assertFalse(responseCaptor.getValue().getDisallowCall());
+        verify(serviceInstance, never()).startForeground(anyInt(), any(Notification.class));
+        assertNull(serviceInstance.currentCallSessionManager);
+    }
+
+    @Test
+    public void onScreenCall_trustedRepeatCaller_letsCallRingWithoutScreening() {
+        controller = Robolectric.buildService(CallScreeningServiceImpl.class);
+        serviceInstance = spy(controller.create().get());
+        serviceInstance.callerHistory = mock(CallerHistoryStore.class);
+        when(serviceInstance.callerHistory.lookup("+48600100200"))
+                .thenReturn(new CallerStats(5, System.currentTimeMillis(), 4, 1, new int[IntentClassifier.Intent.values().length]));
+        doNothing().when(serviceInstance).respondToCall(any(Call.Details.class), any(CallScreeningService.CallResponse.class));
+        when(mockCallDetails.getCallDirection()).thenReturn(Call.Details.DIRECTION_INCOMING);
+        when(mockCallDetails.getHandle()).thenReturn(Uri.fromParts("tel", "+48600100200", null));
+
+        serviceInstance.onScreenCall(mockCallDetails);
+
+        verify(serviceInstance).respondToCall(eq(mockCallDetails), any(CallScreeningService.CallResponse.class));
+        verify(serviceInstance.callerHistory, never()).recordCall(any(), anyLong(), anyBoolean(), anyBoolean(), any());
+        verify(serviceInstance, never()).startForeground(anyInt(), any(Notification.class));
+        assertNull(serviceInstance.currentCallSessionManager);
+    }
+
     @Test
     public void onStartCommand_withTakeOverAction_callsUserTakesOverOnSessionManager() {
         CallScreeningServiceImpl serviceForTest = new CallScreeningServiceImpl();
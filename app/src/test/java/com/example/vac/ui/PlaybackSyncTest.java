@@ -0,0 +1,107 @@
+package com.example.vac.ui;
+
+import com.example.vac.models.TranscriptionData;
+import com.example.vac.models.TranscriptionData.SpeakerType;
+import com.example.vac.utils.TranscriptAlignment;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PlaybackSyncTest {
+    private final List<String> events = new ArrayList<>();
+    private PlaybackSync sync;
+
+    @Before
+    public void setUp() {
+        // Frames are driven by calling sync() directly
+        sync = new PlaybackSync(null, new PlaybackSync.PositionSource() {
+            @Override
+            public int getPositionMs() {
+                return 0;
+            }
+
+            @Override
+            public int getDurationMs() {
+                return 60_000;
+            }
+        }, new PlaybackSync.Callback() {
+            @Override
+            public void onPositionChanged(int positionMs, int durationMs) {
+                events.add("position " + positionMs);
+            }
+
+            @Override
+            public void onSnippetChanged(int snippet) {
+                events.add("snippet " + snippet);
+            }
+
+            @Override
+            public void onScrollTo(int snippet, boolean smooth) {
+                events.add((smooth ? "smooth " : "jump ") + snippet);
+            }
+        });
+        List<TranscriptionData> transcript = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            transcript.add(new TranscriptionData(1000 + i * 5000L, "snippet " + i, "message_0", SpeakerType.CALLER));
+        }
+        sync.setAlignment(TranscriptAlignment.build(transcript, 0, null));
+        events.clear();
+    }
+
+    @Test
+    public void testUnchangedFramesDispatchNothing() {
+        sync.sync(1500, 60_000);
+        events.clear();
+
+        sync.sync(1500, 60_000);
+        sync.sync(1500, 60_000);
+
+        assertEquals(List.of(), events);
+    }
+
+    @Test
+    public void testHighlightChangesOnlyWhenSnippetChanges() {
+        sync.sync(1500, 60_000);
+        sync.sync(2000, 60_000);
+        sync.sync(3000, 60_000);
+
+        // Nothing was scrolled to yet, so the first scroll places the list directly
+        assertEquals(List.of("position 1500", "snippet 0", "jump 0", "position 2000", "position 3000"), events);
+    }
+
+    @Test
+    public void testScrollsToNextSnippetAheadOfIt() {
+        sync.sync(1500, 60_000);
+        events.clear();
+
+        sync.sync(6000 - (int) PlaybackSync.SCROLL_LEAD_MS, 60_000);
+        sync.sync(6000, 60_000);
+
+        assertEquals(List.of("position 5750", "smooth 1", "position 6000", "snippet 1"), events);
+    }
+
+    @Test
+    public void testSeekFarAheadJumps() {
+        sync.sync(1500, 60_000);
+        events.clear();
+
+        sync.sync(41_500, 60_000);
+
+        assertEquals(List.of("position 41500", "snippet 8", "jump 8"), events);
+    }
+
+    @Test
+    public void testNewAlignmentClearsHighlight() {
+        sync.sync(1500, 60_000);
+        events.clear();
+
+        sync.setAlignment(TranscriptAlignment.EMPTY);
+
+        assertEquals(List.of("position 0", "snippet -1"), events);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.vac.ui;
+
+import com.example.vac.models.TranscriptionData;
+import com.example.vac.models.TranscriptionData.SpeakerType;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TranscriptItemTest {
+    private static final int ASSISTANT_COLOR = 1;
+    private static final int USER_COLOR = 2;
+    private static final int CALLER_COLOR = 3;
+    private final TranscriptItem.Factory factory = new TranscriptItem.Factory(ASSISTANT_COLOR, USER_COLOR, CALLER_COLOR, 4, 5);
+
+    @Test
+    public void testDisplayFieldsArePrecomputed() {
+        List<TranscriptItem> items = factory.plain(List.of(
+                new TranscriptionData(1000, "Hello", "call-1", SpeakerType.ASSISTANT),
+                new TranscriptionData(2000, "Hi", "call-1", SpeakerType.CALLER)));
+
+        assertEquals("Assistant", items.get(0).speakerName);
+        assertEquals(ASSISTANT_COLOR, items.get(0).backgroundColor);
+        assertEquals("Hello", items.get(0).displayText);
+        assertEquals("Caller", items.get(1).speakerName);
+        assertEquals(CALLER_COLOR, items.get(1).backgroundColor);
+        assertEquals(8, items.get(1).timeText.length()); // HH:mm:ss
+    }
+
+    @Test
+    public void testStableIdIsKeptWhenSnippetIsHighlighted() {
+        TranscriptionData transcription = new TranscriptionData(1000, "call me back", "call-1", SpeakerType.CALLER);
+        TranscriptItem plain = factory.plain(transcription);
+        TranscriptItem highlighted = factory.highlighted(transcription, new int[]{0, 4});
+
+        assertEquals(plain.stableId, highlighted.stableId);
+        assertTrue(plain.isSameSnippet(highlighted));
+        assertFalse("The highlight changed, so the row must be rebound", plain.sameContentAs(highlighted));
+    }
+
+    @Test
+    public void testDifferentSnippetsGetDifferentIds() {
+        TranscriptItem first = factory.plain(new TranscriptionData(1000, "a", "call-1", SpeakerType.CALLER));
+        TranscriptItem otherTime = factory.plain(new TranscriptionData(1001, "a", "call-1", SpeakerType.CALLER));
+        TranscriptItem otherCall = factory.plain(new TranscriptionData(1000, "a", "call-2", SpeakerType.CALLER));
+
+        assertNotEquals(first.stableId, otherTime.stableId);
+        assertNotEquals(first.stableId, otherCall.stableId);
+    }
+
+    @Test
+    public void testSnippetsWithTheSameTimestampAreToldApart() {
+        TranscriptItem first = factory.plain(new TranscriptionData(1000, "a", "call-1", SpeakerType.CALLER, 0));
+        TranscriptItem second = factory.plain(new TranscriptionData(1000, "b", "call-1", SpeakerType.ASSISTANT, 1));
+
+        assertNotEquals(first.stableId, second.stableId);
+        assertFalse(first.isSameSnippet(second));
+    }
+}
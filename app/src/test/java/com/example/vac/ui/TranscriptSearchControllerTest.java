@@ -0,0 +1,68 @@
+package com.example.vac.ui;
+
+import com.example.vac.models.TranscriptionData;
+import com.example.vac.models.TranscriptionData.SpeakerType;
+import com.example.vac.utils.FoldedText;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TranscriptSearchControllerTest {
+    private static final TranscriptItem.Factory ITEMS = new TranscriptItem.Factory(1, 2, 3, 4, 5);
+
+    private static TranscriptSearchController.Index index(String... texts) {
+        List<TranscriptionData> transcriptions = new ArrayList<>();
+        for (int i = texts.length - 1; i >= 0; i--) { // Saved out of order
+            transcriptions.add(new TranscriptionData(i * 1000L, texts[i], "call-" + i, SpeakerType.CALLER));
+        }
+        return new TranscriptSearchController.Index(transcriptions, 0);
+    }
+
+    @Test
+    public void testSearchMatchesCaseInsensitivelyInTimestampOrder() {
+        TranscriptSearchController.Index index = index("Hello world", "Goodbye world", "HELLO there");
+
+        int[] matches = index.search(FoldedText.fold("Hello"), null, () -> false);
+
+        assertArrayEquals(new int[]{0, 2}, matches);
+        List<TranscriptItem> results = index.matches(matches, FoldedText.fold("Hello"), ITEMS);
+        assertEquals("Hello world", results.get(0).transcription.getText());
+        assertEquals("HELLO there", results.get(1).transcription.getText());
+    }
+
+    @Test
+    public void testLongerQueryRefinesPreviousMatches() {
+        TranscriptSearchController.Index index = index("call me back", "callback please", "cold call", "nothing");
+        int[] previous = index.search("call", null, () -> false);
+
+        int[] refined = index.search("callb", previous, () -> false);
+
+        assertArrayEquals(new int[]{0, 1, 2}, previous);
+        assertArrayEquals(new int[]{1}, refined);
+    }
+
+    @Test
+    public void testMatchesIgnoreDiacriticsAndPointIntoOriginalText() {
+        TranscriptSearchController.Index index = index("Oddzwonię jutro", "nic", "Proszę oddzwonić");
+        String query = FoldedText.fold("ODDZWONI");
+
+        List<TranscriptItem> results = index.matches(index.search(query, null, () -> false), query, ITEMS);
+
+        assertEquals(2, results.size());
+        assertArrayEquals(new int[]{0, 8}, results.get(0).ranges);
+        assertArrayEquals(new int[]{7, 15}, results.get(1).ranges);
+    }
+
+    @Test
+    public void testCancelledSearchReturnsNull() {
+        TranscriptSearchController.Index index = index("a", "b");
+
+        assertNull(index.search("a", null, () -> true));
+    }
+}
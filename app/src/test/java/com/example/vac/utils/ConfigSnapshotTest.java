@@ -0,0 +1,29 @@
+package com.example.vac.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConfigSnapshotTest {
+    private static final String TEMPLATE = "Witaj, dodzwoniłeś się do %1$s. Uprzedzam, że rozmowa jest nagrywana.";
+
+    @Test
+    public void testOwnGreetingGetsRecordingNotice() {
+        assertEquals("Dzień dobry." + ConfigSnapshot.RECORDING_NOTICE,
+                ConfigSnapshot.composeGreeting("Darek", "Dzień dobry.", TEMPLATE));
+    }
+
+    @Test
+    public void testOwnGreetingMentioningRecordingIsKept() {
+        String greeting = "Dzień dobry, ROZMOWA JEST NAGRYWANA.";
+        assertEquals(greeting, ConfigSnapshot.composeGreeting("Darek", greeting, TEMPLATE));
+    }
+
+    @Test
+    public void testDefaultGreetingUsesName() {
+        assertEquals("Witaj, dodzwoniłeś się do Darek. Uprzedzam, że rozmowa jest nagrywana.",
+                ConfigSnapshot.composeGreeting("Darek", "  ", TEMPLATE));
+        assertEquals("Witaj, dodzwoniłeś się do . Uprzedzam, że rozmowa jest nagrywana.",
+                ConfigSnapshot.composeGreeting(null, null, TEMPLATE));
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.vac.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FoldedTextTest {
+
+    @Test
+    public void testFoldsCaseAndDiacritics() {
+        assertEquals("zazolc gesla jazn lodz", FoldedText.fold("Zażółć gęślą jaźń Łódź"));
+    }
+
+    @Test
+    public void testMatchesMapBackToOriginalPositions() {
+        FoldedText text = FoldedText.of("Dzwonię z Łodzi, proszę o kontakt z Łodzią");
+
+        assertTrue(text.contains(FoldedText.fold("lodz")));
+        assertArrayEquals(new int[]{10, 14, 36, 40}, text.findInOriginal(FoldedText.fold("LODZ")));
+    }
+
+    @Test
+    public void testDecomposedMarksStayWithTheirLetter() {
+        String original = "cafe\u0301 noir"; // "é" written as e + combining acute
+
+        int[] ranges = FoldedText.of(original).findInOriginal("cafe");
+
+        assertArrayEquals(new int[]{0, 5}, ranges);
+        assertEquals("cafe\u0301", original.substring(ranges[0], ranges[1]));
+    }
+
+    @Test
+    public void testNoMatchOrEmptyQuery() {
+        FoldedText text = FoldedText.of("hello");
+
+        assertArrayEquals(new int[0], text.findInOriginal("xyz"));
+        assertArrayEquals(new int[0], text.findInOriginal(""));
+    }
+}
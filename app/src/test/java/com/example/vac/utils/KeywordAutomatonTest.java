@@ -0,0 +1,41 @@
+package com.example.vac.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeywordAutomatonTest {
+
+    private static List<String> matches(KeywordAutomaton automaton, List<String> keywords, String text) {
+        List<String> found = new ArrayList<>();
+        automaton.match(text, (keywordIndex, end) -> found.add(keywords.get(keywordIndex) + "@" + end));
+        return found;
+    }
+
+    @Test
+    public void testMatchesOverlappingStemsAtWordStarts() {
+        List<String> keywords = Arrays.asList("paczk", "paczkomat", "kom");
+        KeywordAutomaton automaton = KeywordAutomaton.compile(keywords);
+
+        assertEquals(Arrays.asList("paczk@5", "paczkomat@9"), matches(automaton, keywords, "paczkomat"));
+        assertEquals(Arrays.asList("kom@11"), matches(automaton, keywords, "opaczka kom"));
+    }
+
+    @Test
+    public void testFoldsCaseAndPolishDiacritics() {
+        List<String> keywords = Arrays.asList("przesylk", "zolw");
+        KeywordAutomaton automaton = KeywordAutomaton.compile(keywords);
+
+        assertEquals(Arrays.asList("przesylk@14", "zolw@21"),
+                matches(automaton, keywords, "Twoja PRZESYŁKA, żółw"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMultiWordKeywords() {
+        KeywordAutomaton.compile(Arrays.asList("dwa slowa"));
+    }
+}
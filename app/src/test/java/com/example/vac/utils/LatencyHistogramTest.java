@@ -0,0 +1,64 @@
+package com.example.vac.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMin());
+    }
+
+    @Test
+    public void testPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long ms = 1; ms <= 1000; ms++) {
+            histogram.record(ms * 1000);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertWithinPrecision(500_000, histogram.getValueAtPercentile(50));
+        assertWithinPrecision(950_000, histogram.getValueAtPercentile(95));
+        assertWithinPrecision(990_000, histogram.getValueAtPercentile(99));
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(1000, histogram.getMin());
+    }
+
+    @Test
+    public void testBucketsCoverValuesContiguously() {
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT - 1; i++) {
+            long lower = LatencyHistogram.bucketLowerBound(i);
+            long nextLower = LatencyHistogram.bucketLowerBound(i + 1);
+            assertEquals(i, LatencyHistogram.bucketIndex(lower));
+            assertEquals(i, LatencyHistogram.bucketIndex(nextLower - 1));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testAddMergesCountsAndExtremes() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(100);
+        second.record(5_000_000);
+
+        first.add(second);
+
+        assertEquals(2, first.getCount());
+        assertEquals(100, first.getMin());
+        assertEquals(5_000_000, first.getMax());
+        assertEquals(5_000_000, first.getValueAtPercentile(100));
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue("Expected ~" + expected + " but was " + actual,
+                Math.abs(expected - actual) <= expected / 16);
+    }
+}
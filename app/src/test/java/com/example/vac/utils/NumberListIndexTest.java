@@ -0,0 +1,63 @@
+package com.example.vac.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NumberListIndexTest {
+
+    @Test
+    public void testNormalizeUnifiesNumberFormats() {
+        assertEquals("48600100200", NumberListIndex.normalize("+48 600-100-200"));
+        assertEquals("48600100200", NumberListIndex.normalize("0048 600 100 200"));
+        assertEquals("48600100200", NumberListIndex.normalize("600 100 200"));
+        assertEquals("442071234567", NumberListIndex.normalize("+44 20 7123 4567"));
+        assertEquals("4880", NumberListIndex.normalizePrefix("80"));
+        assertEquals("4480", NumberListIndex.normalizePrefix("+44 80"));
+        assertNull(NumberListIndex.normalize(""));
+        assertNull(NumberListIndex.normalize("1234567890123456789"));
+    }
+
+    @Test
+    public void testDecidesExactNumbersAndRanges() {
+        NumberListIndex index = NumberListIndex.build(
+                Arrays.asList("+48 600 100 200", "801 555 000"),
+                Arrays.asList("700 300 400", "+1 202 555 0100"),
+                Arrays.asList("801", "+44 870"));
+
+        assertEquals(NumberListIndex.Decision.ALLOW, index.decide("600100200"));
+        assertEquals(NumberListIndex.Decision.REJECT, index.decide("+48700300400"));
+        assertEquals(NumberListIndex.Decision.REJECT, index.decide("+12025550100"));
+        assertEquals(NumberListIndex.Decision.REJECT, index.decide("801 234 567"));
+        assertEquals(NumberListIndex.Decision.REJECT, index.decide("+44 870 123 4567"));
+        assertEquals(NumberListIndex.Decision.SCREEN, index.decide("+44 20 7123 4567"));
+        assertEquals(NumberListIndex.Decision.SCREEN, index.decide("800 123 456"));
+        assertEquals(NumberListIndex.Decision.SCREEN, index.decide(null));
+        assertEquals("Allowed contact inside a blocked range gets through",
+                NumberListIndex.Decision.ALLOW, index.decide("801555000"));
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void testShortNumbersDoNotMatchLongerPrefixes() {
+        NumberListIndex index = NumberListIndex.build(Collections.emptyList(), Collections.emptyList(),
+                Collections.singletonList("+48 801 23"));
+
+        assertEquals(NumberListIndex.Decision.SCREEN, index.decide("+48 801"));
+        assertEquals(NumberListIndex.Decision.REJECT, index.decide("801 234 567"));
+        assertEquals(NumberListIndex.Decision.SCREEN, index.decide("801 244 567"));
+    }
+
+    @Test
+    public void testEmptyIndexScreensEveryone() {
+        assertTrue(NumberListIndex.EMPTY.isEmpty());
+        assertEquals(NumberListIndex.Decision.SCREEN, NumberListIndex.EMPTY.decide("+48 600 100 200"));
+        assertTrue(NumberListIndex.build(Collections.emptyList(), Collections.singletonList("abc"),
+                Collections.singletonList("")).isEmpty());
+    }
+}
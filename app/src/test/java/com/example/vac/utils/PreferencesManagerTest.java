@@ -3,17 +3,23 @@ package com.example.vac.utils;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import com.example.vac.R;
+
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -102,4 +108,26 @@ public class PreferencesManagerTest {
         
         assertFalse(isSetupCompleted);
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void test_snapshotIsReadOnceAndRebuiltOnChange() {
+        when(mockContext.getString(R.string.default_greeting)).thenReturn("Hi, this is %1$s's assistant.");
+        when(mockSharedPreferences.getString(eq(KEY_USER_NAME), anyString())).thenReturn(TEST_USER_NAME);
+        when(mockSharedPreferences.getString(eq(KEY_GREETING_TEXT), anyString())).thenReturn("");
+
+        ConfigSnapshot first = preferencesManager.getSnapshot();
+        assertSame(first, new PreferencesManager(mockContext).getSnapshot());
+        assertEquals("Hi, this is Test User's assistant.", first.getGreetingSpeech());
+        verify(mockSharedPreferences, times(1)).getString(eq(KEY_USER_NAME), anyString());
+
+        ArgumentCaptor<SharedPreferences.OnSharedPreferenceChangeListener> listener =
+                ArgumentCaptor.forClass(SharedPreferences.OnSharedPreferenceChangeListener.class);
+        verify(mockSharedPreferences).registerOnSharedPreferenceChangeListener(listener.capture());
+        when(mockSharedPreferences.getString(eq(KEY_GREETING_TEXT), anyString())).thenReturn(TEST_GREETING);
+        listener.getValue().onSharedPreferenceChanged(mockSharedPreferences, KEY_GREETING_TEXT);
+
+        ConfigSnapshot changed = preferencesManager.getSnapshot();
+        assertNotSame(first, changed);
+        assertEquals(TEST_GREETING + ConfigSnapshot.RECORDING_NOTICE, changed.getGreetingSpeech());
+    }
+}
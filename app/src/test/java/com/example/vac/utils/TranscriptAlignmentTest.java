@@ -0,0 +1,78 @@
+package com.example.vac.utils;
+
+import com.example.vac.handlers.RecordingCompactor;
+import com.example.vac.models.TranscriptionData;
+import com.example.vac.models.TranscriptionData.SpeakerType;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TranscriptAlignmentTest {
+    private static final long RECORDING_START = 1_700_000_000_000L;
+
+    private static TranscriptionData snippet(long offsetMs) {
+        return new TranscriptionData(RECORDING_START + offsetMs, "at " + offsetMs, "message_1", SpeakerType.CALLER);
+    }
+
+    private static RecordingCompactor.TimeMapEntry entry(long compactStartMs, long originalStartMs, long durationMs) {
+        RecordingCompactor.TimeMapEntry entry = new RecordingCompactor.TimeMapEntry();
+        entry.compactStartMs = compactStartMs;
+        entry.originalStartMs = originalStartMs;
+        entry.durationMs = durationMs;
+        return entry;
+    }
+
+    @Test
+    public void testSnippetAtUsesRecordingRelativeTime() {
+        TranscriptAlignment alignment = TranscriptAlignment.build(
+                List.of(snippet(1000), snippet(5000), snippet(9000)), RECORDING_START, null);
+
+        assertEquals(-1, alignment.snippetAt(999));
+        assertEquals(0, alignment.snippetAt(1000));
+        assertEquals(1, alignment.snippetAt(8999));
+        assertEquals(2, alignment.snippetAt(60_000));
+        assertEquals(9000, alignment.nextStartAfter(5000));
+        assertEquals(-1, alignment.nextStartAfter(9000));
+    }
+
+    @Test
+    public void testOutOfOrderSnippetsKeepTheirIndex() {
+        TranscriptAlignment alignment = TranscriptAlignment.build(
+                List.of(snippet(5000), snippet(1000), snippet(3000)), RECORDING_START, null);
+
+        assertEquals(1, alignment.snippetAt(1500));
+        assertEquals(2, alignment.snippetAt(3500));
+        assertEquals(0, alignment.snippetAt(5500));
+    }
+
+    @Test
+    public void testCompactedRecordingIsAlignedThroughTimeMap() {
+        // 2-4 s and 10-12 s of the original were kept
+        List<RecordingCompactor.TimeMapEntry> timeMap = List.of(entry(0, 2000, 2000), entry(2000, 10_000, 2000));
+
+        TranscriptAlignment alignment = TranscriptAlignment.build(
+                List.of(snippet(2500), snippet(10_500)), RECORDING_START, timeMap);
+
+        assertEquals(-1, alignment.snippetAt(400));
+        assertEquals(0, alignment.snippetAt(500));
+        assertEquals(0, alignment.snippetAt(2499));
+        assertEquals(1, alignment.snippetAt(2500));
+    }
+
+    @Test
+    public void testLongCallLookup() {
+        List<TranscriptionData> transcript = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            transcript.add(snippet(i * 1000L));
+        }
+
+        TranscriptAlignment alignment = TranscriptAlignment.build(transcript, RECORDING_START, null);
+
+        assertEquals(10_000, alignment.size());
+        assertEquals(7654, alignment.snippetAt(7_654_321));
+    }
+}